@@ -85,6 +85,14 @@ application {
 	mainClassName = "edu.duke.cs.osprey.design.Main"
 }
 
+// microbenchmarks live in their own source set, so they don't get mixed into the tests
+val jmh by sourceSets.creating {
+	compileClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+	runtimeClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+}
+configurations[jmh.implementationConfigurationName].extendsFrom(configurations.testImplementation.get())
+configurations[jmh.runtimeOnlyConfigurationName].extendsFrom(configurations.testRuntimeOnly.get())
+
 dependencies {
 
 	// kotlin runtime
@@ -97,6 +105,11 @@ dependencies {
 	testImplementation("org.junit.jupiter:junit-jupiter:5.9.2")
 	testImplementation("org.assertj:assertj-core:3.18.1")
 
+	// microbenchmark dependencies
+	val jmhVersion = "1.35"
+	"jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+	"jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+
 	// handle logging
 	implementation("ch.qos.logback:logback-classic:1.2.3")
 	implementation("org.slf4j:jul-to-slf4j:1.7.30")
@@ -274,6 +287,16 @@ tasks {
 		// but make sure we include the expanded version of the file rather than ignoring it
 		duplicatesStrategy = DuplicatesStrategy.INCLUDE
 	}
+
+	// run the microbenchmarks, eg:
+	// ./gradlew jmh --args="TupleMatrixAccess -f 1"
+	register<JavaExec>("jmh") {
+		group = "verification"
+		description = "Runs the JMH microbenchmarks"
+		classpath = jmh.runtimeClasspath
+		mainClass.set("org.openjdk.jmh.Main")
+		workingDir = projectDir
+	}
 }
 
 
@@ -85,7 +85,8 @@ fun Project.makeBuildTasks() {
 			"java.management",
 			"jdk.httpserver",
 			"jdk.zipfs", // needed to provide jar:// file system
-			"jdk.incubator.foreign" // needed for foreign memory access API
+			"jdk.incubator.foreign", // needed for foreign memory access API
+			"jdk.incubator.vector" // needed for SIMD energy kernels
 		)
 	}
 
@@ -0,0 +1,338 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+
+package edu.duke.cs.osprey.confspace;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import edu.duke.cs.osprey.ematrix.UpdatingEnergyMatrix;
+import edu.duke.cs.osprey.pruning.PruningMatrix;
+import edu.duke.cs.osprey.structure.PDBIO;
+
+/**
+ * Compares tuple lookups using mutable {@link RCTuple}s vs {@link ImmutableRCTuple}s,
+ * for the correction trie, the pruning matrix, and the tuple trees.
+ *
+ * The public mutable-tuple methods now convert to immutable tuples internally,
+ * so the baseline benchmarks run copies of the original mutable-tuple lookups instead.
+ *
+ * Run with the GC profiler (eg, `-prof gc`) to see the allocation rate of each lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkTupleLookups {
+
+	@Param({"8"})
+	public int numPos;
+
+	@Param({"20"})
+	public int numRCsAtPos;
+
+	private RCTuple conf;
+	private ImmutableRCTuple immutableConf;
+	private RCTuple triple;
+	private ImmutableRCTuple immutableTriple;
+
+	private UpdatingEnergyMatrix.TupleTrie trie;
+	private BaselineTupleTrie baselineTrie;
+	private PruningMatrix pmat;
+
+	@Setup
+	public void setup() {
+
+		// the correction trie needs real positions, so make a small conf space
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (int i=0; i<numPos; i++) {
+			strand.flexibility.get("A" + (2 + i)).setLibraryRotamers(Strand.WildType);
+		}
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		// make a full conformation to query
+		int[] confRCs = new int[numPos];
+		Random rand = new Random(12345);
+		for (int pos=0; pos<numPos; pos++) {
+			confRCs[pos] = rand.nextInt(numRCsAtPos);
+		}
+		conf = new RCTuple(confRCs);
+		immutableConf = ImmutableRCTuple.fromConf(confRCs);
+
+		// add some corrections, including a few that match the conformation
+		trie = new UpdatingEnergyMatrix.TupleTrie(confSpace.positions);
+		baselineTrie = new BaselineTupleTrie(confSpace.positions);
+		for (int i=0; i<100; i++) {
+			int pos1 = rand.nextInt(numPos - 2);
+			int pos2 = pos1 + 1 + rand.nextInt(numPos - pos1 - 2);
+			int pos3 = pos2 + 1 + rand.nextInt(numPos - pos2 - 1);
+			boolean matches = i % 10 == 0;
+			TupE correction = new TupE(new RCTuple(
+				pos1, matches ? confRCs[pos1] : rand.nextInt(numRCsAtPos),
+				pos2, matches ? confRCs[pos2] : rand.nextInt(numRCsAtPos),
+				pos3, matches ? confRCs[pos3] : rand.nextInt(numRCsAtPos)
+			), -rand.nextDouble());
+			trie.insert(correction);
+			baselineTrie.insert(correction);
+		}
+
+		// make a pruning matrix with some pruned triples, but none that prune the conformation
+		int[] numRCs = new int[numPos];
+		for (int pos=0; pos<numPos; pos++) {
+			numRCs[pos] = numRCsAtPos;
+		}
+		pmat = new PruningMatrix(numPos, numRCs, 0);
+		pmat.fill(false);
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int pos2=pos1+1; pos2<numPos; pos2++) {
+				for (int pos3=pos2+1; pos3<numPos; pos3++) {
+					int rc3 = (confRCs[pos3] + 1) % numRCsAtPos;
+					pmat.pruneTriple(pos1, confRCs[pos1], pos2, confRCs[pos2], pos3, rc3);
+				}
+			}
+		}
+
+		triple = new RCTuple(0, confRCs[0], 1, confRCs[1], 2, confRCs[2]);
+		immutableTriple = ImmutableRCTuple.of(0, confRCs[0], 1, confRCs[1], 2, confRCs[2]);
+	}
+
+	@Benchmark
+	public List<TupE> correctionsBaseline() {
+		return baselineTrie.getCorrections(conf);
+	}
+
+	@Benchmark
+	public List<TupE> correctionsMutable() {
+		return trie.getCorrections(conf);
+	}
+
+	@Benchmark
+	public List<TupE> correctionsImmutable() {
+		return trie.getCorrections(immutableConf);
+	}
+
+	@Benchmark
+	public boolean isPrunedBaseline() {
+		return baselineIsPruned(pmat, conf);
+	}
+
+	@Benchmark
+	public boolean isPrunedMutable() {
+		return pmat.isPruned(conf);
+	}
+
+	@Benchmark
+	public boolean isPrunedImmutable() {
+		return pmat.isPruned(immutableConf);
+	}
+
+	@Benchmark
+	public Boolean getTupleMutable() {
+		return pmat.getTuple(triple);
+	}
+
+	@Benchmark
+	public Boolean getTupleImmutable() {
+		return pmat.getTuple(immutableTriple);
+	}
+
+	/** the original PruningMatrix.isPruned(RCTuple), which looks up triples with a mutable tuple */
+	private static boolean baselineIsPruned(PruningMatrix pmat, RCTuple tup) {
+
+		List<Integer> tuppos = tup.pos;
+		List<Integer> tupRCs = tup.RCs;
+		int numTupPos = tuppos.size();
+
+		// check singles
+		for (int i1=0; i1<numTupPos; i1++) {
+			if (pmat.getOneBody(tuppos.get(i1), tupRCs.get(i1))) {
+				return true;
+			}
+		}
+
+		// check pairs
+		for (int i1=0; i1<numTupPos; i1++) {
+			int pos1 = tuppos.get(i1);
+			int rc1 = tupRCs.get(i1);
+			for (int i2=0; i2<i1; i2++) {
+				if (pmat.getPairwise(pos1, rc1, tuppos.get(i2), tupRCs.get(i2))) {
+					return true;
+				}
+			}
+		}
+
+		// check triples using tuple trees
+		if (pmat.hasHigherOrderTuples()) {
+
+			// allocate just one tuple, but update it inside the loops
+			RCTuple tuple = new RCTuple(0, 0, 0, 0, 0, 0);
+
+			for (int i1=2; i1<numTupPos; i1++) {
+				tuple.pos.set(2, tuppos.get(i1));
+				tuple.RCs.set(2, tupRCs.get(i1));
+				for (int i2=1; i2<i1; i2++) {
+					tuple.pos.set(1, tuppos.get(i2));
+					tuple.RCs.set(1, tupRCs.get(i2));
+					for (int i3=0; i3<i2; i3++) {
+						tuple.pos.set(0, tuppos.get(i3));
+						tuple.RCs.set(0, tupRCs.get(i3));
+						if (pmat.getTuple(tuple)) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/** the original correction trie, with HashMap children and RCTuple queries */
+	private static class BaselineTupleTrie {
+
+		private static final int WildcardRC = -123;
+		private static final boolean Debug = false;
+
+		private final List<SimpleConfSpace.Position> positions;
+		private final Node root;
+
+		BaselineTupleTrie(List<SimpleConfSpace.Position> positions) {
+			this.positions = positions;
+			this.root = new Node(-1);
+		}
+
+		void insert(TupE correction) {
+			root.insert(correction, 0);
+		}
+
+		List<TupE> getCorrections(RCTuple query) {
+			List<TupE> corrections = new ArrayList<>();
+			root.populateCorrections(query.sorted(), corrections, 0);
+			return corrections;
+		}
+
+		private class Node {
+
+			int rc = WildcardRC;
+			final int positionIndex;
+			int position = -1;
+			final List<TupE> corrections = new ArrayList<>();
+			final Map<Integer,Node> children = new HashMap<>();
+
+			Node(int positionIndex) {
+				this.positionIndex = positionIndex;
+				if (positionIndex >= 0) {
+					position = positions.get(positionIndex).index;
+				}
+				if (positionIndex + 1 < positions.size()) {
+					children.put(WildcardRC, new Node(positionIndex + 1));
+				}
+			}
+
+			@Override
+			public String toString() {
+				return "" + position + ":" + (rc > -1 ? "" + rc : "*");
+			}
+
+			void insert(TupE correction, int tupIndex) {
+				RCTuple tup = correction.tup;
+				if (tupIndex >= tup.size()) {
+					corrections.add(correction);
+					return;
+				}
+				int childIndex = tup.pos.get(tupIndex);
+				int childRC = tup.RCs.get(tupIndex);
+				if (position + 1 != childIndex) {
+					children.get(WildcardRC).insert(correction, tupIndex);
+				} else {
+					Node child = children.get(childRC);
+					if (child == null) {
+						child = new Node(positionIndex + 1);
+						child.rc = childRC;
+						children.put(childRC, child);
+					}
+					child.insert(correction, tupIndex + 1);
+				}
+			}
+
+			void populateCorrections(RCTuple query, List<TupE> output, int tupleIndex) {
+
+				// the original built its debug messages even when debugging was off
+				debug("Currently at " + this);
+
+				if (corrections.size() > 0) {
+					output.addAll(corrections);
+					debug("Adding corrections from " + this);
+				}
+				if (tupleIndex >= query.size()) {
+					return;
+				}
+				int currentRC = query.RCs.get(tupleIndex);
+				int currentPos = query.pos.get(tupleIndex);
+				if (tupleIndex + 1 > positions.size()) {
+					return;
+				}
+				int nextIndex = tupleIndex + 1;
+				if (position + 1 < currentPos) {
+					nextIndex = tupleIndex;
+				}
+				if (position + 1 == currentPos && children.containsKey(currentRC)) {
+					children.get(currentRC).populateCorrections(query, output, nextIndex);
+				}
+
+				// also branch on the wildcard
+				if (!children.containsKey(WildcardRC)) {
+					children.put(WildcardRC, new Node(positionIndex + 1));
+				}
+				children.get(WildcardRC).populateCorrections(query, output, nextIndex);
+			}
+
+			private void debug(String msg) {
+				if (Debug) {
+					System.out.println(msg);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import edu.duke.cs.osprey.astar.conf.ConfIndex;
+import edu.duke.cs.osprey.astar.conf.RCs;
+import edu.duke.cs.osprey.astar.conf.scoring.MPLPPairwiseHScorer;
+import edu.duke.cs.osprey.astar.conf.scoring.PairwiseGScorer;
+import edu.duke.cs.osprey.astar.conf.scoring.TraditionalPairwiseHScorer;
+import edu.duke.cs.osprey.astar.conf.scoring.mplp.NodeUpdater;
+
+/**
+ * Compares boxed vs primitive energy matrix lookups, and the A* scorers that use them.
+ *
+ * Uses a synthetic energy matrix, so the benchmark measures only the matrix access
+ * and not the forcefield.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkEnergyMatrixAccess {
+
+	@Param({"8"})
+	public int numPos;
+
+	@Param({"40"})
+	public int numRCsAtPos;
+
+	private EnergyMatrix emat;
+	private RCs rcs;
+	private ConfIndex confIndex;
+	private double[] row;
+
+	private PairwiseGScorer gscorer;
+	private TraditionalPairwiseHScorer traditionalHScorer;
+	private MPLPPairwiseHScorer mplpHScorer;
+
+	@Setup
+	public void setup() {
+
+		int[] numRCs = new int[numPos];
+		for (int pos=0; pos<numPos; pos++) {
+			numRCs[pos] = numRCsAtPos;
+		}
+
+		// fill the matrix with arbitrary (but repeatable) energies
+		Random rand = new Random(12345);
+		emat = new EnergyMatrix(numPos, numRCs, Double.POSITIVE_INFINITY);
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int rc1=0; rc1<numRCsAtPos; rc1++) {
+				emat.setOneBody(pos1, rc1, rand.nextDouble()*10 - 5);
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<numRCsAtPos; rc2++) {
+						emat.setPairwise(pos1, rc1, pos2, rc2, rand.nextDouble()*10 - 5);
+					}
+				}
+			}
+		}
+
+		int[][] rcsAtPos = new int[numPos][numRCsAtPos];
+		for (int pos=0; pos<numPos; pos++) {
+			for (int rc=0; rc<numRCsAtPos; rc++) {
+				rcsAtPos[pos][rc] = rc;
+			}
+		}
+		rcs = new RCs(rcsAtPos);
+
+		// assign the first half of the positions, like a node halfway down the tree
+		confIndex = new ConfIndex(numPos);
+		for (int pos=0; pos<numPos/2; pos++) {
+			confIndex.assignInPlace(pos, pos % numRCsAtPos);
+		}
+
+		row = new double[numRCsAtPos];
+
+		gscorer = new PairwiseGScorer(emat);
+		traditionalHScorer = new TraditionalPairwiseHScorer(emat, rcs);
+		mplpHScorer = new MPLPPairwiseHScorer(new NodeUpdater(), emat, 1, 0.0001);
+	}
+
+	@Benchmark
+	public double pairwiseBoxed() {
+		double sum = 0;
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int rc1=0; rc1<numRCsAtPos; rc1++) {
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<numRCsAtPos; rc2++) {
+						sum += emat.getPairwise(pos1, rc1, pos2, rc2);
+					}
+				}
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double pairwisePrimitive() {
+		double sum = 0;
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int rc1=0; rc1<numRCsAtPos; rc1++) {
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<numRCsAtPos; rc2++) {
+						sum += emat.getPairwiseDouble(pos1, rc1, pos2, rc2);
+					}
+				}
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double pairwiseRow() {
+		double sum = 0;
+		for (int pos1=0; pos1<numPos; pos1++) {
+			for (int rc1=0; rc1<numRCsAtPos; rc1++) {
+				for (int pos2=0; pos2<pos1; pos2++) {
+					emat.getPairwiseRow(pos1, rc1, pos2, row);
+					for (int rc2=0; rc2<numRCsAtPos; rc2++) {
+						sum += row[rc2];
+					}
+				}
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double gscore() {
+		return gscorer.calc(confIndex, rcs);
+	}
+
+	@Benchmark
+	public double hscoreTraditional() {
+		return traditionalHScorer.calc(confIndex, rcs);
+	}
+
+	@Benchmark
+	public double hscoreMPLP() {
+		return mplpHScorer.calc(confIndex, rcs);
+	}
+}
@@ -0,0 +1,250 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.energy.compiled;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import edu.duke.cs.osprey.confspace.ParametricMolecule;
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.compiled.PosInter;
+import edu.duke.cs.osprey.confspace.compiled.PosInterDist;
+import edu.duke.cs.osprey.confspace.compiled.TestConfSpace;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.ResInterGen;
+import edu.duke.cs.osprey.energy.ResidueInteractions;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.energy.forcefield.ResidueForcefieldEnergy;
+import edu.duke.cs.osprey.gpu.Structs;
+import edu.duke.cs.osprey.minimization.MoleculeObjectiveFunction;
+import edu.duke.cs.osprey.minimization.SimpleCCDMinimizer;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+
+/**
+ * Measures conformation energies per second for the compiled energy calculators,
+ * and for the classic ResidueForcefieldEnergy/SimpleCCDMinimizer path they replaced.
+ *
+ * All benchmarks use the wild-type conformation of the 2RL0 test design (7 mutable positions),
+ * with a few different sets of position interactions:
+ * <ul>
+ *     <li>singles: each position with itself and the static region</li>
+ *     <li>dynamic: singles, plus all position pairs</li>
+ *     <li>all: dynamic, plus the static region with itself</li>
+ * </ul>
+ *
+ * Run with, eg:
+ * ./gradlew jmh --args="BenchmarkConfEnergyCalculators -p inters=dynamic"
+ *
+ * The native benchmarks need the native libraries built for this platform.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BenchmarkConfEnergyCalculators {
+
+	@State(Scope.Benchmark)
+	public static class Design {
+
+		@Param({"singles", "dynamic", "all"})
+		public String inters;
+
+		public TestConfSpace.AffinityClassic classic;
+		public TestConfSpace.AffinityCompiled compiled;
+
+		public int[] classicConf;
+		public int[] compiledConf;
+
+		public ResidueInteractions classicInters;
+		public List<PosInter> compiledInters;
+
+		@Setup
+		public void setup() {
+
+			classic = TestConfSpace.Design2RL0Interface7Mut.makeClassic();
+			compiled = TestConfSpace.Design2RL0Interface7Mut.makeCompiled();
+
+			classicConf = classic.makeConfWt(classic.complex);
+			compiledConf = compiled.makeConfWt(compiled.complex);
+
+			RCTuple frag = new RCTuple(classicConf);
+			ResInterGen classicGen = ResInterGen.of(classic.complex);
+			switch (inters) {
+
+				case "singles" -> {
+					classicGen.addIntras(frag).addShell(frag);
+					compiledInters = new ArrayList<>();
+					for (PosInter inter : PosInterDist.dynamic(compiled.complex, compiledConf)) {
+						if (inter.posi1 == inter.posi2 || inter.posi2 == PosInter.StaticPos) {
+							compiledInters.add(inter);
+						}
+					}
+				}
+
+				case "dynamic" -> {
+					classicGen.addIntras(frag).addInters(frag).addShell(frag);
+					compiledInters = PosInterDist.dynamic(compiled.complex, compiledConf);
+				}
+
+				case "all" -> {
+					classicGen.addAll(frag);
+					compiledInters = PosInterDist.all(compiled.complex, compiledConf);
+				}
+
+				default -> throw new IllegalArgumentException("unknown interactions: " + inters);
+			}
+			classicInters = classicGen.make();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Cpu {
+
+		public CPUConfEnergyCalculator ecalc;
+
+		@Setup
+		public void setup(Design design) {
+			ecalc = new CPUConfEnergyCalculator(design.compiled.complex);
+		}
+
+		@TearDown
+		public void tearDown() {
+			ecalc.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Vector {
+
+		public VectorConfEnergyCalculator ecalc;
+
+		@Setup
+		public void setup(Design design) {
+			ecalc = new VectorConfEnergyCalculator(design.compiled.complex);
+		}
+
+		@TearDown
+		public void tearDown() {
+			ecalc.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Native {
+
+		@Param({"Float32", "Float64"})
+		public Structs.Precision precision;
+
+		public NativeConfEnergyCalculator ecalc;
+
+		@Setup
+		public void setup(Design design) {
+			ecalc = new NativeConfEnergyCalculator(design.compiled.complex, precision);
+		}
+
+		@TearDown
+		public void tearDown() {
+			ecalc.close();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Classic {
+
+		public EnergyCalculator ecalc;
+		public ParametricMolecule pmol;
+		public ResidueForcefieldEnergy efunc;
+		public SimpleCCDMinimizer minimizer;
+
+		@Setup
+		public void setup(Design design) {
+			ecalc = new EnergyCalculator.Builder(design.classic.complex, new ForcefieldParams())
+				.setParallelism(Parallelism.makeCpu(1))
+				.build();
+			pmol = design.classic.complex.makeMolecule(design.classicConf);
+			efunc = new ResidueForcefieldEnergy(ecalc.resPairCache, design.classicInters, pmol.mol);
+			minimizer = new SimpleCCDMinimizer(new MoleculeObjectiveFunction(pmol, efunc));
+		}
+
+		@TearDown
+		public void tearDown() {
+			minimizer.clean();
+			ecalc.close();
+		}
+	}
+
+	@Benchmark
+	public double cpuCalc(Design design, Cpu cpu) {
+		return cpu.ecalc.calcEnergy(design.compiledConf, design.compiledInters);
+	}
+
+	@Benchmark
+	public double cpuMinimize(Design design, Cpu cpu) {
+		return cpu.ecalc.minimizeEnergy(design.compiledConf, design.compiledInters);
+	}
+
+	@Benchmark
+	public double vectorCalc(Design design, Vector vector) {
+		return vector.ecalc.calcEnergy(design.compiledConf, design.compiledInters);
+	}
+
+	@Benchmark
+	public double vectorMinimize(Design design, Vector vector) {
+		return vector.ecalc.minimizeEnergy(design.compiledConf, design.compiledInters);
+	}
+
+	@Benchmark
+	public double nativeCalc(Design design, Native n) {
+		return n.ecalc.calcEnergy(design.compiledConf, design.compiledInters);
+	}
+
+	@Benchmark
+	public double nativeMinimize(Design design, Native n) {
+		return n.ecalc.minimizeEnergy(design.compiledConf, design.compiledInters);
+	}
+
+	@Benchmark
+	public double classicCalc(Classic classic) {
+		return classic.efunc.getEnergy();
+	}
+
+	@Benchmark
+	public double classicMinimize(Classic classic) {
+		return classic.minimizer.minimizeFromCenter().energy;
+	}
+}
@@ -39,6 +39,7 @@ import java.util.List;
 import edu.duke.cs.osprey.astar.AStarProgress;
 import edu.duke.cs.osprey.astar.conf.linked.LinkedConfAStarFactory;
 import edu.duke.cs.osprey.astar.conf.order.*;
+import edu.duke.cs.osprey.astar.conf.packed.PackedConfAStarFactory;
 import edu.duke.cs.osprey.astar.conf.pruning.AStarPruner;
 import edu.duke.cs.osprey.astar.conf.scoring.AStarScorer;
 import edu.duke.cs.osprey.astar.conf.scoring.MPLPPairwiseHScorer;
@@ -86,6 +87,7 @@ public class ConfAStarTree implements ConfSearch {
 		private ConfAStarFactory factory = new LinkedConfAStarFactory();
 		private AStarPruner pruner = null;
 		private Long maxNumNodes = null;
+		private int batchSize = 1;
 
 		public Builder(EnergyMatrix emat, SimpleConfSpace confSpace) {
 			this(emat, new RCs(confSpace));
@@ -199,6 +201,24 @@ public class ConfAStarTree implements ConfSearch {
 			factory = new EMConfAStarFactory();
 			return this;
 		}
+
+		/**
+		 * Store A* nodes as packed records in off-heap memory, rather than as Java objects.
+		 *
+		 * Large searches can queue millions of nodes, which puts a lot of pressure on the
+		 * garbage collector and the Java heap. Off-heap nodes take less than half the space
+		 * and aren't visible to the garbage collector at all.
+		 */
+		public Builder useOffHeapMemory() {
+
+			// just in case...
+			if (maxNumNodes != null) {
+				throw new IllegalArgumentException("off-heap memory is incompatible with bounded memory");
+			}
+
+			factory = new PackedConfAStarFactory();
+			return this;
+		}
 		
 		public Builder setShowProgress(boolean val) {
 			showProgress = val;
@@ -216,6 +236,9 @@ public class ConfAStarTree implements ConfSearch {
 			if (val != null && factory instanceof EMConfAStarFactory) {
 				throw new IllegalArgumentException("bounded memory is incompatible with external memory");
 			}
+			if (val != null && factory instanceof PackedConfAStarFactory) {
+				throw new IllegalArgumentException("bounded memory is incompatible with off-heap memory");
+			}
 
 			maxNumNodes = val;
 			return this;
@@ -224,6 +247,25 @@ public class ConfAStarTree implements ConfSearch {
 		public Builder setMaxNumNodes(int val) {
 			return setMaxNumNodes(Long.valueOf(val));
 		}
+
+		/**
+		 * Pop up to this many nodes from the queue at once, and score all their children in parallel.
+		 *
+		 * When nodes have only a few children (e.g., at shallow levels of the tree),
+		 * expanding one node at a time can't keep many threads busy. Expanding a batch of
+		 * nodes gives the threads more work to share. Leaf nodes are never batched, so
+		 * conformations are returned in the same order as expanding one node at a time
+		 * (up to ties in the scores), but the search may expand some nodes sooner than it needs to.
+		 *
+		 * Only affects unbounded A* searches. Use {@link ConfAStarTree#setParallelism} to set the number of threads.
+		 */
+		public Builder setBatchSize(int val) {
+			if (val < 1) {
+				throw new IllegalArgumentException("batch size must be at least 1, not " + val);
+			}
+			batchSize = val;
+			return this;
+		}
 		
 		public ConfAStarTree build() {
 			ConfAStarTree tree = new ConfAStarTree(
@@ -234,7 +276,8 @@ public class ConfAStarTree implements ConfSearch {
 				rcs,
 				factory,
 				pruner,
-				maxNumNodes
+				maxNumNodes,
+				batchSize
 			);
 			if (showProgress) {
 				tree.initProgress();
@@ -328,7 +371,7 @@ public class ConfAStarTree implements ConfSearch {
 	private TaskExecutor tasks;
 	private ObjectPool<ScoreContext> contexts;
 	
-	private ConfAStarTree(AStarOrder order, AStarScorer gscorer, AStarScorer hscorer, MathTools.Optimizer optimizer, RCs rcs, ConfAStarFactory factory, AStarPruner pruner, Long maxNumNodes) {
+	private ConfAStarTree(AStarOrder order, AStarScorer gscorer, AStarScorer hscorer, MathTools.Optimizer optimizer, RCs rcs, ConfAStarFactory factory, AStarPruner pruner, Long maxNumNodes, int batchSize) {
 		this.order = order;
 		this.gscorer = gscorer;
 		this.hscorer = hscorer;
@@ -340,7 +383,7 @@ public class ConfAStarTree implements ConfSearch {
 		if (maxNumNodes != null) {
 			this.impl = new SimplifiedBoundedImpl(maxNumNodes);
 		} else {
-			this.impl = new UnboundedImpl();
+			this.impl = new UnboundedImpl(batchSize);
 		}
 		this.confIndex = new ConfIndex(this.rcs.getNumPos());
 		
@@ -471,12 +514,21 @@ public class ConfAStarTree implements ConfSearch {
 	 */
 	private class UnboundedImpl implements AStarImpl {
 
+		private final int batchSize;
 		private final Queue<ConfAStarNode> queue;
+		private final List<ConfAStarNode> batch;
+		private final List<List<ConfAStarNode>> batchChildren;
 
 		private ConfAStarNode rootNode = null;
 
-		UnboundedImpl() {
+		UnboundedImpl(int batchSize) {
+			this.batchSize = batchSize;
 			this.queue = factory.makeQueue(rcs);
+			this.batch = new ArrayList<>(batchSize);
+			this.batchChildren = new ArrayList<>(batchSize);
+			for (int i=0; i<batchSize; i++) {
+				batchChildren.add(new ArrayList<>());
+			}
 		}
 
 		@Override
@@ -517,75 +569,100 @@ public class ConfAStarTree implements ConfSearch {
 					return null;
 				}
 
-				// get the next node to expand
-				ConfAStarNode node = queue.poll();
+				// get the next nodes to expand
+				batch.clear();
+				while (batch.size() < batchSize && !queue.isEmpty()) {
 
-				// if this node was pruned dynamically, then ignore it
-				if (pruner != null && pruner.isPruned(node)) {
-					continue;
-				}
+					ConfAStarNode node = queue.peek();
 
-				// leaf node? report it
-				if (node.getLevel() == rcs.getNumPos()) {
-
-					if (progress != null) {
-						progress.reportLeafNode(node.getGScore(optimizer), queue.size());
+					// if this node was pruned dynamically, then ignore it
+					if (pruner != null && pruner.isPruned(node)) {
+						queue.pop();
+						continue;
 					}
 
-					return new ScoredConf(
-						node.makeConf(rcs.getNumPos()),
-						node.getGScore(optimizer)
-					);
-				}
+					// leaf node?
+					if (node.getLevel() == rcs.getNumPos()) {
 
-				// which pos to expand next?
-				int numChildren = 0;
-				node.index(confIndex);
-				int nextPos = order.getNextPos(confIndex, rcs);
-				assert (!confIndex.isDefined(nextPos));
-				assert (confIndex.isUndefined(nextPos));
+						// leaves can only be reported when they're the best node in the queue,
+						// so never batch them with other nodes
+						if (!batch.isEmpty()) {
+							break;
+						}
 
-				// score child nodes with tasks (possibly in parallel)
-				List<ConfAStarNode> children = new ArrayList<>();
-				for (int nextRc : rcs.get(nextPos)) {
+						queue.pop();
 
-					// if this child was pruned by the pruning matrix, then skip it
-					if (isPruned(confIndex, nextPos, nextRc)) {
-						continue;
-					}
+						if (progress != null) {
+							progress.reportLeafNode(node.getGScore(optimizer), queue.size());
+						}
 
-					// if this child was pruned dynamically, then don't score it
-					if (pruner != null && pruner.isPruned(node, nextPos, nextRc)) {
-						continue;
+						return new ScoredConf(
+							node.makeConf(rcs.getNumPos()),
+							node.getGScore(optimizer)
+						);
 					}
 
-					tasks.submit(() -> {
+					queue.pop();
+					batch.add(node);
+				}
 
-						try (Checkout<ScoreContext> checkout = contexts.autoCheckout()) {
-							ScoreContext context = checkout.get();
+				// score child nodes with tasks (possibly in parallel)
+				for (int i=0; i<batch.size(); i++) {
+					ConfAStarNode node = batch.get(i);
+					List<ConfAStarNode> children = batchChildren.get(i);
+					children.clear();
+
+					// which pos to expand next?
+					node.index(confIndex);
+					int nextPos = order.getNextPos(confIndex, rcs);
+					assert (!confIndex.isDefined(nextPos));
+					assert (confIndex.isUndefined(nextPos));
+
+					for (int nextRc : rcs.get(nextPos)) {
+
+						// if this child was pruned by the pruning matrix, then skip it
+						if (isPruned(confIndex, nextPos, nextRc)) {
+							continue;
+						}
 
-							// score the child node differentially against the parent node
-							node.index(context.index);
-							ConfAStarNode child = node.assign(nextPos, nextRc);
-							child.setGScore(context.gscorer.calcDifferential(context.index, rcs, nextPos, nextRc), optimizer);
-							child.setHScore(context.hscorer.calcDifferential(context.index, rcs, nextPos, nextRc), optimizer);
-							return child;
+						// if this child was pruned dynamically, then don't score it
+						if (pruner != null && pruner.isPruned(node, nextPos, nextRc)) {
+							continue;
 						}
 
-					}, (ConfAStarNode child) -> {
+						tasks.submit(() -> {
 
-						// collect the possible children
-						if (Double.isFinite(child.getScore())) {
-							children.add(child);
-						}
-					});
+							try (Checkout<ScoreContext> checkout = contexts.autoCheckout()) {
+								ScoreContext context = checkout.get();
+
+								// score the child node differentially against the parent node
+								node.index(context.index);
+								ConfAStarNode child = node.assign(nextPos, nextRc);
+								child.setGScore(context.gscorer.calcDifferential(context.index, rcs, nextPos, nextRc), optimizer);
+								child.setHScore(context.hscorer.calcDifferential(context.index, rcs, nextPos, nextRc), optimizer);
+								return child;
+							}
+
+						}, (ConfAStarNode child) -> {
+
+							// collect the possible children
+							if (Double.isFinite(child.getScore())) {
+								children.add(child);
+							}
+						});
+					}
 				}
 				tasks.waitForFinish();
-				numChildren += children.size();
-				queue.pushAll(children);
 
-				if (progress != null) {
-					progress.reportInternalNode(node.getLevel(), node.getGScore(optimizer), node.getHScore(optimizer), queue.size(), numChildren);
+				// merge the children back into the queue
+				for (int i=0; i<batch.size(); i++) {
+					ConfAStarNode node = batch.get(i);
+					List<ConfAStarNode> children = batchChildren.get(i);
+					queue.pushAll(children);
+
+					if (progress != null) {
+						progress.reportInternalNode(node.getLevel(), node.getGScore(optimizer), node.getHScore(optimizer), queue.size(), children.size());
+					}
 				}
 			}
 		}
@@ -0,0 +1,142 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.astar.conf.packed;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Fixed-size records stored in off-heap memory, addressed by a dense index.
+ *
+ * Memory is allocated one slab at a time, and slabs never move once allocated,
+ * so record indices are stable for the life of the store.
+ * The memory is released when the store becomes unreachable.
+ *
+ * Not thread-safe for writes, but any number of threads can read records
+ * as long as no thread is allocating at the same time.
+ */
+class OffHeapSlabs {
+
+	private static final int DefaultSlabShift = 16; // 64 Ki records per slab
+
+	public final int recordBytes;
+	public final int slabShift;
+
+	private final long slabMask;
+	private final ResourceScope scope = ResourceScope.newImplicitScope();
+	private final List<MemorySegment> slabs = new ArrayList<>();
+
+	private long size = 0;
+
+	public OffHeapSlabs(int recordBytes) {
+		this(recordBytes, DefaultSlabShift);
+	}
+
+	public OffHeapSlabs(int recordBytes, int slabShift) {
+		this.recordBytes = recordBytes;
+		this.slabShift = slabShift;
+		this.slabMask = (1L << slabShift) - 1;
+	}
+
+	/** Returns the number of allocated records. */
+	public long size() {
+		return size;
+	}
+
+	/** Returns the number of records that can be allocated without allocating another slab. */
+	public long capacity() {
+		return (long)slabs.size() << slabShift;
+	}
+
+	/** Returns the number of bytes of off-heap memory allocated so far. */
+	public long bytes() {
+		return capacity()*recordBytes;
+	}
+
+	/** Allocates space for a record at the end of the store and returns its index. */
+	public long allocate() {
+		if (size == capacity()) {
+			slabs.add(MemorySegment.allocateNative((long)recordBytes << slabShift, scope));
+		}
+		return size++;
+	}
+
+	/**
+	 * Drops records from the end of the store, so only the first `size` records remain.
+	 * Slabs are kept allocated so they can be re-used by later allocations.
+	 */
+	public void truncate(long size) {
+		if (size < 0 || size > this.size) {
+			throw new IllegalArgumentException("can't truncate store of size " + this.size + " to " + size);
+		}
+		this.size = size;
+	}
+
+	private MemorySegment slab(long index) {
+		return slabs.get((int)(index >>> slabShift));
+	}
+
+	private long offset(long index, long field) {
+		return (index & slabMask)*recordBytes + field;
+	}
+
+	public long getLong(long index, long field) {
+		return MemoryAccess.getLongAtOffset(slab(index), offset(index, field));
+	}
+
+	public void setLong(long index, long field, long value) {
+		MemoryAccess.setLongAtOffset(slab(index), offset(index, field), value);
+	}
+
+	public double getDouble(long index, long field) {
+		return MemoryAccess.getDoubleAtOffset(slab(index), offset(index, field));
+	}
+
+	public void setDouble(long index, long field, double value) {
+		MemoryAccess.setDoubleAtOffset(slab(index), offset(index, field), value);
+	}
+
+	public short getShort(long index, long field) {
+		return MemoryAccess.getShortAtOffset(slab(index), offset(index, field));
+	}
+
+	public void setShort(long index, long field, short value) {
+		MemoryAccess.setShortAtOffset(slab(index), offset(index, field), value);
+	}
+}
@@ -0,0 +1,280 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.astar.conf.packed;
+
+import java.util.Arrays;
+
+import edu.duke.cs.osprey.astar.conf.ConfAStarNode;
+import edu.duke.cs.osprey.astar.conf.ConfIndex;
+
+
+/**
+ * A lightweight handle to an A* node in a {@link PackedNodeStore}.
+ *
+ * Handles are short-lived: the queue makes a new one each time a node is read from the store.
+ * Child nodes live only in the handle until they're pushed onto the queue,
+ * at which point they (and any of their ancestors that aren't stored yet) get written to the store.
+ */
+public class PackedConfAStarNode implements ConfAStarNode {
+
+	// where this node lives, if it's been stored yet
+	private PackedNodeStore store;
+	private long index;
+
+	// the parent, either in the store, or still on the Java heap
+	private long parentIndex;
+	private PackedConfAStarNode parent;
+
+	private final int pos;
+	private final int rc;
+	private final int level;
+	private double gscore;
+	private double hscore;
+
+	public PackedConfAStarNode() {
+		this.store = null;
+		this.index = PackedNodeStore.NoIndex;
+		this.parentIndex = PackedNodeStore.NoIndex;
+		this.parent = null;
+		this.pos = -1;
+		this.rc = -1;
+		this.level = 0;
+		this.gscore = Double.NaN;
+		this.hscore = Double.NaN;
+	}
+
+	private PackedConfAStarNode(PackedConfAStarNode parent, int pos, int rc) {
+		this.index = PackedNodeStore.NoIndex;
+		if (parent.isStored()) {
+			this.store = parent.store;
+			this.parentIndex = parent.index;
+			this.parent = null;
+		} else {
+			this.store = null;
+			this.parentIndex = PackedNodeStore.NoIndex;
+			this.parent = parent;
+		}
+		this.pos = pos;
+		this.rc = rc;
+		this.level = parent.level + 1;
+		this.gscore = Double.NaN;
+		this.hscore = Double.NaN;
+	}
+
+	PackedConfAStarNode(PackedNodeStore store, long index) {
+		this.store = store;
+		this.index = index;
+		this.parentIndex = store.getParentIndex(index);
+		this.parent = null;
+		this.pos = store.getPos(index);
+		this.rc = store.getRC(index);
+		this.level = store.getLevel(index);
+		this.gscore = store.getGScore(index);
+		this.hscore = store.getHScore(index);
+	}
+
+	public boolean isStored() {
+		return index != PackedNodeStore.NoIndex;
+	}
+
+	public long getIndex() {
+		return index;
+	}
+
+	/**
+	 * Writes this node (and any unstored ancestors) to the store, if needed.
+	 * Returns the index of the node in the store.
+	 */
+	long storeIn(PackedNodeStore store) {
+
+		if (isStored()) {
+			if (this.store != store) {
+				throw new IllegalArgumentException("node is already stored somewhere else");
+			}
+			return index;
+		}
+
+		if (parent != null) {
+			parentIndex = parent.storeIn(store);
+			parent = null;
+		}
+
+		this.index = store.add(parentIndex, pos, rc, level, gscore, hscore);
+		this.store = store;
+		return index;
+	}
+
+	@Override
+	public PackedConfAStarNode assign(int pos, int rc) {
+		return new PackedConfAStarNode(this, pos, rc);
+	}
+
+	/**
+	 * Collects the assignments of this node and all its ancestors,
+	 * in order from this node to the root.
+	 * Returns the number of assignments.
+	 */
+	private int collectAssignments(int[] outPos, int[] outRCs) {
+
+		int num = 0;
+
+		// first, walk the ancestors that are still on the Java heap
+		PackedNodeStore store = null;
+		long i = PackedNodeStore.NoIndex;
+		for (PackedConfAStarNode node = this; node != null; node = node.parent) {
+			store = node.store;
+			if (node.isStored()) {
+				i = node.index;
+				break;
+			}
+			if (node.pos >= 0) {
+				outPos[num] = node.pos;
+				outRCs[num] = node.rc;
+				num++;
+			}
+			i = node.parentIndex;
+		}
+
+		// then follow the parent indices through the store
+		while (i != PackedNodeStore.NoIndex) {
+			int pos = store.getPos(i);
+			if (pos >= 0) {
+				outPos[num] = pos;
+				outRCs[num] = store.getRC(i);
+				num++;
+			}
+			i = store.getParentIndex(i);
+		}
+
+		return num;
+	}
+
+	@Override
+	public void getConf(int[] conf) {
+		Arrays.fill(conf, -1);
+		int[] pos = new int[level];
+		int[] rcs = new int[level];
+		int num = collectAssignments(pos, rcs);
+		for (int i=0; i<num; i++) {
+			conf[pos[i]] = rcs[i];
+		}
+	}
+
+	@Override
+	public double getGScore() {
+		return gscore;
+	}
+
+	@Override
+	public void setGScore(double val) {
+		gscore = val;
+		if (isStored()) {
+			store.setGScore(index, val);
+		}
+	}
+
+	@Override
+	public double getHScore() {
+		return hscore;
+	}
+
+	@Override
+	public void setHScore(double val) {
+		hscore = val;
+		if (isStored()) {
+			store.setHScore(index, val);
+		}
+	}
+
+	@Override
+	public int getLevel() {
+		return level;
+	}
+
+	@Override
+	public void index(ConfIndex index) {
+
+		// is this node already indexed?
+		if (index.node == this) {
+			return;
+		}
+		index.node = this;
+
+		// use local vars so the (JIT)compiler can use stack/registers instead of field accesses
+		int numPos = index.numPos;
+		int[] dpos = index.definedPos;
+		int[] rcs = index.definedRCs;
+		int numUndefined = 0;
+		int[] upos = index.undefinedPos;
+
+		// get the defined positions
+		int numDefined = collectAssignments(dpos, rcs);
+
+		// sort the defined positions using a simple insertion sort
+		// assignments arrays are always small (n << 100), so insertion sort should be fast enough
+		// NOTE: we need to sort two arrays simultaneously, so we can't use any library sorts
+		for (int i=1; i<numDefined; i++) {
+
+			int tempPos = dpos[i];
+			int tempRC = rcs[i];
+
+			int j;
+			for (j=i; j>=1 && tempPos < dpos[j-1]; j--) {
+				dpos[j] = dpos[j-1];
+				rcs[j] = rcs[j-1];
+			}
+			dpos[j] = tempPos;
+			rcs[j] = tempRC;
+		}
+
+		// now figure out the undefined positions
+		int i = 0;
+		for (int pos=0; pos<numPos; pos++) {
+
+			// does this pos match the next defined pos?
+			if (i < numDefined && pos == dpos[i]) {
+				i++;
+			} else {
+				upos[numUndefined] = pos;
+				numUndefined++;
+			}
+		}
+
+		assert (numDefined + numUndefined == numPos);
+
+		// copy vars back to the index
+		index.numDefined = numDefined;
+		index.numUndefined = numUndefined;
+	}
+}
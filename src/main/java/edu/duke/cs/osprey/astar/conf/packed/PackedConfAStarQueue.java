@@ -0,0 +1,162 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.astar.conf.packed;
+
+import edu.duke.cs.osprey.astar.conf.ConfAStarNode;
+import edu.duke.cs.osprey.externalMemory.Queue;
+
+
+/**
+ * A priority queue of A* nodes, lowest score first, implemented as a binary heap of node indices.
+ *
+ * Both the nodes and the heap live in off-heap memory, so the queue can hold millions of nodes
+ * without creating any work for the garbage collector.
+ */
+public class PackedConfAStarQueue implements Queue<ConfAStarNode> {
+
+	// heap entry layout
+	private static final int EntryBytes = 16;
+	private static final long OffsetScore = 0;
+	private static final long OffsetNode = 8;
+
+	public final PackedNodeStore nodes;
+
+	private final OffHeapSlabs heap = new OffHeapSlabs(EntryBytes);
+
+	public PackedConfAStarQueue() {
+		this(new PackedNodeStore());
+	}
+
+	public PackedConfAStarQueue(PackedNodeStore nodes) {
+		this.nodes = nodes;
+	}
+
+	/** Returns the number of bytes of off-heap memory used by the queue, including the node store. */
+	public long bytes() {
+		return heap.bytes() + nodes.bytes();
+	}
+
+	@Override
+	public void push(ConfAStarNode node) {
+
+		if (!(node instanceof PackedConfAStarNode)) {
+			throw new IllegalArgumentException("node must be a " + PackedConfAStarNode.class.getSimpleName() + ", not a " + node.getClass().getSimpleName());
+		}
+
+		long nodeIndex = ((PackedConfAStarNode)node).storeIn(nodes);
+		double score = node.getScore();
+
+		// sift the new entry up from the bottom of the heap
+		long i = heap.allocate();
+		while (i > 0) {
+			long parent = (i - 1) >>> 1;
+			double parentScore = heap.getDouble(parent, OffsetScore);
+			if (parentScore <= score) {
+				break;
+			}
+			move(parent, i);
+			i = parent;
+		}
+		set(i, score, nodeIndex);
+	}
+
+	@Override
+	public PackedConfAStarNode peek() {
+		if (isEmpty()) {
+			return null;
+		}
+		return new PackedConfAStarNode(nodes, heap.getLong(0, OffsetNode));
+	}
+
+	@Override
+	public void pop() {
+
+		long size = heap.size() - 1;
+		if (size < 0) {
+			throw new IllegalStateException("queue is empty");
+		}
+
+		// take the last entry off the heap, and sift it down from the top
+		double score = heap.getDouble(size, OffsetScore);
+		long nodeIndex = heap.getLong(size, OffsetNode);
+		heap.truncate(size);
+		if (size == 0) {
+			return;
+		}
+
+		long i = 0;
+		while (true) {
+
+			// find the lower child, if any
+			long child = 2*i + 1;
+			if (child >= size) {
+				break;
+			}
+			double childScore = heap.getDouble(child, OffsetScore);
+			if (child + 1 < size) {
+				double rightScore = heap.getDouble(child + 1, OffsetScore);
+				if (rightScore < childScore) {
+					child++;
+					childScore = rightScore;
+				}
+			}
+
+			if (score <= childScore) {
+				break;
+			}
+			move(child, i);
+			i = child;
+		}
+		set(i, score, nodeIndex);
+	}
+
+	private void set(long i, double score, long nodeIndex) {
+		heap.setDouble(i, OffsetScore, score);
+		heap.setLong(i, OffsetNode, nodeIndex);
+	}
+
+	private void move(long src, long dst) {
+		set(dst, heap.getDouble(src, OffsetScore), heap.getLong(src, OffsetNode));
+	}
+
+	@Override
+	public long size() {
+		return heap.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return heap.size() == 0;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.astar.conf.packed;
+
+
+/**
+ * Stores A* nodes as packed records in off-heap memory.
+ *
+ * Each record holds (parent index, pos, rc, level, gscore, hscore),
+ * so a node only costs 32 bytes and no Java objects at all.
+ * Records are never removed, since descendant nodes need their ancestors to recover their conformations.
+ */
+public class PackedNodeStore {
+
+	public static final int RecordBytes = 32;
+
+	public static final long NoIndex = -1;
+
+	// record layout
+	private static final long OffsetParent = 0;
+	private static final long OffsetGScore = 8;
+	private static final long OffsetHScore = 16;
+	private static final long OffsetPos = 24;
+	private static final long OffsetRC = 26;
+	private static final long OffsetLevel = 28;
+	// 2 bytes of padding at the end to keep records aligned
+
+	private final OffHeapSlabs slabs = new OffHeapSlabs(RecordBytes);
+
+	/** Returns the number of stored nodes. */
+	public long size() {
+		return slabs.size();
+	}
+
+	/** Returns the number of bytes of off-heap memory used by the store. */
+	public long bytes() {
+		return slabs.bytes();
+	}
+
+	public long add(long parentIndex, int pos, int rc, int level, double gscore, double hscore) {
+
+		// pos, rc, and level only get 16 bits each, so don't let them wrap around
+		short packedPos = toShort("pos", pos);
+		short packedRC = toShort("rc", rc);
+		short packedLevel = toShort("level", level);
+
+		long index = slabs.allocate();
+		slabs.setLong(index, OffsetParent, parentIndex);
+		slabs.setDouble(index, OffsetGScore, gscore);
+		slabs.setDouble(index, OffsetHScore, hscore);
+		slabs.setShort(index, OffsetPos, packedPos);
+		slabs.setShort(index, OffsetRC, packedRC);
+		slabs.setShort(index, OffsetLevel, packedLevel);
+		return index;
+	}
+
+	private static short toShort(String name, int val) {
+		if (val < Short.MIN_VALUE || val > Short.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("%s %d is too big to pack into a node record, the limit is %d",
+				name, val, Short.MAX_VALUE
+			));
+		}
+		return (short)val;
+	}
+
+	public long getParentIndex(long index) {
+		return slabs.getLong(index, OffsetParent);
+	}
+
+	public int getPos(long index) {
+		return slabs.getShort(index, OffsetPos);
+	}
+
+	public int getRC(long index) {
+		return slabs.getShort(index, OffsetRC);
+	}
+
+	public int getLevel(long index) {
+		return slabs.getShort(index, OffsetLevel);
+	}
+
+	public double getGScore(long index) {
+		return slabs.getDouble(index, OffsetGScore);
+	}
+
+	public void setGScore(long index, double val) {
+		slabs.setDouble(index, OffsetGScore, val);
+	}
+
+	public double getHScore(long index) {
+		return slabs.getDouble(index, OffsetHScore);
+	}
+
+	public void setHScore(long index, double val) {
+		slabs.setDouble(index, OffsetHScore, val);
+	}
+}
@@ -60,6 +60,12 @@ public class TraditionalPairwiseHScorer implements AStarScorer {
 		int numPos = emat.getNumPos();
 		
 		// pre-compute all undefined energy terms
+		// (pos2 < pos1 here, so each pairwise row is contiguous in the matrix storage)
+		int maxNumConfs = 0;
+		for (int pos=0; pos<numPos; pos++) {
+			maxNumConfs = Math.max(maxNumConfs, emat.getNumConfAtPos(pos));
+		}
+		double[] row = new double[maxNumConfs];
 		undefinedEnergies = new double[numPos][][];
 		for (int pos1=0; pos1<numPos; pos1++) {
 			
@@ -74,9 +80,10 @@ public class TraditionalPairwiseHScorer implements AStarScorer {
 				for (int pos2=0; pos2<pos1; pos2++) {
 					
 					// optimize over rc2
+					emat.getPairwiseRow(pos1, rc1, pos2, row);
 					double optEnergy = optimizer.initDouble();
 					for (int rc2 : rcs.get(pos2)) {
-						optEnergy = optimizer.opt(optEnergy, emat.getPairwise(pos1, rc1, pos2, rc2));
+						optEnergy = optimizer.opt(optEnergy, row[rc2]);
 					}
 					
 					undefinedEnergies[pos1][i][pos2] = optEnergy;
@@ -162,7 +169,7 @@ public class TraditionalPairwiseHScorer implements AStarScorer {
 				}
 				
 				// add defined contribution
-				rcEnergy += emat.getPairwise(pos, rc, nextPos, nextRc);
+				rcEnergy += emat.getPairwiseDouble(pos, rc, nextPos, nextRc);
 				
 				optRCEnergy = optimizer.opt(optRCEnergy, rcEnergy);
 			}
@@ -186,14 +193,14 @@ public class TraditionalPairwiseHScorer implements AStarScorer {
 				int rc1 = rcs1[j];
 				
 				// start with the one-body energy
-				double energy = emat.getOneBody(pos1, rc1);
+				double energy = emat.getOneBodyDouble(pos1, rc1);
 				
 				// add defined energies
 				for (int k=0; k<confIndex.numDefined; k++) {
 					int pos2 = confIndex.definedPos[k];
 					int rc2 = confIndex.definedRCs[k];
 					
-					energy += emat.getPairwise(pos1, rc1, pos2, rc2);
+					energy += emat.getPairwiseDouble(pos1, rc1, pos2, rc2);
 				}
 				
 				// add undefined energies
@@ -93,11 +93,11 @@ public class MessageVars {
 				int rc1 = rcs.get(pos1, rci1);
 				
 				// init i,i messages with single and defined-undefined energies
-				double sum = emat.getOneBody(pos1, rc1);
+				double sum = emat.getOneBodyDouble(pos1, rc1);
 				for (int posi2=0; posi2<confIndex.numDefined; posi2++) {
 					int pos2 = confIndex.definedPos[posi2];
 					int rc2 = confIndex.definedRCs[posi2];
-					sum += emat.getPairwise(pos1, rc1, pos2, rc2);
+					sum += emat.getPairwiseDouble(pos1, rc1, pos2, rc2);
 				}
 				set(posi1, posi1, rci1, sum);
 				
@@ -110,7 +110,7 @@ public class MessageVars {
 						// min over the other RC
 						double minEnergy = Double.POSITIVE_INFINITY;
 						for (int rc2 : rcs.get(pos2)) {
-							minEnergy = Math.min(minEnergy, emat.getPairwise(pos1, rc1, pos2, rc2));
+							minEnergy = Math.min(minEnergy, emat.getPairwiseDouble(pos1, rc1, pos2, rc2));
 						}
 						set(posi2, posi1, rci1, minEnergy);
 					
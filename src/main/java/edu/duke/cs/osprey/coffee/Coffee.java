@@ -12,6 +12,7 @@ import edu.duke.cs.osprey.confspace.MultiStateConfSpace;
 import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
 import edu.duke.cs.osprey.confspace.compiled.PosInter;
 import edu.duke.cs.osprey.confspace.compiled.PosInterDist;
+import edu.duke.cs.osprey.energy.compiled.CPUConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.NativeConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.PosInterGen;
@@ -130,6 +131,13 @@ public class Coffee {
 		 */
 		private Duration nodeStatsReportingInterval = null;
 
+		/**
+		 * Without GPUs, minimize leaf nodes on the CPU threads in batches of this size.
+		 * Larger batches amortize the per-minimization overhead, but leaf nodes wait longer to be minimized.
+		 * Use the node stats reports to tune this value, like the GPU batch size.
+		 */
+		private int cpuBatchSize = CPUConfEnergyCalculator.DefaultMaxBatchSize;
+
 		public Builder(MultiStateConfSpace confSpace) {
 			this.confSpace = confSpace;
 			stateConfigs = new StateConfig[confSpace.states.size()];
@@ -223,6 +231,14 @@ public class Coffee {
 			return this;
 		}
 
+		public Builder setCpuBatchSize(int val) {
+			if (val < 1) {
+				throw new IllegalArgumentException("CPU batch size must be at least 1");
+			}
+			cpuBatchSize = val;
+			return this;
+		}
+
 		public Coffee build() {
 
 			// check the state configs
@@ -251,7 +267,7 @@ public class Coffee {
 				confSpace, stateConfigs, cluster, parallelism, precision,
 				nodedbFile, nodedbFileBytes, nodedbMemBytes,
 				seqdbFile, seqdbMathContext, includeStaticStatic, tripleCorrectionThreshold,
-				conditions, nodeScoringLog, nodeStatsReportingInterval
+				conditions, nodeScoringLog, nodeStatsReportingInterval, cpuBatchSize
 			);
 		}
 	}
@@ -330,6 +346,7 @@ public class Coffee {
 	public final BoltzmannCalculator.Conditions conditions;
 	public final File nodeScoringLog;
 	public final Duration nodeStatsReportingInterval;
+	public final int cpuBatchSize;
 
 	public final MathContext mathContext = BigExp.mathContext;
 	public final BoltzmannCalculator bcalc;
@@ -339,7 +356,7 @@ public class Coffee {
 		MultiStateConfSpace confSpace, StateConfig[] stateConfigs, Cluster cluster, Parallelism parallelism, Structs.Precision precision,
 		File dbFile, long dbFileBytes, long dbMemBytes,
 		File seqdbFile, MathContext seqdbMathContext, boolean includeStaticStatic, Double tripleCorrectionThreshold,
-		BoltzmannCalculator.Conditions conditions, File nodeScoringLog, Duration nodeStatsReportingInterval
+		BoltzmannCalculator.Conditions conditions, File nodeScoringLog, Duration nodeStatsReportingInterval, int cpuBatchSize
 	) {
 
 		this.confSpace = confSpace;
@@ -357,6 +374,7 @@ public class Coffee {
 		this.conditions = conditions;
 		this.nodeScoringLog = nodeScoringLog;
 		this.nodeStatsReportingInterval = nodeStatsReportingInterval;
+		this.cpuBatchSize = cpuBatchSize;
 
 		bcalc = new BoltzmannCalculator(mathContext, conditions);
 		infos = Arrays.stream(stateConfigs)
@@ -393,7 +411,7 @@ public class Coffee {
 					) {
 
 						// init the node processor, and report dropped nodes to the sequence database
-						try (var nodeProcessor = new NodeProcessor(cpuTasks, seqdb, nodedb, infos, includeStaticStatic, parallelism, precision, nodeStatsReportingInterval)) {
+						try (var nodeProcessor = new NodeProcessor(cpuTasks, seqdb, nodedb, infos, includeStaticStatic, parallelism, precision, nodeStatsReportingInterval, cpuBatchSize)) {
 							nodedb.setDropHandler(nodeProcessor::handleDrops);
 
 							// wait for everyone to be ready
@@ -502,7 +520,7 @@ public class Coffee {
 				) {
 
 					// init the node processor, and report dropped nodes to the sequence database
-					try (var nodeProcessor = new NodeProcessor(cpuTasks, null, nodedb, infos, includeStaticStatic, parallelism, precision, nodeStatsReportingInterval)) {
+					try (var nodeProcessor = new NodeProcessor(cpuTasks, null, nodedb, infos, includeStaticStatic, parallelism, precision, nodeStatsReportingInterval, cpuBatchSize)) {
 
 						// init the state with the zmat
 						var stateInfo = infos[statei];
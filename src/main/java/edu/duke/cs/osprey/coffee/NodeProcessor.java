@@ -11,10 +11,12 @@ import edu.duke.cs.osprey.confspace.Conf;
 import edu.duke.cs.osprey.confspace.ConfSearch;
 import edu.duke.cs.osprey.confspace.Sequence;
 import edu.duke.cs.osprey.confspace.compiled.PosInter;
+import edu.duke.cs.osprey.energy.compiled.CPUConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.CudaConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.NativeConfEnergyCalculator;
 import edu.duke.cs.osprey.gpu.Structs;
+import edu.duke.cs.osprey.parallelism.ChangeSignal;
 import edu.duke.cs.osprey.parallelism.Parallelism;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.parallelism.ThreadTools;
@@ -34,6 +36,13 @@ import java.util.stream.Stream;
 
 public class NodeProcessor implements AutoCloseable {
 
+	/**
+	 * Idle threads wake up when there's new work, but check for work
+	 * at least this often anyway, in case the work came from somewhere that doesn't signal,
+	 * eg, stale neighbor info in the NodeDB.
+	 */
+	private static final long maxIdleMs = 1000;
+
 	private static class FlushTracker {
 
 		final long flushNs = TimeUnit.MILLISECONDS.toNanos(100);
@@ -69,6 +78,9 @@ public class NodeProcessor implements AutoCloseable {
 		final List<NodeIndex.Node> nodesOutgoing = new ArrayList<>();
 		final FlushTracker flushTracker = new FlushTracker();
 
+		// re-use native memory for all the CPU minimization batches on this thread, one for each state
+		final NativeConfEnergyCalculator.Scratch[] scratches = new NativeConfEnergyCalculator.Scratch[stateInfos.length];
+
 		final int nodeBatchSize = 100;
 
 		NodeThread(int id, Directions directions, NodeStats.ForThread nodeStats) {
@@ -85,14 +97,15 @@ public class NodeProcessor implements AutoCloseable {
 		@Override
 		public void run() {
 
-			Runnable waitABit = () -> ThreadTools.sleep(100, TimeUnit.MILLISECONDS);
-
 			if (seqdb != null) {
 				seqBatch = seqdb.batch();
 			}
 
 			while (directions.isRunning()) {
 
+				// remember what we've seen so far, so we don't miss any changes while we look for work
+				long epoch = workSignal.epoch();
+
 				// flush if needed
 				if (flushTracker.shouldFlush()) {
 					flush();
@@ -103,12 +116,13 @@ public class NodeProcessor implements AutoCloseable {
 				// get the currently focused state
 				int statei = directions.getFocusedStatei();
 				if (statei < 0) {
-					waitABit.run();
+					waitForWork(epoch);
 					continue;
 				}
 
-				// if the state changed, flush
+				// if the state changed, minimize any queued nodes from the old state, and flush
 				if (flushTracker.stateChanged(statei)) {
+					minimizeCpuBatches(flushTracker.lastStatei, true);
 					flush();
 					flushTracker.setState(statei);
 				}
@@ -116,7 +130,7 @@ public class NodeProcessor implements AutoCloseable {
 				// get the tree for this state
 				NodeTree tree = directions.getTree(statei);
 				if (tree == null) {
-					waitABit.run();
+					waitForWork(epoch);
 					continue;
 				}
 
@@ -127,11 +141,20 @@ public class NodeProcessor implements AutoCloseable {
 					StringWriter buf = new StringWriter();
 					t.printStackTrace(new PrintWriter(buf));
 					log("Error getting nodes from NodeDB:\n" + buf);
-					waitABit.run();
+					// back off a bit before trying again
+					ThreadTools.sleep(100, TimeUnit.MILLISECONDS);
 					continue;
 				}
 				if (nodesIncoming.isEmpty()) {
-					waitABit.run();
+					waitForWork(epoch);
+					continue;
+				}
+
+				// if the tree changed while we were getting nodes, the nodes could be from the new tree,
+				// so put them back and try again with the new tree
+				if (directions.getTree(statei) != tree) {
+					nodedb.add(statei, nodesIncoming);
+					nodesIncoming.clear();
 					continue;
 				}
 
@@ -147,11 +170,84 @@ public class NodeProcessor implements AutoCloseable {
 					var nodeInfo = new NodeInfo(node, tree, nodeNs/nodesIncoming.size());
 					process(directions, nodeInfo, seqBatch, nodesOutgoing, nodeStats);
 
+					// minimize any full batches of leaf nodes
+					minimizeCpuBatches(statei, false);
+
 					if (flushTracker.shouldFlush()) {
 						flush();
 					}
 				}
 				nodesIncoming.clear();
+
+				nodeStats.worked(System.nanoTime() - startNs);
+			}
+
+			nodeStats.sync();
+			for (var scratch : scratches) {
+				if (scratch != null) {
+					scratch.close();
+				}
+			}
+		}
+
+		private void waitForWork(long epoch) {
+
+			long startNs = System.nanoTime();
+
+			// there's no work for us right now, so don't sit on any nodes other threads could use
+			minimizeCpuBatches(flushTracker.lastStatei, true);
+			flush();
+
+			workSignal.await(epoch, maxIdleMs, TimeUnit.MILLISECONDS);
+
+			nodeStats.idle(System.nanoTime() - startNs);
+		}
+
+		/**
+		 * Minimizes the leaf nodes waiting in the CPU minimization queue for this state, if any.
+		 * Minimizes only full batches, unless partial is true.
+		 */
+		private void minimizeCpuBatches(int statei, boolean partial) {
+
+			if (cpuMinimizationQueues.isEmpty() || statei < 0) {
+				return;
+			}
+
+			var stateInfo = stateInfos[statei];
+			var q = cpuMinimizationQueues.get(statei);
+			var ecalc = cpuEcalcs[statei];
+			if (scratches[statei] == null) {
+				scratches[statei] = ecalc.new Scratch();
+			}
+
+			while (true) {
+
+				// get the next batch, if any
+				List<NodeInfo> nodes;
+				if (partial) {
+					nodes = q.pollUpTo(q.batchSize);
+				} else {
+					nodes = q.poll(q.batchSize, 0, TimeUnit.NANOSECONDS);
+				}
+				if (nodes == null || nodes.isEmpty()) {
+					break;
+				}
+
+				nodes = dropFinished(directions, statei, nodes);
+				if (nodes.isEmpty()) {
+					continue;
+				}
+
+				// collect timing info for the minimizations
+				Stopwatch stopwatch = new Stopwatch().start();
+
+				var jobs = nodes.stream()
+					.map(info -> new ConfEnergyCalculator.MinimizationJob(info.node.conf, makeInters(stateInfo, info.node.conf)))
+					.collect(Collectors.toList());
+				ecalc.minimizeEnergies(jobs, scratches[statei]);
+
+				minimized(stateInfo, nodes, jobs, stopwatch, seqBatch);
+				nodeStats.minimizedBatch(nodes.size());
 			}
 		}
 
@@ -183,14 +279,16 @@ public class NodeProcessor implements AutoCloseable {
 
 		final int id;
 		final Directions directions;
+		final NodeStats.ForThread nodeStats;
 
 		Batch seqBatch = null;
 		FlushTracker flushTracker = new FlushTracker();
 
-		GpuThread(int id, Directions directions) {
+		GpuThread(int id, Directions directions, NodeStats.ForThread nodeStats) {
 
 			this.id = id;
 			this.directions = directions;
+			this.nodeStats = nodeStats;
 
 			setName("GpuMinimizer-" + id);
 			setDaemon(true);
@@ -206,6 +304,8 @@ public class NodeProcessor implements AutoCloseable {
 
 			while (directions.isRunning()) {
 
+				long epoch = workSignal.epoch();
+
 				// flush if we haven't done it in a while
 				if (flushTracker.shouldFlush()) {
 					flush();
@@ -214,10 +314,9 @@ public class NodeProcessor implements AutoCloseable {
 				// listen to directions
 				int statei = directions.getFocusedStatei();
 				if (statei < 0) {
-					ThreadTools.sleep(500, TimeUnit.MILLISECONDS);
+					workSignal.await(epoch, maxIdleMs, TimeUnit.MILLISECONDS);
 					continue;
 				}
-				int sequencedStatei = nodedb.confSpace.states.get(statei).sequencedIndex;
 
 				// if the state changed, flush
 				if (flushTracker.stateChanged(statei)) {
@@ -232,19 +331,13 @@ public class NodeProcessor implements AutoCloseable {
 				// get the next batch to minimize
 				var nodes = q.poll(ecalc.maxBatchSize(), 100, TimeUnit.MILLISECONDS);
 				if (nodes != null) {
-
-					// drop nodes from finished sequences
-					if (sequencedStatei >= 0) {
-						nodes = nodes.stream()
-							.filter(nodeInfo ->
-								!directions.isFinished(sequencedStatei, makeSeqOrThrow(statei, nodeInfo.node.conf))
-							)
-							.collect(Collectors.toList());
-					}
-
+					nodes = dropFinished(directions, statei, nodes);
 					minimize(stateInfo, ecalc, nodes);
+					nodeStats.minimizedBatch(nodes.size());
 				}
 			}
+
+			nodeStats.sync();
 		}
 
 		void waitForFinish() {
@@ -334,6 +427,29 @@ public class NodeProcessor implements AutoCloseable {
 			}
 		}
 
+		/**
+		 * Polls up to count nodes without waiting, or returns null if the queue is empty.
+		 */
+		List<NodeInfo> pollUpTo(int count) {
+			final ReentrantLock lock = this.lock;
+			lock.lock();
+			try {
+
+				if (nodes.isEmpty()) {
+					return null;
+				}
+
+				var batch = new ArrayList<NodeInfo>(Math.min(count, nodes.size()));
+				while (batch.size() < count && !nodes.isEmpty()) {
+					batch.add(nodes.poll());
+				}
+				return batch;
+
+			} finally {
+				lock.unlock();
+			}
+		}
+
 		List<NodeInfo> poll(int count, long timeout, TimeUnit unit) {
 			try {
 				long timeoutNs = unit.toNanos(timeout);
@@ -400,6 +516,8 @@ public class NodeProcessor implements AutoCloseable {
 
 			while (directions.isRunning()) {
 
+				long epoch = workSignal.epoch();
+
 				// flush if we haven't done it in a while
 				if (flushTracker.shouldFlush()) {
 					flush();
@@ -408,7 +526,7 @@ public class NodeProcessor implements AutoCloseable {
 				// listen to directions
 				int statei = directions.getFocusedStatei();
 				if (statei < 0) {
-					ThreadTools.sleep(500, TimeUnit.MILLISECONDS);
+					workSignal.await(epoch, maxIdleMs, TimeUnit.MILLISECONDS);
 					continue;
 				}
 
@@ -493,18 +611,36 @@ public class NodeProcessor implements AutoCloseable {
 	public final Parallelism parallelism;
 	public final Duration statsReporterInterval;
 
-	public final ConfEnergyCalculator[] cpuEcalcs;
+	public final int cpuBatchSize;
+
+	public final NativeConfEnergyCalculator[] cpuEcalcs;
 	public final CudaConfEnergyCalculator[] gpuEcalcs;
 	public final NodeStats nodeStats = new NodeStats();
 
 	private final List<NodeThread> nodeThreads = new ArrayList<>();
 	private final List<GpuThread> gpuThreads = new ArrayList<>();
 	private final List<MinimizationQueue> minimizationQueues = new ArrayList<>();
+	private final List<MinimizationQueue> cpuMinimizationQueues = new ArrayList<>();
+
+	/** wakes up idle threads when the NodeDB gets new nodes, or the directions change */
+	private final ChangeSignal workSignal = new ChangeSignal();
 
 	private DropThread dropThread = null;
 	private NodeStats.Reporter nodeStatsReporter = null;
 
 	public NodeProcessor(TaskExecutor cpuTasks, SeqDB seqdb, NodeDB nodedb, StateInfo[] stateInfos, boolean includeStaticStatic, Parallelism parallelism, Structs.Precision precision, Duration statsReporterInterval) {
+		this(cpuTasks, seqdb, nodedb, stateInfos, includeStaticStatic, parallelism, precision, statsReporterInterval, CPUConfEnergyCalculator.DefaultMaxBatchSize);
+	}
+
+	/**
+	 * @param cpuBatchSize Without GPUs, leaf nodes are minimized on the CPU node threads in batches of this size.
+	 *                     A batch size of 1 minimizes each leaf node as soon as it's found.
+	 */
+	public NodeProcessor(TaskExecutor cpuTasks, SeqDB seqdb, NodeDB nodedb, StateInfo[] stateInfos, boolean includeStaticStatic, Parallelism parallelism, Structs.Precision precision, Duration statsReporterInterval, int cpuBatchSize) {
+
+		if (cpuBatchSize < 1) {
+			throw new IllegalArgumentException("CPU batch size must be at least 1");
+		}
 
 		this.cpuTasks = cpuTasks;
 		this.seqdb = seqdb;
@@ -513,11 +649,12 @@ public class NodeProcessor implements AutoCloseable {
 		this.includeStaticStatic = includeStaticStatic;
 		this.parallelism = parallelism;
 		this.statsReporterInterval = statsReporterInterval;
+		this.cpuBatchSize = cpuBatchSize;
 
 		// make the energy calculators
 		cpuEcalcs = Arrays.stream(stateInfos)
-			.map(stateInfo -> new NativeConfEnergyCalculator(stateInfo.config.confSpace, precision))
-			.toArray(ConfEnergyCalculator[]::new);
+			.map(stateInfo -> new NativeConfEnergyCalculator(stateInfo.config.confSpace, precision, cpuBatchSize))
+			.toArray(NativeConfEnergyCalculator[]::new);
 		if (parallelism.numGpus > 0) {
 			gpuEcalcs = Arrays.stream(stateInfos)
 				.map(stateInfo -> new CudaConfEnergyCalculator(stateInfo.config.confSpace, precision, parallelism))
@@ -561,12 +698,11 @@ public class NodeProcessor implements AutoCloseable {
 			throw new IllegalStateException("threads already started");
 		}
 
-		// start the node threads
-		for (int i=0; i<numThreads; i++) {
-			nodeThreads.add(new NodeThread(i, directions, nodeStats.new ForThread()));
-		}
+		// wake up idle threads when there might be new work
+		nodedb.addListener(workSignal::signal);
+		directions.addListener(workSignal::signal);
 
-		// start the GPU threads too, if needed
+		// start the GPU threads, if needed
 		if (gpuEcalcs != null) {
 
 			// all states should have the same GPU settings
@@ -582,10 +718,25 @@ public class NodeProcessor implements AutoCloseable {
 
 			// start the threads
 			for (int streami=0; streami<numStreams; streami++) {
-				gpuThreads.add(new GpuThread(streami, directions));
+				gpuThreads.add(new GpuThread(streami, directions, nodeStats.new ForThread()));
+			}
+
+		} else if (cpuBatchSize > 1) {
+
+			// no GPUs, so batch minimizations on the CPU node threads instead
+			// make the queues big enough so every thread can have a full batch waiting
+			int queueCapacity = numThreads*cpuBatchSize*2;
+			for (var ignored : stateInfos) {
+				cpuMinimizationQueues.add(new MinimizationQueue(queueCapacity, cpuBatchSize));
 			}
 		}
 
+		// start the node threads
+		// (after making the queues, so the threads can use them)
+		for (int i=0; i<numThreads; i++) {
+			nodeThreads.add(new NodeThread(i, directions, nodeStats.new ForThread()));
+		}
+
 		// start the drop thread
 		dropThread = new DropThread(directions);
 
@@ -685,7 +836,7 @@ public class NodeProcessor implements AutoCloseable {
 			} else {
 
 				// the score looks good, minimize it
-				minimize(nodeInfo, seqBatch);
+				minimize(nodeInfo, seqBatch, nodeStats);
 
 				nodeStats.minimized();
 			}
@@ -698,7 +849,7 @@ public class NodeProcessor implements AutoCloseable {
 		}
 	}
 
-	private void minimize(NodeInfo nodeInfo, Batch seqBatch) {
+	private void minimize(NodeInfo nodeInfo, Batch seqBatch, NodeStats.ForThread nodeStats) {
 
 		int statei = nodeInfo.node.statei;
 		var stateInfo = stateInfos[nodeInfo.node.statei];
@@ -711,9 +862,18 @@ public class NodeProcessor implements AutoCloseable {
 			if (nodeInfo == null) {
 				return;
 			}
+
+		} else if (!cpuMinimizationQueues.isEmpty()) {
+
+			// nope, but we're batching CPU minimizations, so put the node on the queue
+			// the node threads will minimize the batch when it fills up
+			nodeInfo = cpuMinimizationQueues.get(statei).offer(nodeInfo);
+			if (nodeInfo == null) {
+				return;
+			}
 		}
 
-		// we don't have GPUs or they're busy, so minimize on this CPU thread
+		// we don't have GPUs or they're busy (or the CPU queue is full), so minimize on this CPU thread
 
 		// collect timing info for the minimizations
 		Stopwatch stopwatch = new Stopwatch().start();
@@ -727,6 +887,24 @@ public class NodeProcessor implements AutoCloseable {
 		cpuEcalcs[statei].minimizeEnergies(jobs);
 
 		minimized(stateInfo, nodeInfos, jobs, stopwatch, seqBatch);
+		nodeStats.minimizedBatch(nodeInfos.size());
+	}
+
+	/**
+	 * Returns the nodes that aren't from finished sequences.
+	 */
+	private List<NodeInfo> dropFinished(Directions directions, int statei, List<NodeInfo> nodes) {
+
+		int sequencedStatei = nodedb.confSpace.states.get(statei).sequencedIndex;
+		if (sequencedStatei < 0) {
+			return nodes;
+		}
+
+		return nodes.stream()
+			.filter(nodeInfo ->
+				!directions.isFinished(sequencedStatei, makeSeqOrThrow(statei, nodeInfo.node.conf))
+			)
+			.collect(Collectors.toList());
 	}
 
 	private List<PosInter> makeInters(StateInfo stateInfo, int[] conf) {
@@ -23,11 +23,27 @@ public class NodeStats {
 		public long expanded = 0;
 		public long finished = 0;
 
+		/** time spent waiting for nodes to process, summed over all threads */
+		public long idleNs = 0;
+
+		/** time spent getting and processing nodes, summed over all threads */
+		public long workNs = 0;
+
+		/** number of batches of minimizations, on CPUs or GPUs */
+		public long minimizationBatches = 0;
+
+		/** number of minimizations in all the batches */
+		public long batchedMinimizations = 0;
+
 		public void copyTo(Values other) {
 			other.rescored = rescored;
 			other.minimized = minimized;
 			other.expanded = expanded;
 			other.finished = finished;
+			other.idleNs = idleNs;
+			other.workNs = workNs;
+			other.minimizationBatches = minimizationBatches;
+			other.batchedMinimizations = batchedMinimizations;
 		}
 
 		public void addTo(Values other) {
@@ -35,6 +51,10 @@ public class NodeStats {
 			other.minimized += minimized;
 			other.expanded += expanded;
 			other.finished += finished;
+			other.idleNs += idleNs;
+			other.workNs += workNs;
+			other.minimizationBatches += minimizationBatches;
+			other.batchedMinimizations += batchedMinimizations;
 		}
 
 		public void clear() {
@@ -42,6 +62,27 @@ public class NodeStats {
 			minimized = 0;
 			expanded = 0;
 			finished = 0;
+			idleNs = 0;
+			workNs = 0;
+			minimizationBatches = 0;
+			batchedMinimizations = 0;
+		}
+
+		/** the fraction of thread time spent working, in [0,1], or NaN if no time was recorded */
+		public double busyRatio() {
+			long totalNs = idleNs + workNs;
+			if (totalNs <= 0) {
+				return Double.NaN;
+			}
+			return (double)workNs/totalNs;
+		}
+
+		/** the average number of minimizations in a batch, or NaN if there were no batches */
+		public double meanBatchSize() {
+			if (minimizationBatches <= 0) {
+				return Double.NaN;
+			}
+			return (double)batchedMinimizations/minimizationBatches;
 		}
 	}
 
@@ -55,6 +96,10 @@ public class NodeStats {
 
 		private long lastSyncNs = 0;
 
+		// running totals for just this thread, never cleared by syncs
+		private long totalIdleNs = 0;
+		private long totalWorkNs = 0;
+
 		public void rescored() {
 			localValues.rescored += 1;
 			maybeSync();
@@ -75,6 +120,34 @@ public class NodeStats {
 			maybeSync();
 		}
 
+		public void minimizedBatch(int size) {
+			localValues.minimizationBatches += 1;
+			localValues.batchedMinimizations += size;
+			maybeSync();
+		}
+
+		public void idle(long ns) {
+			localValues.idleNs += ns;
+			totalIdleNs += ns;
+			maybeSync();
+		}
+
+		public void worked(long ns) {
+			localValues.workNs += ns;
+			totalWorkNs += ns;
+			maybeSync();
+		}
+
+		/** total time this thread has spent waiting for nodes */
+		public long getTotalIdleNs() {
+			return totalIdleNs;
+		}
+
+		/** total time this thread has spent getting and processing nodes */
+		public long getTotalWorkNs() {
+			return totalWorkNs;
+		}
+
 		private void maybeSync() {
 
 			// if we've synced recently, don't bother
@@ -108,13 +181,28 @@ public class NodeStats {
 			this.values = values;
 		}
 
+		/** completed minimizations per second, over the whole report interval */
+		public double minimizationsPerSecond() {
+			long ns = stopNs - startNs;
+			if (ns <= 0) {
+				return Double.NaN;
+			}
+			return values.batchedMinimizations/(ns/1e9);
+		}
+
 		@Override
 		public String toString() {
-			return String.format("NodeStats[res=%d, min=%d, exp=%d, fin=%d, in %s]",
+			return String.format("NodeStats[res=%d, min=%d, exp=%d, fin=%d, batches=%d, batch size=%.1f, min/s=%.1f, idle=%s, work=%s, busy=%.1f%%, in %s]",
 				values.rescored,
 				values.minimized,
 				values.expanded,
 				values.finished,
+				values.minimizationBatches,
+				values.meanBatchSize(),
+				minimizationsPerSecond(),
+				TimeFormatter.format(values.idleNs),
+				TimeFormatter.format(values.workNs),
+				values.busyRatio()*100.0,
 				TimeFormatter.format(stopNs - startNs)
 			);
 		}
@@ -8,6 +8,7 @@ import edu.duke.cs.osprey.confspace.Sequence;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -27,6 +28,7 @@ public class Directions {
 	private final AtomicInteger focusedStatei = new AtomicInteger(-1);
 	private final List<NodeTree> trees;
 	private final List<Set<Sequence>> finishedSeqs;
+	private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
 
 	public Directions(MultiStateConfSpace confSpace, ClusterMember member) {
 
@@ -45,6 +47,20 @@ public class Directions {
 		member.registerService(ServiceName, this);
 	}
 
+	/**
+	 * Adds a function to call whenever the directions change, ie, the focused state, a tree, or stopping.
+	 * Listeners can be called from any thread, including Hazelcast threads, so they should be quick.
+	 */
+	public void addListener(Runnable listener) {
+		listeners.add(listener);
+	}
+
+	private void notifyListeners() {
+		for (var listener : listeners) {
+			listener.run();
+		}
+	}
+
 	/**
 	 * Tell all cluster members to stop processing.
 	 */
@@ -56,6 +72,7 @@ public class Directions {
 	void receiveStop() {
 		isRunning.set(false);
 		runningLatch.countDown();
+		notifyListeners();
 	}
 
 	public boolean isRunning() {
@@ -81,7 +98,11 @@ public class Directions {
 	}
 
 	void receiveFocus(int statei) {
-		focusedStatei.set(statei);
+		// only wake up listeners if the focus actually changed,
+		// eg, pfuncs re-focus the same state before every new tree
+		if (focusedStatei.getAndSet(statei) != statei) {
+			notifyListeners();
+		}
 	}
 
 	public int getFocusedStatei() {
@@ -100,6 +121,7 @@ public class Directions {
 		synchronized (trees) {
 			trees.set(statei, tree);
 		}
+		notifyListeners();
 	}
 
 	public NodeTree getTree(int statei) {
@@ -10,6 +10,7 @@ import edu.duke.cs.osprey.tools.BigExp;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
@@ -100,6 +101,7 @@ public class NodeDB implements AutoCloseable {
 	private final NodeIndices indices;
 	private final RateLimitedThread broadcaster;
 	private final Neighbors neighbors;
+	private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
 
 	private NodeDB(MultiStateConfSpace confSpace, ClusterMember member, File file, long fileBytes, long memBytes, long broadcastNs, File scoringLog) {
 
@@ -147,6 +149,21 @@ public class NodeDB implements AutoCloseable {
 		thread.exec(() -> indices.dropHandler = dropHandler);
 	}
 
+	/**
+	 * Adds a function to call when nodes may have become available for removal,
+	 * ie, when nodes are added to the local store, or when a neighbor broadcasts its node info.
+	 * Listeners can be called from any thread, including Hazelcast threads, so they should be quick.
+	 */
+	public void addListener(Runnable listener) {
+		listeners.add(listener);
+	}
+
+	private void notifyListeners() {
+		for (var listener : listeners) {
+			listener.run();
+		}
+	}
+
 	@Override
 	public void close() {
 		broadcaster.close();
@@ -171,6 +188,7 @@ public class NodeDB implements AutoCloseable {
 
 	void receiveBroadcast(Address src, NodeIndices.BroadcastInfo nodeInfo) {
 		neighbors.receiveBroadcast(src, nodeInfo);
+		notifyListeners();
 	}
 
 	/**
@@ -205,6 +223,7 @@ public class NodeDB implements AutoCloseable {
 		boolean wasAdded = thread.get(() -> indices.tryAdd(statei, nodes));
 		if (wasAdded) {
 			broadcaster.request();
+			notifyListeners();
 			return;
 		}
 
@@ -218,6 +237,7 @@ public class NodeDB implements AutoCloseable {
 		// finally, force local storage
 		thread.exec(() -> indices.add(statei, nodes));
 		broadcaster.request();
+		notifyListeners();
 	}
 
 	/**
@@ -236,6 +256,7 @@ public class NodeDB implements AutoCloseable {
 			indices.add(statei, nodes);
 			broadcaster.request();
 		});
+		notifyListeners();
 	}
 
 	/**
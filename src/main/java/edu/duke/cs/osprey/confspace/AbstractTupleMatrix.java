@@ -118,18 +118,24 @@ public abstract class AbstractTupleMatrix<T> implements TupleMatrix<T>, Serializ
         
         // then pairwise offsets
         pairwiseOffsets = new int[numPos*(numPos - 1)/2];
-        int pairwiseOffset = 0;
+        long pairwiseOffset = 0;
         int pairwiseIndex = 0;
         for (int res1=0; res1<numPos; res1++) {
         	for (int res2=0; res2<res1; res2++) {
-        		pairwiseOffsets[pairwiseIndex++] = pairwiseOffset;
-        		pairwiseOffset += numConfAtPos[res1]*numConfAtPos[res2];
+        		pairwiseOffsets[pairwiseIndex++] = (int)pairwiseOffset;
+        		pairwiseOffset += (long)numConfAtPos[res1]*numConfAtPos[res2];
         	}
         }
-        numPairwiseTerms = pairwiseOffset;
         assert (pairwiseIndex == pairwiseOffsets.length);
+        if (pairwiseOffset <= Integer.MAX_VALUE) {
+        	numPairwiseTerms = (int)pairwiseOffset;
+        } else {
+        	// too big for flat indices, only subclasses with their own indexing can store this matrix
+        	pairwiseOffsets = null;
+        	numPairwiseTerms = -1;
+        }
         
-        allocate(numOneBodyTerms, numPairwiseTerms);
+        allocate(numOneBodyTerms, pairwiseOffset);
         
     	// don't allocate space for higher terms right now
         // wait till we write something
@@ -140,7 +146,7 @@ public abstract class AbstractTupleMatrix<T> implements TupleMatrix<T>, Serializ
     	this.numPos = other.numPos;
     	this.numConfAtPos = other.numConfAtPos.clone();
     	this.oneBodyOffsets = other.oneBodyOffsets.clone();
-    	this.pairwiseOffsets = other.pairwiseOffsets.clone();
+    	this.pairwiseOffsets = other.pairwiseOffsets != null ? other.pairwiseOffsets.clone() : null;
     	this.numPairwiseTerms = other.numPairwiseTerms;
     	this.pruningInterval = other.pruningInterval;
     	if (other.higherTerms != null) {
@@ -152,6 +158,21 @@ public abstract class AbstractTupleMatrix<T> implements TupleMatrix<T>, Serializ
     
     protected abstract void allocate(int numOneBody, int numPairwise);
     
+    /**
+     * Called by the constructor with the full number of pairwise terms,
+     * which can be more than a flat array can hold for very large conf spaces.
+     * Subclasses that don't store the pairwise terms in one flat array should override this method.
+     */
+    protected void allocate(int numOneBody, long numPairwise) {
+    	if (numPairwise > Integer.MAX_VALUE) {
+    		throw new UnsupportedOperationException(String.format(
+    			"%d pairwise terms is too many for %s, use a blocked matrix instead, like BlockedEnergyMatrix",
+    			numPairwise, getClass().getSimpleName()
+    		));
+    	}
+    	allocate(numOneBody, (int)numPairwise);
+    }
+    
     public double getPruningInterval() {
         return pruningInterval;
     }
@@ -181,9 +202,32 @@ public abstract class AbstractTupleMatrix<T> implements TupleMatrix<T>, Serializ
 	}
 
 	public int getNumPairwise() {
+    	checkFlatPairwise();
     	return numPairwiseTerms;
 	}
 
+	/** same as {@link #getNumPairwise}, but works for matrices with more than 2^31 pairwise terms too */
+	public long getNumPairwiseLong() {
+		long num = 0;
+		for (int res1=0; res1<numPos; res1++) {
+			for (int res2=0; res2<res1; res2++) {
+				num += (long)numConfAtPos[res1]*numConfAtPos[res2];
+			}
+		}
+		return num;
+	}
+
+	/** true iff every pairwise term has an index from {@link #getPairwiseIndex(int, int, int, int)} */
+	public boolean hasFlatPairwiseIndex() {
+		return pairwiseOffsets != null;
+	}
+
+	private void checkFlatPairwise() {
+		if (pairwiseOffsets == null) {
+			throw new UnsupportedOperationException("this matrix has too many pairwise terms for flat indices");
+		}
+	}
+
 	public int getOneBodyIndex(int res, int conf) {
     	return oneBodyOffsets[res] + conf;
     }
@@ -336,6 +380,7 @@ public abstract class AbstractTupleMatrix<T> implements TupleMatrix<T>, Serializ
     	if (val != null && higherTerms == null) {
     		
     		// lazy allocation
+			checkFlatPairwise();
 			higherTerms = new ArrayList<>(numPairwiseTerms);
 			for (int i=0; i<numPairwiseTerms; i++) {
 				higherTerms.add(null);
@@ -365,6 +410,7 @@ public abstract class AbstractTupleMatrix<T> implements TupleMatrix<T>, Serializ
 
     	// lazy allocation
 		if (tupleTrees == null) {
+			checkFlatPairwise();
 			tupleTrees = (TupleTree<T>[])new TupleTree[numPairwiseTerms];
 		}
 
@@ -41,7 +41,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -102,6 +106,97 @@ public class ConfDB implements AutoCleanable {
 		Energy
 	}
 
+	/**
+	 * Settings to buffer writes in memory, and write them to the database in groups.
+	 *
+	 * Writing (and committing) each conformation as soon as it's minimized can become the bottleneck
+	 * when conformations are minimized quickly. With write-behind buffering, many writes share one commit instead.
+	 * Reads of single conformations check the buffer first, and scans over a table write the buffered writes
+	 * to the table first, so callers always see their own writes.
+	 */
+	public static class WriteBehind {
+
+		public static enum Durability {
+
+			/**
+			 * {@link ConfTable#flush()} writes and commits all buffered writes before returning,
+			 * so flushed writes survive a crash, just like without a buffer.
+			 */
+			EveryFlush,
+
+			/**
+			 * {@link ConfTable#flush()} returns right away, and a background thread commits buffered writes in groups.
+			 * A crash can lose the writes since the last group commit.
+			 * {@link ConfDB#flush()} and {@link ConfDB#close()} still commit everything before returning.
+			 */
+			GroupCommit
+		}
+
+		public static class Builder {
+
+			private Durability durability = Durability.GroupCommit;
+
+			/** Commit a group once at least this many conformations are buffered */
+			private int groupSize = 256;
+
+			/** Commit a group at least this often, if any conformations are buffered */
+			private long commitIntervalMs = 1000;
+
+			/**
+			 * Never buffer more than this many conformations.
+			 * When the buffer is full, writers commit the group themselves instead of waiting for the background thread.
+			 */
+			private int maxBuffered = 4096;
+
+			public Builder setDurability(Durability val) {
+				durability = val;
+				return this;
+			}
+
+			public Builder setGroupSize(int val) {
+				groupSize = val;
+				return this;
+			}
+
+			public Builder setCommitIntervalMs(long val) {
+				commitIntervalMs = val;
+				return this;
+			}
+
+			public Builder setMaxBuffered(int val) {
+				maxBuffered = val;
+				return this;
+			}
+
+			public WriteBehind build() {
+				return new WriteBehind(durability, groupSize, commitIntervalMs, maxBuffered);
+			}
+		}
+
+		public final Durability durability;
+		public final int groupSize;
+		public final long commitIntervalMs;
+		public final int maxBuffered;
+
+		public WriteBehind(Durability durability, int groupSize, long commitIntervalMs, int maxBuffered) {
+
+			if (groupSize < 1) {
+				throw new IllegalArgumentException("group size must be at least 1");
+			}
+			if (maxBuffered < groupSize) {
+				throw new IllegalArgumentException("max buffered conformations must be at least the group size");
+			}
+			if (commitIntervalMs < 1) {
+				throw new IllegalArgumentException("commit interval must be at least 1 ms");
+			}
+
+			this.durability = durability;
+			this.groupSize = groupSize;
+			this.commitIntervalMs = commitIntervalMs;
+			this.maxBuffered = maxBuffered;
+		}
+	}
+
 	public static class Conf {
 
 		public static class Bound {
@@ -185,6 +280,71 @@ public class ConfDB implements AutoCleanable {
 		}
 	}
 
+	/**
+	 * A write to one conformation, either buffered or about to be written to the db.
+	 * Later writes to the same conformation are merged into the same write.
+	 */
+	private static class PendingWrite {
+
+		boolean remove = false;
+
+		boolean hasLower = false;
+		double lowerEnergy;
+		long lowerTimestampNs;
+
+		boolean hasUpper = false;
+		double upperEnergy;
+		long upperTimestampNs;
+
+		PendingWrite setLower(double energy, long timestampNs) {
+			hasLower = true;
+			lowerEnergy = energy;
+			lowerTimestampNs = timestampNs;
+			return this;
+		}
+
+		PendingWrite setUpper(double energy, long timestampNs) {
+			hasUpper = true;
+			upperEnergy = energy;
+			upperTimestampNs = timestampNs;
+			return this;
+		}
+
+		PendingWrite setRemove() {
+			remove = true;
+			hasLower = false;
+			hasUpper = false;
+			return this;
+		}
+
+		/** true if the write doesn't depend on what's already in the db */
+		boolean replacesAll() {
+			return remove || (hasLower && hasUpper);
+		}
+
+		/** returns the conf info after this write, without changing the old info */
+		ConfInfo applyTo(ConfInfo info) {
+			if (remove) {
+				info = null;
+			}
+			if (!hasLower && !hasUpper) {
+				return info;
+			}
+			ConfInfo out = info == null
+				? new ConfInfo()
+				: new ConfInfo(info.lowerEnergy, info.lowerTimestampNs, info.upperEnergy, info.upperTimestampNs);
+			if (hasLower) {
+				out.lowerEnergy = lowerEnergy;
+				out.lowerTimestampNs = lowerTimestampNs;
+			}
+			if (hasUpper) {
+				out.upperEnergy = upperEnergy;
+				out.upperTimestampNs = upperTimestampNs;
+			}
+			return out;
+		}
+	}
+
 	private class AssignmentsSerializer extends MapDBTools.SimpleSerializer<int[]> {
 
 		private final int numPos;
@@ -296,6 +456,13 @@ public class ConfDB implements AutoCleanable {
 		private final EnergyIndex lowerIndex;
 		private final EnergyIndex upperIndex;
 
+		// write-behind buffers, guarded by this table
+		// (writes move from pending to writing while they're written to the db, so readers can still find them)
+		private final Comparator<int[]> assignmentsComparator;
+		private TreeMap<int[],PendingWrite> pending = null;
+		private TreeMap<int[],PendingWrite> writing = null;
+		private final Object drainLock = new Object();
+
 		public ConfTable(String id) {
 
 			this.id = id;
@@ -325,13 +492,19 @@ public class ConfDB implements AutoCleanable {
 				}
 			};
 
+			AssignmentsSerializer assignmentsSerializer = new AssignmentsSerializer();
 			this.btree = db.treeMap(id)
-				.keySerializer(new AssignmentsSerializer())
+				.keySerializer(assignmentsSerializer)
 				.valueSerializer(confInfoSerializer)
 				.createOrOpen();
 
 			this.lowerIndex = new EnergyIndex(id + "-lowerEnergy");
 			this.upperIndex = new EnergyIndex(id + "-upperEnergy");
+
+			// sort buffered writes the same way as the db, so group writes hit the btree in order
+			this.assignmentsComparator = assignmentsSerializer::compare;
+
+			allTables.add(this);
 		}
 
 		@Override
@@ -344,62 +517,23 @@ public class ConfDB implements AutoCleanable {
 		}
 
 		public void setBounds(int[] assignments, double lowerEnergy, double upperEnergy, long timestampNs) {
-			ConfInfo info = btree.get(assignments);
-			if (info == null) {
-				info = new ConfInfo();
-			} else {
-				// remove old energy index entries if needed
-				if (info.lowerTimestampNs != 0L) {
-					lowerIndex.remove(info.lowerEnergy, assignments);
-				}
-				if (info.upperTimestampNs != 0L) {
-					upperIndex.remove(info.upperEnergy, assignments);
-				}
-			}
-			info.lowerEnergy = lowerEnergy;
-			info.lowerTimestampNs = timestampNs;
-			info.upperEnergy = upperEnergy;
-			info.upperTimestampNs = timestampNs;
-			btree.put(assignments, info);
-			lowerIndex.add(lowerEnergy, assignments);
-			upperIndex.add(upperEnergy, assignments);
+			write(assignments, (w) -> w
+				.setLower(lowerEnergy, timestampNs)
+				.setUpper(upperEnergy, timestampNs)
+			);
 		}
 
 		public void setLowerBound(int[] assignments, double energy, long timestampNs) {
-			ConfInfo info = btree.get(assignments);
-			if (info == null) {
-				info = new ConfInfo();
-			} else {
-				// remove old energy index entries if needed
-				if (info.lowerTimestampNs != 0L) {
-					lowerIndex.remove(info.lowerEnergy, assignments);
-				}
-			}
-			info.lowerEnergy = energy;
-			info.lowerTimestampNs = timestampNs;
-			btree.put(assignments, info);
-			lowerIndex.add(energy, assignments);
+			write(assignments, (w) -> w.setLower(energy, timestampNs));
 		}
 
 		public void setUpperBound(int[] assignments, double energy, long timestampNs) {
-			ConfInfo info = btree.get(assignments);
-			if (info == null) {
-				info = new ConfInfo();
-			} else {
-				// remove old energy index entries if needed
-				if (info.upperTimestampNs != 0L) {
-					upperIndex.remove(info.upperEnergy, assignments);
-				}
-			}
-			info.upperEnergy = energy;
-			info.upperTimestampNs = timestampNs;
-			btree.put(assignments, info);
-			upperIndex.add(energy, assignments);
+			write(assignments, (w) -> w.setUpper(energy, timestampNs));
 		}
 
 		public Conf get(int[] assignments) {
 
-			ConfInfo info = btree.get(assignments);
+			ConfInfo info = read(assignments);
 			if (info == null) {
 				return null;
 			}
@@ -409,7 +543,7 @@ public class ConfDB implements AutoCleanable {
 
 		public ConfSearch.ScoredConf getScored(int[] assignments) {
 
-			ConfInfo info = btree.get(assignments);
+			ConfInfo info = read(assignments);
 			if (info == null) {
 				return null;
 			}
@@ -422,7 +556,7 @@ public class ConfDB implements AutoCleanable {
 
 		public ConfSearch.EnergiedConf getEnergied(ConfSearch.ScoredConf conf) {
 
-			ConfInfo info = btree.get(conf.getAssignments());
+			ConfInfo info = read(conf.getAssignments());
 			if (info == null || info.upperTimestampNs == 0L) {
 				return null;
 			}
@@ -432,7 +566,7 @@ public class ConfDB implements AutoCleanable {
 
 		public ConfSearch.EnergiedConf getEnergied(int[] assignments) {
 
-			ConfInfo info = btree.get(assignments);
+			ConfInfo info = read(assignments);
 			if (info == null) {
 				return null;
 			}
@@ -445,20 +579,145 @@ public class ConfDB implements AutoCleanable {
 		}
 
 		public void remove(int[] assignments) {
+			write(assignments, (w) -> w.setRemove());
+		}
+
+		private void write(int[] assignments, Consumer<PendingWrite> block) {
+
+			// no write-behind? just write to the db now
+			if (writeBehind == null) {
+				PendingWrite write = new PendingWrite();
+				block.accept(write);
+				writeNow(assignments, write);
+				return;
+			}
+
+			// otherwise, buffer the write
+			boolean isNew;
+			synchronized (this) {
+				if (pending == null) {
+					pending = new TreeMap<>(assignmentsComparator);
+				}
+				PendingWrite write = pending.get(assignments);
+				isNew = write == null;
+				if (isNew) {
+					write = new PendingWrite();
+					// callers can re-use their arrays, so keep a copy
+					pending.put(assignments.clone(), write);
+				}
+				block.accept(write);
+			}
+			if (isNew) {
+				onBuffered();
+			}
+		}
+
+		private ConfInfo read(int[] assignments) {
+
+			// no write-behind? just read the db
+			if (writeBehind == null) {
+				return btree.get(assignments);
+			}
+
+			// check the buffers first
+			PendingWrite writingWrite = null;
+			PendingWrite pendingWrite = null;
+			synchronized (this) {
+				if (writing != null) {
+					writingWrite = writing.get(assignments);
+				}
+				if (pending != null) {
+					pendingWrite = pending.get(assignments);
+				}
+			}
+
+			// short circuit: the newest write is all we need
+			if (pendingWrite != null && pendingWrite.replacesAll()) {
+				return pendingWrite.applyTo(null);
+			}
+
+			// otherwise, apply the buffered writes (oldest first) to the db
+			// NOTE: if the db already has the write we're writing, applying it again is harmless
+			ConfInfo info = null;
+			if (writingWrite == null || !writingWrite.replacesAll()) {
+				info = btree.get(assignments);
+			}
+			if (writingWrite != null) {
+				info = writingWrite.applyTo(info);
+			}
+			if (pendingWrite != null) {
+				info = pendingWrite.applyTo(info);
+			}
+			return info;
+		}
+
+		private void writeNow(int[] assignments, PendingWrite write) {
+
 			ConfInfo info = btree.get(assignments);
+
+			// remove old energy index entries if needed
 			if (info != null) {
-				if (info.lowerTimestampNs != 0L) {
+				if ((write.remove || write.hasLower) && info.lowerTimestampNs != 0L) {
 					lowerIndex.remove(info.lowerEnergy, assignments);
 				}
-				if (info.upperTimestampNs != 0L) {
+				if ((write.remove || write.hasUpper) && info.upperTimestampNs != 0L) {
 					upperIndex.remove(info.upperEnergy, assignments);
 				}
+			}
+
+			info = write.applyTo(info);
+			if (info == null) {
 				btree.remove(assignments);
+				return;
+			}
+
+			btree.put(assignments, info);
+			if (write.hasLower) {
+				lowerIndex.add(info.lowerEnergy, assignments);
+			}
+			if (write.hasUpper) {
+				upperIndex.add(info.upperEnergy, assignments);
+			}
+		}
+
+		/**
+		 * Writes all the buffered writes to the db, but doesn't commit.
+		 * Returns the number of conformations written.
+		 */
+		private int drain() {
+
+			if (writeBehind == null) {
+				return 0;
+			}
+
+			synchronized (drainLock) {
+
+				TreeMap<int[],PendingWrite> writes;
+				synchronized (this) {
+					if (pending == null || pending.isEmpty()) {
+						return 0;
+					}
+					writes = pending;
+					writing = pending;
+					pending = null;
+				}
+
+				for (Map.Entry<int[],PendingWrite> entry : writes.entrySet()) {
+					writeNow(entry.getKey(), entry.getValue());
+				}
+
+				synchronized (this) {
+					writing = null;
+				}
+
+				onWritten(writes.size());
+				return writes.size();
 			}
 		}
 
 		@Override
 		public Iterator<Conf> iterator() {
+			drain();
 			return Streams.of(btree.entryIterator())
 				.map((entry) -> new Conf(
 						entry.getKey(),
@@ -477,12 +736,12 @@ public class ConfDB implements AutoCleanable {
 						.iterator();
 
 				case Score:
-					return () -> Streams.of(lowerIndex.iterator())
+					return () -> Streams.of(drainThen(lowerIndex).iterator())
 						.map((entry) -> new ConfSearch.ScoredConf(entry.getValue(), entry.getKey()))
 						.iterator();
 
 				case Energy:
-					return () -> Streams.of(upperIndex.iterator())
+					return () -> Streams.of(drainThen(upperIndex).iterator())
 						.map((entry) -> getScored(entry.getValue()))
 						.filter((conf) -> conf != null)
 						.iterator();
@@ -501,13 +760,13 @@ public class ConfDB implements AutoCleanable {
 						.iterator();
 
 				case Score:
-					return () -> Streams.of(lowerIndex.iterator())
+					return () -> Streams.of(drainThen(lowerIndex).iterator())
 						.map((entry) -> getEnergied(entry.getValue()))
 						.filter((conf) -> conf != null)
 						.iterator();
 
 				case Energy:
-					return () -> Streams.of(upperIndex.iterator())
+					return () -> Streams.of(drainThen(upperIndex).iterator())
 						.map((entry) -> getEnergied(entry.getValue()))
 						.filter((conf) -> conf != null)
 						.iterator();
@@ -517,16 +776,22 @@ public class ConfDB implements AutoCleanable {
 			}
 		}
 
+		/** writes any buffered writes first, so scans over the index see them */
+		private EnergyIndex drainThen(EnergyIndex index) {
+			drain();
+			return index;
+		}
+
 		public Iterable<Double> lowerBounds() {
-			return () -> lowerIndex.btree.keyIterator();
+			return () -> drainThen(lowerIndex).btree.keyIterator();
 		}
 
 		public Iterable<Double> upperBounds() {
-			return () -> upperIndex.btree.keyIterator();
+			return () -> drainThen(upperIndex).btree.keyIterator();
 		}
 
 		public List<Conf> getConfsByLowerBound(double energy) {
-			List<int[]> multiAssignments = lowerIndex.get(energy);
+			List<int[]> multiAssignments = drainThen(lowerIndex).get(energy);
 			if (multiAssignments == null) {
 				return null;
 			}
@@ -536,7 +801,7 @@ public class ConfDB implements AutoCleanable {
 		}
 
 		public List<Conf> getConfsByUpperBound(double energy) {
-			List<int[]> multiAssignments = upperIndex.get(energy);
+			List<int[]> multiAssignments = drainThen(upperIndex).get(energy);
 			if (multiAssignments == null) {
 				return null;
 			}
@@ -546,10 +811,20 @@ public class ConfDB implements AutoCleanable {
 		}
 
 		public long size() {
+			drain();
 			return btree.sizeLong();
 		}
 
+		/**
+		 * Commits writes to the db, depending on the write-behind durability.
+		 * See {@link WriteBehind.Durability}.
+		 */
 		public void flush() {
+			if (writeBehind != null && writeBehind.durability == WriteBehind.Durability.GroupCommit) {
+				// the background writer will commit the buffered writes soon enough
+				checkWriter();
+				return;
+			}
 			ConfDB.this.flush();
 		}
 	}
@@ -694,6 +969,7 @@ public class ConfDB implements AutoCleanable {
 
 	public final ConfSpaceIteration confSpace;
 	public final File file;
+	public final WriteBehind writeBehind;
 
 	private final DB db;
 	private final Map<String,ConfTable> tables;
@@ -701,14 +977,30 @@ public class ConfDB implements AutoCleanable {
 	private final Map<Sequence,SequenceDB> sequenceDBs;
 	private final IntEncoding assignmentEncoding;
 
+	// write-behind state
+	private final List<ConfTable> allTables = new CopyOnWriteArrayList<>();
+	private final AtomicLong numBuffered = new AtomicLong(0);
+	private final AtomicBoolean hasUncommittedWrites = new AtomicBoolean(false);
+	private final Object groupLock = new Object();
+	private final Writer writer;
+	private volatile Throwable writerError = null;
+
 	public ConfDB(ConfSpaceIteration confSpace) {
 		this(confSpace, null);
 	}
 
 	public ConfDB(ConfSpaceIteration confSpace, File file) {
+		this(confSpace, file, null);
+	}
+
+	/**
+	 * @param writeBehind settings to buffer writes and commit them in groups, or null to write everything right away
+	 */
+	public ConfDB(ConfSpaceIteration confSpace, File file, WriteBehind writeBehind) {
 
 		this.confSpace = confSpace;
 		this.file = file;
+		this.writeBehind = writeBehind;
 
 		// determine conf encoding
 		int maxAssignment = IntStream.range(0, confSpace.numPos())
@@ -754,6 +1046,105 @@ public class ConfDB implements AutoCleanable {
 			.valueSerializer(infoSerializer)
 			.createOrOpen();
 		sequenceDBs = new HashMap<>();
+
+		// start the background writer if needed
+		if (writeBehind != null) {
+			writer = new Writer();
+			writer.start();
+		} else {
+			writer = null;
+		}
+	}
+
+	/**
+	 * Commits buffered writes in groups, either when enough writes are buffered,
+	 * or when the commit interval expires.
+	 */
+	private class Writer extends Thread {
+
+		private volatile boolean isRunning = true;
+
+		public Writer() {
+			super("ConfDB-writer");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (isRunning) {
+
+					synchronized (this) {
+						if (isRunning && numBuffered.get() < writeBehind.groupSize) {
+							wait(writeBehind.commitIntervalMs);
+						}
+					}
+
+					writeGroup();
+				}
+			} catch (InterruptedException ex) {
+				// time to stop
+			} catch (Throwable t) {
+				// save the error for the next writer or flusher to see
+				writerError = t;
+			}
+		}
+
+		public void wakeUp() {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+
+		public void stopAndWait() {
+			isRunning = false;
+			wakeUp();
+			try {
+				join();
+			} catch (InterruptedException ex) {
+				throw new RuntimeException(ex);
+			}
+		}
+	}
+
+	private void checkWriter() {
+		if (writerError != null) {
+			throw new RuntimeException("ConfDB background writer failed, buffered writes may be lost", writerError);
+		}
+	}
+
+	private void onBuffered() {
+		long n = numBuffered.incrementAndGet();
+		if (n >= writeBehind.maxBuffered) {
+			// the buffer is full, so write the group ourselves
+			writeGroup();
+		} else if (n >= writeBehind.groupSize) {
+			writer.wakeUp();
+		}
+	}
+
+	private void onWritten(int numWritten) {
+		numBuffered.addAndGet(-numWritten);
+		hasUncommittedWrites.set(true);
+	}
+
+	/**
+	 * Writes and commits all the buffered writes in all the tables.
+	 */
+	private void writeGroup() {
+		writeGroup(false);
+	}
+
+	private void writeGroup(boolean alwaysCommit) {
+		checkWriter();
+		synchronized (groupLock) {
+			for (ConfTable table : allTables) {
+				table.drain();
+			}
+			if (hasUncommittedWrites.getAndSet(false) || alwaysCommit) {
+				db.commit();
+			}
+		}
 	}
 
 	public ConfTable get(Key key) {
@@ -812,13 +1203,22 @@ public class ConfDB implements AutoCleanable {
 	}
 
 	public void flush() {
+
 		// In write-ahead mode, we don't actually have any transactions,
 		// so there's nothing to commit in the traditional sense.
 		// So in this case, "commit" flushes write caches to disk
-		db.commit();
+		if (writeBehind != null) {
+			// write any buffered writes first
+			writeGroup(true);
+		} else {
+			db.commit();
+		}
 	}
 
 	public void close() {
+		if (writer != null) {
+			writer.stopAndWait();
+		}
 		flush();
 		for (ConfTable table : tables.values()) {
 			table.close();
@@ -828,6 +1228,7 @@ public class ConfDB implements AutoCleanable {
 			sdb.close();
 		}
 		sequenceDBs.clear();
+		allTables.clear();
 		db.close();
 	}
 
@@ -0,0 +1,250 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.confspace;
+
+import edu.duke.cs.osprey.tools.HashCalculator;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * A compact, immutable version of {@link RCTuple} for hot lookups.
+ *
+ * Positions and RCs are stored in primitive arrays, so reading them doesn't unbox anything.
+ * Positions are always sorted (in increasing order) when the tuple is created, and the hash code is computed once,
+ * so the tuple can be used directly as a key for the tuple matrices, tuple trees, and hash tables.
+ *
+ * Since the tuple can't be changed, it's safe to share between threads and to keep references to it.
+ */
+public final class ImmutableRCTuple implements Serializable, Comparable<ImmutableRCTuple> {
+
+	private static final long serialVersionUID = 4981271546315702314L;
+
+	public static final ImmutableRCTuple Empty = new ImmutableRCTuple(new int[0], new int[0]);
+
+	private final int[] pos;
+	private final int[] rcs;
+	private final int hashCode;
+
+	/** takes ownership of the arrays, which must already be sorted by position */
+	private ImmutableRCTuple(int[] pos, int[] rcs) {
+		this.pos = pos;
+		this.rcs = rcs;
+		this.hashCode = HashCalculator.combineHashes(
+			Arrays.hashCode(pos),
+			Arrays.hashCode(rcs)
+		);
+	}
+
+	public static ImmutableRCTuple of(int pos1, int rc1) {
+		return new ImmutableRCTuple(new int[] { pos1 }, new int[] { rc1 });
+	}
+
+	public static ImmutableRCTuple of(int pos1, int rc1, int pos2, int rc2) {
+		return sorted(new int[] { pos1, pos2 }, new int[] { rc1, rc2 });
+	}
+
+	public static ImmutableRCTuple of(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		return sorted(new int[] { pos1, pos2, pos3 }, new int[] { rc1, rc2, rc3 });
+	}
+
+	/** copies the tuple, and sorts the positions, but doesn't modify the original tuple */
+	public static ImmutableRCTuple of(RCTuple tuple) {
+		int n = tuple.size();
+		int[] pos = new int[n];
+		int[] rcs = new int[n];
+		for (int i=0; i<n; i++) {
+			pos[i] = tuple.pos.get(i);
+			rcs[i] = tuple.RCs.get(i);
+		}
+		return sorted(pos, rcs);
+	}
+
+	/** makes a tuple from all the assigned positions in the conformation */
+	public static ImmutableRCTuple fromConf(int[] conf) {
+		int n = 0;
+		for (int rc : conf) {
+			if (rc != Conf.Unassigned) {
+				n++;
+			}
+		}
+		int[] pos = new int[n];
+		int[] rcs = new int[n];
+		int i = 0;
+		for (int p=0; p<conf.length; p++) {
+			if (conf[p] != Conf.Unassigned) {
+				pos[i] = p;
+				rcs[i] = conf[p];
+				i++;
+			}
+		}
+		// conf positions are already in order
+		return new ImmutableRCTuple(pos, rcs);
+	}
+
+	private static ImmutableRCTuple sorted(int[] pos, int[] rcs) {
+
+		// tuples are always small (n << 100), so insertion sort should be fast enough
+		// NOTE: we need to sort two arrays simultaneously, so we can't use any library sorts
+		int n = pos.length;
+		for (int i=1; i<n; i++) {
+
+			int tempPos = pos[i];
+			int tempRC = rcs[i];
+
+			int j;
+			for (j=i; j>=1 && tempPos < pos[j-1]; j--) {
+				pos[j] = pos[j-1];
+				rcs[j] = rcs[j-1];
+			}
+			pos[j] = tempPos;
+			rcs[j] = tempRC;
+		}
+
+		// check for duplicate positions
+		for (int i=1; i<n; i++) {
+			if (pos[i] == pos[i-1]) {
+				throw new IllegalArgumentException("tuple has duplicate position " + pos[i]);
+			}
+		}
+
+		return new ImmutableRCTuple(pos, rcs);
+	}
+
+	public int size() {
+		return pos.length;
+	}
+
+	/** the position at the given index, where positions are in increasing order */
+	public int pos(int index) {
+		return pos[index];
+	}
+
+	/** the RC at the given index, where positions are in increasing order */
+	public int rc(int index) {
+		return rcs[index];
+	}
+
+	/** returns the index of the position in this tuple, or -1 if the position is not in this tuple */
+	public int indexOf(int pos) {
+		int i = Arrays.binarySearch(this.pos, pos);
+		if (i < 0) {
+			return -1;
+		}
+		return i;
+	}
+
+	public boolean hasPos(int pos) {
+		return indexOf(pos) >= 0;
+	}
+
+	/** returns the RC at the position, or {@link Conf#Unassigned} if the position is not in this tuple */
+	public int getRC(int pos) {
+		int i = indexOf(pos);
+		if (i < 0) {
+			return Conf.Unassigned;
+		}
+		return rcs[i];
+	}
+
+	/** returns true if every position in this tuple has the same RC in the conformation */
+	public boolean isIn(int[] conf) {
+		for (int i=0; i<pos.length; i++) {
+			if (conf[pos[i]] != rcs[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** makes a new mutable tuple, with positions in increasing order */
+	public RCTuple toRCTuple() {
+		ArrayList<Integer> pos = new ArrayList<>(this.pos.length);
+		ArrayList<Integer> rcs = new ArrayList<>(this.rcs.length);
+		for (int i=0; i<this.pos.length; i++) {
+			pos.add(this.pos[i]);
+			rcs.add(this.rcs[i]);
+		}
+		return new RCTuple(pos, rcs);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof ImmutableRCTuple && equals((ImmutableRCTuple)other);
+	}
+
+	public boolean equals(ImmutableRCTuple other) {
+		return this == other
+			|| (this.hashCode == other.hashCode
+				&& Arrays.equals(this.pos, other.pos)
+				&& Arrays.equals(this.rcs, other.rcs));
+	}
+
+	/** orders tuples by size, then by positions, then by RCs */
+	@Override
+	public int compareTo(ImmutableRCTuple other) {
+		int cmp = Integer.compare(this.pos.length, other.pos.length);
+		if (cmp != 0) {
+			return cmp;
+		}
+		cmp = Arrays.compare(this.pos, other.pos);
+		if (cmp != 0) {
+			return cmp;
+		}
+		return Arrays.compare(this.rcs, other.rcs);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder();
+		buf.append("[");
+		for (int i=0; i<pos.length; i++) {
+			if (i > 0) {
+				buf.append(",");
+			}
+			buf.append(pos[i]);
+			buf.append("=");
+			buf.append(rcs[i]);
+		}
+		buf.append("]");
+		return buf.toString();
+	}
+}
@@ -361,6 +361,9 @@ public class SimpleConfSpace implements Serializable, ConfSpaceIteration {
 
 	private final MutAlignmentCache mutAlignmentCache = new MutAlignmentCache();
 
+	// residues already built from RCs, keyed by position, then by template
+	private transient Map<Position,Map<ResidueTemplate,Residue>> rcResidues = null;
+
 	public SimpleConfSpace(List<Strand> strands, Map<Strand,List<StrandFlex>> strandFlex, double shellDist) {
 
 		this.strands = strands;
@@ -682,10 +685,15 @@ public class SimpleConfSpace implements Serializable, ConfSpaceIteration {
 					// yup, get the RC
 					ResidueConf rc = pos.resConfs.get(conf.RCs.get(index));
 
-					// build the residue from the RC
-					Residue newRes = res.copyToMol(mol, false);
-					rc.updateResidue(pos.strand.templateLib, newRes, mutAlignmentCache);
+					// prolines need their own puckers, so always build those from scratch
+					if (rc.postTemplateModifier != null || res.pucker != null || rc.template.name.equalsIgnoreCase("PRO")) {
+						Residue newRes = res.copyToMol(mol, false);
+						rc.updateResidue(pos.strand.templateLib, newRes, mutAlignmentCache);
+						continue;
+					}
 
+					// otherwise, copy the residue we built for the RC last time
+					getRCResidue(pos, rc, res).copyToMol(mol, true);
 					continue;
 				}
 			}
@@ -699,6 +707,24 @@ public class SimpleConfSpace implements Serializable, ConfSpaceIteration {
 		return mol;
 	}
 	
+	/**
+	 * Switching templates is much slower than copying a residue, and only depends on the template,
+	 * not the rotamer, so build each residue once and keep it around to make copies.
+	 * The cached residue must never be changed, only copied.
+	 */
+	private synchronized Residue getRCResidue(Position pos, ResidueConf rc, Residue templateRes) {
+		if (rcResidues == null) {
+			rcResidues = new IdentityHashMap<>();
+		}
+		return rcResidues
+			.computeIfAbsent(pos, key -> new IdentityHashMap<>())
+			.computeIfAbsent(rc.template, key -> {
+				Residue res = templateRes.copyToMol(new Molecule(), false);
+				rc.updateResidue(pos.strand.templateLib, res, mutAlignmentCache);
+				return res;
+			});
+	}
+
 	/**
 	 * create a new {@link ParametricMolecule} in the specified conformation
 	 * for analysis (e.g., energy calculation, minimization)
@@ -142,6 +142,31 @@ public interface TupleMatrix<T> {
 		}
 	}
 
+	/**
+	 * Same as {@link #getTuple(RCTuple)}, but for immutable tuples,
+	 * whose positions are always sorted, so lookups don't need to check or unbox anything.
+	 */
+	default T getTuple(ImmutableRCTuple tuple) {
+		switch (tuple.size()) {
+
+			case 0: throw new IllegalArgumentException("zero-length tuple");
+
+			case 1: return getOneBody(tuple.pos(0), tuple.rc(0));
+
+			// choose pos1,pos2 such that pos1 < pos2
+			case 2: return getPairwise(tuple.pos(1), tuple.rc(1), tuple.pos(0), tuple.rc(0));
+
+			default: {
+				// choose pos1,pos2 such that pos1 < pos2 < pos3 ...
+				TupleTree<T> tree = getHigherOrderTuples(tuple.pos(0), tuple.rc(0), tuple.pos(1), tuple.rc(1));
+				if (tree != null) {
+					return tree.get(tuple);
+				}
+				return null;
+			}
+		}
+	}
+
 	default void setTuple(RCTuple tuple, T val) {
 		tuple.checkSortedPositions();
 		switch (tuple.size()) {
@@ -114,6 +114,64 @@ public class TupleMatrixBoolean extends AbstractTupleMatrix<Boolean> {
     	}
     }
 
+	/**
+	 * Clears the bits in out for each conf at res whose one-body value is true.
+	 * Bits are packed 64 confs per word, like {@link BitSet#toLongArray()}.
+	 */
+	public void clearOneBodyBits(int res, long[] out) {
+		int n = getNumConfAtPos(res);
+		if (oneBody == null) {
+			// subclasses that override the getters don't use our storage
+			for (int i=0; i<n; i++) {
+				if (getOneBody(res, i)) {
+					clearBit(out, i);
+				}
+			}
+			return;
+		}
+		int start = getOneBodyIndex(res, 0);
+		for (int i=oneBody.nextSetBit(start); i>=0 && i<start + n; i=oneBody.nextSetBit(i + 1)) {
+			clearBit(out, i - start);
+		}
+	}
+
+	/**
+	 * Clears the bits in out for each conf2 at res2 whose pairwise value with (res1,conf1) is true.
+	 * Bits are packed 64 confs per word, like {@link BitSet#toLongArray()}.
+	 */
+	public void clearPairwiseBits(int res1, int conf1, int res2, long[] out) {
+		int n2 = getNumConfAtPos(res2);
+		if (pairwise == null) {
+			// subclasses that override the getters don't use our storage
+			for (int i2=0; i2<n2; i2++) {
+				if (getPairwise(res1, conf1, res2, i2)) {
+					clearBit(out, i2);
+				}
+			}
+			return;
+		}
+		if (res1 > res2) {
+			// the confs at res2 are contiguous, so we can skip over unset words quickly
+			int start = getPairwiseIndex(res1, conf1, res2, 0);
+			for (int i=pairwise.nextSetBit(start); i>=0 && i<start + n2; i=pairwise.nextSetBit(i + 1)) {
+				clearBit(out, i - start);
+			}
+		} else {
+			// the confs at res2 are strided
+			int start = getPairwiseIndex(res2, 0, res1, conf1);
+			int stride = getNumConfAtPos(res1);
+			for (int i2=0; i2<n2; i2++) {
+				if (pairwise.get(start + i2*stride)) {
+					clearBit(out, i2);
+				}
+			}
+		}
+	}
+
+	private static void clearBit(long[] words, int i) {
+		words[i >>> 6] &= ~(1L << i);
+	}
+
 	@Override
 	public String toString() {
 		return toString(6, (isPruned) -> {
@@ -66,8 +66,26 @@ public class TupleMatrixDouble extends AbstractTupleMatrix<Double> {
     
     public TupleMatrixDouble(TupleMatrixDouble other) {
     	super(other);
-    	this.oneBody = other.oneBody.clone();
-    	this.pairwise = other.pairwise.clone();
+    	if (other.oneBody != null) {
+    		this.oneBody = other.oneBody.clone();
+    		this.pairwise = other.pairwise.clone();
+    	} else {
+    		// other matrix keeps its values somewhere else (eg, a memory-mapped file), so copy them one at a time
+    		allocate(other.getNumOneBody(), other.getNumPairwise());
+    		int numPos = getNumPos();
+    		for (int res1=0; res1<numPos; res1++) {
+    			int n1 = getNumConfAtPos(res1);
+    			for (int conf1=0; conf1<n1; conf1++) {
+    				oneBody[getOneBodyIndex(res1, conf1)] = other.getOneBodyDouble(res1, conf1);
+    				for (int res2=0; res2<res1; res2++) {
+    					int n2 = getNumConfAtPos(res2);
+    					for (int conf2=0; conf2<n2; conf2++) {
+    						pairwise[getPairwiseIndex(res1, conf1, res2, conf2)] = other.getPairwiseDouble(res1, conf1, res2, conf2);
+    					}
+    				}
+    			}
+    		}
+    	}
     }
     
     @Override
@@ -78,6 +96,14 @@ public class TupleMatrixDouble extends AbstractTupleMatrix<Double> {
     
     @Override
     public Double getOneBody(int res, int conf) {
+    	return getOneBodyDouble(res, conf);
+    }
+
+    /**
+     * Same as {@link #getOneBody}, but returns a primitive value so hot loops don't box.
+     * Subclasses that transform values should override this method rather than {@link #getOneBody}.
+     */
+    public double getOneBodyDouble(int res, int conf) {
     	return oneBody[getOneBodyIndex(res, conf)];
     }
     
@@ -96,8 +122,39 @@ public class TupleMatrixDouble extends AbstractTupleMatrix<Double> {
     
     @Override
     public Double getPairwise(int res1, int conf1, int res2, int conf2) {
+    	return getPairwiseDouble(res1, conf1, res2, conf2);
+    }
+
+    /**
+     * Same as {@link #getPairwise}, but returns a primitive value so hot loops don't box.
+     * Subclasses that transform values should override this method rather than {@link #getPairwise}.
+     */
+    public double getPairwiseDouble(int res1, int conf1, int res2, int conf2) {
     	return pairwise[getPairwiseIndex(res1, conf1, res2, conf2)];
     }
+
+    /**
+     * Copies the pairwise values between (res1,conf1) and every conf at res2 into out,
+     * so that out[conf2] == getPairwiseDouble(res1, conf1, res2, conf2).
+     *
+     * Storage is ordered so that the row is one contiguous slice when res1 > res2,
+     * so callers that iterate over many confs should prefer that ordering.
+     * Subclasses that transform values should override this method too.
+     */
+    public void getPairwiseRow(int res1, int conf1, int res2, double[] out) {
+    	int n2 = getNumConfAtPos(res2);
+    	if (res1 > res2) {
+    		System.arraycopy(pairwise, getPairwiseIndex(res1, conf1, res2, 0), out, 0, n2);
+    	} else {
+    		// the row is strided in storage, so copy it one value at a time
+    		int index = getPairwiseIndex(res1, conf1, res2, 0);
+    		int stride = getNumConfAtPos(res1);
+    		for (int conf2=0; conf2<n2; conf2++) {
+    			out[conf2] = pairwise[index];
+    			index += stride;
+    		}
+    	}
+    }
     
     @Override
     public void setPairwise(int res1, int conf1, int res2, int conf2, Double val) {
@@ -35,6 +35,8 @@ package edu.duke.cs.osprey.confspace;
 
 import edu.duke.cs.osprey.tools.UnpossibleError;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.function.BiConsumer;
@@ -64,6 +66,7 @@ public class TupleTree<T> implements Serializable {
 		List<List<Node>> children = null;
 
 		RCTuple tuple = null;
+		transient ImmutableRCTuple key = null;
 		T data = null;
 
 		Node(int pos, int rc) {
@@ -71,6 +74,16 @@ public class TupleTree<T> implements Serializable {
 			this.rc = rc;
 		}
 
+		private void readObject(ObjectInputStream in)
+		throws IOException, ClassNotFoundException {
+			in.defaultReadObject();
+
+			// the key isn't serialized, rebuild it from the tuple
+			if (tuple != null) {
+				key = ImmutableRCTuple.of(tuple);
+			}
+		}
+
 		public Node makeChild(int pos, int rc) {
 
 			// make sure children exists
@@ -124,6 +137,9 @@ public class TupleTree<T> implements Serializable {
 
 	public final Node root = new Node(-1, -1);
 
+	/** immutable copy of the base tuple, so lookups don't have to unbox it */
+	private transient ImmutableRCTuple baseKey;
+
 	public TupleTree() {
 		this(null);
 	}
@@ -135,6 +151,19 @@ public class TupleTree<T> implements Serializable {
 		}
 
 		this.baseTuple = baseTuple;
+		this.baseKey = makeBaseKey();
+	}
+
+	private ImmutableRCTuple makeBaseKey() {
+		return baseTuple != null ? ImmutableRCTuple.of(baseTuple) : ImmutableRCTuple.Empty;
+	}
+
+	private void readObject(ObjectInputStream in)
+	throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+
+		// the base key isn't serialized, rebuild it from the base tuple
+		baseKey = makeBaseKey();
 	}
 
 	private void checkTuple(RCTuple tuple) {
@@ -190,6 +219,54 @@ public class TupleTree<T> implements Serializable {
 		throw new UnpossibleError();
 	}
 
+	/**
+	 * Same as {@link #get(RCTuple)}, but the tuple positions are already sorted,
+	 * so the lookup doesn't need to check or unbox anything.
+	 */
+	public T get(ImmutableRCTuple tuple) {
+
+		// make sure it matches the base
+		int firstIndex = baseKey.size();
+		if (tuple.size() < firstIndex) {
+			throw new IllegalArgumentException("Tuple " + tuple + " doesn't match base tuple " + baseTuple + " for this tree");
+		}
+		for (int i=0; i<firstIndex; i++) {
+			if (baseKey.pos(i) != tuple.pos(i) || baseKey.rc(i) != tuple.rc(i)) {
+				throw new IllegalArgumentException("Tuple " + tuple + " doesn't match base tuple " + baseTuple + " for this tree");
+			}
+		}
+
+		Node parent = root;
+		for (int i=tuple.size()-1; i>=firstIndex; i--) {
+
+			Node node = parent.get(tuple.pos(i), tuple.rc(i));
+			if (node == null) {
+				return null;
+			}
+
+			if (i == firstIndex) {
+				return node.data;
+			} else {
+				parent = node;
+			}
+		}
+
+		throw new UnpossibleError();
+	}
+
+	/**
+	 * Gets the data for the tuple made by adding (pos,rc) to the base tuple, without allocating a tuple.
+	 *
+	 * pos must be greater than every position in the base tuple.
+	 */
+	public T get(int pos, int rc) {
+		Node node = root.get(pos, rc);
+		if (node == null) {
+			return null;
+		}
+		return node.data;
+	}
+
 	public void put(RCTuple tuple, T data) {
 
 		// just in case...
@@ -213,6 +290,7 @@ public class TupleTree<T> implements Serializable {
 			if (i == firstIndex) {
 				node.data = data;
 				node.tuple = tuple;
+				node.key = ImmutableRCTuple.of(tuple);
 			} else {
 				parent = node;
 			}
@@ -230,17 +308,7 @@ public class TupleTree<T> implements Serializable {
 			return true;
 		}
 
-		for (int i=0; i<baseTuple.size(); i++) {
-
-			int pos = baseTuple.pos.get(i);
-			int rc = baseTuple.RCs.get(i);
-
-			if (rc != conf[pos]) {
-				return false;
-			}
-		}
-
-		return true;
+		return baseKey.isIn(conf);
 	}
 
 	public void forEachIn(int[] conf, BiConsumer<RCTuple,T> callback) {
@@ -300,7 +368,7 @@ public class TupleTree<T> implements Serializable {
 			}
 
 			// callback if there's a tuple at this node that matches pos1
-			if (node.tuple != null && node.tuple.pos.contains(pos1)) {
+			if (node.tuple != null && node.key.hasPos(pos1)) {
 				callback.accept(node.tuple, node.data);
 			}
 
@@ -334,7 +402,7 @@ public class TupleTree<T> implements Serializable {
 			}
 
 			// callback if there's a tuple at this node that matches pos1, pos2
-			if (node.tuple != null && node.tuple.pos.contains(pos1) && node.tuple.pos.contains(pos2)) {
+			if (node.tuple != null && node.key.hasPos(pos1) && node.key.hasPos(pos2)) {
 				callback.accept(node.tuple, node.data);
 			}
 
@@ -31,11 +31,25 @@ public class AssignedCoords {
 	public final List<DegreeOfFreedom> dofs = new ArrayList<>();
 
 	public AssignedCoords(ConfSpace confSpace, int[] assignments) {
+		this(confSpace, assignments, new CoordsList(confSpace.maxNumConfAtoms));
+	}
+
+	/**
+	 * Use an existing coords list instead of allocating a new one,
+	 * eg to reuse a scratch buffer across a batch of conformations.
+	 * The coords list will be overwritten by {@link #copyCoords()}.
+	 */
+	public AssignedCoords(ConfSpace confSpace, int[] assignments, CoordsList coords) {
+
+		if (coords.size != confSpace.maxNumConfAtoms) {
+			throw new IllegalArgumentException(String.format("coords list has %d atoms, but the conf space needs %d",
+				coords.size, confSpace.maxNumConfAtoms
+			));
+		}
 
 		this.confSpace = confSpace;
 		this.assignments = assignments;
-
-		coords = new CoordsList(confSpace.maxNumConfAtoms);
+		this.coords = coords;
 	}
 
 	public void copyCoords() {
@@ -46,9 +60,11 @@ public class AssignedCoords {
 		// then copy the conformation coords
 		for (ConfSpace.Pos pos : confSpace.positions) {
 
-			// get the conf, or skip this position if nothing was assigned
+			// get the conf, or clear this position if nothing was assigned
+			// (the coords list might be a reused buffer with old coords in it)
 			int confi = assignments[pos.index];
 			if (confi == ConfSpace.NotAssigned) {
+				coords.clear(confSpace.confAtomOffsetsByPos[pos.index], pos.maxNumAtoms);
 				continue;
 			}
 			ConfSpace.Conf conf = pos.confs[confi];
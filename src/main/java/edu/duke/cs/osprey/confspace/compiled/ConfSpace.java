@@ -8,17 +8,30 @@ import edu.duke.cs.osprey.confspace.compiled.motions.TranslationRotation;
 import edu.duke.cs.osprey.energy.compiled.AmberEnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.EEF1EnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.EnergyCalculator;
+import edu.duke.cs.osprey.tools.ByteBufferDataInput;
+import edu.duke.cs.osprey.tools.FileTools;
 import edu.duke.cs.osprey.tools.LZMA2;
 import org.joml.Vector3d;
 
-import java.io.ByteArrayInputStream;
 import java.io.DataInput;
-import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
 
+import static edu.duke.cs.osprey.tools.Log.log;
+
 
 /**
  * A conformation space that reads the output produced by the ConfSpaceCompiler in the GUI.
@@ -155,6 +168,7 @@ public class ConfSpace implements ConfSpaceIteration {
 	}
 
 	private final int hash;
+	private final long contentHash;
 
 	public final String name;
 	public final String[] forcefieldIds;
@@ -178,24 +192,24 @@ public class ConfSpace implements ConfSpaceIteration {
 
 	public class IndicesStatic {
 
-		/** indexed by param, [0=atomi1, 1=atomi2, 2=parami] */
-		private final int[][] indices;
+		/** indexed by param*3 + [0=atomi1, 1=atomi2, 2=parami] */
+		private final int[] indices;
 
-		public IndicesStatic(int[][] indices) {
+		public IndicesStatic(int[] indices) {
 			this.indices = indices;
 		}
 
 		public int size() {
-			return indices.length;
+			return indices.length/3;
 		}
 		public int getStaticAtom1Index(int i) {
-			return indices[i][0];
+			return indices[i*3];
 		}
 		public int getStaticAtom2Index(int i) {
-			return indices[i][1];
+			return indices[i*3 + 1];
 		}
 		public int getParamsIndex(int i) {
-			return indices[i][2];
+			return indices[i*3 + 2];
 		}
 	}
 
@@ -204,41 +218,41 @@ public class ConfSpace implements ConfSpaceIteration {
 
 	public class IndicesSingle {
 
-		/** indexed by param, [0=confAtom1i, 1=confAtom2i, 2=parami] */
-		private final int[][] internals;
+		/** indexed by param*3 + [0=confAtom1i, 1=confAtom2i, 2=parami] */
+		private final int[] internals;
 
-		/** indexed by param, [0=confAtomi, 1=staticAtomi, 2=parami] */
-		private final int[][] statics;
+		/** indexed by param*3 + [0=confAtomi, 1=staticAtomi, 2=parami] */
+		private final int[] statics;
 
-		IndicesSingle(int[][] internals, int[][] statics) {
+		IndicesSingle(int[] internals, int[] statics) {
 			this.internals = internals;
 			this.statics = statics;
 		}
 
 		public int sizeInternals() {
-			return internals.length;
+			return internals.length/3;
 		}
 		public int getInternalConfAtom1Index(int i) {
-			return internals[i][0];
+			return internals[i*3];
 		}
 		public int getInternalConfAtom2Index(int i) {
-			return internals[i][1];
+			return internals[i*3 + 1];
 		}
 		public int getInternalParamsIndex(int i) {
-			return internals[i][2];
+			return internals[i*3 + 2];
 		}
 
 		public int sizeStatics() {
-			return statics.length;
+			return statics.length/3;
 		}
 		public int getStaticConfAtomIndex(int i) {
-			return statics[i][0];
+			return statics[i*3];
 		}
 		public int getStaticStaticAtomIndex(int i) {
-			return statics[i][1];
+			return statics[i*3 + 1];
 		}
 		public int getStaticParamsIndex(int i) {
-			return statics[i][2];
+			return statics[i*3 + 2];
 		}
 	}
 
@@ -247,24 +261,24 @@ public class ConfSpace implements ConfSpaceIteration {
 
 	public class IndicesPair {
 
-		/** indexed by param, [0=conf1Atomi, 1=conf2Atomi, 2=parami] */
-		private final int[][] indices;
+		/** indexed by param*3 + [0=conf1Atomi, 1=conf2Atomi, 2=parami] */
+		private final int[] indices;
 
-		public IndicesPair(int[][] indices) {
+		public IndicesPair(int[] indices) {
 			this.indices = indices;
 		}
 
 		public int size() {
-			return indices.length;
+			return indices.length/3;
 		}
 		public int getConfAtom1Index(int i) {
-			return indices[i][0];
+			return indices[i*3];
 		}
 		public int getConfAtom2Index(int i) {
-			return indices[i][1];
+			return indices[i*3 + 1];
 		}
 		public int getParamsIndex(int i) {
-			return indices[i][2];
+			return indices[i*3 + 2];
 		}
 	}
 
@@ -286,26 +300,132 @@ public class ConfSpace implements ConfSpaceIteration {
 
 		// compute the hash code from the raw bytes
 		int hash = Arrays.hashCode(bytes);
+		long contentHash = contentHash(digest(bytes));
 
 		// is the compiled conformation space compressed?
+		if (isCompressed(bytes)) {
+
+			// yup, decompres it
+			bytes = LZMA2.decompressBytes(bytes);
+		}
+
+		return fromUncompressed(hash, contentHash, new ByteBufferDataInput(bytes));
+	}
+
+	/**
+	 * Loads a compiled conformation space from a file.
+	 */
+	public static ConfSpace fromFile(File file) {
+		return fromFile(file, null);
+	}
+
+	/**
+	 * Loads a compiled conformation space from a file, using an on-disk cache to skip decompression.
+	 *
+	 * The first load of a compressed conformation space writes an uncompressed copy into the cache folder,
+	 * keyed by a hash of the file contents. Later loads, from repeated launches or from other cluster
+	 * members sharing the folder, read the uncompressed copy directly from a memory-mapped file instead.
+	 * Changing the input file changes the key, so stale cache entries are never used.
+	 *
+	 * @param cacheDir folder for the cache, or null to not use a cache
+	 */
+	public static ConfSpace fromFile(File file, File cacheDir) {
+
+		byte[] bytes = FileTools.readFileBytes(file);
+
+		// only compressed conf spaces benefit from the cache
+		if (cacheDir == null || !isCompressed(bytes)) {
+			return fromBytes(bytes);
+		}
+
+		// compute the hash codes from the raw bytes, the same way fromBytes() does
+		int hash = Arrays.hashCode(bytes);
+		byte[] digest = digest(bytes);
+		long contentHash = contentHash(digest);
+
+		File cacheFile = new File(cacheDir, cacheKey(digest) + ".ccs");
+		if (cacheFile.exists()) {
+
+			// cache hit, read the uncompressed copy
+			try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+				MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				return fromUncompressed(hash, contentHash, new ByteBufferDataInput(buf));
+			} catch (IOException | RuntimeException ex) {
+				log("WARN: can't read cached conformation space %s, ignoring it: %s", cacheFile, ex.getMessage());
+			}
+		}
+
+		// cache miss, decompress and save the uncompressed copy for next time
+		byte[] uncompressed = LZMA2.decompressBytes(bytes);
+		ConfSpace confSpace = fromUncompressed(hash, contentHash, new ByteBufferDataInput(uncompressed));
+		try {
+			writeCacheFile(cacheDir, cacheFile, uncompressed);
+		} catch (IOException ex) {
+			log("WARN: can't write cached conformation space %s: %s", cacheFile, ex.getMessage());
+		}
+		return confSpace;
+	}
+
+	private static boolean isCompressed(byte[] bytes) {
+
 		// look for XZ magic bytes to see if this conf space is compressed or not
 		// see XZ file spec, 2.1.1.1. Header Magic Bytes:
 		// https://tukaani.org/xz/xz-file-format.txt
 		byte[] xzMagic = new byte[] { (byte)0xfd, '7', 'z', 'X', 'Z', 0x00 };
-		if (bytes.length > 6
+		return bytes.length > 6
 			&& bytes[0] == xzMagic[0]
 			&& bytes[1] == xzMagic[1]
 			&& bytes[2] == xzMagic[2]
 			&& bytes[3] == xzMagic[3]
 			&& bytes[4] == xzMagic[4]
-			&& bytes[5] == xzMagic[5]
-		) {
+			&& bytes[5] == xzMagic[5];
+	}
 
-			// yup, decompres it
-			bytes = LZMA2.decompressBytes(bytes);
+	private static byte[] digest(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new Error("SHA-256 is required by the JVM spec", ex);
+		}
+	}
+
+	private static long contentHash(byte[] digest) {
+		return ByteBuffer.wrap(digest).getLong();
+	}
+
+	private static String cacheKey(byte[] digest) {
+		StringBuilder buf = new StringBuilder();
+		for (byte b : digest) {
+			buf.append(String.format("%02x", b));
 		}
+		return buf.toString();
+	}
 
-		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+	private static void writeCacheFile(File cacheDir, File cacheFile, byte[] bytes)
+	throws IOException {
+
+		// write to a temp file first, then rename, so other processes never see a partial file
+		Files.createDirectories(cacheDir.toPath());
+		Path tempPath = Files.createTempFile(cacheDir.toPath(), cacheFile.getName(), ".tmp");
+		try {
+			Files.write(tempPath, bytes);
+
+			// temp files are private by default, but other users' cluster members may share the cache
+			tempPath.toFile().setReadable(true, false);
+
+			try {
+				Files.move(tempPath, cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tempPath, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	private static ConfSpace fromUncompressed(int hash, long contentHash, ByteBufferDataInput in) {
+
+		try {
 
 			// look for the compiled conf space magic bytes "_ospccs_"
 			boolean startValid =
@@ -325,7 +445,7 @@ public class ConfSpace implements ConfSpaceIteration {
 			int version = in.readInt();
 			ConfSpace confSpace;
 			switch (version) {
-				case 1: confSpace = new ConfSpace(hash, in); break;
+				case 1: confSpace = new ConfSpace(hash, contentHash, in); break;
 				// if we need more versions in the future:
 				// case 2: confSpace = new ConfSpace(hash, in, 0); break;
 				// case 3: confSpace = new ConfSpace(hash, in, 0, 0); break;
@@ -359,11 +479,12 @@ public class ConfSpace implements ConfSpaceIteration {
 	/**
 	 * version 1 constructor
 	 */
-	private ConfSpace(int hash, DataInput in)
+	private ConfSpace(int hash, long contentHash, DataInput in)
 	throws IOException {
 
-		// save the hash
+		// save the hashes
 		this.hash = hash;
+		this.contentHash = contentHash;
 
 		// read the name
 		name = in.readUTF();
@@ -569,15 +690,8 @@ public class ConfSpace implements ConfSpaceIteration {
 		indicesStatic = new IndicesStatic[forcefieldIds.length];
 		for (int ffi=0; ffi<forcefieldIds.length; ffi++) {
 
-			int num = in.readInt();
-			int[][] indices = new int[num][3];
-			for (int i=0; i<num; i++) {
-				indices[i][0] = in.readInt(); // atomi1
-				indices[i][1] = in.readInt(); // atomi2
-				indices[i][2] = in.readInt(); // parami
-			}
-
-			indicesStatic[ffi] = new IndicesStatic(indices);
+			// read [atomi1, atomi2, parami] triples
+			indicesStatic[ffi] = new IndicesStatic(readIndices(in));
 		}
 
 		// read pos and pos-static forcefield params
@@ -588,23 +702,11 @@ public class ConfSpace implements ConfSpaceIteration {
 
 				for (int ffi=0; ffi<forcefieldIds.length; ffi++) {
 
-					// read the pos internal forcefield params
-					int numSingles = in.readInt();
-					int[][] singles = new int[numSingles][3];
-					for (int i=0; i<numSingles; i++) {
-						singles[i][0] = in.readInt(); // atomi1
-						singles[i][1] = in.readInt(); // atomi2
-						singles[i][2] = in.readInt(); // parami
-					}
+					// read the pos internal forcefield params, [atomi1, atomi2, parami] triples
+					int[] singles = readIndices(in);
 
-					// read the pos-static forcefield params
-					int numStatics = in.readInt();
-					int[][] statics = new int[numStatics][3];
-					for (int i=0; i<numStatics; i++) {
-						statics[i][0] = in.readInt(); // atomi
-						statics[i][1] = in.readInt(); // statici
-						statics[i][2] = in.readInt(); // parami
-					}
+					// read the pos-static forcefield params, [atomi, statici, parami] triples
+					int[] statics = readIndices(in);
 
 					indicesSingles[ffi][posi][fragi] = new IndicesSingle(singles, statics);
 				}
@@ -633,16 +735,8 @@ public class ConfSpace implements ConfSpaceIteration {
 						// for each forcefield ...
 						for (int ffi=0; ffi<forcefieldIds.length; ffi++) {
 
-							// read the atom pairs
-							int numPairs = in.readInt();
-							int[][] indicesPair = new int[numPairs][3];
-							for (int i=0; i<numPairs; i++) {
-								indicesPair[i][0] = in.readInt(); // atomi1
-								indicesPair[i][1] = in.readInt(); // atomi2
-								indicesPair[i][2] = in.readInt(); // parami
-							}
-
-							indicesPairs[ffi][posPairIndex][fragi1][fragi2] = new IndicesPair(indicesPair);
+							// read the atom pairs, [atomi1, atomi2, parami] triples
+							indicesPairs[ffi][posPairIndex][fragi1][fragi2] = new IndicesPair(readIndices(in));
 						}
 					}
 				}
@@ -657,12 +751,8 @@ public class ConfSpace implements ConfSpaceIteration {
 			ffparams[ffi] = new double[numParams][];
 			for (int i=0; i<numParams; i++) {
 
-				int numNumbers = in.readInt();
-				double[] params = new double[numNumbers];
-				for (int p=0; p<numNumbers; p++) {
-					params[p] = in.readDouble();
-				}
-
+				double[] params = new double[in.readInt()];
+				ByteBufferDataInput.readDoubles(in, params);
 				ffparams[ffi][i] = params;
 			}
 		}
@@ -687,6 +777,14 @@ public class ConfSpace implements ConfSpaceIteration {
 		seqSpace = new SeqSpace(this);
 	}
 
+	/** reads a count of index triples, then the triples themselves, flattened into one array */
+	private static int[] readIndices(DataInput in)
+	throws IOException {
+		int[] indices = new int[in.readInt()*3];
+		ByteBufferDataInput.readInts(in, indices);
+		return indices;
+	}
+
 	private static DihedralAngle.Description readDihedralAngle(DataInput in)
 	throws IOException {
 		double minDegrees = in.readDouble();
@@ -1006,8 +1104,28 @@ public class ConfSpace implements ConfSpaceIteration {
 		return coords;
 	}
 
+	/**
+	 * Makes coordinates with the given assignments, writing them into an existing coords list
+	 * rather than allocating a new one. Any previous coords in the list are overwritten.
+	 */
+	public AssignedCoords makeCoords(int[] assignments, CoordsList scratch) {
+		AssignedCoords coords = new AssignedCoords(this, assignments, scratch);
+		coords.copyCoords();
+		coords.makeDofs();
+		return coords;
+	}
+
 	@Override
 	public int hashCode() {
 		return hash;
 	}
+
+	/**
+	 * A 64-bit hash of the compiled conformation space file contents (from SHA-256),
+	 * the same in every process that loads the same file.
+	 * Strong enough to tell cached results for different conformation spaces apart.
+	 */
+	public long contentHash() {
+		return contentHash;
+	}
 }
@@ -3,6 +3,8 @@ package edu.duke.cs.osprey.confspace.compiled;
 import org.joml.Vector3d;
 import org.joml.Vector3dc;
 
+import java.util.Arrays;
+
 
 /**
  * A supremely efficient representation for atomic coordinates.
@@ -70,10 +72,22 @@ public class CoordsList {
 		coords[++o] = in.z();
 	}
 
+	/**
+	 * Returns the backing array, with the coordinates of atom i at [i*3, i*3 + 1, i*3 + 2].
+	 * Meant for bulk readers like vectorized energy kernels. Don't modify it.
+	 */
+	public double[] array() {
+		return coords;
+	}
+
 	public void copyFrom(CoordsList src, int destIndex) {
 		System.arraycopy(src.coords, 0, coords, destIndex*3, src.size*3);
 	}
 
+	public void clear(int destIndex, int size) {
+		Arrays.fill(coords, destIndex*3, (destIndex + size)*3, 0.0);
+	}
+
 	@Override
 	public boolean equals(Object other) {
 		return other instanceof CoordsList && equals((CoordsList)other);
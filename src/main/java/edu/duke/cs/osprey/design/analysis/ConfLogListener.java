@@ -0,0 +1,83 @@
+package edu.duke.cs.osprey.design.analysis;
+
+import edu.duke.cs.osprey.confspace.ConfSearch;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * Appends every conf it sees to a compact binary log, so ensembles can be exported later
+ * without keeping all the confs in memory. Confs already in the log are kept, so several runs can share one log.
+ *
+ * Each record is the number of positions, the score and energy, then the RC at each position.
+ */
+public class ConfLogListener implements CommandAnalysis {
+
+    private final File file;
+    private final DataOutputStream out;
+    private long numConfs = 0;
+
+    public ConfLogListener(File file) {
+        this.file = file;
+        try {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        } catch (IOException ex) {
+            throw new UncheckedIOException("can't open conformation log: " + file, ex);
+        }
+    }
+
+    @Override
+    public void onConf(ConfSearch.ScoredConf conf) {
+        var eConf = (ConfSearch.EnergiedConf) conf;
+        var assignments = eConf.getAssignments();
+        try {
+            out.writeInt(assignments.length);
+            out.writeDouble(eConf.getScore());
+            out.writeDouble(eConf.getEnergy());
+            for (int rc : assignments) {
+                out.writeInt(rc);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("can't write to conformation log: " + file, ex);
+        }
+        numConfs++;
+    }
+
+    @Override
+    public void printResults() {
+        try {
+            out.close();
+        } catch (IOException ex) {
+            throw new UncheckedIOException("can't close conformation log: " + file, ex);
+        }
+        System.out.println(String.format("Wrote %d conformations to %s", numConfs, file.getAbsolutePath()));
+    }
+
+    /**
+     * Reads back the lowest-energy confs from a log, eg to export an ensemble.
+     * Only the returned confs are ever held in memory at once.
+     */
+    public static List<ConfSearch.EnergiedConf> readLowest(File file, int maxConfs) {
+        var queue = new EnergiedConfQueue(maxConfs);
+        try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int numPos;
+                try {
+                    numPos = in.readInt();
+                } catch (EOFException ex) {
+                    break;
+                }
+                double score = in.readDouble();
+                double energy = in.readDouble();
+                var assignments = new int[numPos];
+                for (int i = 0; i < numPos; i++) {
+                    assignments[i] = in.readInt();
+                }
+                queue.add(new ConfSearch.EnergiedConf(assignments, score, energy));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("can't read conformation log: " + file, ex);
+        }
+        return queue.toOrderedList();
+    }
+}
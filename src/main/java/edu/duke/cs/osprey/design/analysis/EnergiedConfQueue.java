@@ -1,44 +1,102 @@
 package edu.duke.cs.osprey.design.analysis;
 
-import com.google.common.collect.Ordering;
-import com.google.common.primitives.Doubles;
 import edu.duke.cs.osprey.confspace.ConfSearch;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.stream.Collectors;
 
+/**
+ * Keeps the lowest-energy confs seen so far, up to a fixed number of them.
+ *
+ * The confs live in a max-heap keyed on a primitive array of energies, so memory stays constant
+ * no matter how many confs are added, and comparisons never unbox or call through a comparator.
+ */
 public class EnergiedConfQueue {
 
     private final int numElements;
 
-    private Ordering<ConfSearch.EnergiedConf> lowestEnergyFirstOrdering = new Ordering<>() {
-        public int compare(ConfSearch.EnergiedConf left, ConfSearch.EnergiedConf right) {
-            return Doubles.compare(left.getEnergy(), right.getEnergy());
-        }
-    };
-
-    private final PriorityQueue<ConfSearch.EnergiedConf> confQueue = new PriorityQueue<>(lowestEnergyFirstOrdering.reverse());
+    // a max-heap: the highest energy is always at index 0
+    private final double[] energies;
+    private final ConfSearch.EnergiedConf[] confs;
+    private int size = 0;
 
     public EnergiedConfQueue(int maxElements) {
         this.numElements = maxElements;
+        this.energies = new double[maxElements];
+        this.confs = new ConfSearch.EnergiedConf[maxElements];
+    }
+
+    public int size() {
+        return size;
     }
 
     public List<ConfSearch.EnergiedConf> toOrderedList() {
-        return confQueue.stream().sorted(lowestEnergyFirstOrdering).collect(Collectors.toList());
+
+        // heap-sort a copy of the heap, so the heap itself isn't disturbed
+        var sortedEnergies = Arrays.copyOf(energies, size);
+        var sortedConfs = Arrays.copyOf(confs, size);
+        for (int n = size - 1; n > 0; n--) {
+            // move the max to the end, then restore the heap on what's left
+            double energy = sortedEnergies[n];
+            var conf = sortedConfs[n];
+            sortedEnergies[n] = sortedEnergies[0];
+            sortedConfs[n] = sortedConfs[0];
+            siftDown(sortedEnergies, sortedConfs, n, 0, energy, conf);
+        }
+
+        return new ArrayList<>(Arrays.asList(sortedConfs));
     }
 
     public void add(ConfSearch.EnergiedConf conf) {
-        if (confQueue.size() < numElements) {
-            confQueue.add(conf);
+        double energy = conf.getEnergy();
+
+        if (size < numElements) {
+            siftUp(size, energy, conf);
+            size++;
             return;
         }
 
-        assert confQueue.size() > 0;
-        var maxConf = confQueue.peek();
-        if (conf.getEnergy() < maxConf.getEnergy()) {
-            confQueue.poll(); // throw out the conf with the maximum energy
-            confQueue.add(conf);
+        if (size > 0 && energy < energies[0]) {
+            siftDown(0, energy, conf); // throw out the conf with the maximum energy
+        }
+    }
+
+    private void siftUp(int i, double energy, ConfSearch.EnergiedConf conf) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (energies[parent] >= energy) {
+                break;
+            }
+            energies[i] = energies[parent];
+            confs[i] = confs[parent];
+            i = parent;
+        }
+        energies[i] = energy;
+        confs[i] = conf;
+    }
+
+    private void siftDown(int i, double energy, ConfSearch.EnergiedConf conf) {
+        siftDown(energies, confs, size, i, energy, conf);
+    }
+
+    private static void siftDown(double[] energies, ConfSearch.EnergiedConf[] confs, int size, int i, double energy, ConfSearch.EnergiedConf conf) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && energies[child + 1] > energies[child]) {
+                child++;
+            }
+            if (energies[child] <= energy) {
+                break;
+            }
+            energies[i] = energies[child];
+            confs[i] = confs[child];
+            i = child;
         }
+        energies[i] = energy;
+        confs[i] = conf;
     }
 }
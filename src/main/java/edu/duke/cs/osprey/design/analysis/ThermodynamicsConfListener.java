@@ -5,118 +5,100 @@ import edu.duke.cs.osprey.confspace.ConfSearch;
 import edu.duke.cs.osprey.kstar.pfunc.BoltzmannCalculator;
 import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
 import edu.duke.cs.osprey.tools.BigMath;
-import edu.duke.cs.osprey.tools.ExpFunction;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Stream;
-
-import com.google.auto.value.AutoValue;
 
 import static ch.obermuhlner.math.big.DefaultBigDecimalMath.log;
 
+/**
+ * Bounds the enthalpy and entropy of the ensemble of confs seen by a partition function.
+ *
+ * The confs themselves aren't kept. Only the sums of their Boltzmann weights, and of their energy-weighted
+ * Boltzmann weights, are accumulated as the confs stream by, so memory stays constant no matter how many
+ * confs the partition function evaluates. The sums are divided by the partition function bounds at the end.
+ */
 public class ThermodynamicsConfListener implements CommandAnalysis {
 
-    private List<ConfSearch.EnergiedConf> confs = new ArrayList<>();
-    private BigDecimal pFuncLowerBound;
-    private BigDecimal pFuncUpperBound;
     private static BoltzmannCalculator bCalc = new BoltzmannCalculator(PartitionFunction.decimalPrecision);
 
-    @Override
-    public void onConf(ConfSearch.ScoredConf conf) {
-        confs.add((ConfSearch.EnergiedConf) conf);
+    private final PartitionFunction pfunc;
+
+    private final BigMath weightSum = makeBigMath().set(0.0);
+    private final BigMath weightedEnergySum = makeBigMath().set(0.0);
+    private double lastEnergy = Double.NaN;
+    private long numConfs = 0;
+
+    public ThermodynamicsConfListener(PartitionFunction pfunc) {
+        this.pfunc = pfunc;
     }
 
-    /*
     @Override
-    public void finished(PartitionFunction pfunc) {
-        var values = pfunc.getValues();
-        pFuncUpperBound = values.calcUpperBound();
-        pFuncLowerBound = pfunc.getValues().calcLowerBound();
+    public void onConf(ConfSearch.ScoredConf conf) {
+        var energy = ((ConfSearch.EnergiedConf) conf).getEnergy();
+        var weight = bCalc.calc(energy);
+        weightSum.add(weight);
+        weightedEnergySum.add(makeBigMath().set(weight).mult(energy).get());
+        lastEnergy = energy;
+        numConfs++;
     }
-     */
 
     private static BigMath makeBigMath() {
         return new BigMath(PartitionFunction.decimalPrecision);
     }
 
-    private static BigDecimal getBoundedProbability(ConfSearch.EnergiedConf conf, BigDecimal bound) {
-        return bCalc.calc(conf.getEnergy()).divide(bound, RoundingMode.HALF_EVEN);
+    private BigDecimal getPFuncLowerBound() {
+        return pfunc.getValues().calcLowerBound();
     }
 
-    private ProbabilityEnergyTuple getConfProperties(ConfSearch.EnergiedConf conf) {
-        return ProbabilityEnergyTuple.create(conf, getLowerBoundProbability(conf), getUpperBoundProbability(conf));
+    private BigDecimal getPFuncUpperBound() {
+        return pfunc.getValues().calcUpperBound();
     }
 
-    private Stream<ProbabilityEnergyTuple> confPropStream() {
-        return confs.stream().parallel().map(this::getConfProperties);
-    }
-
-    private BigDecimal getUpperBoundProbability(ConfSearch.EnergiedConf conf) {
-        return getBoundedProbability(conf, pFuncLowerBound);
-    }
-
-    private BigDecimal getLowerBoundProbability(ConfSearch.EnergiedConf conf) {
-        return getBoundedProbability(conf, pFuncUpperBound);
-    }
-
-    private BigDecimal getUpperBoundEnthalpy() {
-        return confPropStream()
-                .map(props -> props.lowerBoundProbability().multiply(props.energy()))
-                .reduce(BigDecimal::add)
-                .orElseThrow();
+    BigDecimal getUpperBoundEnthalpy() {
+        return makeBigMath().set(weightedEnergySum.get())
+                .div(getPFuncUpperBound())
+                .get();
     }
 
-    private BigDecimal getLowerBoundEnthalpy() {
-        var part1 = confPropStream()
-                .map(prop -> prop.upperBoundProbability().multiply(prop.energy()))
-                .reduce(BigDecimal::add)
-                .orElseThrow();
+    BigDecimal getLowerBoundEnthalpy() {
+        var part1 = makeBigMath().set(weightedEnergySum.get())
+                .div(getPFuncLowerBound())
+                .get();
 
-        var upperBoundProbabilitySum = confPropStream()
-                .map(ProbabilityEnergyTuple::upperBoundProbability)
-                .reduce(BigDecimal::add)
-                .orElseThrow();
+        var upperBoundProbabilitySum = makeBigMath().set(weightSum.get())
+                .div(getPFuncLowerBound())
+                .get();
 
-        var part2 = BigDecimal.ONE
-                .subtract(upperBoundProbabilitySum)
-                .multiply(confPropStream().reduce((first, second) -> second).orElseThrow().energy());
+        // the probability not accounted for by the confs we saw goes to the energy of the last conf we saw
+        var part2 = makeBigMath().set(1.0)
+                .sub(upperBoundProbabilitySum)
+                .mult(lastEnergy)
+                .get();
 
         return part1.add(part2);
     }
 
-    private BigDecimal getUpperBoundEntropy() {
+    BigDecimal getUpperBoundEntropy() {
         return makeBigMath().set(Constants.R)
-                .mult(log(pFuncUpperBound))
+                .mult(log(getPFuncUpperBound()))
                 .add(getUpperBoundEnthalpy().doubleValue() / Constants.T)
                 .get();
     }
 
-    private BigDecimal getLowerBoundEntropy() {
+    BigDecimal getLowerBoundEntropy() {
         return makeBigMath().set(Constants.R)
-                .mult(log(pFuncLowerBound))
+                .mult(log(getPFuncLowerBound()))
                 .add(getLowerBoundEnthalpy().doubleValue() / Constants.T)
                 .get();
     }
 
     @Override
     public void printResults() {
+        if (numConfs == 0) {
+            System.out.println("No conformations were evaluated, so no thermodynamics to report");
+            return;
+        }
         System.out.println(String.format("Enthalpy[%.04f - %.04f]", getLowerBoundEnthalpy(), getUpperBoundEnthalpy()));
         System.out.println(String.format("Entropy[%.04f - %.04f]", getLowerBoundEntropy(), getUpperBoundEntropy()));
     }
 }
-
-@AutoValue
-abstract class ProbabilityEnergyTuple {
-
-    static ProbabilityEnergyTuple create(ConfSearch.EnergiedConf conf, BigDecimal lowerBoundProbability, BigDecimal upperBoundProbability) {
-        return new AutoValue_ProbabilityEnergyTuple(conf, lowerBoundProbability, upperBoundProbability, BigDecimal.valueOf(conf.getEnergy()));
-    }
-
-    abstract ConfSearch.EnergiedConf conf();
-    abstract BigDecimal lowerBoundProbability();
-    abstract BigDecimal upperBoundProbability();
-    abstract BigDecimal energy();
-}
@@ -8,6 +8,7 @@ import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
 import edu.duke.cs.osprey.astar.conf.RCs;
 import edu.duke.cs.osprey.design.Main;
 import edu.duke.cs.osprey.design.analysis.CommandAnalysis;
+import edu.duke.cs.osprey.design.analysis.ConfLogListener;
 import edu.duke.cs.osprey.design.analysis.EnergyAnalysisConfListener;
 import edu.duke.cs.osprey.design.analysis.ThermodynamicsConfListener;
 import edu.duke.cs.osprey.design.models.MoleculeDesign;
@@ -20,6 +21,7 @@ import edu.duke.cs.osprey.kstar.pfunc.GradientDescentPfunc;
 import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
 import edu.duke.cs.osprey.tools.BigMath;
 
+import java.io.File;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.LinkedList;
@@ -40,6 +42,9 @@ public class CommandPartitionFunction extends RunnableCommand {
     @Parameter(names = "--energy", description = "Analyze the energy of conformation(s).")
     private List<Integer> captureEnergies = new ArrayList<>();
 
+    @Parameter(names = "--conf-log", description = "Append every evaluated conformation to this file, for later ensemble export.")
+    private String confLogPath;
+
     @Parameter(names = "--max-num-confs", description = "Sets an upper bound on the number of conformations evaluated.")
     private int maxNumberConfs = -1;
 
@@ -160,13 +165,21 @@ public class CommandPartitionFunction extends RunnableCommand {
             final var oneIndexed = captureEnergies.stream().map(x -> x - 1).collect(Collectors.toList());
             final var listener = new EnergyAnalysisConfListener(confEnergyCalc, oneIndexed);
             confListeners.add(listener);
-            pFunc.setConfListener(listener);
         }
 
         if (captureThermodynamics) {
-            final var listener = new ThermodynamicsConfListener();
+            final var listener = new ThermodynamicsConfListener(pFunc);
+            confListeners.add(listener);
+        }
+
+        if (confLogPath != null) {
+            final var listener = new ConfLogListener(new File(confLogPath));
             confListeners.add(listener);
-            pFunc.setConfListener(listener);
+        }
+
+        // the partition function only takes one listener, so pass each conf on to all of ours
+        if (!confListeners.isEmpty()) {
+            pFunc.setConfListener(conf -> confListeners.forEach(listener -> listener.onConf(conf)));
         }
     }
 }
@@ -0,0 +1,372 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import edu.duke.cs.osprey.confspace.ConfSpaceIteration;
+import edu.duke.cs.osprey.gpu.Structs.Precision;
+
+/**
+ * An energy matrix that stores its pairwise energies in one block per pair of positions,
+ * rather than in one big array.
+ *
+ * Java arrays can't hold more than 2^31 values, which limits the flat energy matrix to
+ * conf spaces with about 46k RCs in total. Blocks only need to hold the energies for one
+ * position pair, so blocked matrices can be much larger.
+ *
+ * Energies can also be stored in single precision, which halves the memory needed, at the cost
+ * of about 7 significant digits of accuracy. That's plenty for A* bounds, but maybe not
+ * for partition function calculations that need very precise conformation energies.
+ *
+ * Blocks are allocated in the order the A* heuristics ({@link edu.duke.cs.osprey.astar.conf.scoring.TraditionalPairwiseHScorer})
+ * read them, ie for each position, the blocks for all earlier positions in order.
+ * Within a block, energies are stored by RC at the later position first, so each
+ * {@link #getPairwiseRow} to an earlier position is one contiguous copy.
+ *
+ * Higher-order tuples still need flat indices, so they're only supported when the
+ * number of pairwise energies would fit in one array anyway.
+ */
+public class BlockedEnergyMatrix extends EnergyMatrix {
+
+	private static final long serialVersionUID = 3174251286364818592L;
+
+	public final Precision precision;
+
+	private final double[] oneBody;
+	private final double[][] pairwise64; // indices: pos pair, RC1*numRCs2 + RC2 where pos1>pos2
+	private final float[][] pairwise32; // same as above
+
+	public BlockedEnergyMatrix(ConfSpaceIteration confSpace, Precision precision) {
+		super(confSpace);
+		this.precision = precision;
+		oneBody = new double[getNumOneBody()];
+		pairwise64 = precision == Precision.Float64 ? new double[numBlocks()][] : null;
+		pairwise32 = precision == Precision.Float32 ? new float[numBlocks()][] : null;
+		allocateBlocks();
+	}
+
+	public BlockedEnergyMatrix(int numPos, int[] numConfAtPos, double pruningInterval, Precision precision) {
+		super(numPos, numConfAtPos, pruningInterval);
+		this.precision = precision;
+		oneBody = new double[getNumOneBody()];
+		pairwise64 = precision == Precision.Float64 ? new double[numBlocks()][] : null;
+		pairwise32 = precision == Precision.Float32 ? new float[numBlocks()][] : null;
+		allocateBlocks();
+	}
+
+	/** copies the energies from another matrix, rounding them if needed */
+	public BlockedEnergyMatrix(EnergyMatrix other, Precision precision) {
+		this(other.getNumPos(), other.getNumConfAtPos().clone(), other.getPruningInterval(), precision);
+		setConstTerm(other.getConstTerm());
+		int numPos = getNumPos();
+		double[] row = new double[maxNumConfs()];
+		for (int pos1=0; pos1<numPos; pos1++) {
+			int n1 = getNumConfAtPos(pos1);
+			for (int rc1=0; rc1<n1; rc1++) {
+				oneBody[getOneBodyIndex(pos1, rc1)] = other.getOneBodyDouble(pos1, rc1);
+			}
+			for (int pos2=0; pos2<pos1; pos2++) {
+				int n2 = getNumConfAtPos(pos2);
+				int block = getPairwiseIndex(pos1, pos2);
+				for (int rc1=0; rc1<n1; rc1++) {
+					other.getPairwiseRow(pos1, rc1, pos2, row);
+					for (int rc2=0; rc2<n2; rc2++) {
+						set(block, rc1*n2 + rc2, row[rc2]);
+					}
+				}
+			}
+		}
+		EnergyMatrixFile.forEachHigherOrderTuple(other, this::setTuple);
+	}
+
+	private int numBlocks() {
+		int numPos = getNumPos();
+		return numPos*(numPos - 1)/2;
+	}
+
+	private int maxNumConfs() {
+		int max = 0;
+		for (int pos=0; pos<getNumPos(); pos++) {
+			max = Math.max(max, getNumConfAtPos(pos));
+		}
+		return max;
+	}
+
+	private void allocateBlocks() {
+
+		// allocate the blocks in the same order the A* heuristics read them,
+		// so blocks that are read together tend to be near each other in memory too
+		for (int pos1=0; pos1<getNumPos(); pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+
+				long size = (long)getNumConfAtPos(pos1)*getNumConfAtPos(pos2);
+				if (size > Integer.MAX_VALUE) {
+					throw new UnsupportedOperationException(String.format(
+						"positions %d and %d have %d pairwise energies, which is too many for one block",
+						pos1, pos2, size
+					));
+				}
+
+				int block = getPairwiseIndex(pos1, pos2);
+				if (pairwise32 != null) {
+					pairwise32[block] = new float[(int)size];
+				} else {
+					pairwise64[block] = new double[(int)size];
+				}
+			}
+		}
+	}
+
+	@Override
+	protected void allocate(int numOneBody, long numPairwise) {
+		// don't allocate anything here, the subclass fields aren't ready yet
+		// the constructor allocates the blocks instead
+	}
+
+	@Override
+	protected void allocate(int numOneBody, int numPairwise) {
+		allocate(numOneBody, (long)numPairwise);
+	}
+
+	private double get(int block, int index) {
+		if (pairwise32 != null) {
+			return pairwise32[block][index];
+		} else {
+			return pairwise64[block][index];
+		}
+	}
+
+	private void set(int block, int index, double val) {
+		if (pairwise32 != null) {
+			pairwise32[block][index] = (float)val;
+		} else {
+			pairwise64[block][index] = val;
+		}
+	}
+
+	@Override
+	public double getOneBodyDouble(int res, int conf) {
+		return oneBody[getOneBodyIndex(res, conf)];
+	}
+
+	@Override
+	public void setOneBody(int res, int conf, Double val) {
+		oneBody[getOneBodyIndex(res, conf)] = val;
+	}
+
+	@Override
+	public void setOneBody(int res, ArrayList<Double> val) {
+		int n = getNumConfAtPos(res);
+		for (int i=0; i<n; i++) {
+			oneBody[getOneBodyIndex(res, i)] = val.get(i);
+		}
+	}
+
+	@Override
+	public double getPairwiseDouble(int res1, int conf1, int res2, int conf2) {
+
+		// res2 should be strictly less than res1
+		if (res2 > res1) {
+			return get(getPairwiseIndex(res2, res1), conf2*getNumConfAtPos(res1) + conf1);
+		}
+		return get(getPairwiseIndex(res1, res2), conf1*getNumConfAtPos(res2) + conf2);
+	}
+
+	@Override
+	public void getPairwiseRow(int res1, int conf1, int res2, double[] out) {
+		int n2 = getNumConfAtPos(res2);
+		if (res1 > res2) {
+			int block = getPairwiseIndex(res1, res2);
+			int index = conf1*n2;
+			if (pairwise32 != null) {
+				float[] energies = pairwise32[block];
+				for (int conf2=0; conf2<n2; conf2++) {
+					out[conf2] = energies[index + conf2];
+				}
+			} else {
+				System.arraycopy(pairwise64[block], index, out, 0, n2);
+			}
+		} else {
+			// the row is strided in storage, so copy it one value at a time
+			int block = getPairwiseIndex(res2, res1);
+			int stride = getNumConfAtPos(res1);
+			int index = conf1;
+			for (int conf2=0; conf2<n2; conf2++) {
+				out[conf2] = get(block, index);
+				index += stride;
+			}
+		}
+	}
+
+	@Override
+	public void setPairwise(int res1, int conf1, int res2, int conf2, Double val) {
+		if (res2 > res1) {
+			set(getPairwiseIndex(res2, res1), conf2*getNumConfAtPos(res1) + conf1, val);
+		} else {
+			set(getPairwiseIndex(res1, res2), conf1*getNumConfAtPos(res2) + conf2, val);
+		}
+	}
+
+	@Override
+	public void setPairwise(int res1, int res2, ArrayList<ArrayList<Double>> val) {
+		int n1 = getNumConfAtPos(res1);
+		int n2 = getNumConfAtPos(res2);
+		for (int i1=0; i1<n1; i1++) {
+			for (int i2=0; i2<n2; i2++) {
+				setPairwise(res1, i1, res2, i2, val.get(i1).get(i2));
+			}
+		}
+	}
+
+	/** fills the matrix in the same order as the flat matrix, see {@link #write} */
+	@Override
+	public void fill(double[] vals) {
+
+		long size = oneBody.length;
+		for (int block=0; block<numBlocks(); block++) {
+			size += pairwise32 != null ? pairwise32[block].length : pairwise64[block].length;
+		}
+		if (vals.length != size) {
+			throw new IllegalArgumentException(String.format("expected %d values, but got %d", size, vals.length));
+		}
+
+		int i = 0;
+		for (int pos1=0; pos1<getNumPos(); pos1++) {
+			int n1 = getNumConfAtPos(pos1);
+			for (int rc1=0; rc1<n1; rc1++) {
+				oneBody[getOneBodyIndex(pos1, rc1)] = vals[i++];
+				for (int pos2=0; pos2<pos1; pos2++) {
+					int n2 = getNumConfAtPos(pos2);
+					int block = getPairwiseIndex(pos1, pos2);
+					for (int rc2=0; rc2<n2; rc2++) {
+						set(block, rc1*n2 + rc2, vals[i++]);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void fill(Double val) {
+		Arrays.fill(oneBody, val);
+		if (pairwise32 != null) {
+			for (float[] block : pairwise32) {
+				Arrays.fill(block, (float)(double)val);
+			}
+		} else {
+			for (double[] block : pairwise64) {
+				Arrays.fill(block, val);
+			}
+		}
+	}
+
+	@Override
+	public void negate() {
+		for (int i=0; i<oneBody.length; i++) {
+			oneBody[i] = -oneBody[i];
+		}
+		if (pairwise32 != null) {
+			for (float[] block : pairwise32) {
+				for (int i=0; i<block.length; i++) {
+					block[i] = -block[i];
+				}
+			}
+		} else {
+			for (double[] block : pairwise64) {
+				for (int i=0; i<block.length; i++) {
+					block[i] = -block[i];
+				}
+			}
+		}
+	}
+
+	@Override
+	public double sum() {
+		double sum = 0.0;
+		for (int i=0; i<oneBody.length; i++) {
+			sum += oneBody[i];
+		}
+		if (pairwise32 != null) {
+			for (float[] block : pairwise32) {
+				for (int i=0; i<block.length; i++) {
+					sum += block[i];
+				}
+			}
+		} else {
+			for (double[] block : pairwise64) {
+				for (int i=0; i<block.length; i++) {
+					sum += block[i];
+				}
+			}
+		}
+		return sum;
+	}
+
+	// read and write use the same order as the flat matrix, so the formats are interchangeable
+
+	@Override
+	public void read(DataInputStream in)
+	throws IOException {
+		setConstTerm(in.readDouble());
+		for (int i=0; i<oneBody.length; i++) {
+			oneBody[i] = in.readDouble();
+		}
+		for (int block=0; block<numBlocks(); block++) {
+			int size = pairwise32 != null ? pairwise32[block].length : pairwise64[block].length;
+			for (int i=0; i<size; i++) {
+				set(block, i, in.readDouble());
+			}
+		}
+	}
+
+	@Override
+	public void write(DataOutputStream out)
+	throws IOException {
+		out.writeDouble(getConstTerm());
+		for (int i=0; i<oneBody.length; i++) {
+			out.writeDouble(oneBody[i]);
+		}
+		for (int block=0; block<numBlocks(); block++) {
+			int size = pairwise32 != null ? pairwise32[block].length : pairwise64[block].length;
+			for (int i=0; i<size; i++) {
+				out.writeDouble(get(block, i));
+			}
+		}
+	}
+}
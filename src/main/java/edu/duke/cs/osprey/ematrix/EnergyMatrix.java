@@ -52,14 +52,26 @@ public class EnergyMatrix extends TupleMatrixDouble implements FragmentEnergies
 	private static final long serialVersionUID = 6503270845014990929L;
 	
 	
+	/**
+	 * Reads an energy matrix file, see {@link EnergyMatrixFile}.
+	 * Files in the binary format are memory-mapped, older files are deserialized.
+	 */
 	public static EnergyMatrix read(File file)
 	throws BadFileException {
+		if (EnergyMatrixFile.isEnergyMatrixFile(file)) {
+			return EnergyMatrixFile.map(file);
+		}
 		return ObjectIO.read(file, EnergyMatrix.class);
 	}
 	
 	public static void write(EnergyMatrix emat, File file)
 	throws CantWriteException {
-		ObjectIO.write(emat, file);
+		if (emat.hasHigherOrderTerms()) {
+			// the binary format doesn't support the old higher-order terms
+			ObjectIO.write(emat, file);
+		} else {
+			EnergyMatrixFile.write(emat, 0, null, file);
+		}
 	}
 
 	private double constTerm = 0;
@@ -112,7 +124,7 @@ public class EnergyMatrix extends TupleMatrixDouble implements FragmentEnergies
     	int posNum = tup.pos.get(pos);
         int RCNum = tup.RCs.get(pos);
     	
-        double intraE = getOneBody(posNum,RCNum);
+        double intraE = getOneBodyDouble(posNum,RCNum);
         E += intraE;
         
         for(int index=0; index<numPosInTuple; index++){
@@ -121,7 +133,7 @@ public class EnergyMatrix extends TupleMatrixDouble implements FragmentEnergies
         	int pos2 = tup.pos.get(index);
             int rc2 = tup.RCs.get(index);
             
-            double pairwiseE = getPairwise(posNum,RCNum,pos2,rc2);
+            double pairwiseE = getPairwiseDouble(posNum,RCNum,pos2,rc2);
             E += 0.5 * pairwiseE;
             
             HigherTupleFinder<Double> htf = getHigherOrderTerms(posNum,RCNum,pos2,rc2);
@@ -160,7 +172,7 @@ public class EnergyMatrix extends TupleMatrixDouble implements FragmentEnergies
             int posNum = tuppos.get(indexInTuple);
             int RCNum = tupRCs.get(indexInTuple);
             
-            energy += getOneBody(posNum,RCNum);
+            energy += getOneBodyDouble(posNum,RCNum);
         }
         
         for(int indexInTuple=0; indexInTuple<numPosInTuple; indexInTuple++){
@@ -171,7 +183,7 @@ public class EnergyMatrix extends TupleMatrixDouble implements FragmentEnergies
                 int pos2 = tuppos.get(index2);
                 int rc2 = tupRCs.get(index2);
                 
-                energy += getPairwise(posNum,RCNum,pos2,rc2);
+                energy += getPairwiseDouble(posNum,RCNum,pos2,rc2);
                 
                 if (useHigherOrderTerms) {
 					HigherTupleFinder<Double> htf = getHigherOrderTerms(posNum,RCNum,pos2,rc2);
@@ -186,12 +198,12 @@ public class EnergyMatrix extends TupleMatrixDouble implements FragmentEnergies
 
     @Override
 	public double getEnergy(int pos, int rc) {
-    	return getOneBody(pos, rc);
+    	return getOneBodyDouble(pos, rc);
 	}
 
 	@Override
 	public double getEnergy(int pos1, int rc1, int pos2, int rc2) {
-    	return getPairwise(pos1, rc1, pos2, rc2);
+    	return getPairwiseDouble(pos1, rc1, pos2, rc2);
 	}
     
     public double getHigherOrderEnergy(RCTuple tup, int i1, int i2) {
@@ -244,7 +256,7 @@ public class EnergyMatrix extends TupleMatrixDouble implements FragmentEnergies
     //and RC index for that residue and AA type (rotamer index for AA type if rigid backbone,
     //otherwise defined in the ConfSearchSpace)
     //RETURN ERROR IF RES1 AND RES2 ARE NOT SINGLE RESIDUES
-    return getPairwise(res1, index1, res2, index2);
+    return getPairwiseDouble(res1, index1, res2, index2);
     }
      */
     //intra+shell similar...
@@ -269,7 +281,7 @@ public class EnergyMatrix extends TupleMatrixDouble implements FragmentEnergies
             for(int pos2=0; pos2<pos; pos2++){
                 for(int rc=0; rc<getNumConfAtPos(pos); rc++){
                     for(int rc2=0; rc2<getNumConfAtPos(pos2); rc2++){
-                        strongestPairE[pos][pos2] = Math.max( strongestPairE[pos][pos2], Math.abs(getPairwise(pos, rc, pos2, rc2)) );
+                        strongestPairE[pos][pos2] = Math.max( strongestPairE[pos][pos2], Math.abs(getPairwiseDouble(pos, rc, pos2, rc2)) );
                         strongestPairE[pos2][pos] = strongestPairE[pos][pos2];
                     }
                 }
@@ -293,13 +305,13 @@ public class EnergyMatrix extends TupleMatrixDouble implements FragmentEnergies
 
         for(int pos=0; pos<numPos; pos++){
             for(int rc=0; rc<getNumConfAtPos(pos); rc++){
-                double myOneBody = getOneBody(pos, rc);
-                double otherOneBody = other.getOneBody(pos, rc);
+                double myOneBody = getOneBodyDouble(pos, rc);
+                double otherOneBody = other.getOneBodyDouble(pos, rc);
                 diff.setOneBody(pos, rc, myOneBody - otherOneBody);
                 for(int pos2=0; pos2<pos; pos2++){
                     for(int rc2=0; rc2<getNumConfAtPos(pos2); rc2++){
-                        double myPairEnergy = getPairwise(pos, rc, pos2, rc2);
-                        double otherPairEnergy = other.getPairwise(pos, rc, pos2, rc2);
+                        double myPairEnergy = getPairwiseDouble(pos, rc, pos2, rc2);
+                        double otherPairEnergy = other.getPairwiseDouble(pos, rc, pos2, rc2);
                         diff.setPairwise(pos, rc, pos2, rc2, myPairEnergy-otherPairEnergy);
                     }
                 }
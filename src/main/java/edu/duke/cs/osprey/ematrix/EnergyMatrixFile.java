@@ -0,0 +1,632 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+import edu.duke.cs.osprey.confspace.ConfSpaceIteration;
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.confspace.StrandFlex;
+import edu.duke.cs.osprey.confspace.TupleTree;
+import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
+import edu.duke.cs.osprey.structure.Residue;
+import edu.duke.cs.osprey.tools.ObjectIO.BadFileException;
+import edu.duke.cs.osprey.tools.ObjectIO.CantWriteException;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+import jdk.incubator.foreign.ResourceScope;
+
+/**
+ * Flat binary file format for energy matrices that can be memory-mapped instead of deserialized.
+ *
+ * Reading a file maps it read-only into a {@link MappedEnergyMatrix}, so loading a huge matrix
+ * costs no heap and every process on a machine reading the same file shares the same pages.
+ * The file itself is never modified, a mapped matrix copies its energies to the heap the first time it changes.
+ *
+ * The header records the conformation space hash (see {@link #hashConfSpace}) and an optional key
+ * of calculation settings chosen by the writer, so stale files are rejected before looking at any energies.
+ * The header and the energies are protected by separate CRC32C checksums.
+ *
+ * Layout (all values little-endian):
+ * <pre>
+ *  0  magic bytes "OSPREMAT"
+ *  8  int    version
+ * 12  int    header size in bytes, padded to a multiple of 8
+ * 16  long   conf space hash
+ * 24  int    number of positions
+ * 28  int    key size in bytes
+ * 32  double pruning interval
+ * 40  double constant term
+ * 48  long   number of one-body energies
+ * 56  long   number of pairwise energies
+ * 64  long   offset of higher-order tuples
+ * 72  long   number of higher-order tuples
+ * 80  long   file size
+ * 88  int    checksum of everything after the header
+ * 92  int    checksum of the rest of the header
+ * 96  int[]  number of confs at each position, then the key bytes
+ * --  double[] one-body energies, in TupleMatrixDouble order
+ * --  double[] pairwise energies, in TupleMatrixDouble order
+ * --  higher-order tuples, each: int size, (int pos, int rc) * size, double energy
+ * </pre>
+ */
+public class EnergyMatrixFile {
+
+	public static class StaleFileException extends BadFileException {
+
+		private static final long serialVersionUID = 4216373040384563171L;
+
+		public StaleFileException(File file, String msg) {
+			super(file, msg);
+		}
+	}
+
+	private static final byte[] Magic = "OSPREMAT".getBytes(StandardCharsets.US_ASCII);
+
+	/** versions in files older than this are always stale */
+	public static final int CurrentVersion = 2;
+
+	static final ByteOrder Order = ByteOrder.LITTLE_ENDIAN;
+
+	private static final int FixedHeaderSize = 96;
+	private static final int DataChecksumOffset = 88;
+	private static final int HeaderChecksumOffset = 92;
+
+	/** checksums and file copies work in chunks this big */
+	private static final int ChunkSize = 1 << 20;
+
+	/**
+	 * Hashes everything in a conformation space that determines its energies,
+	 * so energy matrix files for a different conformation space can be detected.
+	 *
+	 * See {@link #writeConfSpace} for what's included.
+	 */
+	public static long hashConfSpace(ConfSpaceIteration confSpace) {
+		HashingOutputStream hasher = new HashingOutputStream();
+		try (DataOutputStream out = new DataOutputStream(hasher)) {
+			writeConfSpace(confSpace, out);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return hasher.hash;
+	}
+
+	/**
+	 * Writes a description of everything in a conformation space that determines its energies,
+	 * eg for hashing or for building cache keys.
+	 *
+	 * Includes the positions and conformations, and for {@link SimpleConfSpace}, the coordinates of every residue
+	 * in the strands, the shell residues, the flexibility types, and each conformation's template coordinates
+	 * and DOF bounds. Compiled conformation spaces are described by the 64-bit hash of their file contents,
+ * see {@link ConfSpace#contentHash}.
+	 */
+	public static void writeConfSpace(ConfSpaceIteration confSpace, DataOutput out)
+	throws IOException {
+
+		out.writeInt(confSpace.numPos());
+		for (int posi=0; posi<confSpace.numPos(); posi++) {
+			out.writeUTF(confSpace.name(posi));
+			out.writeInt(confSpace.numConf(posi));
+			for (int confi=0; confi<confSpace.numConf(posi); confi++) {
+				out.writeUTF(confSpace.confId(posi, confi));
+				out.writeUTF(confSpace.confType(posi, confi));
+			}
+		}
+
+		if (confSpace instanceof SimpleConfSpace) {
+			writeConfSpace((SimpleConfSpace)confSpace, out);
+		} else if (confSpace instanceof ConfSpace) {
+			out.writeLong(((ConfSpace)confSpace).contentHash());
+		} else {
+			throw new IllegalArgumentException("don't know how to describe conformation space: " + confSpace.getClass().getName());
+		}
+	}
+
+	private static void writeConfSpace(SimpleConfSpace confSpace, DataOutput out)
+	throws IOException {
+
+		// the structure, including the shell
+		for (Strand strand : confSpace.strands) {
+			out.writeInt(strand.mol.residues.size());
+			for (Residue res : strand.mol.residues) {
+				out.writeUTF(res.fullName);
+				writeDoubles(res.coords, out);
+			}
+			for (StrandFlex flex : confSpace.strandFlex.get(strand)) {
+				out.writeUTF(flex.getClass().getName());
+			}
+		}
+		out.writeDouble(confSpace.shellDist);
+		for (String resNum : new TreeSet<>(confSpace.shellResNumbers)) {
+			out.writeUTF(resNum);
+		}
+
+		// the conformations
+		for (SimpleConfSpace.Position pos : confSpace.positions) {
+			for (SimpleConfSpace.ResidueConf rc : pos.resConfs) {
+				writeDoubles(rc.template.templateRes.coords, out);
+				out.writeInt(rc.rotamerIndex != null ? rc.rotamerIndex : -1);
+				for (Map.Entry<String,double[]> entry : new TreeMap<>(rc.dofBounds).entrySet()) {
+					out.writeUTF(entry.getKey());
+					writeDoubles(entry.getValue(), out);
+				}
+			}
+		}
+	}
+
+	private static void writeDoubles(double[] vals, DataOutput out)
+	throws IOException {
+		out.writeInt(vals.length);
+		for (double val : vals) {
+			out.writeDouble(val);
+		}
+	}
+
+	/** a 64-bit FNV-1a hash of everything written to it, so big conf spaces don't collide much */
+	private static class HashingOutputStream extends OutputStream {
+
+		long hash = 0xcbf29ce484222325L;
+
+		@Override
+		public void write(int b) {
+			hash ^= b & 0xff;
+			hash *= 0x100000001b3L;
+		}
+	}
+
+	/**
+	 * Writes the energy matrix to the file.
+	 *
+	 * The file is written next to its destination first and then moved into place,
+	 * so readers in other processes never see a partially-written file.
+	 */
+	public static void write(EnergyMatrix emat, long confSpaceHash, byte[] key, File file)
+	throws CantWriteException {
+
+		if (emat.hasHigherOrderTerms()) {
+			throw new IllegalArgumentException("energy matrix files don't support HigherTupleFinder terms, use tuple trees instead");
+		}
+		if (key == null) {
+			key = new byte[0];
+		}
+
+		int numPos = emat.getNumPos();
+		int headerSize = padTo8(FixedHeaderSize + numPos*Integer.BYTES + key.length);
+		long numOneBody = emat.getNumOneBody();
+		long numPairwise = emat.getNumPairwise();
+		long higherOffset = headerSize + (numOneBody + numPairwise)*Double.BYTES;
+
+		Path path = file.toPath().toAbsolutePath();
+		Path tempPath = path.resolveSibling(path.getFileName() + ".tmp" + ProcessHandle.current().pid());
+
+		try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+			// write the energies after the header, and checksum them on the way
+			channel.position(headerSize);
+			ChecksummedWriter out = new ChecksummedWriter(channel);
+			double[] row = new double[Arrays.stream(emat.getNumConfAtPos()).max().orElse(0)];
+			for (int pos1=0; pos1<numPos; pos1++) {
+				for (int rc1=0; rc1<emat.getNumConfAtPos(pos1); rc1++) {
+					out.putDouble(emat.getOneBodyDouble(pos1, rc1));
+				}
+			}
+			for (int pos1=0; pos1<numPos; pos1++) {
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc1=0; rc1<emat.getNumConfAtPos(pos1); rc1++) {
+						// pos2 < pos1, so this row is contiguous in the matrix order
+						emat.getPairwiseRow(pos1, rc1, pos2, row);
+						for (int rc2=0; rc2<emat.getNumConfAtPos(pos2); rc2++) {
+							out.putDouble(row[rc2]);
+						}
+					}
+				}
+			}
+			long[] numHigher = { 0 };
+			forEachHigherOrderTuple(emat, (tuple, energy) -> {
+				out.putInt(tuple.size());
+				for (int i=0; i<tuple.size(); i++) {
+					out.putInt(tuple.pos.get(i));
+					out.putInt(tuple.RCs.get(i));
+				}
+				out.putDouble(energy);
+				numHigher[0]++;
+			});
+			out.flush();
+			long fileSize = channel.position();
+
+			// then write the header
+			ByteBuffer header = ByteBuffer.allocate(headerSize).order(Order);
+			header.put(Magic);
+			header.putInt(CurrentVersion);
+			header.putInt(headerSize);
+			header.putLong(confSpaceHash);
+			header.putInt(numPos);
+			header.putInt(key.length);
+			header.putDouble(emat.getPruningInterval());
+			header.putDouble(emat.getConstTerm());
+			header.putLong(numOneBody);
+			header.putLong(numPairwise);
+			header.putLong(higherOffset);
+			header.putLong(numHigher[0]);
+			header.putLong(fileSize);
+			header.putInt((int)out.checksum.getValue());
+			header.putInt(0); // header checksum goes here
+			for (int pos=0; pos<numPos; pos++) {
+				header.putInt(emat.getNumConfAtPos(pos));
+			}
+			header.put(key);
+			header.putInt(HeaderChecksumOffset, checksumHeader(header));
+			header.rewind();
+			channel.position(0);
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+
+			channel.force(true);
+
+		} catch (IOException ex) {
+			tryDelete(tempPath);
+			throw new CantWriteException(file, ex);
+		} catch (UncheckedIOException ex) {
+			tryDelete(tempPath);
+			throw new CantWriteException(file, ex.getCause());
+		}
+
+		try {
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			tryDelete(tempPath);
+			throw new CantWriteException(file, ex);
+		}
+	}
+
+	/** returns true if the file starts with the energy matrix file magic bytes */
+	public static boolean isEnergyMatrixFile(File file) {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer buf = ByteBuffer.allocate(Magic.length);
+			while (buf.hasRemaining()) {
+				if (channel.read(buf) < 0) {
+					return false;
+				}
+			}
+			return Arrays.equals(buf.array(), Magic);
+		} catch (IOException ex) {
+			return false;
+		}
+	}
+
+	/**
+	 * Maps an energy matrix file without checking it against any conformation space.
+	 *
+	 * @return the energy matrix, or null if the file doesn't exist
+	 */
+	public static EnergyMatrix map(File file)
+	throws BadFileException {
+		return reallyMap(file, null, null);
+	}
+
+	/**
+	 * Maps an energy matrix file, after checking it was written for this conformation space and key.
+	 *
+	 * @return the energy matrix, or null if the file doesn't exist
+	 * @throws StaleFileException if the file was written for a different conf space, key, or file version
+	 * @throws BadFileException if the file is corrupt or not an energy matrix file
+	 */
+	public static EnergyMatrix map(File file, long confSpaceHash, byte[] key)
+	throws BadFileException {
+		return reallyMap(file, confSpaceHash, key != null ? key : new byte[0]);
+	}
+
+	private static EnergyMatrix reallyMap(File file, Long confSpaceHash, byte[] key)
+	throws BadFileException {
+
+		if (!file.exists()) {
+			return null;
+		}
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+			// read and check the header before mapping anything
+			ByteBuffer fixedHeader = readFully(channel, 0, FixedHeaderSize, file);
+			byte[] magic = new byte[Magic.length];
+			fixedHeader.get(magic);
+			if (!Arrays.equals(magic, Magic)) {
+				throw new BadFileException(file, "not an energy matrix file");
+			}
+			int version = fixedHeader.getInt();
+			if (version != CurrentVersion) {
+				throw new StaleFileException(file, "energy matrix file version " + version + " is not the current version " + CurrentVersion);
+			}
+			int headerSize = fixedHeader.getInt();
+			if (headerSize < FixedHeaderSize || headerSize > channel.size()) {
+				throw new BadFileException(file, "header is corrupt");
+			}
+			ByteBuffer header = readFully(channel, 0, headerSize, file);
+			if (header.getInt(HeaderChecksumOffset) != checksumHeader(header)) {
+				throw new BadFileException(file, "header is corrupt");
+			}
+			header.position(Magic.length + 2*Integer.BYTES);
+			long fileConfSpaceHash = header.getLong();
+			int numPos = header.getInt();
+			int keySize = header.getInt();
+			double pruningInterval = header.getDouble();
+			double constTerm = header.getDouble();
+			long numOneBody = header.getLong();
+			long numPairwise = header.getLong();
+			long higherOffset = header.getLong();
+			long numHigher = header.getLong();
+			long fileSize = header.getLong();
+			int dataChecksum = header.getInt();
+			header.getInt(); // header checksum, already checked
+			int[] numConfAtPos = new int[numPos];
+			for (int pos=0; pos<numPos; pos++) {
+				numConfAtPos[pos] = header.getInt();
+			}
+			byte[] fileKey = new byte[keySize];
+			header.get(fileKey);
+
+			// is the file for this conf space?
+			if (confSpaceHash != null) {
+				if (fileConfSpaceHash != confSpaceHash) {
+					throw new StaleFileException(file, "energy matrix was computed for a different conformation space");
+				}
+				if (!Arrays.equals(fileKey, key)) {
+					throw new StaleFileException(file, "energy matrix was computed with different settings");
+				}
+			}
+			if (fileSize != channel.size()) {
+				throw new BadFileException(file, "file is truncated or corrupt");
+			}
+
+			// map the whole file, it stays mapped until the energy matrix is garbage collected
+			MemorySegment segment = MemorySegment.mapFile(file.toPath(), 0, fileSize, FileChannel.MapMode.READ_ONLY, ResourceScope.newImplicitScope());
+			// (shared segments can't make ByteBuffers, so checksum through a small heap buffer)
+			CRC32C checksum = new CRC32C();
+			byte[] chunk = new byte[ChunkSize];
+			MemorySegment chunkSegment = MemorySegment.ofArray(chunk);
+			for (long offset=headerSize; offset<fileSize; offset+=ChunkSize) {
+				int size = (int)Math.min(ChunkSize, fileSize - offset);
+				chunkSegment.asSlice(0, size).copyFrom(segment.asSlice(offset, size));
+				checksum.update(chunk, 0, size);
+			}
+			if ((int)checksum.getValue() != dataChecksum) {
+				throw new BadFileException(file, "energies are corrupt");
+			}
+
+			MappedEnergyMatrix emat = new MappedEnergyMatrix(
+				numPos,
+				numConfAtPos,
+				pruningInterval,
+				segment.asSlice(headerSize, numOneBody*Double.BYTES),
+				segment.asSlice(headerSize + numOneBody*Double.BYTES, numPairwise*Double.BYTES)
+			);
+			if (emat.getNumOneBody() != numOneBody || emat.getNumPairwise() != numPairwise) {
+				throw new BadFileException(file, "header is corrupt");
+			}
+			emat.setConstTerm(constTerm);
+
+			// copy the higher-order tuples onto the heap
+			long offset = higherOffset;
+			for (long i=0; i<numHigher; i++) {
+				int size = MemoryAccess.getIntAtOffset(segment, offset, Order);
+				offset += Integer.BYTES;
+				ArrayList<Integer> pos = new ArrayList<>(size);
+				ArrayList<Integer> rcs = new ArrayList<>(size);
+				for (int j=0; j<size; j++) {
+					pos.add(MemoryAccess.getIntAtOffset(segment, offset, Order));
+					rcs.add(MemoryAccess.getIntAtOffset(segment, offset + Integer.BYTES, Order));
+					offset += 2*Integer.BYTES;
+				}
+				emat.setTuple(new RCTuple(pos, rcs), MemoryAccess.getDoubleAtOffset(segment, offset, Order));
+				offset += Double.BYTES;
+			}
+
+			return emat;
+
+		} catch (IOException | IndexOutOfBoundsException ex) {
+			throw new BadFileException(file, "file is unreadable or corrupt", ex);
+		}
+	}
+
+	/**
+	 * Maps the energy matrix from the file if it matches the conformation space and key,
+	 * otherwise makes a new energy matrix and writes it to the file.
+	 *
+	 * Once the file holds the finished matrix, any {@link EnergyMatrixJournal} for it is deleted.
+	 */
+	public static EnergyMatrix readOrMake(File file, long confSpaceHash, byte[] key, Supplier<EnergyMatrix> factory) {
+
+		// try to read from the cache
+		try {
+
+			EnergyMatrix emat = map(file, confSpaceHash, key);
+			if (emat != null) {
+				log("read energy matrix from file: %s", file.getAbsolutePath());
+				EnergyMatrixJournal.fileFor(file).delete();
+				return emat;
+			}
+
+		} catch (StaleFileException ex) {
+			log("cached energy matrix is out of date (%s), will compute a new one", ex.getMessage());
+		} catch (BadFileException ex) {
+			log("WARNING: can't read energy matrix (%s), will compute a new one", ex.getMessage());
+		}
+
+		// make the energy matrix
+		EnergyMatrix emat = factory.get();
+
+		// energy matrix files can't hold HigherTupleFinder terms, so don't cache those matrices at all
+		if (emat.hasHigherOrderTerms()) {
+			log("WARNING: energy matrix has HigherTupleFinder terms which can't be written to file, will have to be computed again next time");
+			return emat;
+		}
+
+		// try to write to the cache
+		try {
+			write(emat, confSpaceHash, key, file);
+			log("wrote energy matrix to file: %s", file.getAbsolutePath());
+			EnergyMatrixJournal.fileFor(file).delete();
+		} catch (CantWriteException ex) {
+			ex.printStackTrace(System.out);
+			log("WARNING: can't write energy matrix, will have to be computed again next time");
+		}
+
+		return emat;
+	}
+
+	/** calls back with every higher-order tuple in the energy matrix, with positions in sorted order */
+	static void forEachHigherOrderTuple(EnergyMatrix emat, BiConsumer<RCTuple,Double> callback) {
+		if (!emat.hasHigherOrderTuples()) {
+			return;
+		}
+		for (int pos2=0; pos2<emat.getNumPos(); pos2++) {
+			for (int pos1=0; pos1<pos2; pos1++) {
+				for (int rc1=0; rc1<emat.getNumConfAtPos(pos1); rc1++) {
+					for (int rc2=0; rc2<emat.getNumConfAtPos(pos2); rc2++) {
+						TupleTree<Double> tree = emat.getHigherOrderTuples(pos1, rc1, pos2, rc2);
+						if (tree == null) {
+							continue;
+						}
+						for (RCTuple tuple : tree.makeTuplesList()) {
+							callback.accept(tuple, tree.get(tuple));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static int padTo8(int size) {
+		return (size + 7) & ~7;
+	}
+
+	private static int checksumHeader(ByteBuffer header) {
+		CRC32C checksum = new CRC32C();
+		ByteBuffer buf = header.duplicate();
+		buf.clear();
+		buf.limit(HeaderChecksumOffset);
+		checksum.update(buf);
+		buf.limit(header.capacity());
+		buf.position(HeaderChecksumOffset + Integer.BYTES);
+		checksum.update(buf);
+		return (int)checksum.getValue();
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int size, File file)
+	throws IOException, BadFileException {
+		ByteBuffer buf = ByteBuffer.allocate(size).order(Order);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf, position + buf.position()) < 0) {
+				throw new BadFileException(file, "file is truncated");
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	private static void tryDelete(Path path) {
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException ex) {
+			// we tried
+		}
+	}
+
+	/** buffers writes to the channel and checksums everything written */
+	private static class ChecksummedWriter {
+
+		final FileChannel channel;
+		final ByteBuffer buf = ByteBuffer.allocateDirect(ChunkSize).order(Order);
+		final CRC32C checksum = new CRC32C();
+
+		ChecksummedWriter(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void putDouble(double val) {
+			ensureRemaining(Double.BYTES);
+			buf.putDouble(val);
+		}
+
+		void putInt(int val) {
+			ensureRemaining(Integer.BYTES);
+			buf.putInt(val);
+		}
+
+		void ensureRemaining(int size) {
+			if (buf.remaining() < size) {
+				flush();
+			}
+		}
+
+		void flush() {
+			buf.flip();
+			checksum.update(buf.duplicate());
+			try {
+				while (buf.hasRemaining()) {
+					channel.write(buf);
+				}
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+			buf.clear();
+		}
+	}
+}
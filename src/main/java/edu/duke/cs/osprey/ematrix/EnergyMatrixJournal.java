@@ -0,0 +1,336 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of finished energy matrix fragments, so an interrupted
+ * energy matrix calculation can pick up where it left off.
+ *
+ * Each finished constant, single, or pair energy is appended as soon as its task finishes.
+ * When a calculation restarts with the same conformation space and settings,
+ * the journal replays the finished energies into the new matrix, and the calculator
+ * only computes the fragments that are missing.
+ *
+ * Every record has its own checksum, so a record torn by a killed process is detected
+ * and dropped (along with anything after it) instead of corrupting the matrix.
+ */
+public class EnergyMatrixJournal implements AutoCloseable {
+
+	private static final byte[] Magic = "OSPREMJL".getBytes(StandardCharsets.US_ASCII);
+
+	/** versions in files older than this are always stale */
+	public static final int CurrentVersion = 1;
+
+	private static final byte TypeConst = 0;
+	private static final byte TypeSingle = 1;
+	private static final byte TypePair = 2;
+
+	private static final int MaxRecordSize = 1 + 4*Integer.BYTES + Double.BYTES + Integer.BYTES;
+
+	/** returns the journal file used for the given energy matrix cache file */
+	public static File fileFor(File cacheFile) {
+		return new File(cacheFile.getPath() + ".journal");
+	}
+
+	public final File file;
+	public final EnergyMatrix emat;
+
+	private final BitSet finishedSingles;
+	private final BitSet finishedPairs;
+	private boolean finishedConst = false;
+	private int numReplayed = 0;
+
+	private final ByteBuffer record = ByteBuffer.allocate(MaxRecordSize);
+	private final CRC32C checksum = new CRC32C();
+	private DataOutputStream out;
+
+	/**
+	 * Opens the journal for the energy matrix, and replays any finished fragments into the matrix.
+	 * If the journal was written for a different conformation space or different settings, it's discarded.
+	 */
+	public EnergyMatrixJournal(File file, EnergyMatrix emat, long confSpaceHash, byte[] key) {
+
+		this.file = file;
+		this.emat = emat;
+		this.finishedSingles = new BitSet(emat.getNumOneBody());
+		this.finishedPairs = new BitSet(emat.getNumPairwise());
+
+		if (key == null) {
+			key = new byte[0];
+		}
+
+		try {
+
+			byte[] header = makeHeader(confSpaceHash, key);
+			long validSize = 0;
+			if (file.exists()) {
+				validSize = replay(header);
+			}
+
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				if (validSize <= 0) {
+
+					// start a new journal
+					raf.setLength(0);
+					raf.write(header);
+
+				} else {
+
+					// drop any torn records at the end
+					raf.setLength(validSize);
+				}
+				raf.getFD().sync();
+			}
+
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+
+		} catch (IOException ex) {
+			throw new UncheckedIOException("can't open energy matrix journal: " + file, ex);
+		}
+
+		if (numReplayed > 0) {
+			log("resumed energy matrix calculation from journal %s, %d fragments already finished", file, numReplayed);
+		}
+	}
+
+	private static byte[] makeHeader(long confSpaceHash, byte[] key) {
+		ByteBuffer buf = ByteBuffer.allocate(Magic.length + Integer.BYTES + Long.BYTES + Integer.BYTES + key.length);
+		buf.put(Magic);
+		buf.putInt(CurrentVersion);
+		buf.putLong(confSpaceHash);
+		buf.putInt(key.length);
+		buf.put(key);
+		return buf.array();
+	}
+
+	/** returns the size of the valid part of the journal, or 0 if the journal should be discarded */
+	private long replay(byte[] expectedHeader)
+	throws IOException {
+
+		// stream the records rather than reading the whole file, journals for big designs can be huge
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+
+			// check the header
+			byte[] header = new byte[expectedHeader.length];
+			try {
+				in.readFully(header);
+			} catch (EOFException ex) {
+				header = null;
+			}
+			if (!Arrays.equals(header, expectedHeader)) {
+				log("energy matrix journal %s is for a different calculation, ignoring it", file);
+				return 0;
+			}
+
+			long validSize = expectedHeader.length;
+			byte[] bytes = record.array();
+			while (true) {
+
+				// read the next record, stopping at the end of the file or at a torn record
+				int type = in.read();
+				if (type < 0) {
+					break;
+				}
+				int numInts;
+				switch (type) {
+					case TypeConst: numInts = 0; break;
+					case TypeSingle: numInts = 2; break;
+					case TypePair: numInts = 4; break;
+					default: return validSize;
+				}
+				int end = 1 + numInts*Integer.BYTES + Double.BYTES;
+				bytes[0] = (byte)type;
+				try {
+					in.readFully(bytes, 1, end + Integer.BYTES - 1);
+				} catch (EOFException ex) {
+					return validSize;
+				}
+
+				record.clear();
+				record.position(1);
+				int pos1 = 0, rc1 = 0, pos2 = 0, rc2 = 0;
+				if (numInts >= 2) {
+					pos1 = record.getInt();
+					rc1 = record.getInt();
+				}
+				if (numInts >= 4) {
+					pos2 = record.getInt();
+					rc2 = record.getInt();
+				}
+				double energy = record.getDouble();
+				int expectedChecksum = record.getInt();
+
+				checksum.reset();
+				checksum.update(bytes, 0, end);
+				if ((int)checksum.getValue() != expectedChecksum) {
+					return validSize;
+				}
+
+				// the record is good, apply it
+				try {
+					switch (type) {
+						case TypeConst:
+							emat.setConstTerm(energy);
+							finishedConst = true;
+						break;
+						case TypeSingle:
+							emat.setOneBody(pos1, rc1, energy);
+							finishedSingles.set(emat.getOneBodyIndex(pos1, rc1));
+						break;
+						case TypePair:
+							emat.setPairwise(pos1, rc1, pos2, rc2, energy);
+							finishedPairs.set(emat.getPairwiseIndex(pos1, rc1, pos2, rc2));
+						break;
+					}
+				} catch (RuntimeException ex) {
+					// garbage positions, the journal doesn't match the matrix
+					return validSize;
+				}
+				numReplayed++;
+				validSize += end + Integer.BYTES;
+			}
+			return validSize;
+		}
+	}
+
+	/** how many fragments were already finished when the journal was opened */
+	public int getNumReplayed() {
+		return numReplayed;
+	}
+
+	public synchronized int getNumFinishedSingles() {
+		return finishedSingles.cardinality();
+	}
+
+	public synchronized int getNumFinishedPairs() {
+		return finishedPairs.cardinality();
+	}
+
+	public synchronized boolean hasConst() {
+		return finishedConst;
+	}
+
+	public synchronized boolean hasSingle(int pos, int rc) {
+		return finishedSingles.get(emat.getOneBodyIndex(pos, rc));
+	}
+
+	public synchronized boolean hasPair(int pos1, int rc1, int pos2, int rc2) {
+		return finishedPairs.get(emat.getPairwiseIndex(pos1, rc1, pos2, rc2));
+	}
+
+	public synchronized void writeConst(double energy) {
+		record.clear();
+		record.put(TypeConst);
+		writeRecord(energy);
+		finishedConst = true;
+	}
+
+	public synchronized void writeSingle(int pos, int rc, double energy) {
+		record.clear();
+		record.put(TypeSingle);
+		record.putInt(pos);
+		record.putInt(rc);
+		writeRecord(energy);
+		finishedSingles.set(emat.getOneBodyIndex(pos, rc));
+	}
+
+	public synchronized void writePair(int pos1, int rc1, int pos2, int rc2, double energy) {
+		record.clear();
+		record.put(TypePair);
+		record.putInt(pos1);
+		record.putInt(rc1);
+		record.putInt(pos2);
+		record.putInt(rc2);
+		writeRecord(energy);
+		finishedPairs.set(emat.getPairwiseIndex(pos1, rc1, pos2, rc2));
+	}
+
+	private void writeRecord(double energy) {
+		record.putDouble(energy);
+		checksum.reset();
+		checksum.update(record.array(), 0, record.position());
+		record.putInt((int)checksum.getValue());
+		try {
+			out.write(record.array(), 0, record.position());
+		} catch (IOException ex) {
+			throw new UncheckedIOException("can't write to energy matrix journal: " + file, ex);
+		}
+	}
+
+	/**
+	 * Pushes buffered records to the OS, so they survive if this process gets killed.
+	 * Call this after each finished task, rather than after each fragment.
+	 */
+	public synchronized void flush() {
+		try {
+			out.flush();
+		} catch (IOException ex) {
+			throw new UncheckedIOException("can't write to energy matrix journal: " + file, ex);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		try {
+			out.close();
+		} catch (IOException ex) {
+			throw new UncheckedIOException("can't close energy matrix journal: " + file, ex);
+		}
+	}
+
+	/** closes the journal and deletes the file, eg after the finished matrix is safely in the cache */
+	public synchronized void delete() {
+		close();
+		file.delete();
+	}
+}
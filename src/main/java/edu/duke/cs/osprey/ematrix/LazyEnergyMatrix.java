@@ -73,8 +73,8 @@ public class LazyEnergyMatrix extends EnergyMatrix {
 	}
 	
     @Override
-    public Double getOneBody(int res, int conf) {
-    	double val = super.getOneBody(res, conf);
+    public double getOneBodyDouble(int res, int conf) {
+    	double val = super.getOneBodyDouble(res, conf);
     	if (hasVal(val)) {
     		return val;
     	}
@@ -84,8 +84,8 @@ public class LazyEnergyMatrix extends EnergyMatrix {
     }
 
 	@Override
-    public Double getPairwise(int res1, int conf1, int res2, int conf2) {
-    	double val = super.getPairwise(res1, conf1, res2, conf2);
+    public double getPairwiseDouble(int res1, int conf1, int res2, int conf2) {
+    	double val = super.getPairwiseDouble(res1, conf1, res2, conf2);
     	if (hasVal(val)) {
     		return val;
     	}
@@ -93,13 +93,22 @@ public class LazyEnergyMatrix extends EnergyMatrix {
     	super.setPairwise(res1, conf1, res2, conf2, val);
     	return val;
     }
+
+	@Override
+	public void getPairwiseRow(int res1, int conf1, int res2, double[] out) {
+		// values might not be computed yet, so look them up one at a time
+		int n2 = getNumConfAtPos(res2);
+		for (int conf2=0; conf2<n2; conf2++) {
+			out[conf2] = getPairwiseDouble(res1, conf1, res2, conf2);
+		}
+	}
 	
 	public boolean hasOneBody(int res, int conf) {
-		return hasVal(super.getOneBody(res, conf));
+		return hasVal(super.getOneBodyDouble(res, conf));
 	}
 	
 	public boolean hasPairwise(int res1, int conf1, int res2, int conf2) {
-		return hasVal(super.getPairwise(res1, conf1, res2, conf2));
+		return hasVal(super.getPairwiseDouble(res1, conf1, res2, conf2));
 	}
 	
 	public void clear() {
@@ -0,0 +1,215 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+import jdk.incubator.foreign.MemoryAccess;
+import jdk.incubator.foreign.MemorySegment;
+
+/**
+ * An energy matrix whose one-body and pairwise energies live in a memory-mapped file,
+ * see {@link EnergyMatrixFile}.
+ *
+ * The energies never get copied onto the Java heap, and the OS can share the mapped pages
+ * between all the processes on a machine that read the same file.
+ * The file is never written though. If anything modifies the matrix, the energies are first copied onto the heap,
+ * and from then on the matrix works just like a regular {@link EnergyMatrix}.
+ *
+ * Higher-order tuples are small and sparse, so they're still kept on the heap.
+ */
+public class MappedEnergyMatrix extends EnergyMatrix {
+
+	private static final long serialVersionUID = -2751690457712398012L;
+
+	private static final ByteOrder Order = EnergyMatrixFile.Order;
+
+	// the mapping can't be serialized, see writeReplace()
+	private final transient MemorySegment oneBody;
+	private final transient MemorySegment pairwise;
+
+	// true once the energies have been copied to the heap
+	// volatile, so readers that see it also see the filled heap arrays, and stop reading the mapping
+	private transient volatile boolean copied = false;
+
+	MappedEnergyMatrix(int numPos, int[] numConfAtPos, double pruningInterval, MemorySegment oneBody, MemorySegment pairwise) {
+		super(numPos, numConfAtPos, pruningInterval);
+		this.oneBody = oneBody;
+		this.pairwise = pairwise;
+	}
+
+	@Override
+	protected void allocate(int numOneBody, int numPairwise) {
+		// don't allocate anything, the energies are in the mapped file
+	}
+
+	/** true iff the energies are still read from the mapped file, ie, nothing has modified the matrix */
+	public boolean isMapped() {
+		return !copied;
+	}
+
+	private synchronized void copyToHeap() {
+
+		if (copied) {
+			return;
+		}
+
+		// fill the heap arrays completely before publishing them by setting copied
+		super.allocate(getNumOneBody(), getNumPairwise());
+		for (int pos1=0; pos1<getNumPos(); pos1++) {
+			for (int rc1=0; rc1<getNumConfAtPos(pos1); rc1++) {
+				super.setOneBody(pos1, rc1, getOneBodyDouble(pos1, rc1));
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<getNumConfAtPos(pos2); rc2++) {
+						super.setPairwise(pos1, rc1, pos2, rc2, getPairwiseDouble(pos1, rc1, pos2, rc2));
+					}
+				}
+			}
+		}
+
+		copied = true;
+	}
+
+	@Override
+	public double getOneBodyDouble(int res, int conf) {
+		if (copied) {
+			return super.getOneBodyDouble(res, conf);
+		}
+		return MemoryAccess.getDoubleAtIndex(oneBody, getOneBodyIndex(res, conf), Order);
+	}
+
+	@Override
+	public void setOneBody(int res, int conf, Double val) {
+		copyToHeap();
+		super.setOneBody(res, conf, val);
+	}
+
+	@Override
+	public void setOneBody(int res, ArrayList<Double> val) {
+		copyToHeap();
+		super.setOneBody(res, val);
+	}
+
+	@Override
+	public double getPairwiseDouble(int res1, int conf1, int res2, int conf2) {
+		if (copied) {
+			return super.getPairwiseDouble(res1, conf1, res2, conf2);
+		}
+		return MemoryAccess.getDoubleAtIndex(pairwise, getPairwiseIndex(res1, conf1, res2, conf2), Order);
+	}
+
+	@Override
+	public void getPairwiseRow(int res1, int conf1, int res2, double[] out) {
+		if (copied) {
+			super.getPairwiseRow(res1, conf1, res2, out);
+			return;
+		}
+		int n2 = getNumConfAtPos(res2);
+		long index = getPairwiseIndex(res1, conf1, res2, 0);
+		long stride = res1 > res2 ? 1 : getNumConfAtPos(res1);
+		for (int conf2=0; conf2<n2; conf2++) {
+			out[conf2] = MemoryAccess.getDoubleAtIndex(pairwise, index, Order);
+			index += stride;
+		}
+	}
+
+	@Override
+	public void setPairwise(int res1, int conf1, int res2, int conf2, Double val) {
+		copyToHeap();
+		super.setPairwise(res1, conf1, res2, conf2, val);
+	}
+
+	@Override
+	public void setPairwise(int res1, int res2, ArrayList<ArrayList<Double>> val) {
+		copyToHeap();
+		super.setPairwise(res1, res2, val);
+	}
+
+	@Override
+	public void negate() {
+		copyToHeap();
+		super.negate();
+	}
+
+	@Override
+	public double sum() {
+		if (copied) {
+			return super.sum();
+		}
+		double sum = 0.0;
+		for (long i=0; i<getNumOneBody(); i++) {
+			sum += MemoryAccess.getDoubleAtIndex(oneBody, i, Order);
+		}
+		for (long i=0; i<getNumPairwise(); i++) {
+			sum += MemoryAccess.getDoubleAtIndex(pairwise, i, Order);
+		}
+		return sum;
+	}
+
+	@Override
+	public void read(DataInputStream in)
+	throws IOException {
+		copyToHeap();
+		super.read(in);
+	}
+
+	@Override
+	public void write(DataOutputStream out)
+	throws IOException {
+		if (copied) {
+			super.write(out);
+			return;
+		}
+		out.writeDouble(getConstTerm());
+		for (long i=0; i<getNumOneBody(); i++) {
+			out.writeDouble(MemoryAccess.getDoubleAtIndex(oneBody, i, Order));
+		}
+		for (long i=0; i<getNumPairwise(); i++) {
+			out.writeDouble(MemoryAccess.getDoubleAtIndex(pairwise, i, Order));
+		}
+	}
+
+	/** serialize a copy of the energies on the heap instead, since we can't send the mapping anywhere */
+	private Object writeReplace()
+	throws ObjectStreamException {
+		EnergyMatrix copy = new EnergyMatrix(this);
+		EnergyMatrixFile.forEachHigherOrderTuple(this, copy::setTuple);
+		return copy;
+	}
+}
@@ -32,8 +32,13 @@
 
 package edu.duke.cs.osprey.ematrix;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
@@ -94,6 +99,18 @@ public class SimpleReferenceEnergies implements Serializable {
 	private String makeKey(int pos, String resType) {
 		return "" + pos + "-" + resType;
 	}
+
+	/** writes the energies in sorted order, so equal reference energies always write the same bytes */
+	public void write(DataOutput out)
+	throws IOException {
+		List<String> keys = new ArrayList<>(energies.keySet());
+		Collections.sort(keys);
+		out.writeInt(keys.size());
+		for (String key : keys) {
+			out.writeUTF(key);
+			out.writeDouble(energies.get(key));
+		}
+	}
 	
 	public double getOffset(SimpleConfSpace confSpace, int pos, int rc) {
 		String resType = confSpace.positions.get(pos).resConfs.get(rc).template.name;
@@ -32,7 +32,10 @@
 
 package edu.duke.cs.osprey.ematrix;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -44,7 +47,6 @@ import edu.duke.cs.osprey.energy.EnergyCalculator;
 import edu.duke.cs.osprey.energy.ResidueInteractions;
 import edu.duke.cs.osprey.parallelism.Cluster;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
-import edu.duke.cs.osprey.tools.ObjectIO;
 import edu.duke.cs.osprey.tools.Progress;
 
 import static edu.duke.cs.osprey.tools.Log.log;
@@ -164,23 +166,56 @@ public class SimplerEnergyMatrixCalculator {
 			}
 
 			if (cacheFile != null) {
-				return ObjectIO.readOrMake(
+				long confSpaceHash = EnergyMatrixFile.hashConfSpace(confEcalc.confSpaceIteration());
+				byte[] key = makeCacheKey();
+				return EnergyMatrixFile.readOrMake(
 					cacheFile,
-					EnergyMatrix.class,
-					"energy matrix",
-					(emat) -> emat.matches(confEcalc.confSpace),
-					(context) -> reallyCalcEnergyMatrix()
+					confSpaceHash,
+					key,
+					() -> {
+						// checkpoint finished fragments as we go, so an interrupted calculation can resume
+						EnergyMatrix emat = new EnergyMatrix(confEcalc.confSpaceIteration());
+						try (EnergyMatrixJournal journal = new EnergyMatrixJournal(EnergyMatrixJournal.fileFor(cacheFile), emat, confSpaceHash, key)) {
+							reallyCalcEnergyMatrix(emat, journal);
+						}
+						return emat;
+					}
 				);
 			} else {
-				return reallyCalcEnergyMatrix();
+				EnergyMatrix emat = new EnergyMatrix(confEcalc.confSpaceIteration());
+				reallyCalcEnergyMatrix(emat, null);
+				return emat;
 			}
 		}
 	}
 	
-	private EnergyMatrix reallyCalcEnergyMatrix() {
+	/**
+	 * Collect the energy matrix calculation settings into a key for the cache file,
+	 * so we can tell if the cached energy matrix is stale or not.
+	 */
+	byte[] makeCacheKey() {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(buf)) {
+			out.writeBoolean(confEcalc.ecalc.isMinimizing);
+			out.writeInt(confEcalc.epart.ordinal());
+			out.writeInt(confEcalc.eref != null ? confEcalc.eref.hashCode() : 0);
+			out.writeBoolean(confEcalc.addResEntropy);
+			out.writeBoolean(confEcalc.addShellInters);
+			out.writeDouble(tripleCorrectionThreshold != null ? tripleCorrectionThreshold : Double.NaN);
+			out.writeDouble(quadCorrectionThreshold != null ? quadCorrectionThreshold : Double.NaN);
+			out.writeBoolean(calcConstantTerm);
+		} catch (IOException ex) {
+			throw new RuntimeException(ex);
+		}
+		return buf.toByteArray();
+	}
 
-		// allocate the new matrix
-		EnergyMatrix emat = new EnergyMatrix(confEcalc.confSpaceIteration());
+	/**
+	 * Calculates all the energies in the matrix.
+	 * If a journal is given, fragments already in the journal are skipped,
+	 * and newly finished fragments are written to it.
+	 */
+	private void reallyCalcEnergyMatrix(EnergyMatrix emat, EnergyMatrixJournal journal) {
 
 		// count how much work there is to do (roughly based on number of residue pairs)
 		final int constCost = confEcalc.makeShellInters().size();
@@ -199,7 +234,9 @@ public class SimplerEnergyMatrixCalculator {
 		final int numConst = calcConstantTerm ? 1 : 0;
 		final int numSingles = confEcalc.confSpaceIteration().countSingles();
 		final int numPairs = confEcalc.confSpaceIteration().countPairs();
-		Progress progress = new Progress(numSingles*singleCost + numPairs*pairCost);
+		final int numFinishedSingles = journal != null ? journal.getNumFinishedSingles() : 0;
+		final int numFinishedPairs = journal != null ? journal.getNumFinishedPairs() : 0;
+		Progress progress = new Progress((long)(numSingles - numFinishedSingles)*singleCost + (long)(numPairs - numFinishedPairs)*pairCost);
 		
 		// some fragments can be big and some can be small
 		// try minimize thread sync overhead by not sending a bunch of small fragments in all separate tasks
@@ -234,14 +271,26 @@ public class SimplerEnergyMatrixCalculator {
 							RCTuple frag = fragments.get(i);
 							if (frag.size() == 0) {
 								emat.setConstTerm(energies.get(i));
+								if (journal != null) {
+									journal.writeConst(energies.get(i));
+								}
 							} else if (frag.size() == 1) {
 								emat.setOneBody(frag.pos.get(0), frag.RCs.get(0), energies.get(i));
+								if (journal != null) {
+									journal.writeSingle(frag.pos.get(0), frag.RCs.get(0), energies.get(i));
+								}
 							} else if (frag.size() == 2) {
 								emat.setPairwise(frag.pos.get(0), frag.RCs.get(0), frag.pos.get(1), frag.RCs.get(1), energies.get(i));
+								if (journal != null) {
+									journal.writePair(frag.pos.get(0), frag.RCs.get(0), frag.pos.get(1), frag.RCs.get(1), energies.get(i));
+								}
 							} else {
 								emat.setTuple(frag, energies.get(i));
 							}
 						}
+						if (journal != null) {
+							journal.flush();
+						}
 						
 						progress.incrementProgress(cost);
 					}
@@ -279,7 +328,8 @@ public class SimplerEnergyMatrixCalculator {
 		
 		// convert the workload into tasks for the task executor
 		log("Calculating energy matrix with %d entries", numConst + numSingles + numPairs);
-		if (calcConstantTerm) {
+		// (skip any fragments we already finished in an earlier run)
+		if (calcConstantTerm && (journal == null || !journal.hasConst())) {
 			batcher.getBatch().addConst();
 			batcher.submitIfFull();
 		}
@@ -287,15 +337,19 @@ public class SimplerEnergyMatrixCalculator {
 			for (int rc1=0; rc1<emat.getNumConfAtPos(pos1); rc1++) {
 				
 				// single
-				batcher.getBatch().addSingle(pos1, rc1);
-				batcher.submitIfFull();
+				if (journal == null || !journal.hasSingle(pos1, rc1)) {
+					batcher.getBatch().addSingle(pos1, rc1);
+					batcher.submitIfFull();
+				}
 				
 				for (int pos2=0; pos2<pos1; pos2++) {
 					for (int rc2=0; rc2<emat.getNumConfAtPos(pos2); rc2++) {
 
 						// pair
-						batcher.getBatch().addPair(pos1, rc1, pos2, rc2);
-						batcher.submitIfFull();
+						if (journal == null || !journal.hasPair(pos1, rc1, pos2, rc2)) {
+							batcher.getBatch().addPair(pos1, rc1, pos2, rc2);
+							batcher.submitIfFull();
+						}
 					}
 				}
 			}
@@ -310,8 +364,6 @@ public class SimplerEnergyMatrixCalculator {
 		} else if (tripleCorrectionThreshold != null) {
 			calcTripleCorrections(emat);
 		}
-
-		return emat;
 	}
 
 	private static class BatchTask extends Cluster.Task<List<Double>,BatchTask.Context> {
@@ -32,6 +32,7 @@
 
 package edu.duke.cs.osprey.ematrix;
 
+import edu.duke.cs.osprey.confspace.ImmutableRCTuple;
 import edu.duke.cs.osprey.confspace.RCTuple;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
@@ -103,7 +104,7 @@ public class UpdatingEnergyMatrix extends ProxyEnergyMatrix {
             int posNum = tuppos.get(indexInTuple);
             int RCNum = tupRCs.get(indexInTuple);
 
-            energy += getOneBody(posNum,RCNum);
+            energy += getOneBodyDouble(posNum,RCNum);
         }
 
         for(int indexInTuple=0; indexInTuple<numPosInTuple; indexInTuple++){
@@ -114,7 +115,7 @@ public class UpdatingEnergyMatrix extends ProxyEnergyMatrix {
                 int pos2 = tuppos.get(index2);
                 int rc2 = tupRCs.get(index2);
 
-                energy += getPairwise(posNum,RCNum,pos2,rc2);
+                energy += getPairwiseDouble(posNum,RCNum,pos2,rc2);
 
             }
         }
@@ -132,7 +133,7 @@ public class UpdatingEnergyMatrix extends ProxyEnergyMatrix {
     //and RC index for that residue and AA type (rotamer index for AA type if rigid backbone,
     //otherwise defined in the ConfSearchSpace)
     //RETURN ERROR IF RES1 AND RES2 ARE NOT SINGLE RESIDUES
-    return getPairwise(res1, index1, res2, index2);
+    return getPairwiseDouble(res1, index1, res2, index2);
     }
      */
     //intra+shell similar...
@@ -143,7 +144,7 @@ public class UpdatingEnergyMatrix extends ProxyEnergyMatrix {
         //with RCs whose indices in tup are < curIndex
         double E = 0;
         //E += super.internalEHigherOrder(tup, curIndex, htf);
-        List<TupE> confCorrections = corrections.getCorrections(tup);
+        List<TupE> confCorrections = corrections.getCorrections(ImmutableRCTuple.of(tup));
         if(confCorrections.size() > 0) {
             double corr = processCorrections(confCorrections);
             E += corr;
@@ -157,24 +158,31 @@ public class UpdatingEnergyMatrix extends ProxyEnergyMatrix {
         double sum = 0;
         // Attempt 1: be greedy and start from the largest correction you
         // can get instead of trying to solve the NP-Complete problem.
-        Set<Integer> usedPositions = new HashSet<>();
-        List<TupE> usedCorrections = new ArrayList<>();
+        // (track used positions in a flag array instead of a hash set, so we don't box every position)
+        boolean[] usedPositions = new boolean[numPos];
+        int numUsedPositions = 0;
+        List<TupE> usedCorrections = debug ? new ArrayList<>() : null;
         int numApplied = 0;
         for(TupE correction: confCorrections) {
-            if (usedPositions.size() >= numPos) {
+            if (numUsedPositions >= numPos) {
                 break;
             }
-            Collection<Integer> positions = correction.tup.pos;
+            ArrayList<Integer> positions = correction.tup.pos;
+            int numPositions = positions.size();
             boolean noIntersections = true;
-            for(int position : positions) {
-                if(usedPositions.contains(position)) {
+            for(int i=0; i<numPositions; i++) {
+                if(usedPositions[positions.get(i)]) {
                     noIntersections = false;
                     break;
                 }
             }
             if(noIntersections) {
-                usedPositions.addAll(correction.tup.pos);
-                usedCorrections.add(correction);
+                for(int i=0; i<numPositions; i++) {
+                    usedPositions[positions.get(i)] = true;
+                }
+                numUsedPositions += numPositions;
+                if(debug)
+                    usedCorrections.add(correction);
                 //System.out.println("Applying correction "+correction.tup.stringListing()+":"+correction.E);
                 numApplied++;
                 sum += correction.E;
@@ -223,7 +231,7 @@ public class UpdatingEnergyMatrix extends ProxyEnergyMatrix {
         public void insert(TupE correction) {
             if(debug)
                 checkRCTuple(correction.tup);
-            root.insert(correction, 0);
+            root.insert(correction, ImmutableRCTuple.of(correction.tup), 0);
             numCorrections++;
         }
 
@@ -238,15 +246,25 @@ public class UpdatingEnergyMatrix extends ProxyEnergyMatrix {
             }
         }
 
+        /**
+         * NOTE: unlike earlier versions, the query tuple is not sorted in-place
+         */
         public List<TupE> getCorrections(RCTuple query) {
+            return getCorrections(ImmutableRCTuple.of(query));
+        }
+
+        public List<TupE> getCorrections(ImmutableRCTuple query) {
             List<TupE> corrections = new ArrayList<>();
-            root.populateCorrections(query.sorted(), corrections);
+            root.populateCorrections(query, corrections);
             return corrections;
         }
 
         public boolean contains(RCTuple query) {
-            return root.contains(query.sorted(), 0);
+            return contains(ImmutableRCTuple.of(query));
+        }
 
+        public boolean contains(ImmutableRCTuple query) {
+            return root.contains(query, 0);
         }
 
         public int size() {
@@ -261,7 +279,10 @@ public class UpdatingEnergyMatrix extends ProxyEnergyMatrix {
             int position = -1;
             List<SimpleConfSpace.Position> positions;
             List<TupE> corrections = new ArrayList<>();
-            Map<Integer, TupleTrieNode> children = new HashMap<>();
+
+            // children are indexed by RC, so lookups don't need to box anything
+            TupleTrieNode wildcard = null;
+            TupleTrieNode[] children = null;
 
             private TupleTrieNode(List<SimpleConfSpace.Position> positions, int positionIndex) {
                 this.positions = positions;
@@ -269,38 +290,46 @@ public class UpdatingEnergyMatrix extends ProxyEnergyMatrix {
                 if(positionIndex >= 0)
                     this.position = positions.get(positionIndex).index;
                 if(positionIndex+1 < positions.size())
-                    children.put(WILDCARD_RC, new TupleTrieNode(positions, positionIndex+1));
+                    wildcard = new TupleTrieNode(positions, positionIndex+1);
             }
 
-            public boolean contains(RCTuple query, int tupleIndex) {
+            private TupleTrieNode getChild(int rc) {
+                if (children == null || rc < 0 || rc >= children.length)
+                    return null;
+                return children[rc];
+            }
+
+            private void setChild(int rc, TupleTrieNode child) {
+                if (children == null)
+                    children = new TupleTrieNode[rc + 1];
+                else if (rc >= children.length)
+                    children = Arrays.copyOf(children, rc + 1);
+                children[rc] = child;
+            }
+
+            public boolean contains(ImmutableRCTuple query, int tupleIndex) {
                 /*
                 if(query.size() != positions.size())
                     System.err.println("Querying corrections for a partial conf. This is likely unintentional.");
                     */
-                debugPrint("Currently at "+this);
+                if(debug)
+                    debugPrint("Currently at "+this);
                 if(tupleIndex >= query.size())
                     return true;
-                int currentRC = query.RCs.get(tupleIndex);
-                int currentPos = query.pos.get(tupleIndex);
-                int indexedPos = -1;
-                int indexedRC = WILDCARD_RC;
-                if(tupleIndex > 0) {
-                    indexedRC = query.RCs.get(tupleIndex-1);
-                    indexedPos = query.pos.get(tupleIndex-1);
-                }
+                int currentRC = query.rc(tupleIndex);
+                int currentPos = query.pos(tupleIndex);
                 if(tupleIndex + 1 == positions.size())
                     return true;
                 int nextIndex = tupleIndex + 1;
                 if(position + 1 < currentPos) {
-                    if(children.get(WILDCARD_RC) == null)
+                    if(wildcard == null)
                         return false;
-                    return children.get(WILDCARD_RC).contains(query, tupleIndex);
+                    return wildcard.contains(query, tupleIndex);
                 }
-                if(!children.containsKey(currentRC))
+                TupleTrieNode child = getChild(currentRC);
+                if(child == null)
                     return false;
-                if(children.get(currentRC) == null)
-                    return false;
-                return children.get(currentRC).contains(query, nextIndex);
+                return child.contains(query, nextIndex);
             }
 
             public String toString()
@@ -314,73 +343,68 @@ public class UpdatingEnergyMatrix extends ProxyEnergyMatrix {
             private void debugPrint(String s)
             {if(debug)System.out.println(s);}
 
-            public void insert(TupE correction, int tupIndex)
+            public void insert(TupE correction, ImmutableRCTuple tup, int tupIndex)
             {
-                for(TupleTrieNode child: children.values()) {
-                    debugPrint(this+"->"+child);
-                }
-                for(TupE corr: corrections)
-                {
-                   debugPrint(corr.tup.stringListing()+":"+corr.E);
+                if(debug) {
+                    debugPrint(this + "->" + wildcard);
+                    for (TupE corr : corrections) {
+                        debugPrint(corr.tup.stringListing() + ":" + corr.E);
+                    }
                 }
-                RCTuple tup = correction.tup;
                 if(tupIndex >= tup.size()) {
-                    debugPrint("Reached end of tuple, inserting correction at "+this+".");
+                    if(debug)
+                        debugPrint("Reached end of tuple, inserting correction at "+this+".");
                     corrections.add(correction);
-                    for(TupE corr: corrections)
-                    {
-                        debugPrint(corr.tup.stringListing()+":"+corr.E);
-                    }
                     return;
                 }
-                int currentIndex = -1;
                 int nodeIndex = position;
-                int currentRC = WILDCARD_RC;
-                if(tupIndex > 0) {
-                    currentIndex = tup.pos.get(tupIndex - 1);
-                    currentRC = tup.pos.get(tupIndex - 1);
-                }
-                int childIndex = tup.pos.get(tupIndex);
-                int childRC = tup.RCs.get(tupIndex);
+                int childIndex = tup.pos(tupIndex);
+                int childRC = tup.rc(tupIndex);
                 if(nodeIndex+1 != childIndex) {
-                   debugPrint((nodeIndex+1)+"!="+childIndex+", continuing...");
-                    children.get(WILDCARD_RC).insert(correction, tupIndex);
+                    if(debug)
+                        debugPrint((nodeIndex+1)+"!="+childIndex+", continuing...");
+                    wildcard.insert(correction, tup, tupIndex);
                 }
                 else
                 {
-                    if(!children.containsKey(childRC)) {
-                        TupleTrieNode newChild = new TupleTrieNode(positions, positionIndex+1);
-                        newChild.rc = childRC;
-                        children.put(childRC, newChild);
-                        debugPrint("Added child "+newChild+" to "+this);
+                    TupleTrieNode child = getChild(childRC);
+                    if(child == null) {
+                        child = new TupleTrieNode(positions, positionIndex+1);
+                        child.rc = childRC;
+                        setChild(childRC, child);
+                        if(debug)
+                            debugPrint("Added child "+child+" to "+this);
                     }
-                    children.get(childRC).insert(correction, tupIndex+1);
+                    child.insert(correction, tup, tupIndex+1);
                 }
 
             }
 
 
-            public void populateCorrections (RCTuple query, List<TupE> output) {
-                debugPrint("Matching corrections for "+query.stringListing());
+            public void populateCorrections (ImmutableRCTuple query, List<TupE> output) {
+                if(debug)
+                    debugPrint("Matching corrections for "+query);
                 populateCorrections(query, output, 0);
             }
 
-            private void populateCorrections(RCTuple query, List<TupE> output, int tupleIndex) {
-                debugPrint("Currently at "+this);
+            private void populateCorrections(ImmutableRCTuple query, List<TupE> output, int tupleIndex) {
+                if(debug)
+                    debugPrint("Currently at "+this);
                 if(corrections.size() > 0)
                 {
                     output.addAll(corrections);
-                    debugPrint("Adding corrections from "+this);
+                    if(debug)
+                        debugPrint("Adding corrections from "+this);
                 }
                 if(tupleIndex >= query.size())
                     return;
-                int currentRC = query.RCs.get(tupleIndex);
-                int currentPos = query.pos.get(tupleIndex);
+                int currentRC = query.rc(tupleIndex);
+                int currentPos = query.pos(tupleIndex);
                 int indexedPos = -1;
                 int indexedRC = WILDCARD_RC;
                 if(tupleIndex > 0) {
-                    indexedRC = query.RCs.get(tupleIndex-1);
-                    indexedPos = query.pos.get(tupleIndex-1);
+                    indexedRC = query.rc(tupleIndex-1);
+                    indexedPos = query.pos(tupleIndex-1);
                 }
                 if(indexedPos > position || (indexedPos == position && indexedRC!= rc && rc != WILDCARD_RC))
                     System.err.println("Error in trie traversal.");
@@ -389,12 +413,15 @@ public class UpdatingEnergyMatrix extends ProxyEnergyMatrix {
                 int nextIndex = tupleIndex + 1;
                 if(position + 1 < currentPos)
                     nextIndex = tupleIndex;
-                if(position + 1 == currentPos && children.containsKey(currentRC))
-                    children.get(currentRC).populateCorrections(query, output, nextIndex);
+                if(position + 1 == currentPos) {
+                    TupleTrieNode child = getChild(currentRC);
+                    if(child != null)
+                        child.populateCorrections(query, output, nextIndex);
+                }
                 // Also branch on wildcard.
-                if(!children.containsKey(WILDCARD_RC))
-                    children.put(WILDCARD_RC, new TupleTrieNode(positions, positionIndex+1));
-                children.get(WILDCARD_RC).populateCorrections(query, output, nextIndex);
+                // (only the deepest nodes have no wildcard, and they never have any more query positions to match)
+                if(wildcard != null)
+                    wildcard.populateCorrections(query, output, nextIndex);
             }
         }
 
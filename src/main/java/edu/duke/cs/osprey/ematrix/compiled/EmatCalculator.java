@@ -3,14 +3,19 @@ package edu.duke.cs.osprey.ematrix.compiled;
 import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
 import edu.duke.cs.osprey.confspace.compiled.PosInter;
 import edu.duke.cs.osprey.confspace.compiled.PosInterDist;
+import edu.duke.cs.osprey.ematrix.BlockedEnergyMatrix;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.EnergyMatrixFile;
+import edu.duke.cs.osprey.ematrix.EnergyMatrixJournal;
 import edu.duke.cs.osprey.ematrix.SimpleReferenceEnergies;
 import edu.duke.cs.osprey.energy.compiled.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.compiled.PosInterGen;
+import edu.duke.cs.osprey.gpu.Structs.Precision;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.tools.Progress;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.List;
 
 import static edu.duke.cs.osprey.tools.Log.log;
@@ -55,6 +60,16 @@ public class EmatCalculator {
 		 */
 		private File cacheFile = null;
 
+		/**
+		 * If not null, store the energy matrix in position pair blocks with this precision,
+		 * see {@link BlockedEnergyMatrix}.
+		 *
+		 * Blocked storage is needed for conf spaces with more than 2^31 pairwise energies,
+		 * and Float32 precision halves the memory needed for the energy matrix.
+		 * Cache files only support the default storage, so blocked storage can't be used with a cache file.
+		 */
+		private Precision blockedPrecision = null;
+
 		public Builder(ConfEnergyCalculator confEcalc) {
 			this.confEcalc = confEcalc;
 		}
@@ -84,13 +99,22 @@ public class EmatCalculator {
 			return this;
 		}
 
+		public Builder setBlockedPrecision(Precision val) {
+			blockedPrecision = val;
+			return this;
+		}
+
 		public EmatCalculator build() {
+			if (blockedPrecision != null && cacheFile != null) {
+				throw new IllegalArgumentException("blocked energy matrices can't be used with cache files");
+			}
 			return new EmatCalculator(
 				confEcalc,
 				new PosInterGen(posInterDist, eref),
 				minimize,
 				includeStaticStatic,
-				cacheFile
+				cacheFile,
+				blockedPrecision
 			);
 		}
 	}
@@ -121,30 +145,14 @@ public class EmatCalculator {
 			out.writeBoolean(includeStaticStatic);
 		}
 
-		static EmatKey read(DataInputStream in)
-		throws IOException {
-			var key = new EmatKey();
-			key.version = in.readInt();
-			key.confSpaceHash = in.readInt();
-			key.posInterDistId = in.readInt();
-			key.erefHash = in.readInt();
-			key.minimize = in.readBoolean();
-			key.includeStaticStatic = in.readBoolean();
-			return key;
-		}
-
-		@Override
-		public boolean equals(Object other) {
-			return equals((EmatKey)other);
-		}
-
-		boolean equals(EmatKey other) {
-			return this.version == other.version
-				&& this.confSpaceHash == other.confSpaceHash
-				&& this.posInterDistId == other.posInterDistId
-				&& this.erefHash == other.erefHash
-				&& this.minimize == other.minimize
-				&& this.includeStaticStatic == other.includeStaticStatic;
+		byte[] toBytes() {
+			var buf = new ByteArrayOutputStream();
+			try (var out = new DataOutputStream(buf)) {
+				write(out);
+			} catch (IOException ex) {
+				throw new RuntimeException(ex);
+			}
+			return buf.toByteArray();
 		}
 	}
 
@@ -154,14 +162,16 @@ public class EmatCalculator {
 	public final boolean minimize;
 	public final boolean includeStaticStatic;
 	public final File cacheFile;
+	public final Precision blockedPrecision;
 
-	private EmatCalculator(ConfEnergyCalculator confEcalc, PosInterGen posInterGen, boolean minimize, boolean includeStaticStatic, File cacheFile) {
+	private EmatCalculator(ConfEnergyCalculator confEcalc, PosInterGen posInterGen, boolean minimize, boolean includeStaticStatic, File cacheFile, Precision blockedPrecision) {
 
 		this.confEcalc = confEcalc;
 		this.posInterGen = posInterGen;
 		this.minimize = minimize;
 		this.includeStaticStatic = includeStaticStatic;
 		this.cacheFile = cacheFile;
+		this.blockedPrecision = blockedPrecision;
 	}
 
 	public EnergyMatrix calc() {
@@ -172,7 +182,14 @@ public class EmatCalculator {
 
 		// if not using cache, just calculate the emat directly
 		if (cacheFile == null) {
-			return reallyCalc(tasks);
+			EnergyMatrix emat;
+			if (blockedPrecision != null) {
+				emat = new BlockedEnergyMatrix(confEcalc.confSpace(), blockedPrecision);
+			} else {
+				emat = new EnergyMatrix(confEcalc.confSpace());
+			}
+			reallyCalc(tasks, emat, null);
+			return emat;
 		}
 
 		// using the cache, generate the cache key
@@ -184,52 +201,30 @@ public class EmatCalculator {
 		key.minimize = minimize;
 		key.includeStaticStatic = includeStaticStatic;
 
-		// check the cache file
-		if (cacheFile.exists()) {
-
-			log("reading energy matrix from file: %s", cacheFile);
-
-			try (var in = new DataInputStream(new FileInputStream(cacheFile))) {
-
-				// check the key
-				if (EmatKey.read(in).equals(key)) {
-
-					// cache hit, read the emat from the file
-					EnergyMatrix emat = new EnergyMatrix(confEcalc.confSpace());
-					emat.read(in);
-					return emat;
-
-				} else {
-					log("cached energy matrix is out of date, ignoring");
+		// map the emat from the cache file, or calculate a new one and cache it
+		long confSpaceHash = EnergyMatrixFile.hashConfSpace(confEcalc.confSpace());
+		byte[] keyBytes = key.toBytes();
+		return EnergyMatrixFile.readOrMake(
+			cacheFile,
+			confSpaceHash,
+			keyBytes,
+			() -> {
+				// checkpoint finished fragments as we go, so an interrupted calculation can resume
+				EnergyMatrix emat = new EnergyMatrix(confEcalc.confSpace());
+				try (var journal = new EnergyMatrixJournal(EnergyMatrixJournal.fileFor(cacheFile), emat, confSpaceHash, keyBytes)) {
+					reallyCalc(tasks, emat, journal);
 				}
-
-			} catch (IOException ex) {
-				throw new RuntimeException("can't open emat cache file", ex);
+				return emat;
 			}
-		}
-
-		// cache miss, calculate a new energy matrix
-		var emat = reallyCalc(tasks);
-
-		// cache it
-		try (var out = new DataOutputStream(new FileOutputStream(cacheFile))) {
-
-			key.write(out);
-			emat.write(out);
-
-			log("wrote energy matrix to file: %s", cacheFile);
-
-		} catch (IOException ex) {
-			throw new RuntimeException("can't write emat cache file", ex);
-		}
-
-		return emat;
+		);
 	}
 
-	private EnergyMatrix reallyCalc(TaskExecutor tasks) {
-
-		// allocate the new matrix
-		EnergyMatrix emat = new EnergyMatrix(confEcalc.confSpace());
+	/**
+	 * Calculates all the energies in the matrix.
+	 * If a journal is given, fragments already in the journal are skipped,
+	 * and newly finished fragments are written to it.
+	 */
+	private void reallyCalc(TaskExecutor tasks, EnergyMatrix emat, EnergyMatrixJournal journal) {
 
 		ConfSpace confSpace = confEcalc.confSpace();
 
@@ -247,59 +242,150 @@ public class EmatCalculator {
 		}
 		int numSingles = confSpace.countSingles();
 		int numPairs = confSpace.countPairs();
-		Progress progress = new Progress(staticCost + numSingles*singleCost + numPairs*pairCost);
+		int numFinishedSingles = journal != null ? journal.getNumFinishedSingles() : 0;
+		int numFinishedPairs = journal != null ? journal.getNumFinishedPairs() : 0;
+		Progress progress = new Progress(staticCost + (numSingles - numFinishedSingles)*singleCost + (numPairs - numFinishedPairs)*pairCost);
 		log("Calculating energy matrix with %d entries", 1 + numSingles + numPairs);
 
 		// static-static energy
 		if (includeStaticStatic) {
-			List<PosInter> inters = posInterGen.staticStatic();
-			int[] conf = confSpace.assign();
-			double energy = confEcalc.calcOrMinimizeEnergy(conf, inters, minimize);
-			emat.setConstTerm(energy);
+			if (journal == null || !journal.hasConst()) {
+				List<PosInter> inters = posInterGen.staticStatic();
+				int[] conf = confSpace.assign();
+				double energy = confEcalc.calcOrMinimizeEnergy(conf, inters, minimize);
+				emat.setConstTerm(energy);
+				if (journal != null) {
+					journal.writeConst(energy);
+					journal.flush();
+				}
+			}
 		}
 		progress.incrementProgress(staticCost);
 
+		// group the fragments into batches, so the conf ecalc can amortize its setup costs
+		int batchSize = Math.max(1, confEcalc.maxBatchSize());
+		Batch batch = new Batch(batchSize);
 		for (int posi1=0; posi1<confSpace.numPos(); posi1++) {
-			final int fposi1 = posi1;
 			for (int confi1=0; confi1<confSpace.numConf(posi1); confi1++) {
-				final int fconfi1 = confi1;
 
 				// singles
-				tasks.submit(
-					() -> {
-						int[] assignments = confSpace.assign(fposi1, fconfi1);
-						List<PosInter> inters = posInterGen.single(confSpace, fposi1, fconfi1);
-						return confEcalc.calcOrMinimizeEnergy(assignments, inters, minimize);
-					},
-					energy -> {
-						emat.setOneBody(fposi1, fconfi1, energy);
-						progress.incrementProgress(singleCost);
+				if (journal == null || !journal.hasSingle(posi1, confi1)) {
+					batch.add(new Frag(posi1, confi1, Frag.NoPos, 0));
+					if (batch.isFull()) {
+						batch.submit(tasks, emat, journal, progress, singleCost, pairCost);
+						batch = new Batch(batchSize);
 					}
-				);
+				}
 
 				for (int posi2=0; posi2<posi1; posi2++) {
-					final int fposi2 = posi2;
-					for (int confi2=0; confi2<confSpace.numConf(fposi2); confi2++) {
-						final int fconfi2 = confi2;
+					for (int confi2=0; confi2<confSpace.numConf(posi2); confi2++) {
 
 						// pairs
-						tasks.submit(
-							() -> {
-								int[] assignments = confSpace.assign(fposi1, fconfi1, fposi2, fconfi2);
-								List<PosInter> inters = posInterGen.pair(confSpace, fposi1, fconfi1, fposi2, fconfi2);
-								return confEcalc.calcOrMinimizeEnergy(assignments, inters, minimize);
-							},
-							energy -> {
-								emat.setPairwise(fposi1, fconfi1, fposi2, fconfi2, energy);
-								progress.incrementProgress(pairCost);
+						if (journal == null || !journal.hasPair(posi1, confi1, posi2, confi2)) {
+							batch.add(new Frag(posi1, confi1, posi2, confi2));
+							if (batch.isFull()) {
+								batch.submit(tasks, emat, journal, progress, singleCost, pairCost);
+								batch = new Batch(batchSize);
 							}
-						);
+						}
 					}
 				}
 			}
 		}
+		if (!batch.isEmpty()) {
+			batch.submit(tasks, emat, journal, progress, singleCost, pairCost);
+		}
 		tasks.waitForFinish();
+	}
+
+	/** a single (when posi2 is NoPos) or a pair */
+	private static class Frag {
+
+		static final int NoPos = -1;
+
+		final int posi1;
+		final int confi1;
+		final int posi2;
+		final int confi2;
+
+		Frag(int posi1, int confi1, int posi2, int confi2) {
+			this.posi1 = posi1;
+			this.confi1 = confi1;
+			this.posi2 = posi2;
+			this.confi2 = confi2;
+		}
+
+		boolean isSingle() {
+			return posi2 == NoPos;
+		}
+	}
+
+	private class Batch {
+
+		final int capacity;
+		final List<Frag> frags;
 
-		return emat;
+		Batch(int capacity) {
+			this.capacity = capacity;
+			frags = new ArrayList<>(capacity);
+		}
+
+		void add(Frag frag) {
+			frags.add(frag);
+		}
+
+		boolean isFull() {
+			return frags.size() >= capacity;
+		}
+
+		boolean isEmpty() {
+			return frags.isEmpty();
+		}
+
+		void submit(TaskExecutor tasks, EnergyMatrix emat, EnergyMatrixJournal journal, Progress progress, long singleCost, long pairCost) {
+			ConfSpace confSpace = confEcalc.confSpace();
+			tasks.submit(
+				() -> {
+					List<ConfEnergyCalculator.MinimizationJob> jobs = new ArrayList<>(frags.size());
+					for (Frag frag : frags) {
+						if (frag.isSingle()) {
+							jobs.add(new ConfEnergyCalculator.MinimizationJob(
+								confSpace.assign(frag.posi1, frag.confi1),
+								posInterGen.single(confSpace, frag.posi1, frag.confi1)
+							));
+						} else {
+							jobs.add(new ConfEnergyCalculator.MinimizationJob(
+								confSpace.assign(frag.posi1, frag.confi1, frag.posi2, frag.confi2),
+								posInterGen.pair(confSpace, frag.posi1, frag.confi1, frag.posi2, frag.confi2)
+							));
+						}
+					}
+					confEcalc.calcOrMinimizeEnergies(jobs, minimize);
+					return jobs;
+				},
+				jobs -> {
+					for (int i=0; i<frags.size(); i++) {
+						Frag frag = frags.get(i);
+						double energy = jobs.get(i).energy;
+						if (frag.isSingle()) {
+							emat.setOneBody(frag.posi1, frag.confi1, energy);
+							if (journal != null) {
+								journal.writeSingle(frag.posi1, frag.confi1, energy);
+							}
+							progress.incrementProgress(singleCost);
+						} else {
+							emat.setPairwise(frag.posi1, frag.confi1, frag.posi2, frag.confi2, energy);
+							if (journal != null) {
+								journal.writePair(frag.posi1, frag.confi1, frag.posi2, frag.confi2, energy);
+							}
+							progress.incrementProgress(pairCost);
+						}
+					}
+					if (journal != null) {
+						journal.flush();
+					}
+				}
+			);
+		}
 	}
 }
@@ -523,6 +523,70 @@ public class ConfEnergyCalculator {
 		tasks.submit(() -> calcEnergy(conf, table, supplier), listener);
 	}
 
+	/**
+	 * How many conformations callers should group into one call to {@link #calcEnergies(List)}.
+	 * Implementations that can amortize per-conformation setup costs across a batch should return more than 1.
+	 */
+	public int maxBatchSize() {
+		return 1;
+	}
+
+	/**
+	 * Calculate energies of a batch of scored conformations, on the calling thread.
+	 * Residue interactions are generated from the energy partition.
+	 *
+	 * @param confs The conformations to analyze
+	 * @return The conformations with attached energies, in the same order
+	 */
+	public List<EnergiedConf> calcEnergies(List<ScoredConf> confs) {
+		List<EnergiedConf> econfs = new ArrayList<>(confs.size());
+		for (ScoredConf conf : confs) {
+			econfs.add(calcEnergy(conf));
+		}
+		return econfs;
+	}
+
+	/**
+	 * Version of {@link #calcEnergies(List)} that uses the specified ConfDB table as a cache.
+	 * Only the conformations missing from the table are sent to {@link #calcEnergies(List)}.
+	 */
+	public List<EnergiedConf> calcEnergies(List<ScoredConf> confs, ConfDB.ConfTable table) {
+
+		// no confDB? just compute the energies
+		if (table == null) {
+			return calcEnergies(confs);
+		}
+
+		// check the confDB for the energies
+		List<EnergiedConf> econfs = new ArrayList<>(confs.size());
+		List<Integer> missIndices = new ArrayList<>();
+		List<ScoredConf> misses = new ArrayList<>();
+		for (ScoredConf conf : confs) {
+			EnergiedConf econf = table.getEnergied(conf);
+			if (econf != null) {
+				numConfDBReads.incrementAndGet();
+			} else {
+				missIndices.add(econfs.size());
+				misses.add(conf);
+			}
+			econfs.add(econf);
+		}
+		if (misses.isEmpty()) {
+			return econfs;
+		}
+
+		// compute the cache misses in one batch
+		List<EnergiedConf> computed = calcEnergies(misses);
+		for (int i=0; i<computed.size(); i++) {
+			EnergiedConf econf = computed.get(i);
+			econfs.set(missIndices.get(i), econf);
+			table.setBounds(econf, TimeTools.getTimestampNs());
+		}
+		table.flush();
+
+		return econfs;
+	}
+
 
 	public List<EnergiedConf> calcAllEnergies(List<ScoredConf> confs) {
 		return calcAllEnergies(confs, false);
@@ -4,6 +4,7 @@ import cern.colt.matrix.DoubleFactory1D;
 import cern.colt.matrix.DoubleMatrix1D;
 import edu.duke.cs.osprey.confspace.compiled.AssignedCoords;
 import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
+import edu.duke.cs.osprey.confspace.compiled.CoordsList;
 import edu.duke.cs.osprey.confspace.compiled.PosInter;
 import edu.duke.cs.osprey.gpu.Structs;
 import edu.duke.cs.osprey.minimization.Minimizer;
@@ -19,6 +20,10 @@ import java.util.Set;
  *
  * Not the fastest implementation available. Try the {@link NativeConfEnergyCalculator} first,
  * or the {@link CudaConfEnergyCalculator} if you have GPUs available.
+ *
+ * Batching is opt-in: by default {@link #maxBatchSize()} is 1, so callers like energy matrix calculation
+ * and partition functions process one conformation per batch. To batch conformations together,
+ * pass a bigger batch size to {@link #CPUConfEnergyCalculator(ConfSpace, int)}.
  */
 /*
  * But it is the simplest and easiest to understand implementation.
@@ -26,10 +31,23 @@ import java.util.Set;
  */
 public class CPUConfEnergyCalculator implements ConfEnergyCalculator {
 
+	/**
+	 * Batches are just processed one conformation at a time, so by default, don't batch at all.
+	 * Callers that can take advantage of batches (eg, energy matrix calculation) can ask for bigger ones,
+	 * which lets the calculator reuse its scratch memory across the whole batch.
+	 */
+	public static final int DefaultMaxBatchSize = 1;
+
 	public final ConfSpace confSpace;
+	public final int maxBatchSize;
 
 	public CPUConfEnergyCalculator(ConfSpace confSpace) {
+		this(confSpace, DefaultMaxBatchSize);
+	}
+
+	public CPUConfEnergyCalculator(ConfSpace confSpace, int maxBatchSize) {
 		this.confSpace = confSpace;
+		this.maxBatchSize = maxBatchSize;
 	}
 
 	@Override
@@ -93,6 +111,41 @@ public class CPUConfEnergyCalculator implements ConfEnergyCalculator {
 		// build the conformation coords
 		AssignedCoords coords = confSpace.makeCoords(conf);
 
+		Minimizer.Result result = minimize(coords, inters);
+		return new EnergiedCoords(coords, result.energy, result.dofValues);
+	}
+
+	@Override
+	public int maxBatchSize() {
+		return maxBatchSize;
+	}
+
+	@Override
+	public void minimizeEnergies(List<MinimizationJob> jobs) {
+
+		// we only need the energies, so re-use one coords buffer for the whole batch
+		CoordsList scratch = new CoordsList(confSpace.maxNumConfAtoms);
+
+		for (var job : jobs) {
+			AssignedCoords coords = confSpace.makeCoords(job.conf, scratch);
+			job.energy = minimize(coords, job.inters).energy;
+		}
+	}
+
+	@Override
+	public void calcEnergies(List<MinimizationJob> jobs) {
+
+		// we only need the energies, so re-use one coords buffer for the whole batch
+		CoordsList scratch = new CoordsList(confSpace.maxNumConfAtoms);
+
+		for (var job : jobs) {
+			AssignedCoords coords = confSpace.makeCoords(job.conf, scratch);
+			job.energy = calcEnergy(coords, job.inters);
+		}
+	}
+
+	private Minimizer.Result minimize(AssignedCoords coords, List<PosInter> inters) {
+
 		// TODO: can optimize by not including molecule rotation,translation DoFs
 		//  unless interactions span across molecules
 
@@ -148,8 +201,6 @@ public class CPUConfEnergyCalculator implements ConfEnergyCalculator {
 		};
 
 		// minimize it!
-		Minimizer.Result result = new SimpleCCDMinimizer(f).minimizeFromCenter();
-
-		return new EnergiedCoords(coords, result.energy, result.dofValues);
+		return new SimpleCCDMinimizer(f).minimizeFromCenter();
 	}
 }
@@ -95,6 +95,7 @@ public interface ConfEnergyCalculator extends AutoCloseable {
 	/**
 	 * Calculate the minimized enegries of a batch of conformations and interactions.
 	 * This will be the fastest minimization option by far on some implementations.
+	 * Batches should have no more than {@link #maxBatchSize()} jobs.
 	 */
 	default void minimizeEnergies(List<MinimizationJob> jobs) {
 		for (var job : jobs) {
@@ -102,6 +103,29 @@ public interface ConfEnergyCalculator extends AutoCloseable {
 		}
 	}
 
+	/**
+	 * Calculate the rigid (ie unminimized) energies of a batch of conformations and interactions.
+	 * Batches should have no more than {@link #maxBatchSize()} jobs.
+	 */
+	default void calcEnergies(List<MinimizationJob> jobs) {
+		for (var job : jobs) {
+			job.energy = calcEnergy(job.conf, job.inters);
+		}
+	}
+
+	default void calcOrMinimizeEnergies(List<MinimizationJob> jobs, boolean minimize) {
+		if (minimize) {
+			minimizeEnergies(jobs);
+		} else {
+			calcEnergies(jobs);
+		}
+	}
+
+	/**
+	 * The largest batch this calculator accepts in one call to eg {@link #minimizeEnergies(List)}.
+	 * Callers with many conformations to process should group them into batches of about this size,
+	 * so implementations can amortize their per-call setup across the batch.
+	 */
 	default int maxBatchSize() {
 		return 1;
 	}
@@ -10,6 +10,7 @@ import edu.duke.cs.osprey.energy.EnergyCalculator;
 import edu.duke.cs.osprey.energy.ResidueInteractions;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -254,4 +255,31 @@ public class ConfEnergyCalculatorAdapter extends edu.duke.cs.osprey.energy.ConfE
 	public EnergyCalculator.EnergiedParametricMolecule calcEnergy(RCTuple frag, ResidueInteractions inters) {
 		throw new UnsupportedOperationException();
 	}
+
+	@Override
+	public int maxBatchSize() {
+		return confEcalc.maxBatchSize();
+	}
+
+	@Override
+	public List<ConfSearch.EnergiedConf> calcEnergies(List<ConfSearch.ScoredConf> confs) {
+
+		// make the position interactions for the whole conformations
+		List<ConfEnergyCalculator.MinimizationJob> jobs = new ArrayList<>(confs.size());
+		for (ConfSearch.ScoredConf conf : confs) {
+			int[] assignments = conf.getAssignments();
+			jobs.add(new ConfEnergyCalculator.MinimizationJob(
+				assignments,
+				posInterGen.all(confEcalc.confSpace(), assignments, includeStaticStatic)
+			));
+		}
+
+		confEcalc.calcOrMinimizeEnergies(jobs, minimize);
+
+		List<ConfSearch.EnergiedConf> econfs = new ArrayList<>(confs.size());
+		for (int i=0; i<confs.size(); i++) {
+			econfs.add(new ConfSearch.EnergiedConf(confs.get(i), jobs.get(i).energy));
+		}
+		return econfs;
+	}
 }
@@ -10,7 +10,7 @@ public class EEF1EnergyCalculator implements EnergyCalculator {
 
 	// Only need to count interactions with 9 A.
 	// Farther interactions are already counted in the pre-calculated internal energy.
-	private static final double cutoff = 9.0;
+	static final double cutoff = 9.0;
 
 	public final String id;
 	public final int ffi;
@@ -22,6 +22,11 @@ import edu.duke.cs.osprey.gpu.MemoryBuffer;
  * A reference implementation of a conformation minimizer and energy calculator in C++, rather than Java.
  *
  * It's not terribly optimized, but it's already faster than the original implementation in Java.
+ *
+ * Batching is opt-in: by default {@link #maxBatchSize()} is 1, just like for the {@link CPUConfEnergyCalculator},
+ * so each batch holds one conformation. To batch conformations together, which lets the calculator
+ * reuse its native buffers across the whole batch, pass a bigger batch size to
+ * {@link #NativeConfEnergyCalculator(ConfSpace, Precision, int)}.
  */
 /*
  * This is the Java side, which is mostly responsible for converting the Java objects into
@@ -351,6 +356,7 @@ public class NativeConfEnergyCalculator implements ConfEnergyCalculator {
 
 	public final ConfSpace confSpace;
 	public final Precision precision;
+	public final int maxBatchSize;
 	public final ForcefieldsImpl forcefieldsImpl;
 
 	private final MemoryBuffer buf;
@@ -512,9 +518,14 @@ public class NativeConfEnergyCalculator implements ConfEnergyCalculator {
 	private static final int transRotId = 1;
 
 	public NativeConfEnergyCalculator(ConfSpace confSpace, Precision precision) {
+		this(confSpace, precision, CPUConfEnergyCalculator.DefaultMaxBatchSize);
+	}
+
+	public NativeConfEnergyCalculator(ConfSpace confSpace, Precision precision, int maxBatchSize) {
 
 		this.confSpace = confSpace;
 		this.precision = precision;
+		this.maxBatchSize = maxBatchSize;
 
 		// find the forcefield implementation, or die trying
 		EnergyCalculator.Type[] ecalcTypes = Arrays.stream(confSpace.ecalcs)
@@ -954,8 +965,90 @@ public class NativeConfEnergyCalculator implements ConfEnergyCalculator {
 		}
 	}
 
+	@Override
+	public int maxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Native memory that can be re-used for many batches of minimizations,
+	 * so long-running minimization threads don't allocate new memory for every batch.
+	 * Not thread-safe: make one for each thread.
+	 */
+	public class Scratch implements AutoCloseable {
+
+		private MemoryBuffer intersMem = null;
+		private int maxNumInters = 0;
+
+		private MemoryBuffer intersMem(int numInters) {
+			if (intersMem == null || numInters > maxNumInters) {
+				close();
+				intersMem = makeArray(numInters, posInterStruct.bytes());
+				maxNumInters = numInters;
+			}
+			return intersMem;
+		}
+
+		@Override
+		public void close() {
+			if (intersMem != null) {
+				intersMem.close();
+				intersMem = null;
+				maxNumInters = 0;
+			}
+		}
+	}
+
+	@Override
+	public void minimizeEnergies(List<MinimizationJob> jobs) {
+		try (var scratch = new Scratch()) {
+			minimizeEnergies(jobs, scratch);
+		}
+	}
+
+	/**
+	 * Same as {@link #minimizeEnergies(List)}, but uses the scratch memory instead of allocating new memory.
+	 */
+	public void minimizeEnergies(List<MinimizationJob> jobs, Scratch scratch) {
+		var confSpaceMem = this.buf;
+		var intersMem = scratch.intersMem(maxNumInters(jobs));
+		for (var job : jobs) {
+			writeInters(intersMem, job.inters);
+			job.energy = forcefieldsImpl.minimize(
+				confSpaceMem.asByteBuffer(), job.conf,
+				intersMem.asByteBuffer(),
+				null, null
+			);
+		}
+	}
+
+	@Override
+	public void calcEnergies(List<MinimizationJob> jobs) {
+		var confSpaceMem = this.buf;
+		try (var intersMem = makeArray(maxNumInters(jobs), posInterStruct.bytes())) {
+			for (var job : jobs) {
+				writeInters(intersMem, job.inters);
+				job.energy = forcefieldsImpl.calc(confSpaceMem.asByteBuffer(), job.conf, intersMem.asByteBuffer(), null);
+			}
+		}
+	}
+
+	private static int maxNumInters(List<MinimizationJob> jobs) {
+		return jobs.stream()
+			.mapToInt(job -> job.inters.size())
+			.max()
+			.orElse(0);
+	}
+
 	private MemoryBuffer makeIntersMem(List<PosInter> inters) {
 		var buf = makeArray(inters.size(), posInterStruct.bytes());
+		writeInters(buf, inters);
+		return buf;
+	}
+
+	/** overwrites the array in the buffer, which must have been allocated with enough space */
+	private void writeInters(MemoryBuffer buf, List<PosInter> inters) {
+		buf.int64(0, inters.size());
 		var arrayBuf = getArrayAddress(buf);
 		for (var inter : inters) {
 			var addr = arrayBuf.place(posInterStruct);
@@ -964,7 +1057,6 @@ public class NativeConfEnergyCalculator implements ConfEnergyCalculator {
 			posInterStruct.weight.set(addr, inter.weight);
 			posInterStruct.offset.set(addr, inter.offset);
 		}
-		return buf;
 	}
 
 	// helpers for the Array class on the c++ size
@@ -0,0 +1,349 @@
+package edu.duke.cs.osprey.energy.compiled;
+
+import edu.duke.cs.osprey.confspace.compiled.AssignedCoords;
+import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
+import edu.duke.cs.osprey.confspace.compiled.PosInter;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A pure Java conformation energy calculator that evaluates the forcefields
+ * with SIMD instructions, using the JVM's vector API.
+ *
+ * Computes the same energies as the {@link CPUConfEnergyCalculator}, up to floating point rounding,
+ * but processes several atom pairs at once. Minimization works the same way too.
+ *
+ * NOTE: needs the JVM flag --add-modules=jdk.incubator.vector
+ */
+/*
+ * The conf space stores atom pairs as arrays of [atomi1, atomi2, parami] triples,
+ * which is great for looking things up one pair at a time, but bad for SIMD.
+ * So the first time we see an atom pair list, we re-layout it as structure-of-arrays
+ * (atom coord indices in one array each, forcefield params in one array each) and cache it.
+ * Then the kernels gather squared distances into vector lanes and compute the energy terms lane-wise.
+ */
+public class VectorConfEnergyCalculator extends CPUConfEnergyCalculator {
+
+	private static final VectorSpecies<Double> species = DoubleVector.SPECIES_PREFERRED;
+
+	/** scratch space for gathering squared distances, one vector's worth per thread */
+	private static final ThreadLocal<double[]> scratches = ThreadLocal.withInitial(() -> new double[species.length()]);
+
+	/** atom pairs for one forcefield, laid out for SIMD access */
+	private static class Layout {
+
+		final int size;
+
+		/** indices of the atom x coords in the coords array, ie atomi*3 */
+		final int[] coordsi1;
+		final int[] coordsi2;
+
+		/** indexed by param, pair */
+		final double[][] params;
+
+		/** forcefield params indices, for the scalar code */
+		final int[] paramsi;
+
+		Layout(int size, int numParams) {
+			this.size = size;
+			coordsi1 = new int[size];
+			coordsi2 = new int[size];
+			params = new double[numParams][size];
+			paramsi = new int[size];
+		}
+
+		void set(int i, int atomi1, int atomi2, int parami, double[] p) {
+			coordsi1[i] = atomi1*3;
+			coordsi2[i] = atomi2*3;
+			paramsi[i] = parami;
+			for (int j=0; j<params.length; j++) {
+				params[j][i] = p[j];
+			}
+		}
+	}
+
+	private static final Layout emptyLayout = new Layout(0, 0);
+
+	/** the conf space index objects are unique per position (pair), so we can key the layouts on identity */
+	private final Map<Object,Layout> staticLayouts = new ConcurrentHashMap<>();
+	private final Map<Object,Layout> internalLayouts = new ConcurrentHashMap<>();
+	private final Map<Object,Layout> posStaticLayouts = new ConcurrentHashMap<>();
+	private final Map<Object,Layout> pairLayouts = new ConcurrentHashMap<>();
+
+	public VectorConfEnergyCalculator(ConfSpace confSpace) {
+		super(confSpace);
+	}
+
+	@Override
+	public double calcEnergy(AssignedCoords coords, List<PosInter> inters) {
+
+		double energy = 0.0;
+
+		double[] scratch = scratches.get();
+		for (PosInter inter : inters) {
+			energy += calcEnergy(coords, inter, scratch);
+		}
+
+		return energy;
+	}
+
+	@Override
+	public double calcSubEnergy(AssignedCoords coords, List<PosInter> inters, Set<Integer> posIndices) {
+
+		double energy = 0.0;
+
+		double[] scratch = scratches.get();
+		for (PosInter inter : inters) {
+			if (inter.isIncludedIn(posIndices)) {
+				energy += calcEnergy(coords, inter, scratch);
+			}
+		}
+
+		return energy;
+	}
+
+	private double calcEnergy(AssignedCoords coords, PosInter inter, double[] scratch) {
+
+		double energy = 0.0;
+
+		for (EnergyCalculator ecalc : confSpace.ecalcs) {
+
+			int ffi = ecalc.ffi();
+			int numParams = switch (ecalc.type()) {
+				case Amber -> 3;
+				case EEF1 -> 6;
+			};
+
+			// get the internal energy and the atom pairs
+			double ffEnergy;
+			Layout layout;
+			if (inter.posi1 == inter.posi2) {
+				if (inter.posi1 == PosInter.StaticPos) {
+
+					// static energy
+					ffEnergy = coords.getStaticEnergy(ffi);
+					layout = staticLayouts.computeIfAbsent(coords.getIndices(ffi), key ->
+						makeStaticLayout(ffi, numParams, (ConfSpace.IndicesStatic)key)
+					);
+
+				} else {
+
+					// pos single energy
+					ffEnergy = coords.getInternalEnergy(ffi, inter.posi1);
+					layout = getInternalLayout(coords, ffi, numParams, inter.posi1);
+				}
+			} else if (inter.posi1 == PosInter.StaticPos) {
+
+				// pos-static energy
+				ffEnergy = 0.0;
+				layout = getPosStaticLayout(coords, ffi, numParams, inter.posi2);
+
+			} else if (inter.posi2 == PosInter.StaticPos) {
+
+				// pos-static energy
+				ffEnergy = 0.0;
+				layout = getPosStaticLayout(coords, ffi, numParams, inter.posi1);
+
+			} else {
+
+				// pos-pos pair energy
+				ffEnergy = 0.0;
+				layout = getPairLayout(coords, ffi, numParams, inter.posi1, inter.posi2);
+			}
+
+			// add the atom pair energies
+			double[] coordsArray = coords.coords.array();
+			switch (ecalc.type()) {
+				case Amber -> ffEnergy += calcAmber((AmberEnergyCalculator)ecalc, layout, coordsArray, scratch);
+				case EEF1 -> ffEnergy += calcEEF1((EEF1EnergyCalculator)ecalc, layout, coordsArray, scratch);
+			}
+
+			// apply weight (but not the offset)
+			energy += inter.weight*ffEnergy;
+		}
+
+		energy += inter.weight*inter.offset;
+
+		return energy;
+	}
+
+	private Layout getInternalLayout(AssignedCoords coords, int ffi, int numParams, int posi) {
+
+		ConfSpace.IndicesSingle indices = coords.getIndices(ffi, posi);
+		if (indices == null) {
+			return emptyLayout;
+		}
+
+		return internalLayouts.computeIfAbsent(indices, key -> {
+			Layout layout = new Layout(indices.sizeInternals(), numParams);
+			for (int i=0; i<layout.size; i++) {
+				layout.set(i,
+					confSpace.getConfAtomIndex(posi, indices.getInternalConfAtom1Index(i)),
+					confSpace.getConfAtomIndex(posi, indices.getInternalConfAtom2Index(i)),
+					indices.getInternalParamsIndex(i),
+					confSpace.ffparams(ffi, indices.getInternalParamsIndex(i))
+				);
+			}
+			return layout;
+		});
+	}
+
+	private Layout getPosStaticLayout(AssignedCoords coords, int ffi, int numParams, int posi) {
+
+		ConfSpace.IndicesSingle indices = coords.getIndices(ffi, posi);
+		if (indices == null) {
+			return emptyLayout;
+		}
+
+		return posStaticLayouts.computeIfAbsent(indices, key -> {
+			Layout layout = new Layout(indices.sizeStatics(), numParams);
+			for (int i=0; i<layout.size; i++) {
+				layout.set(i,
+					confSpace.getConfAtomIndex(posi, indices.getStaticConfAtomIndex(i)),
+					confSpace.getStaticAtomIndex(indices.getStaticStaticAtomIndex(i)),
+					indices.getStaticParamsIndex(i),
+					confSpace.ffparams(ffi, indices.getStaticParamsIndex(i))
+				);
+			}
+			return layout;
+		});
+	}
+
+	private Layout getPairLayout(AssignedCoords coords, int ffi, int numParams, int posi1, int posi2) {
+
+		ConfSpace.IndicesPair indices = coords.getIndices(ffi, posi1, posi2);
+		if (indices == null) {
+			return emptyLayout;
+		}
+
+		return pairLayouts.computeIfAbsent(indices, key -> {
+			Layout layout = new Layout(indices.size(), numParams);
+			for (int i=0; i<layout.size; i++) {
+				layout.set(i,
+					confSpace.getConfAtomIndex(posi1, indices.getConfAtom1Index(i)),
+					confSpace.getConfAtomIndex(posi2, indices.getConfAtom2Index(i)),
+					indices.getParamsIndex(i),
+					confSpace.ffparams(ffi, indices.getParamsIndex(i))
+				);
+			}
+			return layout;
+		});
+	}
+
+	private Layout makeStaticLayout(int ffi, int numParams, ConfSpace.IndicesStatic indices) {
+		Layout layout = new Layout(indices.size(), numParams);
+		for (int i=0; i<layout.size; i++) {
+			layout.set(i,
+				confSpace.getStaticAtomIndex(indices.getStaticAtom1Index(i)),
+				confSpace.getStaticAtomIndex(indices.getStaticAtom2Index(i)),
+				indices.getParamsIndex(i),
+				confSpace.ffparams(ffi, indices.getParamsIndex(i))
+			);
+		}
+		return layout;
+	}
+
+	/**
+	 * Gathers the squared distances for one vector of atom pairs.
+	 *
+	 * NOTE: this gathers the coords with scalar code into a scratch buffer,
+	 * rather than using the vector API's indexed fromArray(),
+	 * because the JDK 17 C2 intrinsic for indexed gathers can segfault on AVX-512 hardware.
+	 */
+	private static DoubleVector calcR2(Layout layout, double[] coords, int i, double[] scratch) {
+		for (int lane=0; lane<scratch.length; lane++) {
+			int o1 = layout.coordsi1[i + lane];
+			int o2 = layout.coordsi2[i + lane];
+			double dx = coords[o1] - coords[o2];
+			double dy = coords[o1 + 1] - coords[o2 + 1];
+			double dz = coords[o1 + 2] - coords[o2 + 2];
+			scratch[lane] = dx*dx + dy*dy + dz*dz;
+		}
+		return DoubleVector.fromArray(species, scratch, 0);
+	}
+
+	/** calculate the leftover pairs that don't fill a whole vector using the scalar code */
+	private double calcTail(EnergyCalculator ecalc, Layout layout, double[] coords, int start) {
+		double energy = 0.0;
+		for (int i=start; i<layout.size; i++) {
+			int o1 = layout.coordsi1[i];
+			int o2 = layout.coordsi2[i];
+			double dx = coords[o1] - coords[o2];
+			double dy = coords[o1 + 1] - coords[o2 + 1];
+			double dz = coords[o1 + 2] - coords[o2 + 2];
+			double r2 = dx*dx + dy*dy + dz*dz;
+			energy += ecalc.calcEnergy(Math.sqrt(r2), r2, confSpace.ffparams(ecalc.ffi(), layout.paramsi[i]));
+		}
+		return energy;
+	}
+
+	private double calcAmber(AmberEnergyCalculator ecalc, Layout layout, double[] coords, double[] scratch) {
+
+		boolean distanceDependentDielectric = ecalc.settings.distanceDependentDielectric;
+
+		DoubleVector sum = DoubleVector.zero(species);
+
+		int bound = species.loopBound(layout.size);
+		for (int i=0; i<bound; i+=species.length()) {
+
+			DoubleVector r2 = calcR2(layout, coords, i, scratch);
+			DoubleVector esQ = DoubleVector.fromArray(species, layout.params[0], i);
+			DoubleVector vdwA = DoubleVector.fromArray(species, layout.params[1], i);
+			DoubleVector vdwB = DoubleVector.fromArray(species, layout.params[2], i);
+
+			// calculate the electrostatics energy
+			DoubleVector es;
+			if (distanceDependentDielectric) {
+				es = esQ.div(r2);
+			} else {
+				es = esQ.div(r2.sqrt());
+			}
+
+			// calculate the van der Waals energy
+			DoubleVector r6 = r2.mul(r2).mul(r2);
+			DoubleVector r12 = r6.mul(r6);
+			DoubleVector vdw = vdwA.div(r12).sub(vdwB.div(r6));
+
+			sum = sum.add(es).add(vdw);
+		}
+
+		return sum.reduceLanes(VectorOperators.ADD) + calcTail(ecalc, layout, coords, bound);
+	}
+
+	private double calcEEF1(EEF1EnergyCalculator ecalc, Layout layout, double[] coords, double[] scratch) {
+
+		DoubleVector sum = DoubleVector.zero(species);
+
+		int bound = species.loopBound(layout.size);
+		for (int i=0; i<bound; i+=species.length()) {
+
+			DoubleVector r2 = calcR2(layout, coords, i, scratch);
+			DoubleVector r = r2.sqrt();
+			DoubleVector vdwRadius1 = DoubleVector.fromArray(species, layout.params[0], i);
+			DoubleVector lambda1 = DoubleVector.fromArray(species, layout.params[1], i);
+			DoubleVector vdwRadius2 = DoubleVector.fromArray(species, layout.params[2], i);
+			DoubleVector lambda2 = DoubleVector.fromArray(species, layout.params[3], i);
+			DoubleVector alpha1 = DoubleVector.fromArray(species, layout.params[4], i);
+			DoubleVector alpha2 = DoubleVector.fromArray(species, layout.params[5], i);
+
+			DoubleVector Xij = r.sub(vdwRadius1).div(lambda1);
+			DoubleVector Xji = r.sub(vdwRadius2).div(lambda2);
+			DoubleVector energy = alpha1.mul(Xij.mul(Xij).neg().lanewise(VectorOperators.EXP))
+				.add(alpha2.mul(Xji.mul(Xji).neg().lanewise(VectorOperators.EXP)))
+				.neg()
+				.div(r2);
+
+			// only count interactions within the cutoff
+			sum = sum.add(energy, r.compare(VectorOperators.LE, EEF1EnergyCalculator.cutoff));
+		}
+
+		return sum.reduceLanes(VectorOperators.ADD) + calcTail(ecalc, layout, coords, bound);
+	}
+}
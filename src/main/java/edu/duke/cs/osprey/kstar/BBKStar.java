@@ -37,7 +37,9 @@ import edu.duke.cs.osprey.confspace.*;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.kstar.pfunc.*;
 import edu.duke.cs.osprey.parallelism.Cluster;
+import edu.duke.cs.osprey.parallelism.Parallelism;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.pruning.PruningMatrix;
 import edu.duke.cs.osprey.tools.AutoCloseableNoEx;
 import edu.duke.cs.osprey.tools.BigMath;
 import edu.duke.cs.osprey.tools.ExpFunction;
@@ -46,6 +48,7 @@ import edu.duke.cs.osprey.tools.MathTools;
 import java.io.File;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -77,6 +80,17 @@ public class BBKStar {
 			 */
 			private int numConfsPerBatch = 8;
 
+			/**
+			 * The number of best-bound nodes to refine concurrently in each round of the search
+			 *
+			 * The default, 1, refines one node at a time, which is the classic BBK* search.
+			 * Larger values also refine the next-best nodes speculatively, on their own threads,
+			 * so designs with many sequences but few conformations per sequence can keep more cores busy.
+			 * Sequences are still only reported when they reach the top of the tree, so the results
+			 * have the same guarantees as the classic search, but some speculative refinement may be wasted.
+			 */
+			private int numNodesPerRound = 1;
+
 			public Builder setNumBestSequences(int val) {
 				numBestSequences = val;
 				return this;
@@ -87,17 +101,31 @@ public class BBKStar {
 				return this;
 			}
 
+			public Builder setNumNodesPerRound(int val) {
+				if (val < 1) {
+					throw new IllegalArgumentException("numNodesPerRound must be at least 1");
+				}
+				numNodesPerRound = val;
+				return this;
+			}
+
 			public Settings build() {
-				return new Settings(numBestSequences, numConfsPerBatch);
+				return new Settings(numBestSequences, numConfsPerBatch, numNodesPerRound);
 			}
 		}
 
 		public final int numBestSequences;
 		public final int numConfsPerBatch;
+		public final int numNodesPerRound;
 
 		public Settings(int numBestSequences, int numConfsPerBatch) {
+			this(numBestSequences, numConfsPerBatch, 1);
+		}
+
+		public Settings(int numBestSequences, int numConfsPerBatch, int numNodesPerRound) {
 			this.numBestSequences = numBestSequences;
 			this.numConfsPerBatch = numConfsPerBatch;
+			this.numNodesPerRound = numNodesPerRound;
 		}
 	}
 
@@ -119,11 +147,23 @@ public class BBKStar {
 
 		public KStar.PfuncFactory pfuncFactory = null;
 
+		/**
+		 * The pruning matrix the conf searches use, if any,
+		 * so the partition function cache doesn't mix up results from differently-pruned designs
+		 */
+		public PruningMatrix pmat = null;
+
 		public File confDBFile = null;
 		private ConfDB confDB = null;
 
 		private BigDecimal stabilityThreshold = null;
 
+		/**
+		 * Pfuncs are shared between sequence nodes, so concurrent nodes take turns refining them.
+		 * NOTE: don't lock on the pfuncs themselves, since their task listeners already do that
+		 */
+		private final Map<PartitionFunction,Object> refineLocks = new ConcurrentHashMap<>();
+
 		public ConfSpaceInfo(ConfSpaceIteration confSpace, KStar.ConfSpaceType type) {
 
 			this.confSpace = confSpace;
@@ -152,8 +192,23 @@ public class BBKStar {
 			confDBFile = new File(path);
 		}
 
+		private String pfuncCacheKey(Sequence sequence) {
+			if (kstarSettings.pfuncCache == null) {
+				return null;
+			}
+			return kstarSettings.pfuncCache.makeKey(confSpace, sequence, pmat, kstarSettings.epsilon, confEcalcMinimized);
+		}
+
 		private PartitionFunction makePfunc(Sequence sequence) {
 
+			// maybe an earlier design already computed this pfunc
+			if (kstarSettings.pfuncCache != null) {
+				PartitionFunction.Result result = kstarSettings.pfuncCache.get(pfuncCacheKey(sequence), stabilityThreshold);
+				if (result != null) {
+					return new PartitionFunctionCache.Finished(result);
+				}
+			}
+
 			RCs rcs = sequence.makeRCs(confSpace);
 
 			PartitionFunction pfunc = pfuncFactory.make(rcs);
@@ -175,12 +230,39 @@ public class BBKStar {
 			return pfunc;
 		}
 
+		private Object refineLock(PartitionFunction pfunc) {
+			return refineLocks.computeIfAbsent(pfunc, key -> new Object());
+		}
+
+		private void refine(Sequence sequence, PartitionFunction pfunc) {
+			synchronized (refineLock(pfunc)) {
+
+				// another node may have finished this pfunc while we waited our turn
+				if (!pfunc.getStatus().canContinue()) {
+					return;
+				}
+
+				pfunc.compute(bbkstarSettings.numConfsPerBatch);
+
+				// save finished pfuncs for other designs
+				if (kstarSettings.pfuncCache != null && !pfunc.getStatus().canContinue()) {
+					kstarSettings.pfuncCache.put(pfuncCacheKey(sequence.filter(confSpace.seqSpace())), pfunc.makeResult());
+				}
+			}
+		}
+
+		private PartitionFunction.Result makeResult(PartitionFunction pfunc) {
+			synchronized (refineLock(pfunc)) {
+				return pfunc.makeResult();
+			}
+		}
+
 		private AutoCloseableNoEx openConfDB() {
 			if (confDBFile != null) {
 				if (!kstarSettings.resume) {
 					confDBFile.delete();
 				}
-				confDB = new ConfDB(confSpace, confDBFile);
+				confDB = new ConfDB(confSpace, confDBFile, kstarSettings.confDBWriteBehind);
 			}
 			return () -> {
 				if (confDB != null) {
@@ -437,7 +519,7 @@ public class BBKStar {
 
 			// refine the pfuncs if needed
 			if (protein.getStatus().canContinue()) {
-				protein.compute(bbkstarSettings.numConfsPerBatch);
+				BBKStar.this.protein.refine(sequence, protein);
 
 				// tank the sequence if the unbound protein is unstable
 				if (protein.getStatus() == PartitionFunction.Status.Unstable) {
@@ -448,7 +530,7 @@ public class BBKStar {
 			}
 
 			if (ligand.getStatus().canContinue()) {
-				ligand.compute(bbkstarSettings.numConfsPerBatch);
+				BBKStar.this.ligand.refine(sequence, ligand);
 
 				// tank the sequence if the unbound ligand is unstable
 				if (ligand.getStatus() == PartitionFunction.Status.Unstable) {
@@ -459,7 +541,7 @@ public class BBKStar {
 			}
 
 			if (complex.getStatus().canContinue()) {
-				complex.compute(bbkstarSettings.numConfsPerBatch);
+				BBKStar.this.complex.refine(sequence, complex);
 			}
 
 			// update the score
@@ -476,13 +558,13 @@ public class BBKStar {
 
 			// refine the pfuncs until done
 			while (protein.getStatus().canContinue()) {
-				protein.compute(bbkstarSettings.numConfsPerBatch);
+				BBKStar.this.protein.refine(sequence, protein);
 			}
 			while (ligand.getStatus().canContinue()) {
-				ligand.compute(bbkstarSettings.numConfsPerBatch);
+				BBKStar.this.ligand.refine(sequence, ligand);
 			}
 			while (complex.getStatus().canContinue()) {
-				complex.compute(bbkstarSettings.numConfsPerBatch);
+				BBKStar.this.complex.refine(sequence, complex);
 			}
 
 			// update the score
@@ -492,7 +574,11 @@ public class BBKStar {
 		}
 
 		public KStarScore makeKStarScore() {
-			return new KStarScore(protein.makeResult(), ligand.makeResult(), complex.makeResult());
+			return new KStarScore(
+				BBKStar.this.protein.makeResult(protein),
+				BBKStar.this.ligand.makeResult(ligand),
+				BBKStar.this.complex.makeResult(complex)
+			);
 		}
 
 		public PfuncsStatus getStatus() {
@@ -652,50 +738,22 @@ public class BBKStar {
 				// start searching the tree
 				System.out.println("computing K* scores for the " + bbkstarSettings.numBestSequences + " best sequences to epsilon = " + kstarSettings.epsilon + " ...");
 				kstarSettings.scoreWriters.writeHeader();
-				while (!tree.isEmpty() && scoredSequences.size() < bbkstarSettings.numBestSequences) {
-
-					// get the next node
-					Node node = tree.poll();
-					System.out.println("Refining sequence "+node.sequence);
-
-					if (node instanceof SingleSequenceNode) {
-						SingleSequenceNode ssnode = (SingleSequenceNode)node;
-
-						// single-sequence node
-						switch (ssnode.getStatus()) {
-							case Estimated:
-
-								// sequence is finished, return it!
-								reportSequence(ssnode, scoredSequences);
-
-							break;
-							case Estimating:
-
-								// needs more estimation, catch-and-release
-								ssnode.estimateScore();
-								if (!ssnode.isUnboundUnstable) {
-									tree.add(ssnode);
-								}
-
-							break;
-							case Blocked:
-
-								// from here on out, it's all blocked sequences
-								// so it's ok to put them in the sorted order now
-								reportSequence(ssnode, scoredSequences);
+				try (TaskExecutor nodeTasks = Parallelism.makeCpu(bbkstarSettings.numNodesPerRound).makeTaskExecutor()) {
+					while (!tree.isEmpty() && scoredSequences.size() < bbkstarSettings.numBestSequences) {
+
+						// is the next node finished?
+						Node node = tree.peek();
+						if (node instanceof SingleSequenceNode && ((SingleSequenceNode)node).getStatus() != PfuncsStatus.Estimating) {
+
+							// yup, return it!
+							// if it's blocked, then from here on out, it's all blocked sequences
+							// so it's ok to put them in the sorted order now
+							tree.poll();
+							reportSequence((SingleSequenceNode)node, scoredSequences);
+							continue;
 						}
 
-					} else if (node instanceof MultiSequenceNode) {
-						MultiSequenceNode msnode = (MultiSequenceNode)node;
-
-						// partial sequence, expand children
-						// TODO: parallelize the multi-sequence node scoring here?
-						for (Node child : msnode.makeChildren()) {
-							child.estimateScore();
-							if (!child.isUnboundUnstable) {
-								tree.add(child);
-							}
-						}
+						refineRound(tree, nodeTasks);
 					}
 				}
 
@@ -714,6 +772,64 @@ public class BBKStar {
 		}
 	}
 
+	/**
+	 * Refines the best nodes in the tree that still need work, up to numNodesPerRound of them.
+	 *
+	 * Finished nodes below the top of the tree can't be reported out of order,
+	 * so they just wait in the tree until they reach the top.
+	 */
+	private void refineRound(PriorityQueue<Node> tree, TaskExecutor nodeTasks) {
+
+		// get the next nodes that need work
+		List<Node> round = new ArrayList<>();
+		List<Node> finished = new ArrayList<>();
+		while (round.size() < bbkstarSettings.numNodesPerRound && !tree.isEmpty()) {
+			Node node = tree.poll();
+			if (node instanceof SingleSequenceNode && ((SingleSequenceNode)node).getStatus() != PfuncsStatus.Estimating) {
+				finished.add(node);
+			} else {
+				round.add(node);
+			}
+		}
+		tree.addAll(finished);
+
+		List<Node> nodesToEstimate = new ArrayList<>();
+		for (Node node : round) {
+			System.out.println("Refining sequence "+node.sequence);
+
+			if (node instanceof SingleSequenceNode) {
+
+				// single-sequence node, needs more estimation, catch-and-release
+				nodesToEstimate.add(node);
+
+			} else if (node instanceof MultiSequenceNode) {
+
+				// partial sequence, expand children
+				// NOTE: making the child nodes touches the pfunc caches, so do it on this thread
+				nodesToEstimate.addAll(((MultiSequenceNode)node).makeChildren());
+			}
+		}
+
+		// estimate the scores, in parallel if possible
+		for (Node node : nodesToEstimate) {
+			nodeTasks.submit(
+				() -> {
+					node.estimateScore();
+					return null;
+				},
+				(ignored) -> {}
+			);
+		}
+		nodeTasks.waitForFinish();
+
+		// put the nodes back in the tree, unless they're unstable
+		for (Node node : nodesToEstimate) {
+			if (!node.isUnboundUnstable) {
+				tree.add(node);
+			}
+		}
+	}
+
 	private void reportSequence(SingleSequenceNode ssnode, List<KStar.ScoredSequence> scoredSequences) {
 
 		KStarScore kstarScore = ssnode.makeKStarScore();
@@ -37,9 +37,12 @@ import edu.duke.cs.osprey.confspace.*;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.kstar.pfunc.BoltzmannCalculator;
 import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
+import edu.duke.cs.osprey.kstar.pfunc.PartitionFunctionCache;
 import edu.duke.cs.osprey.parallelism.Cluster;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.pruning.PruningMatrix;
 import edu.duke.cs.osprey.tools.AutoCloseableNoEx;
+import edu.duke.cs.osprey.tools.MathTools;
 
 import java.io.File;
 import java.math.BigDecimal;
@@ -131,6 +134,32 @@ public class KStar {
 			 */
 			private Duration pfuncTimeout = null;
 
+			/**
+			 * The maximum number of sequences whose partition functions can be computed at once.
+			 *
+			 * Partition functions near their target epsilon often can't keep all the threads
+			 * in the task executor busy, so computing several sequences at once can finish
+			 * the design sooner. Sequences are still reported to the score writers
+			 * as soon as they finish, but possibly not in sequence order.
+			 */
+			private int maxConcurrentSequences = 1;
+
+			/**
+			 * Persistent cache of partition function results, shared with other designs.
+			 * Partition functions already computed for an identical conformation space, sequence,
+			 * epsilon, and energy function are read from the cache instead of computed again.
+			 */
+			private PartitionFunctionCache pfuncCache = null;
+
+			/**
+			 * Settings to buffer conformation database writes and commit them in groups,
+			 * or null to write each conformation to the database right away.
+			 *
+			 * Committing each minimized conformation can slow down designs with fast minimizers.
+			 * See {@link ConfDB.WriteBehind} for the durability options.
+			 */
+			private ConfDB.WriteBehind confDBWriteBehind = null;
+
 			public Builder setEpsilon(double val) {
 				epsilon = val;
 				return this;
@@ -200,8 +229,26 @@ public class KStar {
 				return this;
 			}
 
+			public Builder setMaxConcurrentSequences(int val) {
+				if (val < 1) {
+					throw new IllegalArgumentException("need at least one sequence at a time");
+				}
+				maxConcurrentSequences = val;
+				return this;
+			}
+
+			public Builder setPfuncCache(PartitionFunctionCache val) {
+				pfuncCache = val;
+				return this;
+			}
+
+			public Builder setConfDBWriteBehind(ConfDB.WriteBehind val) {
+				confDBWriteBehind = val;
+				return this;
+			}
+
 			public Settings build() {
-				return new Settings(epsilon, stabilityThreshold, maxSimultaneousMutations, scoreWriters, showPfuncProgress, useExternalMemory, confDBPattern, resume, maxNumberConfs, pfuncTimeout);
+				return new Settings(epsilon, stabilityThreshold, maxSimultaneousMutations, scoreWriters, showPfuncProgress, useExternalMemory, confDBPattern, resume, maxNumberConfs, pfuncTimeout, maxConcurrentSequences, pfuncCache, confDBWriteBehind);
 			}
 		}
 
@@ -214,8 +261,19 @@ public class KStar {
 		public final String confDBPattern;
 		public final boolean resume;
 		public final Duration pfuncTimeout;
+		public final int maxConcurrentSequences;
+		public final PartitionFunctionCache pfuncCache;
+		public final ConfDB.WriteBehind confDBWriteBehind;
 
 		public Settings(double epsilon, Double stabilityThreshold, int maxSimultaneousMutations, KStarScoreWriter.Writers scoreWriters, boolean dumpPfuncConfs, boolean useExternalMemory, String confDBPattern, boolean resume, int maxNumberConfs, Duration pfuncTimeout) {
+			this(epsilon, stabilityThreshold, maxSimultaneousMutations, scoreWriters, dumpPfuncConfs, useExternalMemory, confDBPattern, resume, maxNumberConfs, pfuncTimeout, 1, null);
+		}
+
+		public Settings(double epsilon, Double stabilityThreshold, int maxSimultaneousMutations, KStarScoreWriter.Writers scoreWriters, boolean dumpPfuncConfs, boolean useExternalMemory, String confDBPattern, boolean resume, int maxNumberConfs, Duration pfuncTimeout, int maxConcurrentSequences, PartitionFunctionCache pfuncCache) {
+			this(epsilon, stabilityThreshold, maxSimultaneousMutations, scoreWriters, dumpPfuncConfs, useExternalMemory, confDBPattern, resume, maxNumberConfs, pfuncTimeout, maxConcurrentSequences, pfuncCache, null);
+		}
+
+		public Settings(double epsilon, Double stabilityThreshold, int maxSimultaneousMutations, KStarScoreWriter.Writers scoreWriters, boolean dumpPfuncConfs, boolean useExternalMemory, String confDBPattern, boolean resume, int maxNumberConfs, Duration pfuncTimeout, int maxConcurrentSequences, PartitionFunctionCache pfuncCache, ConfDB.WriteBehind confDBWriteBehind) {
 			this.epsilon = epsilon;
 			this.stabilityThreshold = stabilityThreshold;
 			this.maxSimultaneousMutations = maxSimultaneousMutations;
@@ -226,6 +284,9 @@ public class KStar {
 			this.resume = resume;
 			this.maxNumConfs = maxNumberConfs;
 			this.pfuncTimeout = pfuncTimeout;
+			this.maxConcurrentSequences = maxConcurrentSequences;
+			this.pfuncCache = pfuncCache;
+			this.confDBWriteBehind = confDBWriteBehind;
 		}
 	}
 
@@ -278,6 +339,12 @@ public class KStar {
 		public ConfEnergyCalculator confEcalc = null;
 		public PfuncFactory pfuncFactory = null;
 
+		/**
+		 * The pruning matrix the pfuncFactory uses, if any,
+		 * so the partition function cache doesn't mix up results from differently-pruned designs
+		 */
+		public PruningMatrix pmat = null;
+
 		private ConfDB confDB = null;
 
 		public ConfSpaceInfo(ConfSpaceIteration confSpace, ConfSpaceType type) {
@@ -302,7 +369,7 @@ public class KStar {
 				if (!settings.resume) {
 					confDBFile.delete();
 				}
-				confDB = new ConfDB(confSpace, confDBFile);
+				confDB = new ConfDB(confSpace, confDBFile, settings.confDBWriteBehind);
 			}
 			return () -> {
 				if (confDB != null) {
@@ -313,6 +380,10 @@ public class KStar {
 		}
 
 		private PartitionFunction makePfunc(TaskExecutor.ContextGroup ctxGroup, Sequence seq) {
+			return makePfunc(ctxGroup, seq, type.ordinal());
+		}
+
+		private PartitionFunction makePfunc(TaskExecutor.ContextGroup ctxGroup, Sequence seq, int instanceId) {
 
 			RCs rcs = seq.makeRCs(confSpace);
 
@@ -326,7 +397,7 @@ public class KStar {
 				PartitionFunction.WithConfDB.cast(pfunc).setConfDB(confDB, seq);
 			}
 
-			pfunc.setInstanceId(type.ordinal());
+			pfunc.setInstanceId(instanceId);
 
 			pfunc.init(settings.epsilon);
 			pfunc.putTaskContexts(ctxGroup);
@@ -338,12 +409,44 @@ public class KStar {
 			pfuncResults.clear();
 		}
 
+		private String pfuncCacheKey(Sequence sequence) {
+			if (settings.pfuncCache == null) {
+				return null;
+			}
+			return settings.pfuncCache.makeKey(confSpace, sequence, pmat, settings.epsilon, confEcalc);
+		}
+
+		/** checks the in-memory cache, then the persistent cache if any */
+		private PartitionFunction.Result getCachedResult(Sequence sequence, BigDecimal stabilityThreshold) {
+
+			PartitionFunction.Result result = pfuncResults.get(sequence);
+			if (result != null) {
+				return result;
+			}
+
+			if (settings.pfuncCache != null) {
+				result = settings.pfuncCache.get(pfuncCacheKey(sequence), stabilityThreshold);
+				if (result != null) {
+					pfuncResults.put(sequence, result);
+				}
+			}
+
+			return result;
+		}
+
+		private void cacheResult(Sequence sequence, PartitionFunction.Result result) {
+			pfuncResults.put(sequence, result);
+			if (settings.pfuncCache != null) {
+				settings.pfuncCache.put(pfuncCacheKey(sequence), result);
+			}
+		}
+
 		public PartitionFunction.Result calcPfunc(TaskExecutor.ContextGroup ctxGroup, Sequence globalSequence, BigDecimal stabilityThreshold) {
 
 			Sequence sequence = globalSequence.filter(confSpace.seqSpace());
 
-			// check the cache first
-			PartitionFunction.Result result = pfuncResults.get(sequence);
+			// check the caches first
+			PartitionFunction.Result result = getCachedResult(sequence, stabilityThreshold);
 			if (result != null) {
 				return result;
 			}
@@ -361,30 +464,35 @@ public class KStar {
 
 			// save the result
 			result = pfunc.makeResult();
-			pfuncResults.put(sequence, result);
+			cacheResult(sequence, result);
 
-			/* HACKHACK: we're done using the A* tree, pfunc, etc
-				and normally the garbage collector will clean them up,
-				along with their off-heap resources (e.g. TPIE data structures).
-				Except the garbage collector might not do it right away.
-				If we try to allocate more off-heap resources before these get cleaned up,
-				we might run out. So poke the garbage collector now and try to get
-				it to clean up the off-heap resources right away.
-			*/
-			Runtime.getRuntime().gc();
-
-			// newer JVMs have more concurrent garbage collectors
-			// give it a little time to finish cleaning up the pfunc
-			try {
-				Thread.sleep(10);
-			} catch (InterruptedException ex) {
-				throw new RuntimeException(ex);
-			}
+			cleanUpPfunc();
 
 			return result;
 		}
 	}
 
+	private static void cleanUpPfunc() {
+
+		/* HACKHACK: we're done using the A* tree, pfunc, etc
+			and normally the garbage collector will clean them up,
+			along with their off-heap resources (e.g. TPIE data structures).
+			Except the garbage collector might not do it right away.
+			If we try to allocate more off-heap resources before these get cleaned up,
+			we might run out. So poke the garbage collector now and try to get
+			it to clean up the off-heap resources right away.
+		*/
+		Runtime.getRuntime().gc();
+
+		// newer JVMs have more concurrent garbage collectors
+		// give it a little time to finish cleaning up the pfunc
+		try {
+			Thread.sleep(10);
+		} catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
 	private interface Scorer {
 		KStarScore score(int sequenceNumber, PartitionFunction.Result proteinResult, PartitionFunction.Result ligandResult, PartitionFunction.Result complexResult);
 	}
@@ -492,8 +600,6 @@ public class KStar {
 				complex.clear();
 
 
-				List<ScoredSequence> scores = new ArrayList<>();
-
 				// collect all the sequences explicitly
 				if (complex.confSpace.seqSpace().containsWildTypeSequence()) {
 					sequences.add(complex.confSpace.seqSpace().makeWildTypeSequence());
@@ -505,13 +611,17 @@ public class KStar {
 				// now we know how many sequences there are in total
 				int n = sequences.size();
 
+				// sequences can finish out of order when they're computed concurrently,
+				// so keep the scores in sequence order
+				ScoredSequence[] scores = new ScoredSequence[n];
+
 				// make the sequence scorer and reporter
 				Scorer scorer = (sequenceNumber, proteinResult, ligandResult, complexResult) -> {
 
 					// compute the K* score
 					KStarScore kstarScore = new KStarScore(proteinResult, ligandResult, complexResult);
 					Sequence sequence = sequences.get(sequenceNumber);
-					scores.add(new ScoredSequence(sequence, kstarScore));
+					scores[sequenceNumber] = new ScoredSequence(sequence, kstarScore);
 
 					// report scores
 					settings.scoreWriters.writeScore(new KStarScoreWriter.ScoreInfo(
@@ -559,32 +669,312 @@ public class KStar {
 				}
 
 				// compute all the partition functions and K* scores for the rest of the sequences
-				for (int i=1; i<n; i++) {
+				if (settings.maxConcurrentSequences > 1) {
 
 					try (AutoCloseableNoEx proteinCloser = protein.openConfDB()) {
 					try (AutoCloseableNoEx ligandCloser = ligand.openConfDB()) {
 					try (AutoCloseableNoEx complexCloser = complex.openConfDB()) {
-						Sequence seq = sequences.get(i);
+						new SequenceScheduler(ctxGroup, scorer, proteinStabilityThreshold, ligandStabilityThreshold)
+							.run(1, n);
+					}}}
 
-						// get the pfuncs, with short circuits as needed
-						proteinResult = protein.calcPfunc(ctxGroup, seq, proteinStabilityThreshold);
-						if (!KStarScore.isLigandComplexUseful(proteinResult)) {
-							ligandResult = PartitionFunction.Result.makeAborted();
-							complexResult = PartitionFunction.Result.makeAborted();
-						} else {
-							ligandResult = ligand.calcPfunc(ctxGroup, seq, ligandStabilityThreshold);
-							if (!KStarScore.isComplexUseful(proteinResult, ligandResult)) {
+				} else {
+
+					for (int i=1; i<n; i++) {
+
+						try (AutoCloseableNoEx proteinCloser = protein.openConfDB()) {
+						try (AutoCloseableNoEx ligandCloser = ligand.openConfDB()) {
+						try (AutoCloseableNoEx complexCloser = complex.openConfDB()) {
+							Sequence seq = sequences.get(i);
+
+							// get the pfuncs, with short circuits as needed
+							proteinResult = protein.calcPfunc(ctxGroup, seq, proteinStabilityThreshold);
+							if (!KStarScore.isLigandComplexUseful(proteinResult)) {
+								ligandResult = PartitionFunction.Result.makeAborted();
 								complexResult = PartitionFunction.Result.makeAborted();
 							} else {
-								complexResult = complex.calcPfunc(ctxGroup, seq, BigDecimal.ZERO);
+								ligandResult = ligand.calcPfunc(ctxGroup, seq, ligandStabilityThreshold);
+								if (!KStarScore.isComplexUseful(proteinResult, ligandResult)) {
+									complexResult = PartitionFunction.Result.makeAborted();
+								} else {
+									complexResult = complex.calcPfunc(ctxGroup, seq, BigDecimal.ZERO);
+								}
 							}
+						}}}
+
+						scorer.score(i, proteinResult, ligandResult, complexResult);
+					}
+				}
+
+			return new ArrayList<>(Arrays.asList(scores));
+		}
+	}
+
+	/**
+	 * Computes partition functions for several sequences at once.
+	 *
+	 * Each driver thread repeatedly picks the unfinished partition function with the largest
+	 * remaining bound gap (ie, effective epsilon) that isn't already being computed,
+	 * and computes it for a few more conformations using the shared task executor.
+	 * Partition functions needed by more than one in-flight sequence are only computed once.
+	 */
+	private class SequenceScheduler {
+
+		private class PfuncJob {
+
+			final ConfSpaceInfo info;
+			final Sequence sequence;
+			final PartitionFunction pfunc;
+			final List<SequenceState> waiters = new ArrayList<>();
+			final long startNs = System.nanoTime();
+
+			boolean isComputing = false;
+			double gap = Double.POSITIVE_INFINITY;
+
+			PfuncJob(ConfSpaceInfo info, Sequence sequence, BigDecimal stabilityThreshold) {
+				this.info = info;
+				this.sequence = sequence;
+				this.pfunc = info.makePfunc(ctxGroup, sequence, nextInstanceId++);
+				this.pfunc.setStabilityThreshold(stabilityThreshold);
+			}
+
+			void step() {
+
+				// use the parallelism as the step size, like PartitionFunction.compute(Duration)
+				int numConfs = Math.max(1, pfunc.getParallelism());
+				if (settings.pfuncTimeout == null) {
+					numConfs = Math.min(numConfs, settings.maxNumConfs - pfunc.getNumConfsEvaluated());
+				}
+				pfunc.compute(numConfs);
+			}
+
+			void updateGap() {
+				PartitionFunction.Values values = pfunc.getValues();
+				if (MathTools.isZero(values.calcUpperBound())) {
+					// no bounds yet, so compute this one soon
+					gap = Double.POSITIVE_INFINITY;
+				} else {
+					gap = values.getEffectiveEpsilon();
+				}
+			}
+
+			boolean isFinished() {
+				if (!pfunc.getStatus().canContinue()) {
+					return true;
+				}
+				if (settings.pfuncTimeout != null) {
+					return System.nanoTime() - startNs >= settings.pfuncTimeout.toNanos();
+				}
+				return pfunc.getNumConfsEvaluated() >= settings.maxNumConfs;
+			}
+		}
+
+		private class SequenceState {
+
+			final int sequenceNumber;
+			final Sequence sequence;
+
+			PartitionFunction.Result proteinResult = null;
+			PartitionFunction.Result ligandResult = null;
+			PartitionFunction.Result complexResult = null;
+
+			SequenceState(int sequenceNumber) {
+				this.sequenceNumber = sequenceNumber;
+				this.sequence = sequences.get(sequenceNumber);
+			}
+
+			void setResult(ConfSpaceType type, PartitionFunction.Result result) {
+				switch (type) {
+					case Protein -> proteinResult = result;
+					case Ligand -> ligandResult = result;
+					case Complex -> complexResult = result;
+				}
+			}
+		}
+
+		private final TaskExecutor.ContextGroup ctxGroup;
+		private final Scorer scorer;
+		private final BigDecimal proteinStabilityThreshold;
+		private final BigDecimal ligandStabilityThreshold;
+
+		// instance ids for the serial pfuncs are the conf space type ordinals, so don't reuse those
+		private int nextInstanceId = ConfSpaceType.values().length;
+
+		private final Map<ConfSpaceInfo,Map<Sequence,PfuncJob>> jobs = new IdentityHashMap<>();
+		private int nextSequenceNumber;
+		private int endSequenceNumber;
+		private int numSequencesInFlight = 0;
+		private Throwable failure = null;
+
+		SequenceScheduler(TaskExecutor.ContextGroup ctxGroup, Scorer scorer, BigDecimal proteinStabilityThreshold, BigDecimal ligandStabilityThreshold) {
+			this.ctxGroup = ctxGroup;
+			this.scorer = scorer;
+			this.proteinStabilityThreshold = proteinStabilityThreshold;
+			this.ligandStabilityThreshold = ligandStabilityThreshold;
+			for (ConfSpaceInfo info : confSpaceInfos()) {
+				jobs.put(info, new HashMap<>());
+			}
+		}
+
+		void run(int firstSequenceNumber, int endSequenceNumber) {
+
+			this.nextSequenceNumber = firstSequenceNumber;
+			this.endSequenceNumber = endSequenceNumber;
+
+			List<Thread> threads = new ArrayList<>();
+			for (int i=0; i<settings.maxConcurrentSequences; i++) {
+				Thread thread = new Thread(this::drive, "KStar-sequences-" + i);
+				thread.setDaemon(true);
+				thread.start();
+				threads.add(thread);
+			}
+			for (Thread thread : threads) {
+				try {
+					thread.join();
+				} catch (InterruptedException ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+
+			if (failure != null) {
+				throw new RuntimeException("can't compute partition functions", failure);
+			}
+		}
+
+		private void drive() {
+			try {
+				while (true) {
+
+					// wait for a pfunc to compute
+					PfuncJob job;
+					synchronized (this) {
+						while (true) {
+							if (failure != null) {
+								return;
+							}
+							admitSequences();
+							job = pickJob();
+							if (job != null) {
+								break;
+							}
+							if (numSequencesInFlight == 0 && nextSequenceNumber >= endSequenceNumber) {
+								notifyAll();
+								return;
+							}
+							wait();
 						}
-					}}}
+						job.isComputing = true;
+					}
+
+					// compute outside the lock, so other threads can compute other pfuncs
+					job.step();
+
+					boolean isFinished;
+					synchronized (this) {
+						job.isComputing = false;
+						isFinished = job.isFinished();
+						if (isFinished) {
+							finish(job);
+						} else {
+							job.updateGap();
+						}
+						notifyAll();
+					}
+
+					if (isFinished) {
+						cleanUpPfunc();
+					}
+				}
+			} catch (Throwable t) {
+				synchronized (this) {
+					if (failure == null) {
+						failure = t;
+					}
+					notifyAll();
+				}
+			}
+		}
+
+		private void admitSequences() {
+			while (numSequencesInFlight < settings.maxConcurrentSequences && nextSequenceNumber < endSequenceNumber) {
+				numSequencesInFlight++;
+				advance(new SequenceState(nextSequenceNumber++));
+			}
+		}
 
-					scorer.score(i, proteinResult, ligandResult, complexResult);
+		private PfuncJob pickJob() {
+			PfuncJob best = null;
+			for (Map<Sequence,PfuncJob> jobsBySequence : jobs.values()) {
+				for (PfuncJob job : jobsBySequence.values()) {
+					if (!job.isComputing && (best == null || job.gap > best.gap)) {
+						best = job;
+					}
 				}
+			}
+			return best;
+		}
+
+		/** moves the sequence on to its next pfunc, with short circuits as needed */
+		private void advance(SequenceState state) {
 
-			return scores;
+			if (state.proteinResult == null) {
+				await(state, protein, proteinStabilityThreshold);
+				return;
+			}
+
+			if (state.ligandResult == null) {
+				if (!KStarScore.isLigandComplexUseful(state.proteinResult)) {
+					state.ligandResult = PartitionFunction.Result.makeAborted();
+					state.complexResult = PartitionFunction.Result.makeAborted();
+				} else {
+					await(state, ligand, ligandStabilityThreshold);
+					return;
+				}
+			}
+
+			if (state.complexResult == null) {
+				if (!KStarScore.isComplexUseful(state.proteinResult, state.ligandResult)) {
+					state.complexResult = PartitionFunction.Result.makeAborted();
+				} else {
+					await(state, complex, BigDecimal.ZERO);
+					return;
+				}
+			}
+
+			// all the pfuncs are done, report the score
+			scorer.score(state.sequenceNumber, state.proteinResult, state.ligandResult, state.complexResult);
+			numSequencesInFlight--;
+		}
+
+		private void await(SequenceState state, ConfSpaceInfo info, BigDecimal stabilityThreshold) {
+
+			Sequence sequence = state.sequence.filter(info.confSpace.seqSpace());
+
+			// check the caches first
+			PartitionFunction.Result result = info.getCachedResult(sequence, stabilityThreshold);
+			if (result != null) {
+				state.setResult(info.type, result);
+				advance(state);
+				return;
+			}
+
+			// otherwise, wait for the pfunc, starting it if needed
+			jobs.get(info)
+				.computeIfAbsent(sequence, key -> new PfuncJob(info, key, stabilityThreshold))
+				.waiters.add(state);
+		}
+
+		private void finish(PfuncJob job) {
+
+			// save the result
+			PartitionFunction.Result result = job.pfunc.makeResult();
+			job.info.cacheResult(job.sequence, result);
+			jobs.get(job.info).remove(job.sequence);
+
+			for (SequenceState state : job.waiters) {
+				state.setResult(job.info.type, result);
+				advance(state);
+			}
 		}
 	}
 }
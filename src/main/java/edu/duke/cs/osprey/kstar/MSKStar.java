@@ -46,6 +46,7 @@ import edu.duke.cs.osprey.confspace.*;
 import edu.duke.cs.osprey.ematrix.EnergyMatrix;
 import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.kstar.pfunc.*;
+import edu.duke.cs.osprey.pruning.PruningMatrix;
 import edu.duke.cs.osprey.tools.HashCalculator;
 import edu.duke.cs.osprey.tools.MathTools;
 
@@ -97,6 +98,12 @@ public class MSKStar {
 		 */
 		public File confDBFile = null;
 
+		/**
+		 * set this to the pruning matrix the conf trees use, if any,
+		 * so the partition function cache doesn't mix up results from differently-pruned designs
+		 */
+		public PruningMatrix pmat = null;
+
 		public State(String name, SimpleConfSpace confSpace) {
 			this.name = name;
 			this.confSpace = confSpace;
@@ -334,10 +341,24 @@ public class MSKStar {
 		PartitionFunction pfunc = null;
 		PartitionFunction.Result pfuncResult = null;
 
-		StateConfs(Sequence sequence, State state, double epsilon, ConfDB.ConfTable confTable, ConfSearchCache confTrees) {
+		final PartitionFunctionCache pfuncCache;
+		final String pfuncCacheKey;
+
+		StateConfs(Sequence sequence, State state, double epsilon, ConfDB.ConfTable confTable, ConfSearchCache confTrees, PartitionFunctionCache pfuncCache) {
 
 			this.state = state;
 			this.sequence = sequence;
+			this.pfuncCache = pfuncCache;
+			this.pfuncCacheKey = pfuncCache != null ? pfuncCache.makeKey(state.confSpace, sequence, state.pmat, epsilon, state.confEcalc) : null;
+
+			// maybe an earlier design already computed this pfunc
+			if (pfuncCache != null) {
+				pfuncResult = pfuncCache.get(pfuncCacheKey, null);
+				if (pfuncResult != null) {
+					pfuncResult.values.calcFreeEnergyBounds(freeEnergyBounds);
+					return;
+				}
+			}
 
 			// init pfunc calculation
 			RCs rcs = sequence.makeRCs(state.confSpace);
@@ -366,6 +387,9 @@ public class MSKStar {
 			// are we there yet?
 			if (!pfunc.getStatus().canContinue()) {
 				pfuncResult = pfunc.makeResult();
+				if (pfuncCache != null) {
+					pfuncCache.put(pfuncCacheKey, pfuncResult);
+				}
 
 				// release the resources used by the pfunc (e.g., the memory for the A* tree)
 				pfunc = null;
@@ -396,7 +420,7 @@ public class MSKStar {
 				StateConfs.Key key = new StateConfs.Key(sequence, state);
 				StateConfs stateConfs = stateConfsCache.get(key);
 				if (stateConfs == null) {
-					stateConfs = new StateConfs(sequence, state, epsilon, confDBs.tables.get(state), confTrees);
+					stateConfs = new StateConfs(sequence, state, epsilon, confDBs.tables.get(state), confTrees, pfuncCache);
 					stateConfsCache.put(key, stateConfs);
 				}
 
@@ -513,6 +537,9 @@ public class MSKStar {
 		/** File to which to log sequences as they are found */
 		private File logFile = null;
 
+		/** Persistent cache of partition function results, shared with other designs */
+		private PartitionFunctionCache pfuncCache = null;
+
 		/** Temporary MARKStar fields because this interface doesn't cleanly support
 		 * non-ConfSearch PartitionFunction implementations...
 		 */
@@ -564,8 +591,13 @@ public class MSKStar {
 			return this;
 		}
 
+		public Builder setPfuncCache(PartitionFunctionCache val) {
+			pfuncCache = val;
+			return this;
+		}
+
 		public MSKStar build() {
-		    MSKStar mskStar = new MSKStar(objective, constraints, epsilon, objectiveWindowSize, objectiveWindowMax, maxSimultaneousMutations, minNumConfTrees, printToConsole, logFile);
+		    MSKStar mskStar = new MSKStar(objective, constraints, epsilon, objectiveWindowSize, objectiveWindowMax, maxSimultaneousMutations, minNumConfTrees, printToConsole, logFile, pfuncCache);
 
 			return mskStar;
 		}
@@ -581,6 +613,7 @@ public class MSKStar {
 	public final Integer minNumConfTrees;
 	public final boolean printToConsole;
 	public final File logFile;
+	public final PartitionFunctionCache pfuncCache;
 
 	public final List<State> states;
 	public final SeqSpace seqSpace;
@@ -589,7 +622,7 @@ public class MSKStar {
 	private final ConfSearchCache confTrees;
 
 
-	private MSKStar(LMFE objective, List<LMFE> constraints, double epsilon, double objectiveWindowSize, double objectiveWindowMax, int maxSimultaneousMutations, Integer minNumConfTrees, boolean printToConsole, File logFile) {
+	private MSKStar(LMFE objective, List<LMFE> constraints, double epsilon, double objectiveWindowSize, double objectiveWindowMax, int maxSimultaneousMutations, Integer minNumConfTrees, boolean printToConsole, File logFile, PartitionFunctionCache pfuncCache) {
 
 		this.objective = objective;
 		this.constraints = constraints;
@@ -600,6 +633,7 @@ public class MSKStar {
 		this.minNumConfTrees = minNumConfTrees;
 		this.printToConsole = printToConsole;
 		this.logFile = logFile;
+		this.pfuncCache = pfuncCache;
 
 		// collect all the states from the objective,constraints
 		Set<State> statesSet = new LinkedHashSet<>();
@@ -0,0 +1,144 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.kstar.pfunc;
+
+import edu.duke.cs.osprey.tools.BigExp;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+
+/**
+ * The score and energy weight sums that gradient-descent style pfuncs use to bound Z,
+ * kept as BigExp values rather than as BigDecimals at PartitionFunction.decimalPrecision.
+ *
+ * Adding and comparing BigExps is much cheaper than BigDecimal arithmetic,
+ * so pfuncs that update these sums while holding a lock hold it for much less time.
+ * The sums only have double precision though, which is plenty for a pfunc epsilon like 0.01,
+ * but not for epsilons near 1e-15.
+ */
+public class BigExpWeightSums {
+
+	public final BigExp numConfs;
+
+	// upper bound (score axis) vars
+	public final BigExp upperScoreWeightSum = new BigExp(0.0);
+	public final BigExp minUpperScoreWeight = new BigExp(Double.POSITIVE_INFINITY);
+
+	// lower bound (energy axis) vars
+	public final BigExp lowerScoreWeightSum = new BigExp(0.0);
+	public final BigExp energyWeightSum = new BigExp(0.0);
+	public final BigExp minLowerScoreWeight = new BigExp(Double.POSITIVE_INFINITY);
+	public final BigExp cumulativeZReduction = new BigExp(0.0);
+
+	// cache the conversion of the stability threshold, since it rarely changes
+	private BigDecimal stabilityThreshold = null;
+	private BigExp stabilityThresholdExp = null;
+
+	public BigExpWeightSums(BigInteger numConfs) {
+		this.numConfs = new BigExp(numConfs);
+	}
+
+	public void addScoreWeight(BigExp weight) {
+		upperScoreWeightSum.addFast(weight);
+		minUpperScoreWeight.min(weight);
+	}
+
+	public void addEnergyWeights(BigExp scoreWeight, BigExp energyWeight) {
+		energyWeightSum.addFast(energyWeight);
+		lowerScoreWeightSum.addFast(scoreWeight);
+		minLowerScoreWeight.min(scoreWeight);
+		cumulativeZReduction.addFast(scoreWeight);
+		cumulativeZReduction.subFast(energyWeight);
+	}
+
+	public BigExp getLowerBound() {
+		return new BigExp(energyWeightSum);
+	}
+
+	public BigExp getUpperBoundNoE(long numScoredConfs) {
+
+		// unscored bound
+		BigExp out = new BigExp(numConfs);
+		out.subFast(new BigExp((double)numScoredConfs));
+		if (out.isPositive()) {
+			out.mult(minUpperScoreWeight);
+		} else {
+			// don't multiply by an infinite min weight when there are no unscored confs left
+			out.set(0.0);
+		}
+
+		// with scored bound
+		out.addFast(upperScoreWeightSum);
+
+		return out;
+	}
+
+	public BigExp getUpperBound(long numScoredConfs) {
+		BigExp out = getUpperBoundNoE(numScoredConfs);
+
+		// but replace weights that have energies
+		out.subFast(lowerScoreWeightSum);
+		out.addFast(energyWeightSum);
+
+		return out;
+	}
+
+	public double calcDelta(long numScoredConfs) {
+		BigExp upperBound = getUpperBound(numScoredConfs);
+		if (upperBound.fp == 0.0 || !upperBound.isFinite()) {
+			return 1.0;
+		}
+		BigExp delta = new BigExp(upperBound);
+		delta.subFast(energyWeightSum);
+		delta.div(upperBound);
+		return delta.fp*Math.pow(10.0, delta.exp);
+	}
+
+	public boolean isUpperBoundAtLeast(BigDecimal threshold, long numScoredConfs) {
+		if (threshold != stabilityThreshold) {
+			stabilityThreshold = threshold;
+			stabilityThresholdExp = new BigExp(threshold);
+		}
+		return getUpperBound(numScoredConfs).greaterThanOrEqual(stabilityThresholdExp);
+	}
+
+	public boolean hasLowEnergies() {
+		return minLowerScoreWeight.isPositive();
+	}
+
+	public static BigDecimal toBigDecimal(BigExp val) {
+		return val.toBigDecimal(PartitionFunction.decimalPrecision);
+	}
+}
@@ -125,6 +125,22 @@ public class BoltzmannCalculator {
 		return exp(-e/RT);
 	}
 
+	/**
+	 * Same as calcPrecise(), but returns a BigExp, which only has double precision,
+	 * but is much cheaper to compute and to accumulate than a BigDecimal.
+	 */
+	public BigExp calcBigExp(double e) {
+		if (Double.isNaN(e)) {
+			return new BigExp(Double.NaN);
+		} else if (e == Double.POSITIVE_INFINITY) {
+			return new BigExp(0.0);
+		} else if (e == Double.NEGATIVE_INFINITY) {
+			return new BigExp(Double.POSITIVE_INFINITY);
+		} else {
+			return BigExp.exp(-e/RT);
+		}
+	}
+
 	public BigDecimal exp(double e) {
 		if (Double.isNaN(e)) {
 			return MathTools.BigNaN;
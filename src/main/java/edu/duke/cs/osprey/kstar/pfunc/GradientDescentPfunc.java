@@ -106,11 +106,68 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 
 		long lastReportNs = 0;
 
-		State(BigInteger numConfs) {
+		// if not null, the weight sums live here instead of in the BigDecimal vars
+		final BigExpWeightSums bigExpSums;
+
+		State(BigInteger numConfs, boolean useBigExp) {
 			this.numConfs = new BigDecimal(numConfs);
+			this.bigExpSums = useBigExp ? new BigExpWeightSums(numConfs) : null;
+		}
+
+		void addScores(List<Double> scores, List<BigDecimal> scoreWeights) {
+
+			// If this is the first score, save it to get the first upper bound
+			if (numScoredConfs == 0) {
+				firstScoreWeight = bigExpSums != null ? bcalc.calcPrecise(scores.get(0)) : scoreWeights.get(0);
+			}
+
+			if (bigExpSums != null) {
+				for (double score : scores) {
+					bigExpSums.addScoreWeight(bcalc.calcBigExp(score));
+				}
+			} else {
+				for (BigDecimal weight : scoreWeights) {
+					upperScoreWeightSum = bigMath()
+						.set(upperScoreWeightSum)
+						.add(weight)
+						.get();
+					if (MathTools.isLessThan(weight, minUpperScoreWeight)) {
+						minUpperScoreWeight = weight;
+					}
+				}
+			}
+			numScoredConfs += scores.size();
+		}
+
+		void addEnergy(ConfSearch.EnergiedConf econf, BigDecimal scoreWeight, BigDecimal energyWeight) {
+
+			if (bigExpSums != null) {
+				bigExpSums.addEnergyWeights(bcalc.calcBigExp(econf.getScore()), bcalc.calcBigExp(econf.getEnergy()));
+			} else {
+				energyWeightSum = bigMath()
+					.set(energyWeightSum)
+					.add(energyWeight)
+					.get();
+				lowerScoreWeightSum = bigMath()
+					.set(lowerScoreWeightSum)
+					.add(scoreWeight)
+					.get();
+				if (MathTools.isLessThan(scoreWeight, minLowerScoreWeight)) {
+					minLowerScoreWeight = scoreWeight;
+				}
+				cumulativeZReduction = bigMath()
+					.set(cumulativeZReduction)
+					.add(scoreWeight)
+					.sub(energyWeight)
+					.get();
+			}
+			numEnergiedConfs++;
 		}
 
 		double calcDelta() {
+			if (bigExpSums != null) {
+				return bigExpSums.calcDelta(numScoredConfs);
+			}
 			BigDecimal upperBound = getUpperBound();
 			if (MathTools.isZero(upperBound) || MathTools.isInf(upperBound)) {
 				return 1.0;
@@ -124,9 +181,19 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 		}
 
 		public BigDecimal getLowerBound() {
+			if (bigExpSums != null) {
+				return BigExpWeightSums.toBigDecimal(bigExpSums.getLowerBound());
+			}
 			return energyWeightSum;
 		}
 
+		public BigDecimal getCumulativeZReduction() {
+			if (bigExpSums != null) {
+				return BigExpWeightSums.toBigDecimal(bigExpSums.cumulativeZReduction);
+			}
+			return cumulativeZReduction;
+		}
+
 		@SuppressWarnings("unused")
 		public void printBoundStats() {
             System.out.println("Num confs: " + String.format("%12e",numConfs));
@@ -143,6 +210,10 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 
 		public BigDecimal getUpperBound() {
 
+			if (bigExpSums != null) {
+				return BigExpWeightSums.toBigDecimal(bigExpSums.getUpperBound(numScoredConfs));
+			}
+
 			return bigMath()
 
 				// unscored bound
@@ -162,6 +233,10 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 
 		public BigDecimal getUpperBoundNoE() {
 
+			if (bigExpSums != null) {
+				return BigExpWeightSums.toBigDecimal(bigExpSums.getUpperBoundNoE(numScoredConfs));
+			}
+
 			return bigMath()
 
 				// unscored bound
@@ -180,15 +255,30 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 		}
 
 		boolean isStable(BigDecimal stabilityThreshold) {
-			return numEnergiedConfs <= 0 || stabilityThreshold == null || MathTools.isGreaterThanOrEqual(getUpperBound(), stabilityThreshold);
+			if (numEnergiedConfs <= 0 || stabilityThreshold == null) {
+				return true;
+			}
+			if (bigExpSums != null) {
+				return bigExpSums.isUpperBoundAtLeast(stabilityThreshold, numScoredConfs);
+			}
+			return MathTools.isGreaterThanOrEqual(getUpperBound(), stabilityThreshold);
 		}
 
 		boolean hasLowEnergies() {
+			if (bigExpSums != null) {
+				return bigExpSums.hasLowEnergies();
+			}
 			return MathTools.isGreaterThan(minLowerScoreWeight,  BigDecimal.ZERO);
 		}
 
 		@Override
 		public String toString() {
+			if (bigExpSums != null) {
+				return String.format("upper: count %d  sum %s  min %s     lower: count %d  score sum %s  energy sum %s",
+					numScoredConfs, bigExpSums.upperScoreWeightSum, bigExpSums.minUpperScoreWeight,
+					numEnergiedConfs, bigExpSums.lowerScoreWeightSum, bigExpSums.energyWeightSum
+				);
+			}
 			return String.format("upper: count %d  sum %s  min %s     lower: count %d  score sum %s  energy sum %s",
 				numScoredConfs, Log.formatBig(upperScoreWeightSum), Log.formatBig(minUpperScoreWeight),
 				numEnergiedConfs, Log.formatBig(lowerScoreWeightSum), Log.formatBig(energyWeightSum)
@@ -216,6 +306,7 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 
 	private static BoltzmannCalculator bcalc = new BoltzmannCalculator(PartitionFunction.decimalPrecision);
 	private boolean usePreciseBcalc = true;
+	private boolean useBigExp = false;
 
 	private Status status = null;
 	private Values values = null;
@@ -274,11 +365,23 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 		return this;
 	}
 
+	/**
+	 * If true, keeps the Boltzmann-weighted sums as BigExp values instead of BigDecimals.
+	 * The sums only have double precision, but updating them is much faster,
+	 * so the listener thread holds the pfunc lock for much less time per conf.
+	 * Tasks also skip computing BigDecimal weights entirely.
+	 * Call before init().
+	 */
+	public GradientDescentPfunc setUseBigExp(boolean val) {
+		useBigExp = val;
+		return this;
+	}
+
 	@Override
 	public void putTaskContexts(TaskExecutor.ContextGroup contexts) {
 		// TODO: how to support conf tables correctly, when the energies are distributed across the cluster?
-		contexts.putContext(instanceIdOrThrow(), EnergyTask.class, new EnergyTask.Context(ecalc, bcalc, usePreciseBcalc, confDB));
-		contexts.putContext(instanceIdOrThrow(), ScoreTask.class, new ScoreTask.Context(bcalc, usePreciseBcalc));
+		contexts.putContext(instanceIdOrThrow(), EnergyTask.class, new EnergyTask.Context(ecalc, bcalc, usePreciseBcalc, useBigExp, confDB));
+		contexts.putContext(instanceIdOrThrow(), ScoreTask.class, new ScoreTask.Context(bcalc, usePreciseBcalc, useBigExp));
 	}
 
 	@Override
@@ -338,7 +441,7 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 
 		// init state
 		status = Status.Estimating;
-		state = new State(numConfsBeforePruning);
+		state = new State(numConfsBeforePruning, useBigExp);
 		values = Values.makeFullRange();
 		// don't explicitly check the pruned confs, just lump them together with the un-enumerated confs
 		values.pstar = BigDecimal.ZERO;
@@ -421,22 +524,37 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 
 				case Energy: {
 
-					// get the next energy conf, if any
-					ConfSearch.ScoredConf conf = energyConfs.nextConf();
-					if (conf != null) {
-						numEnergyConfsEnumerated++;
+					// get the next batch of energy confs, if any
+					// (the conf ecalc might be able to process a batch faster than each conf one-by-one)
+					int batchSize = Math.max(1, Math.min(ecalc.maxBatchSize(), maxNumConfs - numConfsEnergied));
+					ArrayList<ConfSearch.ScoredConf> confs = new ArrayList<>(batchSize);
+					while (confs.size() < batchSize) {
+						ConfSearch.ScoredConf conf = energyConfs.nextConf();
+						if (conf != null) {
+							numEnergyConfsEnumerated++;
+						}
+						if (conf == null || conf.getScore() == Double.POSITIVE_INFINITY) {
+							hasEnergyConfs = false;
+							keepStepping = false;
+							break;
+						}
+						confs.add(conf);
 					}
-					if (conf == null || conf.getScore() == Double.POSITIVE_INFINITY) {
-						hasEnergyConfs = false;
-						keepStepping = false;
+					if (confs.isEmpty()) {
 						break;
 					}
 
-					numConfsEnergied++;
+					numConfsEnergied += confs.size();
 
 					ecalc.tasks.submit(
-						new EnergyTask(instanceIdOrThrow(), conf, new Stopwatch().start(), confDBKey),
-						(result) -> onEnergy(result.econf, result.scoreWeight, result.energyWeight, result.stopwatch.getTimeS())
+						new EnergyTask(instanceIdOrThrow(), confs, new Stopwatch().start(), confDBKey),
+						(result) -> {
+							// spread the time over the batch, so the energy rate is still per-conf
+							double seconds = result.stopwatch.getTimeS()/result.econfs.size();
+							for (int i=0; i<result.econfs.size(); i++) {
+								onEnergy(result.econfs.get(i), result.scoreWeights.get(i), result.energyWeights.get(i), seconds);
+							}
+						}
 					);
 
 					break;
@@ -464,7 +582,7 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 					if (!confs.isEmpty()) {
 						ecalc.tasks.submit(
 								new ScoreTask(instanceIdOrThrow(), confs, new Stopwatch().start()),
-								(result) -> onScores(result.scoreWeights, result.stopwatch.getTimeS())
+								(result) -> onScores(result.scores, result.scoreWeights, result.stopwatch.getTimeS())
 						);
 					}
 
@@ -506,8 +624,8 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 		if (state.epsilonReached(targetEpsilon)) {
 			status = Status.Estimated;
 			if (isReportingProgress) {
-				log("Total Z upper bound reduction through minimizations: %12.6e", state.cumulativeZReduction);
-				log("Average Z upper bound reduction per minimizations: %12.6e", bigMath().set(state.cumulativeZReduction).div(state.numEnergiedConfs).get());
+				log("Total Z upper bound reduction through minimizations: %12.6e", state.getCumulativeZReduction());
+				log("Average Z upper bound reduction per minimizations: %12.6e", bigMath().set(state.getCumulativeZReduction()).div(state.numEnergiedConfs).get());
 			}
 		}
 
@@ -520,9 +638,9 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 	private static class EnergyTask extends Cluster.Task<EnergyTask.Result,EnergyTask.Context> {
 
 		static class Result implements Serializable {
-			ConfSearch.EnergiedConf econf;
-			BigDecimal scoreWeight;
-			BigDecimal energyWeight;
+			List<ConfSearch.EnergiedConf> econfs = new ArrayList<>();
+			List<BigDecimal> scoreWeights = new ArrayList<>();
+			List<BigDecimal> energyWeights = new ArrayList<>();
 			Stopwatch stopwatch = new Stopwatch();
 		}
 
@@ -531,12 +649,14 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 			ConfEnergyCalculator confEcalc;
 			BoltzmannCalculator bcalc;
 			boolean usePreciseBcalc;
+			boolean useBigExp;
 			ConfDB confDB;
 
-			public Context(ConfEnergyCalculator confEcalc, BoltzmannCalculator bcalc, boolean usePreciseBcalc, ConfDB confDB) {
+			public Context(ConfEnergyCalculator confEcalc, BoltzmannCalculator bcalc, boolean usePreciseBcalc, boolean useBigExp, ConfDB confDB) {
 				this.confEcalc = confEcalc;
 				this.bcalc = bcalc;
 				this.usePreciseBcalc = usePreciseBcalc;
+				this.useBigExp = useBigExp;
 				this.confDB = confDB;
 			}
 
@@ -556,25 +676,28 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 			}
 		}
 
-		public final ConfSearch.ScoredConf conf;
+		public final ArrayList<ConfSearch.ScoredConf> confs;
 		public final Stopwatch stopwatch;
 		public final ConfDB.Key confDBKey;
 
-		public EnergyTask(int instanceId, ConfSearch.ScoredConf conf, Stopwatch stopwatch, ConfDB.Key confDBKey) {
+		public EnergyTask(int instanceId, ArrayList<ConfSearch.ScoredConf> confs, Stopwatch stopwatch, ConfDB.Key confDBKey) {
 			super(instanceId);
-			this.conf = conf;
+			this.confs = confs;
 			this.stopwatch = stopwatch;
 			this.confDBKey = confDBKey;
 		}
 
 		@Override
 		public Result run(Context ctx) {
-			// compute one energy and weights (and time it)
+			// compute a batch of energies and weights (and time it)
 			Result result = new Result();
 			result.stopwatch = stopwatch;
-			result.econf = ctx.confEcalc.calcEnergy(conf, ctx.confTable(confDBKey));
-			result.scoreWeight = ctx.bcalc(result.econf.getScore());
-			result.energyWeight = ctx.bcalc(result.econf.getEnergy());
+			result.econfs = ctx.confEcalc.calcEnergies(confs, ctx.confTable(confDBKey));
+			for (ConfSearch.EnergiedConf econf : result.econfs) {
+				// BigExp weights are cheap enough to compute when the result is collected
+				result.scoreWeights.add(ctx.useBigExp ? null : ctx.bcalc(econf.getScore()));
+				result.energyWeights.add(ctx.useBigExp ? null : ctx.bcalc(econf.getEnergy()));
+			}
 			return result;
 		}
 	}
@@ -591,10 +714,12 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 
 			BoltzmannCalculator bcalc;
 			boolean usePreciseBcalc;
+			boolean useBigExp;
 
-			public Context(BoltzmannCalculator bcalc, boolean usePreciseBcalc) {
+			public Context(BoltzmannCalculator bcalc, boolean usePreciseBcalc, boolean useBigExp) {
 				this.bcalc = bcalc;
 				this.usePreciseBcalc = usePreciseBcalc;
+				this.useBigExp = useBigExp;
 			}
 
 			public BigDecimal bcalc(double e) {
@@ -622,7 +747,9 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 			Result result = new Result();
 			result.stopwatch = stopwatch;
 			for (double score : scores) {
-				result.scoreWeights.add(ctx.bcalc(score));
+				if (!ctx.useBigExp) {
+					result.scoreWeights.add(ctx.bcalc(score));
+				}
 				result.scores.add(score);
 			}
 
@@ -635,30 +762,14 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 		synchronized (this) { // don't race the main thread
 
 			// update the state
-			state.energyWeightSum = bigMath()
-				.set(state.energyWeightSum)
-				.add(energyWeight)
-				.get();
-			state.lowerScoreWeightSum = bigMath()
-				.set(state.lowerScoreWeightSum)
-				.add(scoreWeight)
-				.get();
-			state.numEnergiedConfs++;
+			state.addEnergy(econf, scoreWeight, energyWeight);
 			state.energyOps = 1.0/seconds;
-			if (MathTools.isLessThan(scoreWeight, state.minLowerScoreWeight)) {
-				state.minLowerScoreWeight = scoreWeight;
-			}
 
 			// set the slope for the energy axis
 			double delta = state.calcDelta();
 			state.dEnergy = calcSlope(delta, state.prevDelta, state.dScore);
 			state.prevDelta = delta;
 
-			state.cumulativeZReduction = bigMath()
-				.set(state.cumulativeZReduction)
-				.add(scoreWeight)
-				.sub(energyWeight)
-				.get();
 			int minimizationSize = econf.getAssignments().length;
 			if (state.minList.size() < minimizationSize) {
 				state.minList.addAll(new ArrayList<>(Collections.nCopies(minimizationSize - state.minList.size(), 0)));
@@ -698,27 +809,13 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 		}
 	}
 
-	private void onScores(List<BigDecimal> scoreWeights, double seconds) {
+	private void onScores(List<Double> scores, List<BigDecimal> scoreWeights, double seconds) {
 
 		synchronized (this) { // don't race the main thread
 
-			// If this is the first score, save it to get the first upper bound
-			if (state.numScoredConfs == 0) {
-				state.firstScoreWeight = scoreWeights.get(0);
-			}
-
 			// update the state
-			for (BigDecimal weight : scoreWeights) {
-				state.upperScoreWeightSum = bigMath()
-					.set(state.upperScoreWeightSum)
-					.add(weight)
-					.get();
-				if (MathTools.isLessThan(weight, state.minUpperScoreWeight)) {
-					state.minUpperScoreWeight = weight;
-				}
-			}
-			state.numScoredConfs += scoreWeights.size();
-			state.scoreOps = scoreWeights.size()/seconds;
+			state.addScores(scores, scoreWeights);
+			state.scoreOps = scores.size()/seconds;
 
 			// set the slope for the score axis
 			double delta = state.calcDelta();
@@ -781,7 +878,7 @@ public class GradientDescentPfunc implements PartitionFunction.WithConfDB, Parti
 		//Record Z reductions
 		BigDecimal lowerFullMin = state.getLowerBound(); //Pfunc lower bound improvement from full minimization
 		BigDecimal lowerConfUpperBound = BigDecimal.ZERO; //Pfunc lower bound improvement from conf upper bounds, K* has none
-		BigDecimal upperFullMin = state.cumulativeZReduction; //Pfunc upper bound improvement from full minimization
+		BigDecimal upperFullMin = state.getCumulativeZReduction(); //Pfunc upper bound improvement from full minimization
 		BigDecimal upperPartialMin = BigDecimal.ZERO; //Pfunc upper bound improvement from partial minimization corrections, K* has none
 
 		// first need to calculate upper bound without energied confs
@@ -0,0 +1,504 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.kstar.pfunc;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+import edu.duke.cs.osprey.astar.conf.RCs;
+import edu.duke.cs.osprey.confspace.ConfSpaceIteration;
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.Sequence;
+import edu.duke.cs.osprey.confspace.TupleTree;
+import edu.duke.cs.osprey.ematrix.EnergyMatrixFile;
+import edu.duke.cs.osprey.ematrix.SimpleReferenceEnergies;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.energy.compiled.ConfEnergyCalculatorAdapter;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.pruning.PruningMatrix;
+import edu.duke.cs.osprey.tools.MathTools;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+
+/**
+ * A persistent cache of partition function results, shared between designs.
+ *
+ * Results are stored one per file in a directory, named by a digest of everything that determines
+ * the result: the conformation space, the sequence, the RCs left after pruning, epsilon,
+ * and the energy function settings.
+ * So any design that asks for the same partition function, even in a different process,
+ * gets the earlier result instead of computing it again.
+ *
+ * Only results that didn't depend on a stability threshold or a conformation/time limit are saved,
+ * ie, results whose status is Estimated, OutOfConformations, or OutOfLowEnergies.
+ * Stability thresholds are applied to cached results when they're read.
+ */
+public class PartitionFunctionCache {
+
+	private static final byte[] Magic = "OSPREPFN".getBytes(StandardCharsets.US_ASCII);
+	private static final int CurrentVersion = 3;
+
+	public final File dir;
+
+	public PartitionFunctionCache(File dir) {
+		this.dir = dir;
+		dir.mkdirs();
+	}
+
+	/**
+	 * Makes the cache key for a partition function, or returns null if the energy function
+	 * can't be described well enough to recognize it in a later design.
+	 */
+	public String makeKey(ConfSpaceIteration confSpace, Sequence sequence, double epsilon, ConfEnergyCalculator confEcalc) {
+		return makeKey(confSpace, sequence, null, epsilon, confEcalc);
+	}
+
+	/**
+	 * Makes the cache key for a partition function, or returns null if the energy function
+	 * can't be described well enough to recognize it in a later design.
+	 *
+	 * If the partition function only sees conformations that survived pruning,
+	 * pass the pruning matrix too, so designs that prune differently don't share results.
+	 */
+	public String makeKey(ConfSpaceIteration confSpace, Sequence sequence, PruningMatrix pmat, double epsilon, ConfEnergyCalculator confEcalc) {
+
+		// approximated energies don't expose enough settings to fingerprint
+		if (confEcalc.amat != null) {
+			return null;
+		}
+		if (!(confEcalc instanceof ConfEnergyCalculatorAdapter) && (confEcalc.ecalc == null || confEcalc.ecalc.resPairCache == null)) {
+			return null;
+		}
+
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(buf)) {
+
+			out.write(Magic);
+			out.writeInt(CurrentVersion);
+
+			// conf space, all of it rather than just a hash, so the digest covers the structure too
+			// (compiled conf spaces write a hash of their file contents instead, which covers the forcefields too)
+			EnergyMatrixFile.writeConfSpace(confSpace, out);
+
+			// sequence
+			for (Sequence.Assignment assignment : sequence.assignments()) {
+				out.writeUTF(assignment.getResNum());
+				out.writeUTF(assignment.isAssigned() ? assignment.getResType().name : "");
+			}
+
+			// the RCs the pfunc actually sees, and any pruning among them
+			RCs rcs = sequence.makeRCs(confSpace);
+			if (pmat != null) {
+				rcs = new RCs(rcs, pmat);
+			}
+			writeRCs(rcs, out);
+			writePruning(pmat, rcs, out);
+
+			out.writeDouble(epsilon);
+
+			// energy function
+			if (confEcalc instanceof ConfEnergyCalculatorAdapter) {
+				ConfEnergyCalculatorAdapter adapter = (ConfEnergyCalculatorAdapter)confEcalc;
+				out.writeUTF(adapter.confEcalc.precision().name());
+				out.writeUTF(adapter.posInterGen.dist.name());
+				writeEref(adapter.posInterGen.eref, out);
+				out.writeBoolean(adapter.minimize);
+				out.writeBoolean(adapter.includeStaticStatic);
+			} else {
+				ForcefieldParams ffparams = confEcalc.ecalc.resPairCache.ffparams;
+				out.writeUTF(ffparams.forcefld.name());
+				out.writeUTF(String.valueOf(ffparams.solvationForcefield));
+				out.writeDouble(ffparams.vdwMultiplier);
+				out.writeDouble(ffparams.solvScale);
+				out.writeDouble(ffparams.dielectric);
+				out.writeBoolean(ffparams.distDepDielect);
+				out.writeBoolean(ffparams.hElect);
+				out.writeBoolean(ffparams.hVDW);
+				out.writeBoolean(confEcalc.ecalc.isMinimizing);
+				out.writeDouble(confEcalc.ecalc.infiniteWellEnergy != null ? confEcalc.ecalc.infiniteWellEnergy : Double.NaN);
+				out.writeDouble(confEcalc.ecalc.alwaysResolveClashesEnergy != null ? confEcalc.ecalc.alwaysResolveClashesEnergy : Double.NaN);
+				out.writeUTF(String.valueOf(confEcalc.epart));
+				writeEref(confEcalc.eref, out);
+				out.writeBoolean(confEcalc.addResEntropy);
+				out.writeBoolean(confEcalc.addShellInters);
+			}
+
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(buf.toByteArray()));
+		} catch (NoSuchAlgorithmException ex) {
+			throw new Error("SHA-256 should always be available", ex);
+		}
+	}
+
+	private static void writeRCs(RCs rcs, DataOutput out)
+	throws IOException {
+		out.writeInt(rcs.getNumPos());
+		for (int pos=0; pos<rcs.getNumPos(); pos++) {
+			int[] rcsAtPos = rcs.get(pos);
+			out.writeInt(rcsAtPos.length);
+			for (int rc : rcsAtPos) {
+				out.writeInt(rc);
+			}
+		}
+	}
+
+	/** writes the pruned pairs and higher-order tuples among the RCs, if any, in a stable order */
+	private static void writePruning(PruningMatrix pmat, RCs rcs, DataOutput out)
+	throws IOException {
+
+		// no pruning matrix writes the same as one that doesn't prune anything
+		if (pmat == null) {
+			out.writeInt(0);
+			out.writeInt(0);
+			return;
+		}
+
+		// pairs, one bit each
+		BitSet pairs = new BitSet();
+		int i = 0;
+		for (int pos1=0; pos1<rcs.getNumPos(); pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+				for (int rc1 : rcs.get(pos1)) {
+					for (int rc2 : rcs.get(pos2)) {
+						if (pmat.isPairPruned(pos1, rc1, pos2, rc2)) {
+							pairs.set(i);
+						}
+						i++;
+					}
+				}
+			}
+		}
+		long[] words = pairs.toLongArray();
+		out.writeInt(words.length);
+		for (long word : words) {
+			out.writeLong(word);
+		}
+
+		// higher-order tuples, sorted, since tuple trees don't keep a stable order
+		List<int[]> tuples = new ArrayList<>();
+		if (pmat.hasHigherOrderTuples()) {
+			for (int pos2=0; pos2<rcs.getNumPos(); pos2++) {
+				for (int pos1=0; pos1<pos2; pos1++) {
+					for (int rc1 : rcs.get(pos1)) {
+						for (int rc2 : rcs.get(pos2)) {
+							TupleTree<Boolean> tree = pmat.getHigherOrderTuples(pos1, rc1, pos2, rc2);
+							if (tree == null) {
+								continue;
+							}
+							for (RCTuple tuple : tree.makeTuplesList()) {
+								if (tree.get(tuple) != Boolean.TRUE || !containsAll(rcs, tuple)) {
+									continue;
+								}
+								int[] packed = new int[tuple.size()*2];
+								for (int t=0; t<tuple.size(); t++) {
+									packed[t*2] = tuple.pos.get(t);
+									packed[t*2 + 1] = tuple.RCs.get(t);
+								}
+								tuples.add(packed);
+							}
+						}
+					}
+				}
+			}
+		}
+		tuples.sort(Arrays::compare);
+		out.writeInt(tuples.size());
+		for (int[] tuple : tuples) {
+			out.writeInt(tuple.length);
+			for (int v : tuple) {
+				out.writeInt(v);
+			}
+		}
+	}
+
+	private static boolean containsAll(RCs rcs, RCTuple tuple) {
+		for (int t=0; t<tuple.size(); t++) {
+			if (!rcs.contains(tuple.pos.get(t), tuple.RCs.get(t))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeEref(SimpleReferenceEnergies eref, DataOutput out)
+	throws IOException {
+		out.writeBoolean(eref != null);
+		if (eref != null) {
+			eref.write(out);
+		}
+	}
+
+	public File fileFor(String key) {
+		return new File(dir, key + ".pfunc");
+	}
+
+	public static boolean isCacheable(PartitionFunction.Result result) {
+		switch (result.status) {
+			case Estimated:
+			case OutOfConformations:
+			case OutOfLowEnergies:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Returns the cached result for the key, or null if there isn't one.
+	 * If a stability threshold is given and the cached upper bound falls below it,
+	 * the result is reported as Unstable, just like the partition function would have.
+	 */
+	public PartitionFunction.Result get(String key, BigDecimal stabilityThreshold) {
+
+		if (key == null) {
+			return null;
+		}
+
+		File file = fileFor(key);
+		if (!file.exists()) {
+			return null;
+		}
+
+		PartitionFunction.Result result;
+		try {
+			result = read(file);
+		} catch (IOException ex) {
+			// don't let a broken entry stop the design, just compute the pfunc again
+			log("ignoring unreadable cached partition function %s: %s", file, ex.getMessage());
+			file.delete();
+			return null;
+		}
+
+		if (stabilityThreshold != null && MathTools.isLessThan(result.values.calcUpperBound(), stabilityThreshold)) {
+			result = new PartitionFunction.Result(PartitionFunction.Status.Unstable, result.values, result.numConfs);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Saves the result for the key, if the result can be reused by other designs.
+	 * Failures to write are logged, but otherwise ignored.
+	 */
+	public void put(String key, PartitionFunction.Result result) {
+
+		if (key == null || !isCacheable(result)) {
+			return;
+		}
+
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(buf)) {
+			out.write(Magic);
+			out.writeInt(CurrentVersion);
+			out.writeUTF(result.status.name());
+			out.writeInt(result.numConfs);
+			writeBig(out, result.values.qstar);
+			writeBig(out, result.values.qprime);
+			writeBig(out, result.values.pstar);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		byte[] bytes = buf.toByteArray();
+		CRC32C crc = new CRC32C();
+		crc.update(bytes);
+
+		// write to a temp file first, then move it into place,
+		// so other designs reading the cache never see a partial entry
+		File file = fileFor(key);
+		Path path = file.toPath();
+		Path tempPath = path.resolveSibling(path.getFileName() + ".tmp" + ProcessHandle.current().pid());
+		try {
+			try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tempPath.toFile()))) {
+				out.write(bytes);
+				out.writeInt((int)crc.getValue());
+			}
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException ex) {
+			// the cache is just an optimization, so don't stop the design over it
+			tempPath.toFile().delete();
+			log("can't write cached partition function %s: %s", file, ex.getMessage());
+		}
+	}
+
+	private static PartitionFunction.Result read(File file)
+	throws IOException {
+
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		if (bytes.length < Magic.length + 4) {
+			throw new IOException("file is too short");
+		}
+
+		// check the checksum first
+		CRC32C crc = new CRC32C();
+		crc.update(bytes, 0, bytes.length - 4);
+		int expectedCrc = new DataInputStream(new ByteArrayInputStream(bytes, bytes.length - 4, 4)).readInt();
+		if ((int)crc.getValue() != expectedCrc) {
+			throw new IOException("checksum mismatch");
+		}
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+		byte[] magic = new byte[Magic.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, Magic)) {
+			throw new IOException("not a partition function cache entry");
+		}
+		int version = in.readInt();
+		if (version != CurrentVersion) {
+			throw new IOException("unsupported version " + version);
+		}
+
+		PartitionFunction.Status status;
+		try {
+			status = PartitionFunction.Status.valueOf(in.readUTF());
+		} catch (IllegalArgumentException ex) {
+			throw new IOException("unknown status", ex);
+		}
+		int numConfs = in.readInt();
+		PartitionFunction.Values values = new PartitionFunction.Values();
+		values.qstar = readBig(in);
+		values.qprime = readBig(in);
+		values.pstar = readBig(in);
+
+		return new PartitionFunction.Result(status, values, numConfs);
+	}
+
+	private static void writeBig(DataOutputStream out, BigDecimal val)
+	throws IOException {
+		if (val == MathTools.BigPositiveInfinity) {
+			out.writeUTF("+inf");
+		} else if (val == MathTools.BigNegativeInfinity) {
+			out.writeUTF("-inf");
+		} else if (val == MathTools.BigNaN) {
+			out.writeUTF("nan");
+		} else {
+			out.writeUTF(val.toString());
+		}
+	}
+
+	private static BigDecimal readBig(DataInputStream in)
+	throws IOException {
+		String s = in.readUTF();
+		switch (s) {
+			case "+inf": return MathTools.BigPositiveInfinity;
+			case "-inf": return MathTools.BigNegativeInfinity;
+			case "nan": return MathTools.BigNaN;
+			default:
+				try {
+					return new BigDecimal(s);
+				} catch (NumberFormatException ex) {
+					throw new IOException("bad pfunc value: " + s, ex);
+				}
+		}
+	}
+
+	/**
+	 * A partition function that was already computed, eg, by an earlier design.
+	 * Computing it does nothing, it just reports the cached result.
+	 */
+	public static class Finished implements PartitionFunction {
+
+		public final Result result;
+
+		public Finished(Result result) {
+			this.result = result;
+		}
+
+		@Override
+		public void setReportProgress(boolean val) {
+			// nothing to report
+		}
+
+		@Override
+		public void setConfListener(ConfListener val) {
+			// no confs to listen to
+		}
+
+		@Override
+		public void init(double targetEpsilon) {
+			// already done
+		}
+
+		@Override
+		public void setStabilityThreshold(BigDecimal stabilityThreshold) {
+			// already applied when reading the cache
+		}
+
+		@Override
+		public Status getStatus() {
+			return result.status;
+		}
+
+		@Override
+		public Values getValues() {
+			return result.values;
+		}
+
+		@Override
+		public int getParallelism() {
+			return 1;
+		}
+
+		@Override
+		public int getNumConfsEvaluated() {
+			return result.numConfs;
+		}
+
+		@Override
+		public void compute(int maxNumConfs) {
+			// already done
+		}
+
+		@Override
+		public Result makeResult() {
+			return result;
+		}
+	}
+}
@@ -48,6 +48,7 @@ import smile.math.matrix.Matrix;
 import smile.regression.LASSO;
 
 import java.io.File;
+import java.io.IOException;
 import java.math.BigInteger;
 import java.util.*;
 import java.util.function.Consumer;
@@ -109,6 +110,75 @@ public class LUTE {
 			}
 		},
 
+		/**
+		 * ordinary least squares via conjugate gradient, like OLSCG,
+		 * but for training sets too big to fit in the heap
+		 *
+		 * The tuples in each sampled conformation are streamed into a temporary file once,
+		 * in compressed sparse row form, so each iteration reads them back with plain array lookups
+		 * rather than looking up tuples in the index again. A^tAx is computed in one pass over the rows,
+		 * split among all the threads.
+		 */
+		OLSCGOnDisk(true) {
+
+			@Override
+			public double[] fit(LinearSystem system, LinearSystem.BInfo binfo, double[] x0, TaskExecutor tasks) {
+
+				File file = null;
+				try {
+
+					// write A to disk
+					Stopwatch stopwatch = new Stopwatch().start();
+					file = File.createTempFile("lute", ".rows");
+					SparseRowsFile A = SparseRowsFile.write(file, system.confs.size(), system.tuples.size(), system::forEachTupleIn, SparseRowsFile.DefaultMaxBlockEntries);
+					log("    wrote %d entries of A to disk in %s", A.getNumEntries(), stopwatch.stop().getTime(2));
+
+					RealLinearOperator AtA = new RealLinearOperator() {
+
+						@Override
+						public int getRowDimension() {
+							return system.tuples.size();
+						}
+
+						@Override
+						public int getColumnDimension() {
+							return system.tuples.size();
+						}
+
+						@Override
+						public RealVector operate(RealVector vx)
+							throws DimensionMismatchException {
+							double[] x = ((ArrayRealVector)vx).getDataRef();
+							return new ArrayRealVector(A.multAtA(x, tasks), false);
+						}
+					};
+
+					RealVector Atb = new ArrayRealVector(A.multAt(binfo.b, tasks), false);
+
+					RealVector rx0 = new ArrayRealVector(x0, false);
+
+					ConjugateGradient cg = new ConjugateGradient(100000, 1e-6, false);
+					stopwatch.reset().start();
+					double[] x = ((ArrayRealVector)cg.solve(AtA, Atb, rx0)).getDataRef();
+					stopwatch.stop();
+					int numIterations = Math.max(1, cg.getIterationManager().getIterations());
+					log("    conjugate gradient took %d iterations in %s, %.2f ms per iteration",
+						numIterations,
+						stopwatch.getTime(2),
+						stopwatch.getTimeMs()/numIterations
+					);
+					return x;
+
+				} catch (IOException ex) {
+					throw new RuntimeException("can't write LUTE linear system to disk", ex);
+				} finally {
+					if (file != null) {
+						file.delete();
+					}
+				}
+			}
+		},
+
 		/**
 		 * least absolute shrinkage and selection operator
 		 *
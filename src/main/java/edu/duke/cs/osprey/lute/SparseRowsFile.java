@@ -0,0 +1,321 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.lute;
+
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+/**
+ * A sparse matrix of zeros and ones, in compressed sparse row form, memory-mapped from a file.
+ *
+ * Used for LUTE linear systems too big to keep in the heap, where each row is a conformation
+ * and each column is a tuple. The rows are split into blocks of at most a few million entries each,
+ * so the OS can page them in and out as needed, and so threads can work on different rows at once.
+ */
+public class SparseRowsFile {
+
+	public static final int DefaultMaxBlockEntries = 1 << 24; // 64 MiB of column indices
+
+	private static final ByteOrder Order = ByteOrder.nativeOrder();
+
+	public interface Rows {
+		void forEachColIn(int row, Consumer<Integer> callback);
+	}
+
+	private static class Block {
+
+		final int startRow;
+		final int numRows;
+
+		// column indices for all the rows, then the start of each row in the column indices
+		final IntBuffer ints;
+		final int numEntries;
+
+		Block(int startRow, int numRows, IntBuffer ints, int numEntries) {
+			this.startRow = startRow;
+			this.numRows = numRows;
+			this.ints = ints;
+			this.numEntries = numEntries;
+		}
+
+		int rowStart(int row) {
+			return ints.get(numEntries + row - startRow);
+		}
+
+		int col(int i) {
+			return ints.get(i);
+		}
+	}
+
+	private static class Segment {
+
+		final Block block;
+		final int startRow;
+		final int stopRow;
+
+		Segment(Block block, int startRow, int stopRow) {
+			this.block = block;
+			this.startRow = startRow;
+			this.stopRow = stopRow;
+		}
+	}
+
+	/**
+	 * Writes the rows to the file, then maps the file.
+	 * Only one block of row starts is ever held in memory while writing, so the rows can be computed on the fly.
+	 */
+	public static SparseRowsFile write(File file, int numRows, int numCols, Rows rows, int maxBlockEntries)
+	throws IOException {
+
+		List<long[]> blockInfos = new ArrayList<>(); // startRow, numRows, offset, numEntries
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(Order);
+			Consumer<Integer> writeInt = (val) -> {
+				if (!buf.hasRemaining()) {
+					flush(channel, buf);
+				}
+				buf.putInt(val);
+			};
+
+			int[] rowStarts = new int[Math.min(numRows, maxBlockEntries) + 1];
+			long offset = 0;
+			int row = 0;
+			while (row < numRows) {
+
+				// write the column indices, until the block is full
+				int startRow = row;
+				int[] numEntries = { 0 };
+				while (row < numRows && (row == startRow || numEntries[0] < maxBlockEntries)) {
+					if (row - startRow + 1 >= rowStarts.length) {
+						rowStarts = Arrays.copyOf(rowStarts, rowStarts.length*2);
+					}
+					rowStarts[row - startRow] = numEntries[0];
+					rows.forEachColIn(row, (col) -> {
+						if (col < 0 || col >= numCols) {
+							throw new IllegalArgumentException("column " + col + " is out of range [0," + numCols + ")");
+						}
+						writeInt.accept(col);
+						numEntries[0]++;
+					});
+					row++;
+				}
+				int numBlockRows = row - startRow;
+				rowStarts[numBlockRows] = numEntries[0];
+
+				// then the row starts
+				for (int i=0; i<=numBlockRows; i++) {
+					writeInt.accept(rowStarts[i]);
+				}
+
+				blockInfos.add(new long[] { startRow, numBlockRows, offset, numEntries[0] });
+				offset += 4L*(numEntries[0] + numBlockRows + 1);
+			}
+
+			flush(channel, buf);
+
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+
+		// map the blocks
+		List<Block> blocks = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			for (long[] info : blockInfos) {
+				int numBlockRows = (int)info[1];
+				int numEntries = (int)info[3];
+				IntBuffer ints = channel.map(FileChannel.MapMode.READ_ONLY, info[2], 4L*(numEntries + numBlockRows + 1))
+					.order(Order)
+					.asIntBuffer();
+				blocks.add(new Block((int)info[0], numBlockRows, ints, numEntries));
+			}
+		}
+
+		return new SparseRowsFile(file, numRows, numCols, blocks);
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buf) {
+		buf.flip();
+		try {
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		buf.clear();
+	}
+
+	public final File file;
+	public final int numRows;
+	public final int numCols;
+
+	private final List<Block> blocks;
+
+	private SparseRowsFile(File file, int numRows, int numCols, List<Block> blocks) {
+		this.file = file;
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.blocks = blocks;
+	}
+
+	public long getNumEntries() {
+		long numEntries = 0;
+		for (Block block : blocks) {
+			numEntries += block.numEntries;
+		}
+		return numEntries;
+	}
+
+	/** split each block among the threads, so every thread gets some rows from each block */
+	private List<List<Segment>> partition(int numThreads) {
+		List<List<Segment>> partitions = new ArrayList<>();
+		for (int i=0; i<numThreads; i++) {
+			partitions.add(new ArrayList<>());
+		}
+		for (Block block : blocks) {
+			int partitionSize = block.numRows/numThreads;
+			for (int i=0; i<numThreads; i++) {
+				int startRow = block.startRow + i*partitionSize;
+				int stopRow;
+				if (i == numThreads - 1) {
+					stopRow = block.startRow + block.numRows;
+				} else {
+					stopRow = startRow + partitionSize;
+				}
+				if (stopRow > startRow) {
+					partitions.get(i).add(new Segment(block, startRow, stopRow));
+				}
+			}
+		}
+		return partitions;
+	}
+
+	/** returns Ax */
+	public double[] multA(double[] x, TaskExecutor tasks) {
+
+		double[] out = new double[numRows];
+
+		for (List<Segment> partition : partition(tasks.getParallelism())) {
+			tasks.submit(
+				() -> {
+					for (Segment segment : partition) {
+						Block block = segment.block;
+						for (int row=segment.startRow; row<segment.stopRow; row++) {
+							double sum = 0;
+							for (int i=block.rowStart(row); i<block.rowStart(row + 1); i++) {
+								sum += x[block.col(i)];
+							}
+							out[row] = sum;
+						}
+					}
+					return null;
+				},
+				(ignored) -> {}
+			);
+		}
+		tasks.waitForFinish();
+
+		return out;
+	}
+
+	/** returns A^t y */
+	public double[] multAt(double[] y, TaskExecutor tasks) {
+		return multAtAOrAt(y, false, tasks);
+	}
+
+	/** returns A^t A x, in one pass over the rows */
+	public double[] multAtA(double[] x, TaskExecutor tasks) {
+		return multAtAOrAt(x, true, tasks);
+	}
+
+	private double[] multAtAOrAt(double[] v, boolean isAtA, TaskExecutor tasks) {
+
+		double[] out = new double[numCols];
+
+		for (List<Segment> partition : partition(tasks.getParallelism())) {
+			tasks.submit(
+				() -> {
+					double[] threadOut = new double[numCols];
+					for (Segment segment : partition) {
+						Block block = segment.block;
+						for (int row=segment.startRow; row<segment.stopRow; row++) {
+							int start = block.rowStart(row);
+							int stop = block.rowStart(row + 1);
+
+							// get the row's entry in Ax, or y
+							double val;
+							if (isAtA) {
+								val = 0;
+								for (int i=start; i<stop; i++) {
+									val += v[block.col(i)];
+								}
+							} else {
+								val = v[row];
+							}
+
+							for (int i=start; i<stop; i++) {
+								threadOut[block.col(i)] += val;
+							}
+						}
+					}
+					return threadOut;
+				},
+				(threadOut) -> {
+					// aggregate thread results to the real out array
+					for (int t=0; t<numCols; t++) {
+						out[t] += threadOut[t];
+					}
+				}
+			);
+		}
+		tasks.waitForFinish();
+
+		return out;
+	}
+}
@@ -58,6 +58,7 @@ import edu.duke.cs.osprey.markstar.framework.MARKStarNode.Node;
 import edu.duke.cs.osprey.parallelism.Parallelism;
 import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.pruning.PruningMatrix;
+import edu.duke.cs.osprey.tools.BigExp;
 import edu.duke.cs.osprey.tools.MathTools;
 import edu.duke.cs.osprey.tools.ObjectPool;
 import edu.duke.cs.osprey.tools.Stopwatch;
@@ -152,6 +153,15 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
         this.maxNumConfs = maxNumConfs;
     }
 
+    /**
+     * If true, accumulates the Z reductions from minimizations and corrections as BigExps
+     * instead of BigDecimals. The reductions only keep double precision, but each minimization
+     * and correction records them much faster, and with a much shorter critical section.
+     */
+    public void setUseBigExp(boolean val) {
+        this.useBigExp = val;
+    }
+
     @Override
 	public void setConfDB(ConfDB confDB, ConfDB.Key key) {
     	this.confDB = confDB;
@@ -237,6 +247,7 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
             status = Status.Unstable;
         loopTasks.waitForFinish();
         minimizingEcalc.tasks.waitForFinish();
+        syncBigExpReductions();
         BigDecimal averageReduction = BigDecimal.ZERO;
         int totalMinimizations = numConfsEnergied + numPartialMinimizations;
         if(totalMinimizations> 0)
@@ -271,6 +282,7 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
 
     @Override
     public Result makeResult() {
+        syncBigExpReductions();
         // Calculate the upper bound z reductions from conf lower bounds, since we don't explicitly record these
         lowerReduction_ConfUpperBound = rootNode.getLowerBound().subtract(startLowerBound).subtract(lowerReduction_FullMin);
         // Calculate the lower bound z reductions from conf upper bounds, since we don't explicitly record these
@@ -325,6 +337,14 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
 
     BigDecimal cumulativeZCorrection = BigDecimal.ZERO;//Pfunc upper bound improvement from partial minimization corrections
     BigDecimal ZReductionFromMin = BigDecimal.ZERO;//Pfunc lower bound improvement from full minimization
+    // BigExp versions of the reductions above, used instead when useBigExp is set
+    private boolean useBigExp = false;
+    private final Object bigExpReductionsLock = new Object();
+    private final BigExp lowerReductionFullMinExp = new BigExp(0.0);
+    private final BigExp upperReductionFullMinExp = new BigExp(0.0);
+    private final BigExp upperReductionPartialMinExp = new BigExp(0.0);
+    private final BigExp cumulativeZCorrectionExp = new BigExp(0.0);
+    private final BigExp zReductionFromMinExp = new BigExp(0.0);
     BoltzmannCalculator bc = new BoltzmannCalculator(PartitionFunction.decimalPrecision);
     private boolean computedCorrections = false;
     private long loopPartialTime = 0;
@@ -424,12 +444,36 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
     }
 
     protected void recordCorrection(double lowerBound, double correction) {
+        if (useBigExp) {
+            // compute the weights outside the lock, corrections get recorded by many threads at once
+            BigExp reduction = bc.calcBigExp(lowerBound);
+            reduction.subFast(bc.calcBigExp(lowerBound + correction));
+            synchronized (bigExpReductionsLock) {
+                cumulativeZCorrectionExp.addFast(reduction);
+                upperReductionPartialMinExp.addFast(reduction);
+            }
+            return;
+        }
         BigDecimal upper = bc.calc(lowerBound);
         BigDecimal corrected = bc.calc(lowerBound + correction);
         cumulativeZCorrection = cumulativeZCorrection.add(upper.subtract(corrected));
         upperReduction_PartialMin = upperReduction_PartialMin.add(upper.subtract(corrected));
     }
     private void recordReduction(double lowerBound, double upperBound, double energy) {
+        if (useBigExp) {
+            BigExp lowerBoundWeight = bc.calcBigExp(lowerBound);
+            BigExp upperBoundWeight = bc.calcBigExp(upperBound);
+            BigExp energyWeight = bc.calcBigExp(energy);
+            synchronized (bigExpReductionsLock) {
+                zReductionFromMinExp.addFast(lowerBoundWeight);
+                zReductionFromMinExp.subFast(upperBoundWeight);
+                upperReductionFullMinExp.addFast(lowerBoundWeight);
+                upperReductionFullMinExp.subFast(energyWeight);
+                lowerReductionFullMinExp.addFast(energyWeight);
+                lowerReductionFullMinExp.subFast(upperBoundWeight);
+            }
+            return;
+        }
         BigDecimal lowerBoundWeight = bc.calc(lowerBound);
         BigDecimal upperBoundWeight = bc.calc(upperBound);
         BigDecimal energyWeight = bc.calc(energy);
@@ -439,6 +483,19 @@ public class MARKStarBound implements PartitionFunction.WithConfDB {
 
     }
 
+    private void syncBigExpReductions() {
+        if (!useBigExp) {
+            return;
+        }
+        synchronized (bigExpReductionsLock) {
+            lowerReduction_FullMin = lowerReductionFullMinExp.toBigDecimal(PartitionFunction.decimalPrecision);
+            upperReduction_FullMin = upperReductionFullMinExp.toBigDecimal(PartitionFunction.decimalPrecision);
+            upperReduction_PartialMin = upperReductionPartialMinExp.toBigDecimal(PartitionFunction.decimalPrecision);
+            cumulativeZCorrection = cumulativeZCorrectionExp.toBigDecimal(PartitionFunction.decimalPrecision);
+            ZReductionFromMin = zReductionFromMinExp.toBigDecimal(PartitionFunction.decimalPrecision);
+        }
+    }
+
     private void debugBreakOnConf(int[] conf) {
         int[] confOfInterest = new int[]{4,5,8,18};
         if(conf.length != confOfInterest.length)
@@ -0,0 +1,64 @@
+package edu.duke.cs.osprey.parallelism;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Lets any number of threads wait for something to change, without polling.
+ *
+ * Each signal advances an epoch counter. Waiters read the epoch before looking for work,
+ * and then wait for the epoch to advance, so signals sent between looking and waiting aren't missed.
+ */
+public class ChangeSignal {
+
+	private final ReentrantLock lock = new ReentrantLock(false);
+	private final Condition changed = lock.newCondition();
+
+	// only written while holding the lock
+	private volatile long epoch = 0;
+
+	public long epoch() {
+		return epoch;
+	}
+
+	/**
+	 * Wakes up all the waiting threads.
+	 */
+	public void signal() {
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			epoch += 1;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until the epoch advances past the given epoch, or until the timeout expires.
+	 * Returns true if the epoch advanced, false if the wait timed out.
+	 */
+	public boolean await(long epoch, long timeout, TimeUnit unit) {
+		try {
+			long timeoutNs = unit.toNanos(timeout);
+			final ReentrantLock lock = this.lock;
+			lock.lockInterruptibly();
+			try {
+				while (this.epoch == epoch) {
+					if (timeoutNs <= 0L) {
+						return false;
+					}
+					timeoutNs = changed.awaitNanos(timeoutNs);
+				}
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		} catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+}
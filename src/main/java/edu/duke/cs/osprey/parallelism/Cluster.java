@@ -9,6 +9,7 @@ import com.hazelcast.core.*;
 import edu.duke.cs.osprey.tools.Log;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
@@ -24,6 +25,7 @@ public class Cluster {
 	private static final String TasksActiveIdName = "tasks-activeContextId";
 	private static final String TasksScatterName = "tasks-scatter";
 	private static final String TasksGatherName = "tasks-gather";
+	private static final String BlobsName = "blobs";
 
 	public static final boolean DefaultClientIsMember = true;
 
@@ -37,6 +39,9 @@ public class Cluster {
 
 	public final String id;
 
+	/** where nodes on the same host keep their shared copies of {@link ClusterBlobs} */
+	public final File blobsDir;
+
 	public Cluster(String name, String jobId, int nodeId, int numNodes) {
 		this(name, jobId, nodeId, numNodes, DefaultClientIsMember);
 	}
@@ -51,6 +56,8 @@ public class Cluster {
 		// append the job id to the cluster name,
 		// so the cluster id will be unique on the local network
 		this.id = String.format("%s-%s", name, jobId);
+
+		this.blobsDir = new File(System.getProperty("java.io.tmpdir"), "osprey-blobs-" + id);
 	}
 
 	/** Read environment variables to determine cluster properties */
@@ -151,6 +158,9 @@ public class Cluster {
 		private final IQueue<Cluster.Task<?,Object>> scatter;
 		private final IQueue<TaskResult<?>> gather;
 
+		/** large read-only objects shared with the other nodes, see {@link ClusterBlobs} */
+		public final ClusterBlobs blobs;
+
 		private int nextContextGroupId = 0;
 		private Cluster.Task<?,Object> deferredTask = null;
 
@@ -175,11 +185,13 @@ public class Cluster {
 			activeId = new Value<>(inst, TasksActiveIdName);
 			scatter = inst.getQueue(TasksScatterName);
 			gather = inst.getQueue(TasksGatherName);
+			blobs = new ClusterBlobs(inst.getMap(BlobsName), blobsDir);
 		}
 
 		@Override
 		public void clean() {
 			inst.getLifecycleService().shutdown();
+			blobs.release();
 			log("node finished");
 		}
 
@@ -329,6 +341,9 @@ public class Cluster {
 		private final IQueue<Cluster.Task<?,?>> scatter;
 		private final IQueue<TaskResult<?>> gather;
 
+		/** large read-only objects shared with the member nodes, see {@link ClusterBlobs} */
+		public final ClusterBlobs blobs;
+
 		private final Map<Long,TaskAndListener<?,?>> tasks = new HashMap<>();
 		private final AtomicBoolean listenerActive = new AtomicBoolean(true);
 		private final Thread listener;
@@ -365,6 +380,7 @@ public class Cluster {
 			activeId = new Value<>(inst, TasksActiveIdName);
 			scatter = inst.getQueue(TasksScatterName);
 			gather = inst.getQueue(TasksGatherName);
+			blobs = new ClusterBlobs(inst.getMap(BlobsName), blobsDir);
 
 			listener = new Thread(() -> {
 				try {
@@ -483,6 +499,7 @@ public class Cluster {
 			if (member != null) {
 				member.clean();
 			}
+			blobs.release();
 		}
 
 		@Override
@@ -0,0 +1,435 @@
+package edu.duke.cs.osprey.parallelism;
+
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.EnergyMatrixFile;
+import edu.duke.cs.osprey.tools.ObjectIO.BadFileException;
+import edu.duke.cs.osprey.tools.ObjectIO.CantWriteException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+
+/**
+ * Shares large read-only files, like energy matrices, between cluster nodes.
+ *
+ * Blobs are addressed by a hash of their contents, so tasks and contexts only need to carry a small {@link Ref}
+ * rather than the whole object. The client streams a blob into the cluster in chunks, and the first node on each
+ * host to need the blob streams it back out into a folder shared by all the nodes on that host. Every node on the host
+ * then reads that one file, and for formats that can be memory-mapped (like {@link EnergyMatrixFile}),
+ * the OS shares the same physical pages between all of them too.
+ *
+ * Each node registers itself in the host folder, so when the nodes {@link #release} the blobs,
+ * only the last node on the host deletes the folder.
+ */
+public class ClusterBlobs {
+
+	public static final int DefaultChunkSize = 4*1024*1024; // 4 MiB
+
+	private static final String HostLockName = "host.lock";
+	private static final String UserSuffix = ".user";
+
+	// there can be more than one node in a process (eg, a client that's also a member), so number them
+	private static final AtomicInteger nextUserId = new AtomicInteger(0);
+
+	// file locks are held by the whole JVM, and FileChannel.lock() throws if another thread already holds one,
+	// so threads take turns on a monitor per lock file first, shared by all the instances in this process
+	private static final Map<String,Object> fileMonitors = new ConcurrentHashMap<>();
+
+	/** A reference to a blob, small enough to embed in tasks and contexts */
+	public static class Ref implements Serializable {
+
+		private static final long serialVersionUID = 6130284521563840727L;
+
+		public final String hash;
+		public final long size;
+		public final int chunkSize;
+
+		public Ref(String hash, long size, int chunkSize) {
+			this.hash = hash;
+			this.size = size;
+			this.chunkSize = chunkSize;
+		}
+
+		public int numChunks() {
+			return (int)((size + chunkSize - 1)/chunkSize);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Ref && this.hash.equals(((Ref)other).hash);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Blob[%s, %d bytes]", hash, size);
+		}
+	}
+
+	/** the chunks of all the blobs, eg a Hazelcast IMap */
+	public final Map<String,byte[]> chunks;
+
+	/** the folder where this host keeps its copies of the blobs */
+	public final File dir;
+
+	public final int chunkSize;
+
+	// loaded objects are shared by all the tasks in this process
+	private final Map<String,Object> loaded = new ConcurrentHashMap<>();
+
+	/** marks this node as a user of the host folder, named after the process id */
+	private final File userFile;
+
+	public ClusterBlobs(Map<String,byte[]> chunks, File dir) {
+		this(chunks, dir, DefaultChunkSize);
+	}
+
+	public ClusterBlobs(Map<String,byte[]> chunks, File dir, int chunkSize) {
+		this.chunks = chunks;
+		this.dir = dir;
+		this.chunkSize = chunkSize;
+
+		// register this node with the host
+		userFile = new File(dir, ProcessHandle.current().pid() + "-" + nextUserId.getAndIncrement() + UserSuffix);
+		try {
+			withHostLock(() -> Files.createFile(userFile.toPath()));
+		} catch (IOException ex) {
+			throw new RuntimeException("can't register with blob folder: " + dir, ex);
+		}
+	}
+
+	private interface HostTask {
+		void run() throws IOException;
+	}
+
+	private static Object fileMonitor(Path lockPath)
+	throws IOException {
+		return fileMonitors.computeIfAbsent(lockPath.toFile().getCanonicalPath(), key -> new Object());
+	}
+
+	/** runs the task while holding a lock on the host folder, across all the threads and processes on the host */
+	private void withHostLock(HostTask task)
+	throws IOException {
+		Path lockPath = new File(dir, HostLockName).toPath();
+		synchronized (fileMonitor(lockPath)) {
+			while (true) {
+				Files.createDirectories(dir.toPath());
+				try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+					FileLock lock = lockChannel.lock();
+					try {
+
+						// the last node on the host deletes the folder, lock file and all,
+						// so if we waited on a lock file that's gone now, start over with a new one
+						if (!Files.exists(lockPath)) {
+							continue;
+						}
+
+						task.run();
+						return;
+
+					} finally {
+						lock.release();
+					}
+				}
+			}
+		}
+	}
+
+	/** true if any other node, in a process that's still running, is registered with the host folder */
+	private boolean hasOtherUsers()
+	throws IOException {
+		File[] files = dir.listFiles((d, name) -> name.endsWith(UserSuffix));
+		if (files == null) {
+			return false;
+		}
+		boolean hasOtherUsers = false;
+		for (File file : files) {
+			if (file.equals(userFile)) {
+				continue;
+			}
+			String name = file.getName();
+			long pid;
+			try {
+				pid = Long.parseLong(name.substring(0, name.indexOf('-')));
+			} catch (IndexOutOfBoundsException | NumberFormatException ex) {
+				continue;
+			}
+			if (ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false)) {
+				hasOtherUsers = true;
+			} else {
+				// that process died without releasing the blobs, forget about it
+				Files.deleteIfExists(file.toPath());
+			}
+		}
+		return hasOtherUsers;
+	}
+
+	private static String chunkKey(String hash, int i) {
+		return hash + ":" + i;
+	}
+
+	private static MessageDigest makeDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new Error("SHA-256 is required by the JVM spec", ex);
+		}
+	}
+
+	private static String toHex(byte[] digest) {
+		StringBuilder buf = new StringBuilder();
+		for (byte b : digest) {
+			buf.append(String.format("%02x", b));
+		}
+		return buf.toString();
+	}
+
+	/** the local copy of the blob, which may not exist yet */
+	public File file(Ref ref) {
+		return new File(dir, ref.hash + ".blob");
+	}
+
+	private Path lockPath(Ref ref) {
+		return new File(dir, ref.hash + ".lock").toPath();
+	}
+
+	/**
+	 * Streams the file into the cluster and returns a reference to it.
+	 * Files that were already put in the cluster aren't sent again.
+	 */
+	public Ref put(File file) {
+		try {
+
+			// first pass: hash the file
+			MessageDigest digest = makeDigest();
+			byte[] buf = new byte[chunkSize];
+			try (InputStream in = new FileInputStream(file)) {
+				while (true) {
+					int size = in.read(buf);
+					if (size < 0) {
+						break;
+					}
+					digest.update(buf, 0, size);
+				}
+			}
+			Ref ref = new Ref(toHex(digest.digest()), file.length(), chunkSize);
+
+			// second pass: send the chunks, unless we already did
+			if (!chunks.containsKey(chunkKey(ref.hash, ref.numChunks() - 1))) {
+				try (InputStream in = new FileInputStream(file)) {
+					for (int i=0; i<ref.numChunks(); i++) {
+						int size = (int)Math.min(chunkSize, ref.size - (long)i*chunkSize);
+						byte[] chunk = in.readNBytes(size);
+						if (chunk.length != size) {
+							throw new EOFException("file " + file + " changed while sending it to the cluster");
+						}
+						chunks.put(chunkKey(ref.hash, i), chunk);
+					}
+				}
+			}
+
+			// keep a local copy too, so nodes on this host don't have to download it again
+			synchronized (fileMonitor(lockPath(ref))) {
+				File localFile = file(ref);
+				if (!localFile.exists()) {
+					writeLocal(ref, tempPath -> Files.copy(file.toPath(), tempPath, StandardCopyOption.REPLACE_EXISTING));
+				}
+			}
+
+			return ref;
+
+		} catch (IOException ex) {
+			throw new RuntimeException("can't send file to cluster: " + file, ex);
+		}
+	}
+
+	/** Writes an energy matrix into a temporary file, then puts that file into the cluster */
+	public Ref putEnergyMatrix(EnergyMatrix emat) {
+		try {
+			File tempFile = File.createTempFile("emat", ".blob");
+			try {
+				EnergyMatrixFile.write(emat, 0, null, tempFile);
+				return put(tempFile);
+			} finally {
+				tempFile.delete();
+			}
+		} catch (IOException | CantWriteException ex) {
+			throw new RuntimeException("can't write energy matrix", ex);
+		}
+	}
+
+	/**
+	 * Returns the local copy of the blob, downloading it from the cluster first if needed.
+	 * Only one node on each host downloads each blob, the others wait for it to finish.
+	 */
+	public File get(Ref ref) {
+
+		File localFile = file(ref);
+		if (localFile.exists()) {
+			return localFile;
+		}
+
+		try {
+			Path lockPath = lockPath(ref);
+			synchronized (fileMonitor(lockPath)) {
+
+				// another thread may have downloaded the blob while we waited
+				if (localFile.exists()) {
+					return localFile;
+				}
+
+				// other processes on this host share the folder, so lock the blob across processes too
+				Files.createDirectories(dir.toPath());
+				try (FileChannel lockChannel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+					FileLock lock = lockChannel.lock();
+					try {
+
+						// another process may have downloaded the blob while we waited
+						if (localFile.exists()) {
+							return localFile;
+						}
+
+						writeLocal(ref, tempPath -> download(ref, tempPath));
+
+					} finally {
+						lock.release();
+					}
+				}
+
+				return localFile;
+			}
+
+		} catch (IOException ex) {
+			throw new RuntimeException("can't get blob from cluster: " + ref, ex);
+		}
+	}
+
+	private void download(Ref ref, Path path)
+	throws IOException {
+
+		MessageDigest digest = makeDigest();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (int i=0; i<ref.numChunks(); i++) {
+				byte[] chunk = chunks.get(chunkKey(ref.hash, i));
+				if (chunk == null) {
+					throw new FileNotFoundException("chunk " + i + " is missing from the cluster for " + ref);
+				}
+				digest.update(chunk);
+				ByteBuffer buf = ByteBuffer.wrap(chunk);
+				while (buf.hasRemaining()) {
+					channel.write(buf);
+				}
+			}
+		}
+
+		// make sure we got what we asked for
+		String hash = toHex(digest.digest());
+		if (!hash.equals(ref.hash)) {
+			throw new IOException("downloaded blob has the wrong hash " + hash + " for " + ref);
+		}
+	}
+
+	private interface Writer {
+		void write(Path path) throws IOException;
+	}
+
+	private void writeLocal(Ref ref, Writer writer)
+	throws IOException {
+
+		// write to a temp file first, then rename, so other processes never see a partial file
+		Files.createDirectories(dir.toPath());
+		Path tempPath = Files.createTempFile(dir.toPath(), ref.hash, ".tmp");
+		try {
+			writer.write(tempPath);
+
+			// temp files are private by default, but other users' cluster nodes may share the folder
+			tempPath.toFile().setReadable(true, false);
+
+			try {
+				Files.move(tempPath, file(ref).toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tempPath, file(ref).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	/**
+	 * Loads an object from the blob, downloading it first if needed.
+	 * Each blob is only loaded once per process, later calls return the same object.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T load(Ref ref, Function<File,T> loader) {
+		return (T)loaded.computeIfAbsent(ref.hash, key -> loader.apply(get(ref)));
+	}
+
+	/** Memory-maps an energy matrix put by {@link #putEnergyMatrix}, so all the nodes on this host share one copy */
+	public EnergyMatrix getEnergyMatrix(Ref ref) {
+		return load(ref, file -> {
+			try {
+				return EnergyMatrixFile.map(file);
+			} catch (BadFileException ex) {
+				throw new RuntimeException("blob isn't an energy matrix: " + ref, ex);
+			}
+		});
+	}
+
+	/**
+	 * Tells the host this node is done with the blobs, eg when the cluster shuts down.
+	 * If no other node on the host is still using the blobs, deletes the host's copies too.
+	 */
+	public void release() {
+		loaded.clear();
+		try {
+			withHostLock(() -> {
+				Files.deleteIfExists(userFile.toPath());
+				if (!hasOtherUsers()) {
+					deleteLocalCopies();
+				}
+			});
+		} catch (IOException ex) {
+			throw new RuntimeException("can't release blob folder: " + dir, ex);
+		}
+	}
+
+	/**
+	 * Deletes this host's copies of all the blobs, whether or not other nodes on the host are still using them.
+	 * Objects that already mapped a copy can still use it until they're garbage collected.
+	 */
+	public void deleteLocalCopies() {
+		loaded.clear();
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/** Removes the blob's chunks from the cluster, but not any local copies */
+	public void remove(Ref ref) {
+		for (int i=0; i<ref.numChunks(); i++) {
+			chunks.remove(chunkKey(ref.hash, i));
+		}
+	}
+}
@@ -35,8 +35,8 @@ package edu.duke.cs.osprey.parallelism;
 import edu.duke.cs.osprey.tools.AutoCleanable;
 import edu.duke.cs.osprey.tools.HashCalculator;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TaskExecutor implements AutoCleanable {
 
@@ -97,7 +97,8 @@ public class TaskExecutor implements AutoCleanable {
 
 	public class ContextGroup implements AutoCloseable {
 
-		private Map<ContextId,Object> contexts = new HashMap<>();
+		// contexts can be added by one thread while tasks read them on others
+		private Map<ContextId,Object> contexts = new ConcurrentHashMap<>();
 
 		protected ContextGroup() {
 			contextGroup = this;
@@ -40,6 +40,7 @@ import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
 import edu.duke.cs.osprey.energy.EnergyCalculator;
 import edu.duke.cs.osprey.ewakstar.EWAKStarPartitionFunction;
 import edu.duke.cs.osprey.externalMemory.ExternalMemory;
+import edu.duke.cs.osprey.kstar.pfunc.BigExpWeightSums;
 import edu.duke.cs.osprey.kstar.pfunc.BoltzmannCalculator;
 import edu.duke.cs.osprey.kstar.pfunc.PfuncSurface;
 import edu.duke.cs.osprey.tools.BigMath;
@@ -106,8 +107,12 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 		double dEnergy = -1.0;
 		double dScore = -1.0;
 
-		State(BigInteger numConfs) {
+		// if not null, the weight sums live here instead of in the BigDecimal vars
+		final BigExpWeightSums bigExpSums;
+
+		State(BigInteger numConfs, boolean useBigExp) {
 			this.numConfs = new BigDecimal(numConfs);
+			this.bigExpSums = useBigExp ? new BigExpWeightSums(numConfs) : null;
 		}
 
 		public void setGMECEnergy(double newEnergy){
@@ -119,6 +124,9 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 		}
 
 		double calcDelta() {
+			if (bigExpSums != null) {
+				return bigExpSums.calcDelta(numScoredConfs);
+			}
 			BigDecimal upperBound = getUpperBound();
 			if (MathTools.isZero(upperBound) || MathTools.isInf(upperBound)) {
 				return 1.0;
@@ -131,9 +139,17 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 				.doubleValue();
 		}
 
-		public BigDecimal getLowerBound() { return energyWeightSum; }
+		public BigDecimal getLowerBound() {
+			if (bigExpSums != null) {
+				return BigExpWeightSums.toBigDecimal(bigExpSums.getLowerBound());
+			}
+			return energyWeightSum;
+		}
 
 		public BigDecimal getUpperBound() {
+			if (bigExpSums != null) {
+				return BigExpWeightSums.toBigDecimal(bigExpSums.getUpperBound(numScoredConfs));
+			}
 			return new BigMath(EWAKStarPartitionFunction.decimalPrecision)
 
 				// unscored bound
@@ -183,15 +199,30 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 		boolean energyReached(double targetEnergy) {return calcDiff() >= targetEnergy;}
 
 		boolean isStable(BigDecimal stabilityThreshold) {
-			return numEnergiedConfs <= 0 || stabilityThreshold == null || MathTools.isGreaterThanOrEqual(getUpperBound(), stabilityThreshold);
+			if (numEnergiedConfs <= 0 || stabilityThreshold == null) {
+				return true;
+			}
+			if (bigExpSums != null) {
+				return bigExpSums.isUpperBoundAtLeast(stabilityThreshold, numScoredConfs);
+			}
+			return MathTools.isGreaterThanOrEqual(getUpperBound(), stabilityThreshold);
 		}
 
 		boolean hasLowEnergies() {
+			if (bigExpSums != null) {
+				return bigExpSums.hasLowEnergies();
+			}
 			return MathTools.isGreaterThan(minLowerScoreWeight,  BigDecimal.ZERO);
 		}
 
 		@Override
 		public String toString() {
+			if (bigExpSums != null) {
+				return String.format("upper: count %d  sum %s  min %s     lower: count %d  score sum %s  energy sum %s",
+					numScoredConfs, bigExpSums.upperScoreWeightSum, bigExpSums.minUpperScoreWeight,
+					numEnergiedConfs, bigExpSums.lowerScoreWeightSum, bigExpSums.energyWeightSum
+				);
+			}
 			return String.format("upper: count %d  sum %e  min %e     lower: count %d  score sum %e  energy sum %e",
 					numScoredConfs, upperScoreWeightSum, minUpperScoreWeight,
 					numEnergiedConfs, lowerScoreWeightSum, energyWeightSum
@@ -218,6 +249,7 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 	private ConfSearch scoreConfs = null;
 	private ConfSearch energyConfs = null;
 	private BoltzmannCalculator bcalc = new BoltzmannCalculator(EWAKStarPartitionFunction.decimalPrecision);
+	private boolean useBigExp = false;
 
 	private Status status = null;
 	private Values values = null;
@@ -241,6 +273,16 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 
 	public PasteGradientDescentPfunc(ConfEnergyCalculator ecalc) {this.ecalc = ecalc;}
 
+	/**
+	 * If true, keeps the Boltzmann-weighted sums as BigExp values instead of BigDecimals.
+	 * See GradientDescentPfunc.setUseBigExp().
+	 * Call before init().
+	 */
+	public PasteGradientDescentPfunc setUseBigExp(boolean val) {
+		useBigExp = val;
+		return this;
+	}
+
 	@Override
 	public void setReportProgress(boolean val) {
 		isReportingProgress = val;
@@ -312,7 +354,7 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 
 		// init state
 		status = Status.Estimating;
-		state = new State(numConfsBeforePruning);
+		state = new State(numConfsBeforePruning, useBigExp);
 		values = Values.makeFullRange();
 		// don't explicitly check the pruned confs, just lump them together with the un-enumerated confs
 		values.pstar = BigDecimal.ZERO;
@@ -432,8 +474,10 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 							if (state.sConfs.size() <= numPDBs){ // only want n PDB files - don't need to calculate and save all of them
 								state.sConfs.put(result.econf.getEnergy(), conf);
 							}
-							result.scoreWeight = bcalc.calc(result.econf.getScore());
-							result.energyWeight = bcalc.calc(result.econf.getEnergy());
+							if (!useBigExp) {
+								result.scoreWeight = bcalc.calc(result.econf.getScore());
+								result.energyWeight = bcalc.calc(result.econf.getEnergy());
+							}
 							result.stopwatch.stop();
 							return result;
 						},
@@ -466,6 +510,7 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 					}
 
 					class ScoreResult {
+						List<Double> scores = new ArrayList<>();
 						List<BigDecimal> scoreWeights = new ArrayList<>();
 						Stopwatch stopwatch = new Stopwatch();
 					}
@@ -476,13 +521,16 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 							ScoreResult result = new ScoreResult();
 							result.stopwatch.start();
 							for (ConfSearch.ScoredConf conf : confs) {
-								result.scoreWeights.add(bcalc.calc(conf.getScore()));
+								result.scores.add(conf.getScore());
+								if (!useBigExp) {
+									result.scoreWeights.add(bcalc.calc(conf.getScore()));
+								}
 							}
 							result.stopwatch.stop();
 							return result;
 						},
 						(result) -> {
-							onScores(result.scoreWeights, result.stopwatch.getTimeS());
+							onScores(result.scores, result.scoreWeights, result.stopwatch.getTimeS());
 						}
 					);
 
@@ -550,7 +598,6 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 		synchronized (this) { // don't race the main thread
 
 			// update the state
-			state.energyWeightSum = state.energyWeightSum.add(energyWeight);
 			state.epMols.add(epmol);
 
 			if (state.curGMEC >= econf.getEnergy())
@@ -558,12 +605,17 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 
 			state.curScore = econf.getScore();
 
-			state.lowerScoreWeightSum = state.lowerScoreWeightSum.add(scoreWeight);
+			if (state.bigExpSums != null) {
+				state.bigExpSums.addEnergyWeights(bcalc.calcBigExp(econf.getScore()), bcalc.calcBigExp(econf.getEnergy()));
+			} else {
+				state.energyWeightSum = state.energyWeightSum.add(energyWeight);
+				state.lowerScoreWeightSum = state.lowerScoreWeightSum.add(scoreWeight);
+				if (MathTools.isLessThan(scoreWeight, state.minLowerScoreWeight)) {
+					state.minLowerScoreWeight = scoreWeight;
+				}
+			}
 			state.numEnergiedConfs++;
 			state.energyOps = 1.0/seconds;
-			if (MathTools.isLessThan(scoreWeight, state.minLowerScoreWeight)) {
-				state.minLowerScoreWeight = scoreWeight;
-			}
 
 			// set the slope for the energy axis
 			double delta = state.calcDelta();
@@ -598,19 +650,25 @@ public class PasteGradientDescentPfunc implements PastePartitionFunction.WithCon
 		}
 	}
 
-	private void onScores(List<BigDecimal> scoreWeights, double seconds) {
+	private void onScores(List<Double> scores, List<BigDecimal> scoreWeights, double seconds) {
 
 		synchronized (this) { // don't race the main thread
 
 			// update the state
-			for (BigDecimal weight : scoreWeights) {
-				state.upperScoreWeightSum = state.upperScoreWeightSum.add(weight);
-				if (MathTools.isLessThan(weight, state.minUpperScoreWeight)) {
-					state.minUpperScoreWeight = weight;
+			if (state.bigExpSums != null) {
+				for (double score : scores) {
+					state.bigExpSums.addScoreWeight(bcalc.calcBigExp(score));
+				}
+			} else {
+				for (BigDecimal weight : scoreWeights) {
+					state.upperScoreWeightSum = state.upperScoreWeightSum.add(weight);
+					if (MathTools.isLessThan(weight, state.minUpperScoreWeight)) {
+						state.minUpperScoreWeight = weight;
+					}
 				}
 			}
-			state.numScoredConfs += scoreWeights.size();
-			state.scoreOps = scoreWeights.size()/seconds;
+			state.numScoredConfs += scores.size();
+			state.scoreOps = scores.size()/seconds;
 
 			// set the slope for the score axis
 			double delta = state.calcDelta();
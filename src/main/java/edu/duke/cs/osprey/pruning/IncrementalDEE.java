@@ -0,0 +1,586 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.pruning;
+
+import edu.duke.cs.osprey.confspace.ConfSpaceIteration;
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * Goldstein DEE for singles and pairs that keeps its pruning matrix up to date when the energy matrix changes,
+ * rather than starting over.
+ *
+ * Each single and pair pruned here remembers the competitor that pruned it, and when it was pruned.
+ * When the energies of some RCs change, only the decisions whose candidate or competitor includes those RCs
+ * get checked again, and only the unpruned singles and pairs at the affected positions get examined for new pruning.
+ *
+ * Decisions are checked again in the order they were made, ignoring anything pruned after them,
+ * just like when they were first made. So a decision that no longer holds can be undone
+ * without invalidating the decisions that came before it. Decisions made after it might have depended on it though,
+ * so they all get checked again too.
+ *
+ * Singles and pairs that were already pruned when the pruner was created are assumed to stay pruned.
+ *
+ * Works with any conf space, simple or compiled. Type-dependent pruning compares the conf types.
+ */
+public class IncrementalDEE {
+
+	public static class Stats {
+
+		public int numChecked = 0;
+		public int numPruned = 0;
+		public int numUnpruned = 0;
+
+		@Override
+		public String toString() {
+			return String.format("checked %d, pruned %d, unpruned %d", numChecked, numPruned, numUnpruned);
+		}
+	}
+
+	private static final int NotPruned = 0;
+	private static final int PrunedBefore = 1;
+	private static final int NoCompetitor = -1;
+
+	public final ConfSpaceIteration confSpace;
+	public final EnergyMatrix emat;
+	public final PruningMatrix pmat;
+	public final double energyDiffThreshold;
+	public final boolean typeDependent;
+
+	// when each single and pair was pruned, in the order of the decisions
+	private final int[] singleSeqs;
+	private final int[] pairSeqs;
+	private int nextSeq = PrunedBefore + 1;
+
+	// which competitor pruned each single and pair,
+	// or NoCompetitor for pairs that were only pruned because one of their singles was
+	private final int[] singleCompetitors;
+	private final int[] pairCompetitors1;
+	private final int[] pairCompetitors2;
+
+	// the singles and pairs pruned here, in the order of the decisions
+	private final List<Decision> decisions = new ArrayList<>();
+
+	public IncrementalDEE(ConfSpaceIteration confSpace, EnergyMatrix emat, PruningMatrix pmat, double energyDiffThreshold, boolean typeDependent) {
+
+		this.confSpace = confSpace;
+		this.emat = emat;
+		this.pmat = pmat;
+		this.energyDiffThreshold = energyDiffThreshold;
+		this.typeDependent = typeDependent;
+
+		singleSeqs = new int[pmat.getNumOneBody()];
+		singleCompetitors = new int[pmat.getNumOneBody()];
+		pairSeqs = new int[pmat.getNumPairwise()];
+		pairCompetitors1 = new int[pmat.getNumPairwise()];
+		pairCompetitors2 = new int[pmat.getNumPairwise()];
+
+		// remember what was already pruned
+		for (int pos1=0; pos1<numPos(); pos1++) {
+			for (int rc1=0; rc1<numRCs(pos1); rc1++) {
+				int i1 = pmat.getOneBodyIndex(pos1, rc1);
+				singleSeqs[i1] = pmat.isSinglePruned(pos1, rc1) ? PrunedBefore : NotPruned;
+				singleCompetitors[i1] = NoCompetitor;
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<numRCs(pos2); rc2++) {
+						int i2 = pmat.getPairwiseIndex(pos1, rc1, pos2, rc2);
+						pairSeqs[i2] = pmat.getPairwise(pos1, rc1, pos2, rc2) ? PrunedBefore : NotPruned;
+						pairCompetitors1[i2] = NoCompetitor;
+						pairCompetitors2[i2] = NoCompetitor;
+					}
+				}
+			}
+		}
+	}
+
+	private int numPos() {
+		return confSpace.numPos();
+	}
+
+	private int numRCs(int pos) {
+		return confSpace.numConf(pos);
+	}
+
+	private boolean typesMatch(int pos, int rc1, int rc2) {
+		return confSpace.confType(pos, rc1).equals(confSpace.confType(pos, rc2));
+	}
+
+	private int singleSeq(int pos, int rc) {
+		return singleSeqs[pmat.getOneBodyIndex(pos, rc)];
+	}
+
+	private int pairSeq(int pos1, int rc1, int pos2, int rc2) {
+		return pairSeqs[pmat.getPairwiseIndex(pos1, rc1, pos2, rc2)];
+	}
+
+	/** was the tuple pruned before the decision at seq? */
+	private static boolean isPrunedBefore(int tupleSeq, int seq) {
+		return tupleSeq != NotPruned && tupleSeq < seq;
+	}
+
+	/** is the tuple unpruned from the point of view of the decision at seq? */
+	private static boolean isUnprunedAt(int tupleSeq, int seq) {
+		return tupleSeq == NotPruned || tupleSeq >= seq;
+	}
+
+
+	// FOR SINGLES
+
+	/** Runs Goldstein DEE on all the unpruned singles */
+	public Stats pruneSingles() {
+		Stats stats = new Stats();
+		for (int pos=0; pos<numPos(); pos++) {
+			pruneSinglesAt(pos, stats);
+		}
+		return stats;
+	}
+
+	private void pruneSinglesAt(int pos, Stats stats) {
+		for (int rc=0; rc<numRCs(pos); rc++) {
+			if (singleSeq(pos, rc) != NotPruned) {
+				continue;
+			}
+			stats.numChecked++;
+			int seq = nextSeq;
+			int competitorRc = findSingleCompetitor(pos, rc, seq);
+			if (competitorRc != NoCompetitor) {
+				nextSeq++;
+				pruneSingle(pos, rc, competitorRc, seq);
+				stats.numPruned++;
+			}
+		}
+	}
+
+	private int findSingleCompetitor(int pos, int candidateRc, int seq) {
+		for (int competitorRc=0; competitorRc<numRCs(pos); competitorRc++) {
+
+			// don't compete against self, or against pruned RCs
+			if (competitorRc == candidateRc || !isUnprunedAt(singleSeq(pos, competitorRc), seq)) {
+				continue;
+			}
+
+			// skip unmatched types if needed
+			if (typeDependent && !typesMatch(pos, candidateRc, competitorRc)) {
+				continue;
+			}
+
+			if (singleCompetitorWins(pos, candidateRc, competitorRc, seq)) {
+				return competitorRc;
+			}
+		}
+		return NoCompetitor;
+	}
+
+	/** does the competitor beat the candidate, considering only what was pruned before seq? */
+	private boolean singleCompetitorWins(int pos, int candidateRc, int competitorRc, int seq) {
+
+		// start with singles energy diff
+		double energyDiffSum = 0
+			+ emat.getOneBodyDouble(pos, candidateRc)
+			- emat.getOneBodyDouble(pos, competitorRc);
+
+		// sum over witness positions
+		for (int witnessPos=0; witnessPos<numPos(); witnessPos++) {
+
+			// witness pos can't be candidate pos
+			if (witnessPos == pos) {
+				continue;
+			}
+
+			// min over witness rcs
+			double minEnergyDiff = Double.POSITIVE_INFINITY;
+			for (int witnessRc=0; witnessRc<numRCs(witnessPos); witnessRc++) {
+
+				// skip pruned witnesses
+				if (isPrunedBefore(singleSeq(witnessPos, witnessRc), seq)
+					|| isPrunedBefore(pairSeq(pos, candidateRc, witnessPos, witnessRc), seq)) {
+					continue;
+				}
+
+				double energyDiff = 0
+					+ emat.getPairwiseDouble(pos, candidateRc, witnessPos, witnessRc)
+					- emat.getPairwiseDouble(pos, competitorRc, witnessPos, witnessRc);
+				minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
+			}
+
+			energyDiffSum += minEnergyDiff;
+			if (energyDiffSum == Double.POSITIVE_INFINITY) {
+				break;
+			}
+		}
+
+		return energyDiffSum > energyDiffThreshold;
+	}
+
+	private void pruneSingle(int pos, int rc, int competitorRc, int seq) {
+
+		int i = pmat.getOneBodyIndex(pos, rc);
+		singleSeqs[i] = seq;
+		singleCompetitors[i] = competitorRc;
+		pmat.setOneBody(pos, rc, true);
+		decisions.add(new Decision(seq, pos, rc, -1, -1));
+
+		// prune the pairs too, like PruningMatrix.pruneSingle()
+		for (int pos2=0; pos2<numPos(); pos2++) {
+			if (pos2 == pos) {
+				continue;
+			}
+			for (int rc2=0; rc2<numRCs(pos2); rc2++) {
+				int i2 = pmat.getPairwiseIndex(pos, rc, pos2, rc2);
+				if (pairSeqs[i2] == NotPruned) {
+					pairSeqs[i2] = seq;
+					pairCompetitors1[i2] = NoCompetitor;
+					pairCompetitors2[i2] = NoCompetitor;
+					pmat.setPairwise(pos, rc, pos2, rc2, true);
+				}
+			}
+		}
+	}
+
+	private void unpruneSingle(int pos, int rc) {
+
+		int i = pmat.getOneBodyIndex(pos, rc);
+		int seq = singleSeqs[i];
+		singleSeqs[i] = NotPruned;
+		singleCompetitors[i] = NoCompetitor;
+		pmat.setOneBody(pos, rc, false);
+
+		// unprune the pairs that were only pruned because of this single
+		for (int pos2=0; pos2<numPos(); pos2++) {
+			if (pos2 == pos) {
+				continue;
+			}
+			for (int rc2=0; rc2<numRCs(pos2); rc2++) {
+				int i2 = pmat.getPairwiseIndex(pos, rc, pos2, rc2);
+				if (pairSeqs[i2] == seq && pairCompetitors1[i2] == NoCompetitor) {
+					int seq2 = singleSeq(pos2, rc2);
+					if (seq2 != NotPruned) {
+						// but the other single is still pruned
+						pairSeqs[i2] = seq2;
+					} else {
+						pairSeqs[i2] = NotPruned;
+						pmat.setPairwise(pos, rc, pos2, rc2, false);
+					}
+				}
+			}
+		}
+	}
+
+
+	// FOR PAIRS
+
+	/** Runs Goldstein DEE on all the unpruned pairs */
+	public Stats prunePairs() {
+		Stats stats = new Stats();
+		for (int pos1=1; pos1<numPos(); pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+				prunePairsAt(pos1, pos2, stats);
+			}
+		}
+		return stats;
+	}
+
+	private void prunePairsAt(int pos1, int pos2, Stats stats) {
+		for (int rc1=0; rc1<numRCs(pos1); rc1++) {
+			for (int rc2=0; rc2<numRCs(pos2); rc2++) {
+				if (pairSeq(pos1, rc1, pos2, rc2) != NotPruned) {
+					continue;
+				}
+				stats.numChecked++;
+				int seq = nextSeq;
+				int[] competitor = findPairCompetitor(pos1, rc1, pos2, rc2, seq);
+				if (competitor != null) {
+					nextSeq++;
+					prunePair(pos1, rc1, pos2, rc2, competitor[0], competitor[1], seq);
+					stats.numPruned++;
+				}
+			}
+		}
+	}
+
+	private int[] findPairCompetitor(int pos1, int candidateRc1, int pos2, int candidateRc2, int seq) {
+		for (int competitorRc1=0; competitorRc1<numRCs(pos1); competitorRc1++) {
+
+			// skip pruned competitors
+			if (!isUnprunedAt(singleSeq(pos1, competitorRc1), seq)) {
+				continue;
+			}
+
+			for (int competitorRc2=0; competitorRc2<numRCs(pos2); competitorRc2++) {
+
+				// skip pruned competitors
+				if (!isUnprunedAt(singleSeq(pos2, competitorRc2), seq)
+					|| !isUnprunedAt(pairSeq(pos1, competitorRc1, pos2, competitorRc2), seq)) {
+					continue;
+				}
+
+				// don't compete against self
+				if (competitorRc1 == candidateRc1 && competitorRc2 == candidateRc2) {
+					continue;
+				}
+
+				// skip unmatched types if needed
+				if (typeDependent && (!typesMatch(pos1, candidateRc1, competitorRc1) || !typesMatch(pos2, candidateRc2, competitorRc2))) {
+					continue;
+				}
+
+				if (pairCompetitorWins(pos1, candidateRc1, pos2, candidateRc2, competitorRc1, competitorRc2, seq)) {
+					return new int[] { competitorRc1, competitorRc2 };
+				}
+			}
+		}
+		return null;
+	}
+
+	/** does the competitor beat the candidate, considering only what was pruned before seq? */
+	private boolean pairCompetitorWins(int pos1, int candidateRc1, int pos2, int candidateRc2, int competitorRc1, int competitorRc2, int seq) {
+
+		// start with fragment energy diff
+		double energyDiffSum = 0
+			+ emat.getOneBodyDouble(pos1, candidateRc1)
+			+ emat.getOneBodyDouble(pos2, candidateRc2)
+			+ emat.getPairwiseDouble(pos1, candidateRc1, pos2, candidateRc2)
+			- emat.getOneBodyDouble(pos1, competitorRc1)
+			- emat.getOneBodyDouble(pos2, competitorRc2)
+			- emat.getPairwiseDouble(pos1, competitorRc1, pos2, competitorRc2);
+
+		// sum over witness positions
+		for (int witnessPos=0; witnessPos<numPos(); witnessPos++) {
+
+			// witness pos can't be candidate pos
+			if (witnessPos == pos1 || witnessPos == pos2) {
+				continue;
+			}
+
+			// min over witness rcs
+			double minEnergyDiff = Double.POSITIVE_INFINITY;
+			for (int witnessRc=0; witnessRc<numRCs(witnessPos); witnessRc++) {
+
+				// skip pruned witnesses
+				if (isPrunedBefore(singleSeq(witnessPos, witnessRc), seq)
+					|| isPrunedBefore(pairSeq(pos1, candidateRc1, witnessPos, witnessRc), seq)
+					|| isPrunedBefore(pairSeq(pos2, candidateRc2, witnessPos, witnessRc), seq)) {
+					continue;
+				}
+
+				double energyDiff = 0
+					+ emat.getPairwiseDouble(pos1, candidateRc1, witnessPos, witnessRc)
+					+ emat.getPairwiseDouble(pos2, candidateRc2, witnessPos, witnessRc)
+					- emat.getPairwiseDouble(pos1, competitorRc1, witnessPos, witnessRc)
+					- emat.getPairwiseDouble(pos2, competitorRc2, witnessPos, witnessRc);
+				minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
+			}
+
+			energyDiffSum += minEnergyDiff;
+			if (energyDiffSum == Double.POSITIVE_INFINITY) {
+				break;
+			}
+		}
+
+		return energyDiffSum > energyDiffThreshold;
+	}
+
+	private void prunePair(int pos1, int rc1, int pos2, int rc2, int competitorRc1, int competitorRc2, int seq) {
+		int i = pmat.getPairwiseIndex(pos1, rc1, pos2, rc2);
+		pairSeqs[i] = seq;
+		pairCompetitors1[i] = competitorRc1;
+		pairCompetitors2[i] = competitorRc2;
+		pmat.setPairwise(pos1, rc1, pos2, rc2, true);
+		decisions.add(new Decision(seq, pos1, rc1, pos2, rc2));
+	}
+
+	private void unprunePair(int pos1, int rc1, int pos2, int rc2) {
+		int i = pmat.getPairwiseIndex(pos1, rc1, pos2, rc2);
+		pairCompetitors1[i] = NoCompetitor;
+		pairCompetitors2[i] = NoCompetitor;
+
+		// if either single is still pruned, the pair stays pruned because of it
+		int seq1 = singleSeq(pos1, rc1);
+		int seq2 = singleSeq(pos2, rc2);
+		if (seq1 != NotPruned || seq2 != NotPruned) {
+			pairSeqs[i] = seq1 == NotPruned ? seq2 : seq2 == NotPruned ? seq1 : Math.min(seq1, seq2);
+		} else {
+			pairSeqs[i] = NotPruned;
+			pmat.setPairwise(pos1, rc1, pos2, rc2, false);
+		}
+	}
+
+
+	// FOR UPDATES
+
+	private static class Decision {
+
+		final int seq;
+		final int pos1;
+		final int rc1;
+		final int pos2; // -1 for singles
+		final int rc2;
+
+		Decision(int seq, int pos1, int rc1, int pos2, int rc2) {
+			this.seq = seq;
+			this.pos1 = pos1;
+			this.rc1 = rc1;
+			this.pos2 = pos2;
+			this.rc2 = rc2;
+		}
+
+		boolean isSingle() {
+			return pos2 < 0;
+		}
+	}
+
+	/**
+	 * Call this after changing energies in the energy matrix.
+	 * Pass all the tuples whose energies changed. Only the RCs in the tuples matter,
+	 * so eg, a changed pair energy is the same as changing the energies of both RCs.
+	 *
+	 * Pruning decisions that involve the changed RCs are checked again, and undone if they no longer hold.
+	 * Then unpruned singles and pairs at the changed positions are checked for new pruning.
+	 * New pruning can enable even more pruning elsewhere, just like rounds of DEE can,
+	 * so call {@link #pruneSingles()} and {@link #prunePairs()} afterwards to find it.
+	 */
+	public Stats update(Collection<RCTuple> changedTuples) {
+
+		Stats stats = new Stats();
+
+		// find the RCs and positions whose energies changed
+		BitSet changedRCs = new BitSet(pmat.getNumOneBody());
+		boolean[] changedPos = new boolean[numPos()];
+		for (RCTuple tuple : changedTuples) {
+			for (int i=0; i<tuple.size(); i++) {
+				int pos = tuple.pos.get(i);
+				changedRCs.set(pmat.getOneBodyIndex(pos, tuple.RCs.get(i)));
+				changedPos[pos] = true;
+			}
+		}
+
+		// check the decisions again, in the order we made them,
+		// and drop the undone ones from the list while we're at it
+		boolean unprunedAny = false;
+		int numKept = 0;
+		for (int i=0; i<decisions.size(); i++) {
+			Decision decision = decisions.get(i);
+
+			// once we undo a decision, any later decision could have depended on it
+			if (unprunedAny || involvesChangedRCs(decision, changedRCs)) {
+				stats.numChecked++;
+				if (!recheck(decision)) {
+					if (decision.isSingle()) {
+						unpruneSingle(decision.pos1, decision.rc1);
+					} else {
+						unprunePair(decision.pos1, decision.rc1, decision.pos2, decision.rc2);
+					}
+					stats.numUnpruned++;
+					unprunedAny = true;
+					continue;
+				}
+			}
+
+			decisions.set(numKept++, decision);
+		}
+		decisions.subList(numKept, decisions.size()).clear();
+
+		// look for new pruning at the changed positions
+		for (int pos=0; pos<numPos(); pos++) {
+			if (changedPos[pos]) {
+				pruneSinglesAt(pos, stats);
+			}
+		}
+		for (int pos1=1; pos1<numPos(); pos1++) {
+			for (int pos2=0; pos2<pos1; pos2++) {
+				if (changedPos[pos1] || changedPos[pos2]) {
+					prunePairsAt(pos1, pos2, stats);
+				}
+			}
+		}
+
+		return stats;
+	}
+
+	private boolean involvesChangedRCs(Decision decision, BitSet changedRCs) {
+		if (decision.isSingle()) {
+			int i = pmat.getOneBodyIndex(decision.pos1, decision.rc1);
+			return changedRCs.get(i)
+				|| changedRCs.get(pmat.getOneBodyIndex(decision.pos1, singleCompetitors[i]));
+		} else {
+			int i = pmat.getPairwiseIndex(decision.pos1, decision.rc1, decision.pos2, decision.rc2);
+			return changedRCs.get(pmat.getOneBodyIndex(decision.pos1, decision.rc1))
+				|| changedRCs.get(pmat.getOneBodyIndex(decision.pos2, decision.rc2))
+				|| changedRCs.get(pmat.getOneBodyIndex(decision.pos1, pairCompetitors1[i]))
+				|| changedRCs.get(pmat.getOneBodyIndex(decision.pos2, pairCompetitors2[i]));
+		}
+	}
+
+	/** returns true if the decision still holds, possibly with a different competitor */
+	private boolean recheck(Decision decision) {
+		if (decision.isSingle()) {
+
+			int i = pmat.getOneBodyIndex(decision.pos1, decision.rc1);
+
+			// try the same competitor first, it's the most likely to still win
+			if (singleCompetitorWins(decision.pos1, decision.rc1, singleCompetitors[i], decision.seq)) {
+				return true;
+			}
+
+			int competitorRc = findSingleCompetitor(decision.pos1, decision.rc1, decision.seq);
+			if (competitorRc != NoCompetitor) {
+				singleCompetitors[i] = competitorRc;
+				return true;
+			}
+			return false;
+
+		} else {
+
+			int i = pmat.getPairwiseIndex(decision.pos1, decision.rc1, decision.pos2, decision.rc2);
+
+			// try the same competitor first, it's the most likely to still win
+			if (pairCompetitorWins(decision.pos1, decision.rc1, decision.pos2, decision.rc2, pairCompetitors1[i], pairCompetitors2[i], decision.seq)) {
+				return true;
+			}
+
+			int[] competitor = findPairCompetitor(decision.pos1, decision.rc1, decision.pos2, decision.rc2, decision.seq);
+			if (competitor != null) {
+				pairCompetitors1[i] = competitor[0];
+				pairCompetitors2[i] = competitor[1];
+				return true;
+			}
+			return false;
+		}
+	}
+}
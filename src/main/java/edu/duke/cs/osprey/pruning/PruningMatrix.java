@@ -226,33 +226,22 @@ public class PruningMatrix extends TupleMatrixBoolean {
 
         // check triples if needed using tuple trees
 		if (hasHigherOrderTuples()) {
-
-        	// allocate just one tuple, but update it inside the loops
-        	RCTuple tuple = new RCTuple(0, 0, 0, 0, 0, 0);
-
 			for (int i1=2; i1<numTupPos; i1++) {
 				int pos1 = tuppos.get(i1);
 				int rc1 = tupRCs.get(i1);
-
-				// update tuple in reverse order, so positions are sorted
-				tuple.pos.set(2, pos1);
-				tuple.RCs.set(2, rc1);
-
 				for (int i2=1; i2<i1; i2++) {
 					int pos2 = tuppos.get(i2);
 					int rc2 = tupRCs.get(i2);
-
-					tuple.pos.set(1, pos2);
-					tuple.RCs.set(1, rc2);
-
 					for (int i3=0; i3<i2; i3++) {
 						int pos3 = tuppos.get(i3);
 						int rc3 = tupRCs.get(i3);
 
-						tuple.pos.set(0, pos3);
-						tuple.RCs.set(0, rc3);
+						// tuple trees need sorted positions
+						if (pos3 >= pos2 || pos2 >= pos1) {
+							throw new IllegalStateException("RCTuple positions are not sorted");
+						}
 
-						if (getTuple(tuple)) {
+						if (isTriplePrunedHigherOrder(pos3, rc3, pos2, rc2, pos1, rc1)) {
 							return true;
 						}
 					}
@@ -264,6 +253,110 @@ public class PruningMatrix extends TupleMatrixBoolean {
     }
     
     
+    /**
+     * Same as {@link #isPruned(RCTuple)}, but reads positions and RCs without unboxing.
+     */
+    public boolean isPruned(ImmutableRCTuple tup) {
+
+    	boolean hasHigherOrderTerms = hasHigherOrderTerms();
+    	int numTupPos = tup.size();
+
+		// check singles
+		for (int i1=0; i1<numTupPos; i1++) {
+			if (getOneBody(tup.pos(i1), tup.rc(i1))) {
+				return true;
+			}
+		}
+
+		// check pairs
+		for (int i1=0; i1<numTupPos; i1++) {
+			int pos1 = tup.pos(i1);
+			int rc1 = tup.rc(i1);
+			for (int i2=0; i2<i1; i2++) {
+				int pos2 = tup.pos(i2);
+				int rc2 = tup.rc(i2);
+
+				if (getPairwise(pos1, rc1, pos2, rc2)) {
+					return true;
+				}
+
+				if (hasHigherOrderTerms) {
+					HigherTupleFinder<Boolean> htf = getHigherOrderTerms(pos1, rc1, pos2, rc2);
+					if (htf != null) {
+						if (isPrunedHigherOrder(tup.toRCTuple(), i2, htf)) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+
+		// check triples if needed using tuple trees
+		if (hasHigherOrderTuples()) {
+			for (int i1=2; i1<numTupPos; i1++) {
+				for (int i2=1; i2<i1; i2++) {
+					for (int i3=0; i3<i2; i3++) {
+						if (isTriplePrunedHigherOrder(tup.pos(i3), tup.rc(i3), tup.pos(i2), tup.rc(i2), tup.pos(i1), tup.rc(i1))) {
+							return true;
+						}
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Looks up a triple in the tuple trees without allocating a tuple.
+	 * Positions must be sorted, ie pos1 < pos2 < pos3.
+	 */
+	private boolean isTriplePrunedHigherOrder(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+		TupleTree<Boolean> tree = getHigherOrderTuples(pos1, rc1, pos2, rc2);
+		if (tree == null) {
+			return false;
+		}
+		return Boolean.TRUE.equals(tree.get(pos3, rc3));
+	}
+
+	/**
+	 * Same as {@link #isTriplePrunedHigherOrder(int, int, int, int, int, int)}, but sorts the positions first.
+	 */
+	private boolean isAnyTriplePrunedHigherOrder(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3) {
+
+		if (!hasHigherOrderTuples()) {
+			return false;
+		}
+
+		// sort the positions with a tiny sorting network, so we don't need to allocate a tuple
+		if (pos1 > pos2) {
+			int p = pos1; pos1 = pos2; pos2 = p;
+			int r = rc1; rc1 = rc2; rc2 = r;
+		}
+		if (pos2 > pos3) {
+			int p = pos2; pos2 = pos3; pos3 = p;
+			int r = rc2; rc2 = rc3; rc3 = r;
+		}
+		if (pos1 > pos2) {
+			int p = pos1; pos1 = pos2; pos2 = p;
+			int r = rc1; rc1 = rc2; rc2 = r;
+		}
+		if (pos1 == pos2 || pos2 == pos3) {
+			throw new IllegalStateException("RCTuple positions are not sorted");
+		}
+
+		return isTriplePrunedHigherOrder(pos1, rc1, pos2, rc2, pos3, rc3);
+	}
+
+    @Override
+	public Boolean getTuple(ImmutableRCTuple tuple) {
+		Boolean val = super.getTuple(tuple);
+		if (val != null) {
+			return val;
+		}
+		return false;
+	}
+
     public boolean isPrunedHigherOrder(RCTuple tup, int curIndex, HigherTupleFinder<Boolean> htf){
         //Checks if tup is pruned based on interactions in htf (corresponds to some sub-tuple of tup)
         //with RCs whose indices in tup are < curIndex
@@ -338,6 +431,33 @@ public class PruningMatrix extends TupleMatrixBoolean {
 		}
 	}
 
+	/** the number of 64-bit words needed to hold one bit for each RC at pos */
+	public int getNumWords(int pos) {
+		return (getNumConfAtPos(pos) + 63) >>> 6;
+	}
+
+	/**
+	 * Sets the bits in out for the unpruned RCs at pos, and clears all the others.
+	 * Bits are packed 64 RCs per word, so out needs at least {@link #getNumWords(int)} words.
+	 */
+	public void getUnprunedBits(int pos, long[] out) {
+		int n = getNumConfAtPos(pos);
+		int numWords = getNumWords(pos);
+		Arrays.fill(out, 0, numWords, -1L);
+		if (n % 64 != 0) {
+			out[numWords - 1] = -1L >>> (64 - n % 64);
+		}
+		clearOneBodyBits(pos, out);
+	}
+
+	/**
+	 * Clears the bits in out for the RCs at pos2 that are pruned in a pair with (pos1,rc1).
+	 * After {@link #getUnprunedBits(int, long[])}, the bits left are the unpruned RCs at pos2 that are compatible with (pos1,rc1).
+	 */
+	public void andUnprunedPairBits(int pos1, int rc1, int pos2, long[] out) {
+		clearPairwiseBits(pos1, rc1, pos2, out);
+	}
+
 	public boolean isSinglePruned(int pos, int rc) {
     	return getOneBody(pos, rc);
 	}
@@ -355,11 +475,10 @@ public class PruningMatrix extends TupleMatrixBoolean {
 			|| getPairwise(pos1, rc1, pos2, rc2)
 			|| getPairwise(pos1, rc1, pos3, rc3)
 			|| getPairwise(pos2, rc2, pos3, rc3)
-			|| getTuple(new RCTuple(pos1, rc1, pos2, rc2, pos3, rc3).sorted());
+			|| isAnyTriplePrunedHigherOrder(pos1, rc1, pos2, rc2, pos3, rc3);
 	}
 
 	public boolean isQuadruplePruned(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3, int pos4, int rc4) {
-		RCTuple tuple = new RCTuple(0, 0, 0, 0, 0, 0);
 		return isSinglePruned(pos1, rc1)
 			|| isSinglePruned(pos2, rc2)
 			|| isSinglePruned(pos3, rc3)
@@ -370,14 +489,13 @@ public class PruningMatrix extends TupleMatrixBoolean {
 			|| getPairwise(pos2, rc2, pos3, rc3)
 			|| getPairwise(pos2, rc2, pos4, rc4)
 			|| getPairwise(pos3, rc3, pos4, rc4)
-			|| getTuple(tuple.set(pos1, rc1, pos2, rc2, pos3, rc3).sorted())
-			|| getTuple(tuple.set(pos1, rc1, pos2, rc2, pos4, rc4).sorted())
-			|| getTuple(tuple.set(pos1, rc1, pos3, rc3, pos4, rc4).sorted())
-			|| getTuple(tuple.set(pos2, rc2, pos3, rc3, pos4, rc4).sorted());
+			|| isAnyTriplePrunedHigherOrder(pos1, rc1, pos2, rc2, pos3, rc3)
+			|| isAnyTriplePrunedHigherOrder(pos1, rc1, pos2, rc2, pos4, rc4)
+			|| isAnyTriplePrunedHigherOrder(pos1, rc1, pos3, rc3, pos4, rc4)
+			|| isAnyTriplePrunedHigherOrder(pos2, rc2, pos3, rc3, pos4, rc4);
 	}
 
 	public boolean isQuintuplePruned(int pos1, int rc1, int pos2, int rc2, int pos3, int rc3, int pos4, int rc4, int pos5, int rc5) {
-		RCTuple tuple = new RCTuple(0, 0, 0, 0, 0, 0);
 		return isSinglePruned(pos1, rc1)
 			|| isSinglePruned(pos2, rc2)
 			|| isSinglePruned(pos3, rc3)
@@ -393,16 +511,16 @@ public class PruningMatrix extends TupleMatrixBoolean {
 			|| getPairwise(pos3, rc3, pos4, rc4)
 			|| getPairwise(pos3, rc3, pos5, rc5)
 			|| getPairwise(pos4, rc4, pos5, rc5)
-			|| getTuple(tuple.set(pos1, rc1, pos2, rc2, pos3, rc3).sorted())
-			|| getTuple(tuple.set(pos1, rc1, pos2, rc2, pos4, rc4).sorted())
-			|| getTuple(tuple.set(pos1, rc1, pos2, rc2, pos5, rc5).sorted())
-			|| getTuple(tuple.set(pos1, rc1, pos3, rc3, pos4, rc4).sorted())
-			|| getTuple(tuple.set(pos1, rc1, pos3, rc3, pos5, rc5).sorted())
-			|| getTuple(tuple.set(pos1, rc1, pos4, rc4, pos5, rc5).sorted())
-			|| getTuple(tuple.set(pos2, rc2, pos3, rc3, pos4, rc4).sorted())
-			|| getTuple(tuple.set(pos2, rc2, pos3, rc3, pos5, rc5).sorted())
-			|| getTuple(tuple.set(pos2, rc2, pos4, rc4, pos5, rc5).sorted())
-			|| getTuple(tuple.set(pos3, rc3, pos4, rc4, pos5, rc5).sorted());
+			|| isAnyTriplePrunedHigherOrder(pos1, rc1, pos2, rc2, pos3, rc3)
+			|| isAnyTriplePrunedHigherOrder(pos1, rc1, pos2, rc2, pos4, rc4)
+			|| isAnyTriplePrunedHigherOrder(pos1, rc1, pos2, rc2, pos5, rc5)
+			|| isAnyTriplePrunedHigherOrder(pos1, rc1, pos3, rc3, pos4, rc4)
+			|| isAnyTriplePrunedHigherOrder(pos1, rc1, pos3, rc3, pos5, rc5)
+			|| isAnyTriplePrunedHigherOrder(pos1, rc1, pos4, rc4, pos5, rc5)
+			|| isAnyTriplePrunedHigherOrder(pos2, rc2, pos3, rc3, pos4, rc4)
+			|| isAnyTriplePrunedHigherOrder(pos2, rc2, pos3, rc3, pos5, rc5)
+			|| isAnyTriplePrunedHigherOrder(pos2, rc2, pos4, rc4, pos5, rc5)
+			|| isAnyTriplePrunedHigherOrder(pos3, rc3, pos4, rc4, pos5, rc5);
 	}
 
 	public void markAsPruned(RCTuple tup){
@@ -336,7 +336,7 @@ public class SimpleDEE {
 				{
 					SimpleDEE dee = new SimpleDEE(confSpace, emat, competitors);
 					if (singlesGoldsteinDiffThreshold != null) {
-						dee.pruneSinglesGoldstein(0, typeDependent);
+						dee.pruneSinglesGoldstein(0, typeDependent, parallelism);
 					}
 					if (pairsGoldsteinDiffThreshold != null) {
 						dee.prunePairsGoldstein(0, typeDependent, parallelism);
@@ -359,7 +359,7 @@ public class SimpleDEE {
 
 					// 3.1 Goldstein criterion
 					if (singlesGoldsteinDiffThreshold != null) {
-						dee.pruneSinglesGoldstein(singlesGoldsteinDiffThreshold, typeDependent);
+						dee.pruneSinglesGoldstein(singlesGoldsteinDiffThreshold, typeDependent, parallelism);
 						maybeReport.accept("Goldstein Singles");
 					}
 					if (pairsGoldsteinDiffThreshold != null) {
@@ -471,7 +471,7 @@ public class SimpleDEE {
 
 	public void pruneSinglesByThreshold(double energyThreshold) {
 		pmat.forEachUnprunedSingle((pos, rc) -> {
-			if (emat.getOneBody(pos, rc) > energyThreshold) {
+			if (emat.getOneBodyDouble(pos, rc) > energyThreshold) {
 				pmat.pruneSingle(pos, rc);
 			}
 			return PruningMatrix.IteratorCommand.Continue;
@@ -480,86 +480,171 @@ public class SimpleDEE {
 
 	public void prunePairsByThreshold(double energyThreshold) {
 		pmat.forEachUnprunedPair((pos1, rc1, pos2, rc2) -> {
-			if (emat.getPairwise(pos1, rc1, pos2, rc2) > energyThreshold) {
+			if (emat.getPairwiseDouble(pos1, rc1, pos2, rc2) > energyThreshold) {
 				pmat.prunePair(pos1, rc1, pos2, rc2);
 			}
 			return PruningMatrix.IteratorCommand.Continue;
 		});
 	}
 
-	public void pruneSinglesGoldstein(double energyDiffThreshold, boolean typeDependent) {
-
-		// singles are so fast, we don't need to bother with parallelism and progress (right?)
-
-		pmat.forEachUnprunedSingle((candidatePos, candidateRc) -> {
+	/**
+	 * The unpruned witness RCs for a candidate tuple, packed into bits at each witness position,
+	 * along with the candidate's energies with each witness RC.
+	 * These only depend on the candidate, so building them once per candidate rather than once per competitor
+	 * saves most of the pruning lookups and about half the energy lookups in the Goldstein criterion.
+	 */
+	private class Witnesses {
+
+		final int[] candidatePos;
+		final int[] candidateRc;
+		final int[] witnessPos;
+		final long[][] bits;
+		final double[][] energies;
+
+		Witnesses(int[] candidatePos, int[] candidateRc) {
+
+			this.candidatePos = candidatePos;
+			this.candidateRc = candidateRc;
+
+			// witness pos can't be candidate pos
+			int numPos = confSpace.positions.size();
+			witnessPos = new int[numPos - candidatePos.length];
+			int i = 0;
+			for (int pos=0; pos<numPos; pos++) {
+				boolean isCandidatePos = false;
+				for (int cpos : candidatePos) {
+					if (cpos == pos) {
+						isCandidatePos = true;
+						break;
+					}
+				}
+				if (!isCandidatePos) {
+					witnessPos[i++] = pos;
+				}
+			}
 
-			// is there a competitor rc that has much lower energy?
-			PruningMatrix.IteratorCommand result = competitors.forEachUnprunedSingleAt(candidatePos, (competitorPos, competitorRc) -> {
+			bits = new long[witnessPos.length][];
+			energies = new double[witnessPos.length][];
+			for (i=0; i<witnessPos.length; i++) {
+				int wpos = witnessPos[i];
 
-				// don't compete against self
-				if (competitorRc == candidateRc) {
-					return PruningMatrix.IteratorCommand.Continue;
+				// skip pruned witnesses
+				bits[i] = new long[pmat.getNumWords(wpos)];
+				pmat.getUnprunedBits(wpos, bits[i]);
+				for (int c=0; c<candidatePos.length; c++) {
+					pmat.andUnprunedPairBits(candidatePos[c], candidateRc[c], wpos, bits[i]);
 				}
 
-				// skip unmatched types if needed
-				if (typeDependent) {
-					if (!getTemplate(candidatePos, candidateRc).name.equals(getTemplate(competitorPos, competitorRc).name)) {
-						return PruningMatrix.IteratorCommand.Continue;
+				// get the candidate energies from the point of view of the witness
+				energies[i] = new double[pmat.getNumConfAtPos(wpos)];
+				long[] words = bits[i];
+				for (int w=0; w<words.length; w++) {
+					for (long word = words[w]; word != 0; word &= word - 1) {
+						int witnessRc = (w << 6) + Long.numberOfTrailingZeros(word);
+						double energy = 0;
+						for (int c=0; c<candidatePos.length; c++) {
+							energy += emat.getPairwiseDouble(candidatePos[c], candidateRc[c], wpos, witnessRc);
+						}
+						energies[i][witnessRc] = energy;
 					}
 				}
+			}
+		}
 
-				// start with singles energy diff
-				double energyDiffSum = 0
-					+ emat.getOneBody(candidatePos, candidateRc)
-					- emat.getOneBody(competitorPos, competitorRc);
-
-				// sum over witness positions
-				for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
+		/** sums, over the witness positions, the min energy diff between the candidate and the competitor */
+		double sumEnergyDiffs(double energyDiffSum, int[] competitorRc) {
 
-					// witness pos can't be candidate pos
-					if (witnessPos == candidatePos) {
-						continue;
-					}
+			for (int i=0; i<witnessPos.length; i++) {
+				int wpos = witnessPos[i];
 
-					// min over witness rcs
-					double minEnergyDiff = Double.POSITIVE_INFINITY;
-					int numWitnessRCs = confSpace.positions.get(witnessPos).resConfs.size();
-					for (int witnessRc=0; witnessRc<numWitnessRCs; witnessRc++) {
-
-						// skip pruned witnesses
-						if (pmat.isPairPruned(candidatePos, candidateRc, witnessPos, witnessRc)) {
-							continue;
-						}
+				// min over witness rcs
+				double minEnergyDiff = Double.POSITIVE_INFINITY;
+				long[] words = bits[i];
+				for (int w=0; w<words.length; w++) {
+					for (long word = words[w]; word != 0; word &= word - 1) {
+						int witnessRc = (w << 6) + Long.numberOfTrailingZeros(word);
 
 						// compute the energy diff between the candidate and competitor, from the point of view of the witness
-						double energyDiff = 0
-							+ emat.getPairwise(candidatePos, candidateRc, witnessPos, witnessRc)
-							- emat.getPairwise(competitorPos, competitorRc, witnessPos, witnessRc);
+						double energyDiff = energies[i][witnessRc];
+						for (int c=0; c<candidatePos.length; c++) {
+							energyDiff -= emat.getPairwiseDouble(candidatePos[c], competitorRc[c], wpos, witnessRc);
+						}
 						minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
 					}
-
-					energyDiffSum += minEnergyDiff;
-					if (energyDiffSum == Double.POSITIVE_INFINITY) {
-						break;
-					}
 				}
 
-				// if we found a suitable competitor, stop searching
-				if (energyDiffSum > energyDiffThreshold) {
-					return PruningMatrix.IteratorCommand.Break;
-				} else {
-					return PruningMatrix.IteratorCommand.Continue;
+				energyDiffSum += minEnergyDiff;
+				if (energyDiffSum == Double.POSITIVE_INFINITY) {
+					break;
 				}
-			});
-
-			// if the iteration terminated early (ie, we found a suitable competitor), then prune the candidate
-			if (result == PruningMatrix.IteratorCommand.Break) {
-				pmat.pruneSingle(candidatePos, candidateRc);
 			}
 
-			// always go onto to check the next candidate
-			return PruningMatrix.IteratorCommand.Continue;
-		});
+			return energyDiffSum;
+		}
+	}
+
+	public void pruneSinglesGoldstein(double energyDiffThreshold, boolean typeDependent) {
+		pruneSinglesGoldstein(energyDiffThreshold, typeDependent, Parallelism.makeCpu(1));
+	}
+
+	public void pruneSinglesGoldstein(double energyDiffThreshold, boolean typeDependent, Parallelism parallelism) {
+
+		// singles are so fast, we don't need to bother with progress (right?)
+
+		try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
+
+			pmat.forEachUnprunedSingle((candidatePos, candidateRc) -> {
+
+				tasks.submit(
+					() -> {
+						Witnesses witnesses = new Witnesses(new int[] { candidatePos }, new int[] { candidateRc });
+						int[] competitorRcs = new int[1];
+
+						// is there a competitor rc that has much lower energy?
+						return competitors.forEachUnprunedSingleAt(candidatePos, (competitorPos, competitorRc) -> {
+
+							// don't compete against self
+							if (competitorRc == candidateRc) {
+								return PruningMatrix.IteratorCommand.Continue;
+							}
+
+							// skip unmatched types if needed
+							if (typeDependent) {
+								if (!getTemplate(candidatePos, candidateRc).name.equals(getTemplate(competitorPos, competitorRc).name)) {
+									return PruningMatrix.IteratorCommand.Continue;
+								}
+							}
+
+							// start with singles energy diff
+							double energyDiffSum = 0
+								+ emat.getOneBodyDouble(candidatePos, candidateRc)
+								- emat.getOneBodyDouble(competitorPos, competitorRc);
+
+							// sum over witness positions
+							competitorRcs[0] = competitorRc;
+							energyDiffSum = witnesses.sumEnergyDiffs(energyDiffSum, competitorRcs);
+
+							// if we found a suitable competitor, stop searching
+							if (energyDiffSum > energyDiffThreshold) {
+								return PruningMatrix.IteratorCommand.Break;
+							} else {
+								return PruningMatrix.IteratorCommand.Continue;
+							}
+						});
+					},
+					(result) -> {
+
+						// if the iteration terminated early (ie, we found a suitable competitor), then prune the candidate
+						if (result == PruningMatrix.IteratorCommand.Break) {
+							pmat.pruneSingle(candidatePos, candidateRc);
+						}
+					}
+				);
+
+				// always go onto to check the next candidate
+				return PruningMatrix.IteratorCommand.Continue;
+			});
+		}
 	}
 
 	public void prunePairsGoldstein(double energyDiffThreshold, boolean typeDependent) {
@@ -582,6 +667,12 @@ public class SimpleDEE {
 
 				tasks.submit(
 					() -> {
+						Witnesses witnesses = new Witnesses(
+							new int[] { candidatePos1, candidatePos2 },
+							new int[] { candidateRc1, candidateRc2 }
+						);
+						int[] competitorRcs = new int[2];
+
 						// can we find a competitor rc that has much lower energy?
 						return competitors.forEachUnprunedPairAt(candidatePos1, candidatePos2, (competitorPos1, competitorRc1, competitorPos2, competitorRc2) -> {
 
@@ -600,45 +691,17 @@ public class SimpleDEE {
 
 							// start with fragment energy diff
 							double energyDiffSum = 0
-								+ emat.getOneBody(candidatePos1, candidateRc1)
-								+ emat.getOneBody(candidatePos2, candidateRc2)
-								+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
-								- emat.getOneBody(competitorPos1, competitorRc1)
-								- emat.getOneBody(competitorPos2, competitorRc2)
-								- emat.getPairwise(competitorPos1, competitorRc1, competitorPos2, competitorRc2);
+								+ emat.getOneBodyDouble(candidatePos1, candidateRc1)
+								+ emat.getOneBodyDouble(candidatePos2, candidateRc2)
+								+ emat.getPairwiseDouble(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
+								- emat.getOneBodyDouble(competitorPos1, competitorRc1)
+								- emat.getOneBodyDouble(competitorPos2, competitorRc2)
+								- emat.getPairwiseDouble(competitorPos1, competitorRc1, competitorPos2, competitorRc2);
 
 							// sum over witness positions
-							for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
-
-								// witness pos can't be candidate pos
-								if (witnessPos == candidatePos1 || witnessPos == candidatePos2) {
-									continue;
-								}
-
-								// min over witness rcs
-								double minEnergyDiff = Double.POSITIVE_INFINITY;
-								int numWitnessRCs = confSpace.positions.get(witnessPos).resConfs.size();
-								for (int witnessRc=0; witnessRc<numWitnessRCs; witnessRc++) {
-
-									// skip pruned witnesses
-									if (pmat.isPairPruned(candidatePos1, candidateRc1, witnessPos, witnessRc)
-										|| pmat.isPairPruned(candidatePos2, candidateRc2, witnessPos, witnessRc)) {
-										continue;
-									}
-
-									// compute the energy diff between the candidate and competitor, from the point of view of the witness
-									double energyDiff = 0
-										+ emat.getPairwise(candidatePos1, candidateRc1, witnessPos, witnessRc)
-										+ emat.getPairwise(candidatePos2, candidateRc2, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos1, competitorRc1, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos2, competitorRc2, witnessPos, witnessRc);
-									minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
-								}
-								energyDiffSum += minEnergyDiff;
-								if (energyDiffSum == Double.POSITIVE_INFINITY) {
-									break;
-								}
-							}
+							competitorRcs[0] = competitorRc1;
+							competitorRcs[1] = competitorRc2;
+							energyDiffSum = witnesses.sumEnergyDiffs(energyDiffSum, competitorRcs);
 
 							if (energyDiffSum > energyDiffThreshold) {
 								return PruningMatrix.IteratorCommand.Break;
@@ -684,6 +747,12 @@ public class SimpleDEE {
 
 				tasks.submit(
 					() -> {
+						Witnesses witnesses = new Witnesses(
+							new int[] { candidatePos1, candidatePos2, candidatePos3 },
+							new int[] { candidateRc1, candidateRc2, candidateRc3 }
+						);
+						int[] competitorRcs = new int[3];
+
 						// can we find a competitor rc that has much lower energy?
 						return competitors.forEachUnprunedTripleAt(candidatePos1, candidatePos2, candidatePos3, (competitorPos1, competitorRc1, competitorPos2, competitorRc2, competitorPos3, competitorRc3) -> {
 
@@ -703,54 +772,24 @@ public class SimpleDEE {
 
 							// start with fragment energy diff
 							double energyDiffSum = 0
-								+ emat.getOneBody(candidatePos1, candidateRc1)
-								+ emat.getOneBody(candidatePos2, candidateRc2)
-								+ emat.getOneBody(candidatePos3, candidateRc3)
-								+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
-								+ emat.getPairwise(candidatePos1, candidateRc1, candidatePos3, candidateRc3)
-								+ emat.getPairwise(candidatePos2, candidateRc2, candidatePos3, candidateRc3)
-								- emat.getOneBody(competitorPos1, competitorRc1)
-								- emat.getOneBody(competitorPos2, competitorRc2)
-								- emat.getOneBody(competitorPos3, competitorRc3)
-								- emat.getPairwise(competitorPos1, competitorRc1, competitorPos2, competitorRc2)
-								- emat.getPairwise(competitorPos1, competitorRc1, competitorPos3, competitorRc3)
-								- emat.getPairwise(competitorPos2, competitorRc2, competitorPos3, competitorRc3);
+								+ emat.getOneBodyDouble(candidatePos1, candidateRc1)
+								+ emat.getOneBodyDouble(candidatePos2, candidateRc2)
+								+ emat.getOneBodyDouble(candidatePos3, candidateRc3)
+								+ emat.getPairwiseDouble(candidatePos1, candidateRc1, candidatePos2, candidateRc2)
+								+ emat.getPairwiseDouble(candidatePos1, candidateRc1, candidatePos3, candidateRc3)
+								+ emat.getPairwiseDouble(candidatePos2, candidateRc2, candidatePos3, candidateRc3)
+								- emat.getOneBodyDouble(competitorPos1, competitorRc1)
+								- emat.getOneBodyDouble(competitorPos2, competitorRc2)
+								- emat.getOneBodyDouble(competitorPos3, competitorRc3)
+								- emat.getPairwiseDouble(competitorPos1, competitorRc1, competitorPos2, competitorRc2)
+								- emat.getPairwiseDouble(competitorPos1, competitorRc1, competitorPos3, competitorRc3)
+								- emat.getPairwiseDouble(competitorPos2, competitorRc2, competitorPos3, competitorRc3);
 
 							// sum over witness positions
-							for (int witnessPos=0; witnessPos<confSpace.positions.size(); witnessPos++) {
-
-								// witness pos can't be candidate pos
-								if (witnessPos == candidatePos1 || witnessPos == candidatePos2 || witnessPos == candidatePos3) {
-									continue;
-								}
-
-								// min over witness rcs
-								double minEnergyDiff = Double.POSITIVE_INFINITY;
-								int numWitnessRCs = confSpace.positions.get(witnessPos).resConfs.size();
-								for (int witnessRc=0; witnessRc<numWitnessRCs; witnessRc++) {
-
-									// skip pruned witnesses
-									if (pmat.isPairPruned(candidatePos1, candidateRc1, witnessPos, witnessRc)
-										|| pmat.isPairPruned(candidatePos2, candidateRc2, witnessPos, witnessRc)
-										|| pmat.isPairPruned(candidatePos3, candidateRc3, witnessPos, witnessRc)) {
-										continue;
-									}
-
-									// compute the energy diff between the candidate and competitor, from the point of view of the witness
-									double energyDiff = 0
-										+ emat.getPairwise(candidatePos1, candidateRc1, witnessPos, witnessRc)
-										+ emat.getPairwise(candidatePos2, candidateRc2, witnessPos, witnessRc)
-										+ emat.getPairwise(candidatePos3, candidateRc3, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos1, competitorRc1, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos2, competitorRc2, witnessPos, witnessRc)
-										- emat.getPairwise(competitorPos3, competitorRc3, witnessPos, witnessRc);
-									minEnergyDiff = Math.min(minEnergyDiff, energyDiff);
-								}
-								energyDiffSum += minEnergyDiff;
-								if (energyDiffSum == Double.POSITIVE_INFINITY) {
-									break;
-								}
-							}
+							competitorRcs[0] = competitorRc1;
+							competitorRcs[1] = competitorRc2;
+							competitorRcs[2] = competitorRc3;
+							energyDiffSum = witnesses.sumEnergyDiffs(energyDiffSum, competitorRcs);
 
 							if (energyDiffSum > energyDiffThreshold) {
 								return PruningMatrix.IteratorCommand.Break;
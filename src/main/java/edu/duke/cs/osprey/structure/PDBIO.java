@@ -174,7 +174,6 @@ public class PDBIO {
 		ResInfo resInfo = new ResInfo();
 		
 		for (String line : pdbIter) {
-			line = padLine(line);
 			
 			if (isLine(line, "MODEL")) {
 				
@@ -196,17 +195,18 @@ public class PDBIO {
 				// ATOM   1146  CB APRO A  38       5.781  17.860   0.637  0.45 12.10           C
 				
 				// parse the line
-				int atomNum = Integer.parseInt(line.substring(6, 11).trim());
-				String atomName = line.substring(12,16).trim();
-				char alt = line.charAt(16);
-				String resName = trimRight(line.substring(17,27));
-				double x = Double.parseDouble(line.substring(30, 38).trim());
-				double y = Double.parseDouble(line.substring(38, 46).trim());
-				double z = Double.parseDouble(line.substring(46, 54).trim());
-				double bFactor = Double.parseDouble(defaultVal("0", line.substring(60, 66).trim()));
+				// (read the fields in place, since bulk reads spend most of their time here)
+				int atomNum = parseIntField(line, 6, 11);
+				String atomName = substringField(line, 12, 16).trim();
+				char alt = charField(line, 16);
+				String resName = trimRight(substringField(line, 17, 27));
+				double x = parseDoubleField(line, 30, 38);
+				double y = parseDoubleField(line, 38, 46);
+				double z = parseDoubleField(line, 46, 54);
+				double bFactor = isBlankField(line, 60, 66) ? 0.0 : parseDoubleField(line, 60, 66);
 				
 				// read the element, but enforce proper capitalization so we can match to the names in PeriodicTable
-				String elem = WordUtils.capitalize(line.substring(76, 78).trim().toLowerCase());
+				String elem = parseElementField(line, 76, 78);
 				
 				// should we start a new residue (with alts)?
 				if (!resName.equals(resInfo.name)) {
@@ -257,6 +257,131 @@ public class PDBIO {
 		return buf.toString();
 	}
 
+	/** returns the char at the column, or a space if the line is too short, as if the line were padded to 80 columns */
+	private static char charField(String line, int i) {
+		return i < line.length() ? line.charAt(i) : ' ';
+	}
+
+	/** returns the columns in [start,end), clipped to the line length */
+	private static String substringField(String line, int start, int end) {
+		start = Math.min(start, line.length());
+		end = Math.min(end, line.length());
+		return line.substring(start, end);
+	}
+
+	private static boolean isBlankField(String line, int start, int end) {
+		end = Math.min(end, line.length());
+		for (int i=start; i<end; i++) {
+			if (line.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int parseIntField(String line, int start, int end) {
+
+		end = Math.min(end, line.length());
+		start = Math.min(start, end);
+		while (start < end && line.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && line.charAt(end - 1) <= ' ') {
+			end--;
+		}
+
+		// handle the simple cases here, let Integer.parseInt() handle (or reject) the rest
+		int i = start;
+		boolean isNegative = false;
+		if (i < end && line.charAt(i) == '-') {
+			isNegative = true;
+			i++;
+		}
+		if (i == end || end - i > 9) {
+			return Integer.parseInt(substringField(line, start, end));
+		}
+		int val = 0;
+		for (; i<end; i++) {
+			char c = line.charAt(i);
+			if (c < '0' || c > '9') {
+				return Integer.parseInt(substringField(line, start, end));
+			}
+			val = val*10 + (c - '0');
+		}
+		return isNegative ? -val : val;
+	}
+
+	// every power of ten up to here is exactly representable as a double
+	private static final double[] pow10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private static double parseDoubleField(String line, int start, int end) {
+
+		end = Math.min(end, line.length());
+		start = Math.min(start, end);
+		while (start < end && line.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && line.charAt(end - 1) <= ' ') {
+			end--;
+		}
+
+		// handle the plain decimals in PDB columns here, let Double.parseDouble() handle (or reject) the rest
+		int i = start;
+		boolean isNegative = false;
+		if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+			isNegative = line.charAt(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int numDigits = 0;
+		int numFractionDigits = 0;
+		boolean sawPoint = false;
+		for (; i<end; i++) {
+			char c = line.charAt(i);
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa*10 + (c - '0');
+				numDigits++;
+				if (sawPoint) {
+					numFractionDigits++;
+				}
+			} else if (c == '.' && !sawPoint) {
+				sawPoint = true;
+			} else {
+				return Double.parseDouble(substringField(line, start, end));
+			}
+		}
+
+		// with at most 15 digits, the mantissa is exact, and one division by an exact power of ten
+		// rounds the same way Double.parseDouble() does
+		if (numDigits == 0 || numDigits > 15) {
+			return Double.parseDouble(substringField(line, start, end));
+		}
+		double val = mantissa/pow10[numFractionDigits];
+		return isNegative ? -val : val;
+	}
+
+	private static String parseElementField(String line, int start, int end) {
+
+		end = Math.min(end, line.length());
+		start = Math.min(start, end);
+		while (start < end && line.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && line.charAt(end - 1) <= ' ') {
+			end--;
+		}
+
+		// eg, "FE" -> "Fe", "c" -> "C"
+		switch (end - start) {
+			case 0: return "";
+			case 1: return String.valueOf(Character.toTitleCase(line.charAt(start)));
+			default: return WordUtils.capitalize(line.substring(start, end).toLowerCase());
+		}
+	}
+
 	private static boolean isLine(String line, String type) {
 		return line.regionMatches(true, 0, type, 0, type.length());
 	}
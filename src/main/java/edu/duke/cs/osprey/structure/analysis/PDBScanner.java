@@ -32,6 +32,8 @@
 
 package edu.duke.cs.osprey.structure.analysis;
 
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.PDBIO;
 import edu.duke.cs.osprey.tools.FileTools;
@@ -46,6 +48,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
@@ -54,6 +57,16 @@ import static edu.duke.cs.osprey.tools.Log.log;
 
 public class PDBScanner {
 
+	/** the order in which parallel scans pass molecules to the callback */
+	public enum Order {
+
+		/** same order as the serial scan, buffers molecules from files that finish early */
+		FileOrder,
+
+		/** whichever file finishes parsing first, uses the least memory */
+		AnyOrder
+	}
+
 	public final File dir;
 	public final Set<String> blacklist;
 	public final List<File> files;
@@ -88,6 +101,92 @@ public class PDBScanner {
 		scan(Arrays.asList(new File(dir, filename)), false, callback);
 	}
 
+	/**
+	 * scans the first N files in the folder for molecules, parsing files in parallel
+	 *
+	 * The callback is always called from one thread at a time, so it needn't be thread-safe.
+	 */
+	public void scan(int numFiles, Parallelism parallelism, Order order, BiConsumer<File,Molecule> callback) {
+		scan(this.files.subList(0, numFiles), parallelism, order, callback);
+	}
+
+	/**
+	 * scans the folder for molecules, parsing files in parallel
+	 *
+	 * The callback is always called from one thread at a time, so it needn't be thread-safe.
+	 */
+	public void scan(Parallelism parallelism, Order order, BiConsumer<File,Molecule> callback) {
+		scan(this.files, parallelism, order, callback);
+	}
+
+	private static List<Molecule> readMols(File file) {
+
+		// try to read the PDB file, or just skip it
+		try {
+			return PDBIO.readMols(file);
+		} catch (Exception ex) {
+			System.err.println("error reading PDB file " + file.getName() + ", skipping it:\n\t" + ex.getMessage());
+			return null;
+		}
+	}
+
+	private void scan(List<File> files, Parallelism parallelism, Order order, BiConsumer<File,Molecule> callback) {
+
+		Progress progress = new Progress(files.size());
+		log("Reading %d PDB files with %d threads...", files.size(), parallelism.getParallelism());
+
+		// parse files in tasks, but deliver the molecules on the listener thread
+		// (file order needs a buffer for files that finish before their predecessors)
+		TreeMap<Integer,List<Molecule>> buffer = new TreeMap<>();
+		int[] nextIndex = { 0 };
+
+		try (TaskExecutor tasks = parallelism.makeTaskExecutor(parallelism.getParallelism()*2)) {
+
+			for (int i=0; i<files.size(); i++) {
+				final int index = i;
+				final File file = files.get(i);
+
+				tasks.submit(
+					() -> readMols(file),
+					(mols) -> {
+						switch (order) {
+
+							case AnyOrder:
+								deliver(file, mols, callback);
+							break;
+
+							case FileOrder:
+								buffer.put(index, mols);
+								while (buffer.containsKey(nextIndex[0])) {
+									deliver(files.get(nextIndex[0]), buffer.remove(nextIndex[0]), callback);
+									nextIndex[0]++;
+								}
+							break;
+						}
+						progress.incrementProgress();
+					}
+				);
+			}
+
+			tasks.waitForFinish();
+		}
+
+		log("Done reading PDB files!");
+	}
+
+	private static void deliver(File file, List<Molecule> mols, BiConsumer<File,Molecule> callback) {
+
+		// skip files that didn't parse
+		if (mols == null) {
+			return;
+		}
+
+		// pass each model to the callback
+		for (Molecule mol : mols) {
+			callback.accept(file, mol);
+		}
+	}
+
 	private void scan(List<File> files, boolean showProgress, BiConsumer<File,Molecule> callback) {
 
 		Progress progress = null;
@@ -98,19 +197,7 @@ public class PDBScanner {
 
 		for (File file : files) {
 
-			// try to read the PDB file, or just skip it
-			List<Molecule> mols;
-			try {
-				mols = PDBIO.readMols(file);
-			} catch (Exception ex) {
-				System.err.println("error reading PDB file " + file.getName() + ", skipping it:\n\t" + ex.getMessage());
-				continue;
-			}
-
-			// pass each model to the callback
-			for (Molecule mol : mols) {
-				callback.accept(file, mol);
-			}
+			deliver(file, readMols(file), callback);
 
 			if (showProgress) {
 				progress.incrementProgress();
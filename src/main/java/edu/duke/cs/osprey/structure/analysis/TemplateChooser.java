@@ -36,6 +36,7 @@ package edu.duke.cs.osprey.structure.analysis;
 import edu.duke.cs.osprey.confspace.VoxelShape;
 import edu.duke.cs.osprey.dof.DegreeOfFreedom;
 import edu.duke.cs.osprey.minimization.ObjectiveFunction;
+import edu.duke.cs.osprey.parallelism.Parallelism;
 import edu.duke.cs.osprey.restypes.ResidueTemplate;
 import edu.duke.cs.osprey.restypes.ResidueTemplateLibrary;
 import edu.duke.cs.osprey.structure.Atom;
@@ -415,7 +416,9 @@ public class TemplateChooser {
 	private static void scanResidues(File dir, ResidueScanner resScanner) {
 
 		// scan all the PDB files to collect the measurements
-		new PDBScanner(dir).scan((file, mol) -> {
+		// (parse in parallel, but keep file order so the measurements don't depend on thread timing)
+		Parallelism parallelism = Parallelism.makeCpu(Runtime.getRuntime().availableProcessors());
+		new PDBScanner(dir).scan(parallelism, PDBScanner.Order.FileOrder, (file, mol) -> {
 
 			// analyze each residue
 			for (Residue res : mol.residues) {
@@ -264,6 +264,64 @@ public class BigExp implements Comparable<BigExp>, IOable, Serializable {
 		set(this.toBigDecimal().subtract(other.toBigDecimal(), mathContext));
 	}
 
+	// past this many digits of exponent difference, the smaller value can't change the larger value's double
+	private static final int MaxAlignDigits = 400;
+	private static final double[] alignScales = new double[MaxAlignDigits + 1];
+	static {
+		for (int i=0; i<=MaxAlignDigits; i++) {
+			alignScales[i] = Math.pow(10.0, -i);
+		}
+	}
+
+	/**
+	 * Same as add(), but aligns the exponents and adds the significands as doubles,
+	 * instead of round-tripping through BigDecimal.
+	 * The result only has double precision (rather than mathContext), but it's much faster.
+	 */
+	public void addFast(BigExp other) {
+		addFast(other.fp, other.exp);
+	}
+
+	/** Same as sub(), but with the double-precision arithmetic of addFast() */
+	public void subFast(BigExp other) {
+		addFast(-other.fp, other.exp);
+	}
+
+	private void addFast(double otherFp, int otherExp) {
+
+		// let double arithmetic handle infinities and NaNs
+		if (!Double.isFinite(this.fp) || !Double.isFinite(otherFp)) {
+			set(this.fp + otherFp);
+			return;
+		}
+
+		if (otherFp == 0.0) {
+			return;
+		} else if (this.fp == 0.0) {
+			set(otherFp, otherExp);
+			normalize(false);
+			return;
+		}
+
+		// shift the value with the smaller exponent down to the larger exponent
+		normalize(false);
+		int diff = this.exp - otherExp;
+		if (diff >= 0) {
+			if (diff <= MaxAlignDigits) {
+				this.fp += otherFp*alignScales[diff];
+			}
+		} else {
+			if (-diff <= MaxAlignDigits) {
+				this.fp = this.fp*alignScales[-diff] + otherFp;
+			} else {
+				this.fp = otherFp;
+			}
+			this.exp = otherExp;
+		}
+
+		normalize(false);
+	}
+
 	public void negate() {
 		fp = -fp;
 	}
@@ -0,0 +1,213 @@
+package edu.duke.cs.osprey.tools;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * A DataInput that reads directly from a ByteBuffer (eg, a memory-mapped file),
+ * using the same big-endian encoding as DataInputStream.
+ *
+ * Much faster than wrapping a DataInputStream around a ByteArrayInputStream,
+ * since each read is a single buffer access rather than a chain of per-byte stream reads,
+ * and arrays of primitives can be read in bulk.
+ */
+public class ByteBufferDataInput implements DataInput {
+
+	public final ByteBuffer buf;
+
+	public ByteBufferDataInput(ByteBuffer buf) {
+		this.buf = buf.duplicate().order(ByteOrder.BIG_ENDIAN);
+	}
+
+	public ByteBufferDataInput(byte[] bytes) {
+		this(ByteBuffer.wrap(bytes));
+	}
+
+	/** like InputStream.read(), returns -1 at the end of the buffer */
+	public int read() {
+		if (!buf.hasRemaining()) {
+			return -1;
+		}
+		return buf.get() & 0xff;
+	}
+
+	/** reads ints.length ints in one bulk copy */
+	public void readInts(int[] ints)
+	throws IOException {
+		try {
+			buf.asIntBuffer().get(ints);
+		} catch (BufferUnderflowException ex) {
+			throw new EOFException();
+		}
+		buf.position(buf.position() + ints.length*Integer.BYTES);
+	}
+
+	/** reads doubles.length doubles in one bulk copy */
+	public void readDoubles(double[] doubles)
+	throws IOException {
+		try {
+			buf.asDoubleBuffer().get(doubles);
+		} catch (BufferUnderflowException ex) {
+			throw new EOFException();
+		}
+		buf.position(buf.position() + doubles.length*Double.BYTES);
+	}
+
+	/** reads ints.length ints, in bulk if the input supports it */
+	public static void readInts(DataInput in, int[] ints)
+	throws IOException {
+		if (in instanceof ByteBufferDataInput) {
+			((ByteBufferDataInput)in).readInts(ints);
+		} else {
+			for (int i=0; i<ints.length; i++) {
+				ints[i] = in.readInt();
+			}
+		}
+	}
+
+	/** reads doubles.length doubles, in bulk if the input supports it */
+	public static void readDoubles(DataInput in, double[] doubles)
+	throws IOException {
+		if (in instanceof ByteBufferDataInput) {
+			((ByteBufferDataInput)in).readDoubles(doubles);
+		} else {
+			for (int i=0; i<doubles.length; i++) {
+				doubles[i] = in.readDouble();
+			}
+		}
+	}
+
+	private void need(int numBytes)
+	throws EOFException {
+		if (buf.remaining() < numBytes) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public void readFully(byte[] b)
+	throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len)
+	throws IOException {
+		need(len);
+		buf.get(b, off, len);
+	}
+
+	@Override
+	public int skipBytes(int n) {
+		n = Math.max(0, Math.min(n, buf.remaining()));
+		buf.position(buf.position() + n);
+		return n;
+	}
+
+	@Override
+	public boolean readBoolean()
+	throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte()
+	throws IOException {
+		need(1);
+		return buf.get();
+	}
+
+	@Override
+	public int readUnsignedByte()
+	throws IOException {
+		return readByte() & 0xff;
+	}
+
+	@Override
+	public short readShort()
+	throws IOException {
+		need(2);
+		return buf.getShort();
+	}
+
+	@Override
+	public int readUnsignedShort()
+	throws IOException {
+		return readShort() & 0xffff;
+	}
+
+	@Override
+	public char readChar()
+	throws IOException {
+		need(2);
+		return buf.getChar();
+	}
+
+	@Override
+	public int readInt()
+	throws IOException {
+		need(4);
+		return buf.getInt();
+	}
+
+	@Override
+	public long readLong()
+	throws IOException {
+		need(8);
+		return buf.getLong();
+	}
+
+	@Override
+	public float readFloat()
+	throws IOException {
+		need(4);
+		return buf.getFloat();
+	}
+
+	@Override
+	public double readDouble()
+	throws IOException {
+		need(8);
+		return buf.getDouble();
+	}
+
+	/**
+	 * Same as DataInputStream.readLine(): each byte is read as one char,
+	 * lines end at \n, \r, or \r\n, and returns null at the end of the buffer.
+	 */
+	@Override
+	public String readLine() {
+
+		if (!buf.hasRemaining()) {
+			return null;
+		}
+
+		StringBuilder line = new StringBuilder();
+		while (buf.hasRemaining()) {
+			char c = (char)(buf.get() & 0xff);
+			if (c == '\n') {
+				break;
+			} else if (c == '\r') {
+				if (buf.hasRemaining() && buf.get(buf.position()) == '\n') {
+					buf.get();
+				}
+				break;
+			}
+			line.append(c);
+		}
+		return line.toString();
+	}
+
+	@Override
+	public String readUTF()
+	throws IOException {
+		// DataInputStream has all the modified UTF-8 decoding logic, so just reuse it
+		return DataInputStream.readUTF(this);
+	}
+}
@@ -1268,7 +1268,8 @@ def MARKStarPfunc(confSpace, ematMinimized, confEcalcMinimized, ematRigid, confE
 def BBKStar(
 	proteinConfSpace, ligandConfSpace, complexConfSpace, epsilon=useJavaDefault, stabilityThreshold=useJavaDefault,
 	maxSimultaneousMutations=useJavaDefault, useExternalMemory=useJavaDefault, showPfuncProgress=useJavaDefault,
-	numBestSequences=useJavaDefault, numConfsPerBatch=useJavaDefault, writeSequencesToConsole=False, writeSequencesToFile=None
+	numBestSequences=useJavaDefault, numConfsPerBatch=useJavaDefault, numNodesPerRound=useJavaDefault,
+	writeSequencesToConsole=False, writeSequencesToFile=None
 ):
 	'''
 	${class_javadoc(.kstar.BBKStar)}
@@ -1290,7 +1291,8 @@ def BBKStar(
 	)}
 	${args_fields_javadoc(.kstar.BBKStar$Settings$Builder,
 		[numBestSequences],
-		[numConfsPerBatch]
+		[numConfsPerBatch],
+		[numNodesPerRound]
 	)}
 	writeSequencesToConsole `bool`: True to write sequences and scores to the console
 	writeSequencesToFile `str`: Path to the log file to write sequences scores (in TSV format), or None to skip logging
@@ -1322,6 +1324,8 @@ def BBKStar(
 		bbkstarSettingsBuilder.setNumBestSequences(numBestSequences)
 	if numConfsPerBatch is not useJavaDefault:
 		bbkstarSettingsBuilder.setNumConfsPerBatch(numConfsPerBatch)
+	if numNodesPerRound is not useJavaDefault:
+		bbkstarSettingsBuilder.setNumNodesPerRound(numNodesPerRound)
 	bbkstarSettings = bbkstarSettingsBuilder.build()
 
 	return c.kstar.BBKStar(proteinConfSpace, ligandConfSpace, complexConfSpace, kstarSettings, bbkstarSettings)
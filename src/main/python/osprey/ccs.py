@@ -37,17 +37,21 @@ ${enum_java(.confspace.compiled.PosInterDist)}
 osprey.c.parallelism.Cluster.fixHazelcastLogging()
 
 
-def loadConfSpace(path):
+def loadConfSpace(path, cacheDir=None):
     '''
-    ${method_javadoc(.confspace.compiled.ConfSpace#fromBytes)}
+    ${method_javadoc(.confspace.compiled.ConfSpace#fromFile(File,File))}
 
     # Arguments
     path `str`: Path to the compiled conformation space file (usually has a .ccsx or .ccs extension)
+    cacheDir `str`: Path to a folder for the load cache, or None to not use a cache
 
     # Returns
-    ${returns_method_java(.confspace.compiled.ConfSpace#fromBytes)}
+    ${returns_method_java(.confspace.compiled.ConfSpace#fromFile(File,File))}
     '''
-    return osprey.c.confspace.compiled.ConfSpace.fromBytes(osprey.c.tools.FileTools.readFileBytes(path))
+    if cacheDir is None:
+        return osprey.c.confspace.compiled.ConfSpace.fromBytes(osprey.c.tools.FileTools.readFileBytes(path))
+    else:
+        return osprey.c.confspace.compiled.ConfSpace.fromFile(jvm.toFile(path), jvm.toFile(cacheDir))
 
 
 def cudaEnergyCalculator(confSpace, precision, parallelism):
@@ -96,6 +100,20 @@ def javaEnergyCalculator(confSpace):
     '''
     return osprey.c.energy.compiled.CPUConfEnergyCalculator(confSpace)
 
+def vectorEnergyCalculator(confSpace):
+    '''
+    ${class_javadoc(.energy.compiled.VectorConfEnergyCalculator)}
+
+    # Arguments
+    ${args_java(.energy.compiled.VectorConfEnergyCalculator#<init>,
+        [confSpace]
+    )}
+
+    # Returns
+    ${type_java(.energy.compiled.VectorConfEnergyCalculator)}
+    '''
+    return osprey.c.energy.compiled.VectorConfEnergyCalculator(confSpace)
+
 def bestEnergyCalculator(confSpace, parallelism):
     '''
     ${method_javadoc(.energy.compiled.ConfEnergyCalculator#makeBest(ConfSpace,Parallelism)ConfEnergyCalculator)}
@@ -203,6 +203,9 @@ def start(jrePath, heapSizeMiB=1024, enableAssertions=False, stackSizeMiB=None,
 	# enable FFI libraries in newer JVMs
 	args.append('--add-modules=jdk.incubator.foreign')
 
+	# enable SIMD energy kernels
+	args.append('--add-modules=jdk.incubator.vector')
+
 	start_with_args(jrePath, args)
 
 	if attachJvmDebugger:
@@ -49,6 +49,7 @@ import edu.duke.cs.osprey.ematrix.EnergyMatrix;
 import edu.duke.cs.osprey.ematrix.EnergyMatrixCalculator;
 import edu.duke.cs.osprey.ematrix.epic.EPICSettings;
 import edu.duke.cs.osprey.energy.MultiTermEnergyFunction;
+import edu.duke.cs.osprey.parallelism.Parallelism;
 import edu.duke.cs.osprey.pruning.PruningMatrix;
 import edu.duke.cs.osprey.tools.ObjectIO;
 import edu.duke.cs.osprey.tools.Stopwatch;
@@ -252,6 +253,31 @@ public class ConfTreeProfiling {
 			expectedEnergies.put(55, -514.1055956242977);
 			checkEnergy(expectedEnergies.get(NumFlexible), observedEnergy);
 		}
+		
+		// see how batched node expansion scales with threads
+		// and make sure we still get the same GMEC
+		System.out.println("\nBatched expansion scaling:");
+		int maxNumThreads = Runtime.getRuntime().availableProcessors();
+		for (int numThreads=1; numThreads<=maxNumThreads; numThreads*=2) {
+			for (int batchSize : new int[] { 1, 4, 16, 64 }) {
+				
+				ConfAStarTree batchTree = new ConfAStarTree.Builder(search.emat, search.pruneMat)
+					.setMPLP(new ConfAStarTree.MPLPBuilder()
+						.setNumIterations(5)
+					).setBatchSize(batchSize)
+					.build();
+				batchTree.setParallelism(Parallelism.makeCpu(numThreads));
+				
+				stopwatch = new Stopwatch().start();
+				ConfSearch.ScoredConf batchConf = batchTree.nextConf();
+				stopwatch.stop();
+				checkConf(conf.getAssignments(), batchConf.getAssignments());
+				
+				System.out.println(String.format("threads: %2d   batch size: %2d   finished in %s",
+					numThreads, batchSize, stopwatch.getTime(TimeUnit.MILLISECONDS)
+				));
+			}
+		}
 	}
 	
 	private static void checkConf(int[] expected, int[] observed) {
@@ -1009,6 +1009,29 @@ public class TestBase {
 		}
 	}
 
+	/**
+	 * a folder that automatically deletes itself, and the files in it, when finished
+	 */
+	public static class TempDir extends TempFile {
+
+		private static final long serialVersionUID = 5292845015142131682L;
+
+		public TempDir(String name) {
+			super(name);
+		}
+
+		@Override
+		public void close() {
+			File[] files = listFiles();
+			if (files != null) {
+				for (File file : files) {
+					file.delete();
+				}
+			}
+			super.close();
+		}
+	}
+
 	public static void skipGPUTestsIfNeeded(Parallelism parallelism) {
 		if (parallelism.type == Parallelism.Type.Gpu) {
 			assumeTrue(Parallelism.hasGPUs());
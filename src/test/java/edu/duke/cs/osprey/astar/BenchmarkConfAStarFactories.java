@@ -0,0 +1,185 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.astar;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import edu.duke.cs.osprey.astar.conf.ConfAStarFactory;
+import edu.duke.cs.osprey.astar.conf.ConfAStarNode;
+import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
+import edu.duke.cs.osprey.astar.conf.RCs;
+import edu.duke.cs.osprey.astar.conf.linked.LinkedConfAStarFactory;
+import edu.duke.cs.osprey.astar.conf.packed.PackedConfAStarFactory;
+import edu.duke.cs.osprey.astar.conf.packed.PackedConfAStarQueue;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.externalMemory.Queue;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.structure.PDBIO;
+import edu.duke.cs.osprey.tools.Stopwatch;
+
+
+/**
+ * Compares the linked (on-heap) and packed (off-heap) A* node factories
+ * for node throughput and memory usage.
+ */
+public class BenchmarkConfAStarFactories {
+
+	public static void main(String[] args) {
+
+		final int numPos = 20;
+		final int numNodes = 5_000_000;
+
+		benchmarkQueue("linked", new LinkedConfAStarFactory(), numPos, numNodes);
+		benchmarkQueue("packed", new PackedConfAStarFactory(), numPos, numNodes);
+
+		// try a real (if small) A* search too
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (String resNum : Arrays.asList("A2", "A3", "A4", "A5", "A6", "A7", "A8", "A9")) {
+			strand.flexibility.get(resNum).setLibraryRotamers(Strand.WildType, "VAL", "LEU", "ILE").addWildTypeRotamers();
+		}
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		EnergyMatrix emat;
+		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+			.setParallelism(Parallelism.makeCpu(4))
+			.build()
+		) {
+			emat = new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
+				.build()
+				.calcEnergyMatrix();
+		}
+		RCs rcs = new RCs(confSpace);
+
+		final int numConfs = 10000;
+		benchmarkSearch("linked", numConfs, () -> new ConfAStarTree.Builder(emat, rcs)
+			.setTraditional()
+			.build()
+		);
+		benchmarkSearch("packed", numConfs, () -> new ConfAStarTree.Builder(emat, rcs)
+			.setTraditional()
+			.useOffHeapMemory()
+			.build()
+		);
+	}
+
+	/**
+	 * Mimics the queue traffic of an A* search: repeatedly pop the best node and push a few
+	 * children with random scores, until the queue is full.
+	 */
+	private static void benchmarkQueue(String name, ConfAStarFactory factory, int numPos, int numNodes) {
+
+		final int numChildren = 8;
+		Random rand = new Random(12345);
+
+		long heapBytesBefore = usedHeapBytes();
+
+		Queue<ConfAStarNode> queue = factory.makeQueue(null);
+		ConfAStarNode root = factory.makeRootNode(numPos);
+		root.setGScore(0.0);
+		root.setHScore(0.0);
+		queue.push(root);
+
+		long numOps = 0;
+		Stopwatch stopwatch = new Stopwatch().start();
+		while (queue.size() < numNodes) {
+
+			ConfAStarNode node = queue.poll();
+			numOps++;
+
+			// leaf nodes have no children, just start over at the root
+			int pos = node.getLevel();
+			if (pos >= numPos) {
+				node = root;
+				pos = 0;
+			}
+
+			for (int rc=0; rc<numChildren; rc++) {
+				ConfAStarNode child = node.assign(pos, rc);
+				child.setGScore(node.getGScore() + rand.nextDouble());
+				child.setHScore(numPos - pos - 1);
+				queue.push(child);
+				numOps++;
+			}
+		}
+		stopwatch.stop();
+
+		long heapBytes = usedHeapBytes() - heapBytesBefore;
+		long offHeapBytes = 0;
+		if (queue instanceof PackedConfAStarQueue) {
+			offHeapBytes = ((PackedConfAStarQueue)queue).bytes();
+		}
+
+		log("%s queue: %d nodes in %s, %.0f nodes/s, %.1f heap bytes/node, %.1f off-heap bytes/node",
+			name,
+			queue.size(),
+			stopwatch.getTime(2),
+			numOps/stopwatch.getTimeS(),
+			(double)heapBytes/queue.size(),
+			(double)offHeapBytes/queue.size()
+		);
+	}
+
+	private static void benchmarkSearch(String name, int numConfs, Supplier<ConfAStarTree> treeFactory) {
+
+		ConfAStarTree tree = treeFactory.get();
+
+		int numFound = 0;
+		Stopwatch stopwatch = new Stopwatch().start();
+		while (numFound < numConfs && tree.nextConf() != null) {
+			numFound++;
+		}
+		stopwatch.stop();
+
+		log("%s A*: %d confs in %s", name, numFound, stopwatch.getTime(2));
+	}
+
+	private static long usedHeapBytes() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i=0; i<4; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,131 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.astar;
+
+import static edu.duke.cs.osprey.TestBase.isAbsolutely;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
+import edu.duke.cs.osprey.astar.conf.RCs;
+import edu.duke.cs.osprey.confspace.ConfSearch;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.structure.PDBIO;
+
+public class TestConfAStarBatch {
+
+	private static EnergyMatrix emat;
+	private static RCs rcs;
+
+	@BeforeAll
+	public static void beforeAll() {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (String resNum : Arrays.asList("A2", "A3", "A4", "A5", "A6", "A7")) {
+			strand.flexibility.get(resNum).setLibraryRotamers(Strand.WildType, "VAL", "LEU").addWildTypeRotamers();
+		}
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+			.setParallelism(Parallelism.makeCpu(4))
+			.build()
+		) {
+			emat = new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
+				.build()
+				.calcEnergyMatrix();
+		}
+
+		rcs = new RCs(confSpace);
+	}
+
+	private static List<ConfSearch.ScoredConf> search(Function<ConfAStarTree.Builder,ConfAStarTree.Builder> config, int numThreads, int numConfs) {
+		ConfAStarTree tree = config.apply(new ConfAStarTree.Builder(emat, rcs)).build();
+		tree.setParallelism(Parallelism.makeCpu(numThreads));
+		List<ConfSearch.ScoredConf> confs = new ArrayList<>();
+		for (int i=0; i<numConfs; i++) {
+			ConfSearch.ScoredConf conf = tree.nextConf();
+			if (conf == null) {
+				break;
+			}
+			confs.add(conf);
+		}
+		return confs;
+	}
+
+	private static void assertSameConfs(List<ConfSearch.ScoredConf> observed, List<ConfSearch.ScoredConf> expected) {
+		assertThat(observed.size(), is(expected.size()));
+		for (int i=0; i<expected.size(); i++) {
+			assertThat(observed.get(i).getScore(), isAbsolutely(expected.get(i).getScore(), 1e-10));
+		}
+	}
+
+	@Test
+	public void traditional() {
+		List<ConfSearch.ScoredConf> expected = search(b -> b.setTraditional(), 1, 2000);
+		for (int batchSize : new int[] { 2, 8, 32 }) {
+			assertSameConfs(search(b -> b.setTraditional().setBatchSize(batchSize), 1, 2000), expected);
+			assertSameConfs(search(b -> b.setTraditional().setBatchSize(batchSize), 4, 2000), expected);
+		}
+	}
+
+	@Test
+	public void mplp() {
+		List<ConfSearch.ScoredConf> expected = search(b -> b.setMPLP(), 1, 2000);
+		for (int batchSize : new int[] { 2, 8, 32 }) {
+			assertSameConfs(search(b -> b.setMPLP().setBatchSize(batchSize), 4, 2000), expected);
+		}
+	}
+
+	@Test
+	public void offHeap() {
+		List<ConfSearch.ScoredConf> expected = search(b -> b.setTraditional(), 1, 2000);
+		assertSameConfs(search(b -> b.setTraditional().useOffHeapMemory().setBatchSize(16), 4, 2000), expected);
+	}
+}
@@ -0,0 +1,210 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.astar;
+
+import static edu.duke.cs.osprey.TestBase.isAbsolutely;
+import static edu.duke.cs.osprey.astar.Matchers.*;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import edu.duke.cs.osprey.astar.conf.ConfAStarNode;
+import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
+import edu.duke.cs.osprey.astar.conf.ConfIndex;
+import edu.duke.cs.osprey.astar.conf.RCs;
+import edu.duke.cs.osprey.astar.conf.packed.PackedConfAStarNode;
+import edu.duke.cs.osprey.astar.conf.packed.PackedConfAStarQueue;
+import edu.duke.cs.osprey.confspace.ConfSearch;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.structure.PDBIO;
+
+public class TestPackedConfAStar {
+
+	@Test
+	public void indexRoot() {
+
+		PackedConfAStarNode node = new PackedConfAStarNode();
+
+		ConfIndex confIndex = new ConfIndex(5);
+		node.index(confIndex);
+
+		assertThat(confIndex.node, is(node));
+		assertThat(confIndex.numDefined, is(0));
+		assertThat(confIndex.numUndefined, is(5));
+		assertThat(confIndex.undefinedPos, startsWith(0, 1, 2, 3, 4));
+	}
+
+	@Test
+	public void indexUnstored() {
+
+		PackedConfAStarNode node = new PackedConfAStarNode()
+			.assign(3, 6)
+			.assign(0, 5);
+
+		ConfIndex confIndex = new ConfIndex(5);
+		node.index(confIndex);
+
+		assertThat(confIndex.numDefined, is(2));
+		assertThat(confIndex.definedPos, startsWith(0, 3));
+		assertThat(confIndex.definedRCs, startsWith(5, 6));
+		assertThat(confIndex.numUndefined, is(3));
+		assertThat(confIndex.undefinedPos, startsWith(1, 2, 4));
+	}
+
+	@Test
+	public void indexStored() {
+
+		PackedConfAStarQueue queue = new PackedConfAStarQueue();
+
+		// push a node whose ancestors aren't stored yet
+		PackedConfAStarNode node = new PackedConfAStarNode()
+			.assign(3, 6)
+			.assign(0, 5);
+		node.setGScore(1.0);
+		node.setHScore(2.0);
+		queue.push(node);
+		assertThat(node.isStored(), is(true));
+		assertThat(queue.nodes.size(), is(3L));
+
+		// read it back, then make a child that's only partially stored
+		PackedConfAStarNode stored = (PackedConfAStarNode)queue.poll();
+		assertThat(stored.getLevel(), is(2));
+		assertThat(stored.getGScore(), is(1.0));
+		assertThat(stored.getHScore(), is(2.0));
+		PackedConfAStarNode child = stored.assign(4, 1);
+
+		ConfIndex confIndex = new ConfIndex(5);
+		child.index(confIndex);
+
+		assertThat(confIndex.numDefined, is(3));
+		assertThat(confIndex.definedPos, startsWith(0, 3, 4));
+		assertThat(confIndex.definedRCs, startsWith(5, 6, 1));
+		assertThat(confIndex.numUndefined, is(2));
+		assertThat(confIndex.undefinedPos, startsWith(1, 2));
+
+		assertThat(child.makeConf(5), is(new int[] { 5, -1, -1, 6, 1 }));
+	}
+
+	@Test
+	public void rcTooBigToPack() {
+
+		PackedConfAStarQueue queue = new PackedConfAStarQueue();
+
+		// RCs past the 16-bit limit must not silently wrap around
+		PackedConfAStarNode node = new PackedConfAStarNode()
+			.assign(0, Short.MAX_VALUE + 1);
+		assertThrows(IllegalArgumentException.class, () -> queue.push(node));
+	}
+
+	@Test
+	public void queueOrder() {
+
+		PackedConfAStarQueue queue = new PackedConfAStarQueue();
+		PackedConfAStarNode root = new PackedConfAStarNode();
+
+		// push enough nodes to span a few slabs
+		Random rand = new Random(12345);
+		final int numNodes = 200000;
+		double[] scores = new double[numNodes];
+		for (int i=0; i<numNodes; i++) {
+			ConfAStarNode node = root.assign(0, i % 100);
+			node.setGScore(rand.nextDouble());
+			node.setHScore(0.0);
+			scores[i] = node.getScore();
+			queue.push(node);
+		}
+		assertThat(queue.size(), is((long)numNodes));
+
+		Arrays.sort(scores);
+		for (int i=0; i<numNodes; i++) {
+			ConfAStarNode node = queue.poll();
+			assertThat(node.getScore(), is(scores[i]));
+		}
+		assertThat(queue.isEmpty(), is(true));
+		assertThat(queue.poll(), is(nullValue()));
+	}
+
+	@Test
+	public void matchesLinked() {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (String resNum : Arrays.asList("A2", "A3", "A4", "A5", "A6")) {
+			strand.flexibility.get(resNum).setLibraryRotamers("VAL", "LEU");
+		}
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+			.setParallelism(Parallelism.makeCpu(4))
+			.build()
+		) {
+
+			EnergyMatrix emat = new SimplerEnergyMatrixCalculator.Builder(confSpace, ecalc)
+				.build()
+				.calcEnergyMatrix();
+
+			RCs rcs = new RCs(confSpace);
+
+			List<ConfSearch.ScoredConf> linkedConfs = new ConfAStarTree.Builder(emat, rcs)
+				.setTraditional()
+				.build()
+				.nextConfs(Double.POSITIVE_INFINITY);
+
+			List<ConfSearch.ScoredConf> packedConfs = new ConfAStarTree.Builder(emat, rcs)
+				.setTraditional()
+				.useOffHeapMemory()
+				.build()
+				.nextConfs(Double.POSITIVE_INFINITY);
+
+			assertThat(linkedConfs.size(), is(rcs.getNumConformations().intValueExact()));
+			assertThat(packedConfs.size(), is(linkedConfs.size()));
+			for (int i=0; i<linkedConfs.size(); i++) {
+				assertThat(packedConfs.get(i).getScore(), isAbsolutely(linkedConfs.get(i).getScore(), 1e-10));
+			}
+		}
+	}
+}
@@ -131,10 +131,15 @@ public class TestCoffee {
 	}
 
 	private static Coffee makeCoffee(MultiStateConfSpace confSpace, PosInterDist posInterDist, Double triplesThreshold, Cluster cluster, Parallelism parallelism, long bytes) {
+		return makeCoffee(confSpace, posInterDist, triplesThreshold, cluster, parallelism, bytes, CPUConfEnergyCalculator.DefaultMaxBatchSize);
+	}
+
+	private static Coffee makeCoffee(MultiStateConfSpace confSpace, PosInterDist posInterDist, Double triplesThreshold, Cluster cluster, Parallelism parallelism, long bytes, int cpuBatchSize) {
 		return new Coffee.Builder(confSpace)
 			.setCluster(cluster)
 			.setParallelism(parallelism)
 			.setNodeDBMem(bytes)
+			.setCpuBatchSize(cpuBatchSize)
 			.setTripleCorrectionThreshold(triplesThreshold)
 			.configEachState(config -> {
 				config.posInterGen = new PosInterGen(posInterDist, null);
@@ -336,6 +341,27 @@ public class TestCoffee {
 			bytes, precision, numMembers, parallelism
 		);
 	}
+	private void seqFreeEnergy_affinity_6ov7_1mut2flex_wt_batched(int cpuBatchSize, int numMembers, Parallelism parallelism) {
+		var confSpace = TestCoffee.affinity_6ov7_1mut2flex();
+		double[] freeEnergies = { -1377.127950, -144.199934, -1187.667391 };
+		double precision = 0.1;
+		withPseudoCluster(numMembers, cluster -> {
+
+			Coffee coffee = makeCoffee(confSpace, PosInterDist.DesmetEtAl1992, null, cluster, parallelism, 1024*1024, cpuBatchSize);
+			Sequence seq = coffee.confSpace.seqSpace.makeWildTypeSequence();
+
+			var director = new SequenceDirector(coffee.confSpace, seq, precision, true);
+			coffee.run(director);
+
+			if (cluster.nodeId == 0) {
+				for (var state : confSpace.states) {
+					var g = director.getFreeEnergy(state);
+					assertThat(state.name, g, isAbsoluteBound(freeEnergies[state.index], freeEnergyEpsilon));
+					assertThat(state.name, g.size(), lessThanOrEqualTo(precision));
+				}
+			}
+		});
+	}
 	private void seqFreeEnergy_affinity_6ov7_1mut2flex_ala(long bytes, double precision, int numMembers, Parallelism parallelism) {
 		seqFreeEnergy(
 			TestCoffee.affinity_6ov7_1mut2flex(),
@@ -491,6 +517,17 @@ public class TestCoffee {
 		seqFreeEnergy_affinity_6ov7_1mut2flex_wt(96*1024, 0, false, 1, oneCpu);
 	}
 
+	// batch the CPU minimizations
+	@Test public void seqFreeEnergy_affinity_6ov7_1mut2flex_wt_01_1x1_1m_batch8() {
+		seqFreeEnergy_affinity_6ov7_1mut2flex_wt_batched(8, 1, oneCpu);
+	}
+	@Test public void seqFreeEnergy_affinity_6ov7_1mut2flex_wt_01_1x4_1m_batch8() {
+		seqFreeEnergy_affinity_6ov7_1mut2flex_wt_batched(8, 1, Parallelism.makeCpu(4));
+	}
+	@Test public void seqFreeEnergy_affinity_6ov7_1mut2flex_wt_01_2x2_1m_batch8() {
+		seqFreeEnergy_affinity_6ov7_1mut2flex_wt_batched(8, 2, Parallelism.makeCpu(2));
+	}
+
 	// add triples
 	@Test public void seqFreeEnergy_affinity_6ov7_1mut2flex_wt_01_1x1_1m_triples() {
 		seqFreeEnergy_affinity_6ov7_1mut2flex_wt(1024*1024, 0.1, true, 1, oneCpu);
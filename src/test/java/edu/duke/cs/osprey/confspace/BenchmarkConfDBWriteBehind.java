@@ -0,0 +1,128 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.confspace;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
+import edu.duke.cs.osprey.astar.conf.RCs;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.kstar.pfunc.GradientDescentPfunc;
+import edu.duke.cs.osprey.structure.PDBIO;
+import edu.duke.cs.osprey.tools.Stopwatch;
+
+import java.io.File;
+import java.util.Arrays;
+
+
+public class BenchmarkConfDBWriteBehind {
+
+	private static final int NumConfs = 5000;
+
+	public static void main(String[] args) {
+
+		// use a rigid conf space, so conformation energies are fast and the db is the bottleneck
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (String resNum : Arrays.asList("A2", "A3", "A4", "A5", "A6", "A7")) {
+			strand.flexibility.get(resNum).setLibraryRotamers(Strand.WildType, "ALA", "VAL", "LEU").addWildTypeRotamers();
+		}
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder().addStrand(strand).build();
+
+		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams()).build()) {
+
+			ConfEnergyCalculator confEcalc = new ConfEnergyCalculator.Builder(confSpace, ecalc).build();
+			EnergyMatrix emat = new SimplerEnergyMatrixCalculator.Builder(confEcalc)
+				.build()
+				.calcEnergyMatrix();
+
+			log("benchmarking partition functions with %d conformations", NumConfs);
+
+			// warm up
+			benchmark(confSpace, confEcalc, emat, false, null);
+
+			log("%-32s %8.1f confs/s", "no db", benchmark(confSpace, confEcalc, emat, false, null));
+			log("%-32s %8.1f confs/s", "db", benchmark(confSpace, confEcalc, emat, true, null));
+
+			for (ConfDB.WriteBehind.Durability durability : ConfDB.WriteBehind.Durability.values()) {
+				ConfDB.WriteBehind writeBehind = new ConfDB.WriteBehind.Builder()
+					.setDurability(durability)
+					.build();
+				log("%-32s %8.1f confs/s", "db, write-behind " + durability, benchmark(confSpace, confEcalc, emat, true, writeBehind));
+			}
+		}
+	}
+
+	private static double benchmark(SimpleConfSpace confSpace, ConfEnergyCalculator confEcalc, EnergyMatrix emat, boolean useDB, ConfDB.WriteBehind writeBehind) {
+
+		File file = new File("conf.db");
+		file.delete();
+
+		RCs rcs = new RCs((ConfSpaceIteration)confSpace);
+		GradientDescentPfunc pfunc = new GradientDescentPfunc(
+			confEcalc,
+			new ConfAStarTree.Builder(emat, rcs).setTraditional().build(),
+			new ConfAStarTree.Builder(emat, rcs).setTraditional().build(),
+			rcs.getNumConformations()
+		);
+
+		Stopwatch stopwatch = new Stopwatch().start();
+
+		ConfDB confdb = useDB ? new ConfDB(confSpace, file, writeBehind) : null;
+		try (var ctxGroup = confEcalc.tasks.contextGroup()) {
+			if (confdb != null) {
+				pfunc.setConfDB(confdb, "benchmark");
+			}
+			pfunc.setInstanceId(0);
+
+			// use a tiny epsilon, so every run evaluates the same number of confs
+			pfunc.init(1e-12);
+			pfunc.putTaskContexts(ctxGroup);
+			pfunc.compute(NumConfs);
+
+		} finally {
+			if (confdb != null) {
+				confdb.close();
+			}
+		}
+
+		stopwatch.stop();
+		file.delete();
+
+		return pfunc.getNumConfsEvaluated()/stopwatch.getTimeS();
+	}
+}
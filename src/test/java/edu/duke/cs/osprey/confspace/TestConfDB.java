@@ -84,7 +84,20 @@ public class TestConfDB {
 	}
 
 	private ConfDB openDB() {
-		return new ConfDB(confSpace, file);
+		return openDB(null);
+	}
+
+	private ConfDB openDB(ConfDB.WriteBehind writeBehind) {
+		return new ConfDB(confSpace, file, writeBehind);
+	}
+
+	/** buffers writes until the db is flushed, so tests can read from the buffer */
+	private static ConfDB.WriteBehind bufferEverything() {
+		return new ConfDB.WriteBehind.Builder()
+			.setGroupSize(Integer.MAX_VALUE)
+			.setMaxBuffered(Integer.MAX_VALUE)
+			.setCommitIntervalMs(Long.MAX_VALUE)
+			.build();
 	}
 
 	private void cleanDB() {
@@ -95,8 +108,12 @@ public class TestConfDB {
 	}
 
 	private void withDB(Consumer<ConfDB> block) {
+		withDB(null, block);
+	}
+
+	private void withDB(ConfDB.WriteBehind writeBehind, Consumer<ConfDB> block) {
 		cleanDB();
-		ConfDB db = openDB();
+		ConfDB db = openDB(writeBehind);
 		try {
 			block.accept(db);
 		} finally {
@@ -108,8 +125,12 @@ public class TestConfDB {
 	}
 
 	private void withDBTwice(Consumer<ConfDB> block1, Consumer<ConfDB> block2) {
+		withDBTwice(null, block1, block2);
+	}
+
+	private void withDBTwice(ConfDB.WriteBehind writeBehind, Consumer<ConfDB> block1, Consumer<ConfDB> block2) {
 		cleanDB();
-		ConfDB db = openDB();
+		ConfDB db = openDB(writeBehind);
 		try {
 			block1.accept(db);
 			db.close();
@@ -822,4 +843,120 @@ public class TestConfDB {
 			assertThat(table.getConfsByLowerBound(6.0).iterator().hasNext(), is(false));
 		});
 	}
+
+	@Test
+	public void writeBehindReadLowerThenUpper() {
+		withDB(bufferEverything(), (db) -> {
+			ConfDB.SequenceDB sdb = db.getSequence(confSpace.makeWildTypeSequence());
+
+			int[] assignments = { 5, 5, 5 };
+
+			sdb.setLowerBound(assignments, 7.2, 42L);
+
+			// callers can re-use their arrays
+			assignments[0] = 1;
+			assertThat(sdb.get(new int[] { 1, 5, 5 }), is(nullValue()));
+			assertConfLower(sdb.get(new int[] { 5, 5, 5 }), new int[] { 5, 5, 5 }, 7.2, 42L);
+
+			// write the lower bound to the db, but leave the upper bound in the buffer
+			db.flush();
+			sdb.setUpperBound(new int[] { 5, 5, 5 }, 9.9, 54L);
+
+			assertConf(sdb.get(new int[] { 5, 5, 5 }), new int[] { 5, 5, 5 }, 7.2, 42L, 9.9, 54L);
+			assertThat(sdb.getEnergied(new int[] { 5, 5, 5 }), is(new ConfSearch.EnergiedConf(new int[] { 5, 5, 5 }, 7.2, 9.9)));
+		});
+	}
+
+	@Test
+	public void writeBehindRemove() {
+		withDB(bufferEverything(), (db) -> {
+			ConfDB.ConfTable table = db.new ConfTable("foo");
+
+			table.setBounds(new int[] { 1, 2, 3 }, 7.0, 27.0, 5L);
+			table.setBounds(new int[] { 3, 2, 1 }, 5.0, 26.0, 7L);
+			db.flush();
+
+			// remove one conf in the buffer, then write it again with only a lower bound
+			table.remove(new int[] { 1, 2, 3 });
+			assertThat(table.get(new int[] { 1, 2, 3 }), is(nullValue()));
+			table.setLowerBound(new int[] { 1, 2, 3 }, 8.0, 10L);
+			assertConfLower(table.get(new int[] { 1, 2, 3 }), new int[] { 1, 2, 3 }, 8.0, 10L);
+
+			// and remove the other conf completely
+			table.remove(new int[] { 3, 2, 1 });
+			assertThat(table.get(new int[] { 3, 2, 1 }), is(nullValue()));
+
+			assertThat(table.size(), is(1L));
+			assertThat(table.lowerBounds(), contains(8.0));
+			assertThat(table.upperBounds(), is(emptyIterable()));
+		});
+	}
+
+	@Test
+	public void writeBehindEnergyIndices() {
+
+		int[][] assignments = {
+			{ 0, 0, 0 },
+			{ 1, 2, 3 },
+			{ 3, 2, 1 },
+		};
+
+		withDB(bufferEverything(), (db) -> {
+
+			ConfDB.ConfTable table = db.new ConfTable("foo");
+
+			table.setBounds(assignments[0], 7.0, 27.0, 5L);
+			table.setBounds(assignments[1], 6.0, 25.0, 6L);
+			db.flush();
+			table.setBounds(assignments[2], 5.0, 26.0, 7L);
+			table.setBounds(assignments[1], 10.0, 50.0, 10L);
+
+			// scans should see the buffered writes
+			assertThat(table.energiedConfs(ConfDB.SortOrder.Score), contains(
+				new ConfSearch.EnergiedConf(assignments[2], 5.0, 26.0),
+				new ConfSearch.EnergiedConf(assignments[0], 7.0, 27.0),
+				new ConfSearch.EnergiedConf(assignments[1], 10.0, 50.0)
+			));
+			assertThat(table.lowerBounds(), contains(5.0, 7.0, 10.0));
+			assertThat(table.upperBounds(), contains(26.0, 27.0, 50.0));
+			assertThat(table.getConfsByLowerBound(6.0), is(nullValue()));
+			assertThat(table.getConfsByUpperBound(25.0), is(nullValue()));
+		});
+	}
+
+	@Test
+	public void writeBehindCloseReadManyConfs() {
+
+		ConfDB.WriteBehind writeBehind = new ConfDB.WriteBehind.Builder()
+			.setGroupSize(16)
+			.setMaxBuffered(32)
+			.setCommitIntervalMs(10)
+			.build();
+
+		Sequence sequence = confSpace.makeWildTypeSequence();
+		withDBTwice(writeBehind, (db) -> {
+
+			ConfDB.SequenceDB sdb = db.getSequence(sequence);
+			int[] assignments = new int[3];
+			for (int i=0; i<1000; i++) {
+				assignments[0] = i/100;
+				assignments[1] = (i/10) % 10;
+				assignments[2] = i % 10;
+				sdb.setBounds(assignments, i, i + 1000, i + 1);
+				sdb.flush();
+			}
+
+		}, (db) -> {
+
+			ConfDB.SequenceDB sdb = db.getSequence(sequence);
+			assertThat(sdb.size(), is(1000L));
+
+			int i = 0;
+			for (ConfDB.Conf conf : sdb) {
+				assertConf(conf, new int[] { i/100, (i/10) % 10, i % 10 }, i, i + 1, i + 1000, i + 1);
+				i++;
+			}
+			assertThat(i, is(1000));
+		});
+	}
 }
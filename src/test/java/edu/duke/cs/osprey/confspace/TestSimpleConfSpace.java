@@ -35,6 +35,7 @@ package edu.duke.cs.osprey.confspace;
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.*;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import edu.duke.cs.osprey.restypes.ResidueTemplateLibrary;
@@ -45,7 +46,9 @@ import edu.duke.cs.osprey.TestBase;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace.Position;
 import edu.duke.cs.osprey.confspace.SimpleConfSpace.ResidueConf;
 import edu.duke.cs.osprey.dof.FreeDihedral;
+import edu.duke.cs.osprey.dof.MutAlignmentCache;
 import edu.duke.cs.osprey.restypes.ResidueTemplate;
+import edu.duke.cs.osprey.structure.Atom;
 import edu.duke.cs.osprey.structure.Molecule;
 import edu.duke.cs.osprey.structure.PDBIO;
 import edu.duke.cs.osprey.structure.Residue;
@@ -99,6 +102,87 @@ public class TestSimpleConfSpace extends TestBase {
 		}
 	}
 	
+	@Test
+	public void discreteMoleculeMatchesRebuild() {
+
+		Strand strand = makeStrand();
+		strand.flexibility.get("A2").setLibraryRotamers(Strand.WildType, "VAL", "ALA");
+		strand.flexibility.get("A3").setLibraryRotamers(Strand.WildType, "PRO");
+		strand.flexibility.get("A4").setLibraryRotamers(Strand.WildType, "GLY");
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder().addStrand(strand).build();
+
+		for (Position pos : confSpace.positions) {
+			for (ResidueConf rc : pos.resConfs) {
+				RCTuple tuple = new RCTuple(pos.index, rc.index);
+
+				// ask twice, so the second molecule gets built from the cached residue
+				Molecule mol1 = confSpace.makeDiscreteMolecule(tuple);
+				Molecule mol2 = confSpace.makeDiscreteMolecule(tuple);
+				Molecule expected = rebuildMolecule(strand, pos, rc);
+				assertMolecule(mol1, expected);
+				assertMolecule(mol2, expected);
+
+				// the molecules shouldn't share anything we might change
+				for (int i=0; i<mol1.residues.size(); i++) {
+					Residue res1 = mol1.residues.get(i);
+					Residue res2 = mol2.residues.get(i);
+					assertThat(res1 == res2, is(false));
+					assertThat(res1.coords == res2.coords, is(false));
+					assertThat(res1.atoms.get(0) == res2.atoms.get(0), is(false));
+				}
+			}
+		}
+	}
+
+	private static Molecule rebuildMolecule(Strand strand, Position pos, ResidueConf rc) {
+
+		// build the molecule the slow way, by switching templates every time
+		Molecule mol = new Molecule();
+		for (Residue res : strand.mol.residues) {
+
+			// drop the inter-res bonds, like the conf space template does
+			res = new Residue(res);
+
+			if (res.getPDBResNumber().equals(pos.resNum)) {
+				Residue newRes = res.copyToMol(mol, false);
+				rc.updateResidue(strand.templateLib, newRes, new MutAlignmentCache());
+			} else {
+				res.copyToMol(mol, true);
+			}
+		}
+		mol.markInterResBonds();
+		return mol;
+	}
+
+	private static void assertMolecule(Molecule observed, Molecule expected) {
+		assertThat(observed.residues.size(), is(expected.residues.size()));
+		for (int i=0; i<expected.residues.size(); i++) {
+			Residue obsRes = observed.residues.get(i);
+			Residue expRes = expected.residues.get(i);
+			assertThat(obsRes.fullName, is(expRes.fullName));
+			assertThat(obsRes.template, sameInstance(expRes.template));
+			assertThat(obsRes.coords, is(expRes.coords));
+			assertThat(obsRes.intraResBondsMarked, is(expRes.intraResBondsMarked));
+			assertThat(obsRes.interResBondsMarked, is(expRes.interResBondsMarked));
+			assertThat(obsRes.atoms.size(), is(expRes.atoms.size()));
+			for (int j=0; j<expRes.atoms.size(); j++) {
+				Atom obsAtom = obsRes.atoms.get(j);
+				Atom expAtom = expRes.atoms.get(j);
+				assertThat(obsAtom.name, is(expAtom.name));
+				assertThat(obsAtom.res, sameInstance(obsRes));
+				assertThat(bondNames(obsAtom), is(bondNames(expAtom)));
+			}
+		}
+	}
+
+	private static List<String> bondNames(Atom atom) {
+		List<String> names = new ArrayList<>();
+		for (Atom bondedAtom : atom.bonds) {
+			names.add(bondedAtom.res.getPDBResNumber() + ":" + bondedAtom.name);
+		}
+		return names;
+	}
+
 	@Test
 	public void onePosition() {
 		
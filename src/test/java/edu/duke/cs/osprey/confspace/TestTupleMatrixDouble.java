@@ -0,0 +1,94 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.confspace;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import org.junit.jupiter.api.Test;
+
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+
+public class TestTupleMatrixDouble {
+
+	private static final int[] NumConfs = { 3, 5, 2, 4 };
+
+	private static EnergyMatrix makeEmat() {
+		EnergyMatrix emat = new EnergyMatrix(NumConfs.length, NumConfs, Double.POSITIVE_INFINITY);
+		int i = 0;
+		for (int pos1=0; pos1<NumConfs.length; pos1++) {
+			for (int rc1=0; rc1<NumConfs[pos1]; rc1++) {
+				emat.setOneBody(pos1, rc1, (double)i++);
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<NumConfs[pos2]; rc2++) {
+						emat.setPairwise(pos1, rc1, pos2, rc2, (double)i++);
+					}
+				}
+			}
+		}
+		return emat;
+	}
+
+	private static void checkAccessors(EnergyMatrix emat) {
+
+		double[] row = new double[5];
+
+		for (int pos1=0; pos1<NumConfs.length; pos1++) {
+			for (int rc1=0; rc1<NumConfs[pos1]; rc1++) {
+
+				assertThat(emat.getOneBodyDouble(pos1, rc1), is(emat.getOneBody(pos1, rc1)));
+
+				for (int pos2=0; pos2<NumConfs.length; pos2++) {
+					if (pos2 == pos1) {
+						continue;
+					}
+
+					// check both storage orders
+					emat.getPairwiseRow(pos1, rc1, pos2, row);
+					for (int rc2=0; rc2<NumConfs[pos2]; rc2++) {
+						double val = emat.getPairwise(pos1, rc1, pos2, rc2);
+						assertThat(emat.getPairwiseDouble(pos1, rc1, pos2, rc2), is(val));
+						assertThat(emat.getPairwiseDouble(pos2, rc2, pos1, rc1), is(val));
+						assertThat(row[rc2], is(val));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void primitiveAccessors() {
+		checkAccessors(makeEmat());
+	}
+}
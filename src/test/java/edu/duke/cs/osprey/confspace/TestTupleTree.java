@@ -37,6 +37,8 @@ import static org.hamcrest.MatcherAssert.*;
 
 import org.junit.jupiter.api.Test;
 
+import edu.duke.cs.osprey.tools.ObjectIO;
+
 import java.util.*;
 
 
@@ -215,6 +217,81 @@ public class TestTupleTree {
 		));
 	}
 
+	@Test
+	public void getImmutable() {
+
+		TupleTree<Double> tree = new TupleTree<>();
+		tree.put(new RCTuple(0, 0, 1, 0), 5.0);
+		tree.put(new RCTuple(0, 1, 2, 3), 6.0);
+
+		assertThat(tree.get(ImmutableRCTuple.of(0, 0, 1, 0)), is(5.0));
+		assertThat(tree.get(ImmutableRCTuple.of(2, 3, 0, 1)), is(6.0));
+		assertThat(tree.get(ImmutableRCTuple.of(0, 1, 1, 0)), is(nullValue()));
+		assertThat(tree.get(ImmutableRCTuple.of(1, 0)), is(nullValue()));
+	}
+
+	@Test
+	public void getImmutableWithBase() {
+
+		TupleTree<Double> tree = new TupleTree<>(new RCTuple(0, 0, 1, 0));
+		tree.put(new RCTuple(0, 0, 1, 0, 2, 0), 5.0);
+		tree.put(new RCTuple(0, 0, 1, 0, 3, 2), 6.0);
+
+		assertThat(tree.get(ImmutableRCTuple.of(0, 0, 1, 0, 2, 0)), is(5.0));
+		assertThat(tree.get(ImmutableRCTuple.of(3, 2, 1, 0, 0, 0)), is(6.0));
+		assertThat(tree.get(ImmutableRCTuple.of(0, 0, 1, 0, 2, 1)), is(nullValue()));
+
+		// extend the base tuple by one position
+		assertThat(tree.get(2, 0), is(5.0));
+		assertThat(tree.get(3, 2), is(6.0));
+		assertThat(tree.get(3, 0), is(nullValue()));
+	}
+
+	@Test
+	public void serialize() {
+
+		TupleTree<Double> tree = new TupleTree<>(new RCTuple(0, 0));
+		tree.put(new RCTuple(0, 0, 1, 0, 2, 0), 5.0);
+		tree.put(new RCTuple(0, 0, 2, 1), 6.0);
+
+		// the immutable keys aren't serialized, so make sure they get rebuilt
+		TupleTree<Double> copy = (TupleTree<Double>)ObjectIO.deepCopy(tree);
+		assertThat(copy.get(ImmutableRCTuple.of(0, 0, 1, 0, 2, 0)), is(5.0));
+		assertThat(copy.get(ImmutableRCTuple.of(0, 0, 2, 1)), is(6.0));
+
+		List<Double> values = new ArrayList<>();
+		copy.forEachIn(new int[] { 0, 0, 0 }, 2, (tuple, value) -> values.add(value));
+		assertThat(values, contains(5.0));
+		values.clear();
+		copy.forEachIn(new int[] { 0, 1, 1 }, (tuple, value) -> values.add(value));
+		assertThat(values, contains(6.0));
+	}
+
+	@Test
+	public void immutableTuple() {
+
+		ImmutableRCTuple tuple = ImmutableRCTuple.of(new RCTuple(5, 1, 2, 3, 4, 0));
+
+		// positions should be sorted
+		assertThat(tuple.size(), is(3));
+		assertThat(tuple.pos(0), is(2));
+		assertThat(tuple.pos(1), is(4));
+		assertThat(tuple.pos(2), is(5));
+		assertThat(tuple.getRC(2), is(3));
+		assertThat(tuple.getRC(4), is(0));
+		assertThat(tuple.getRC(5), is(1));
+		assertThat(tuple.getRC(3), is(Conf.Unassigned));
+
+		assertThat(tuple, is(ImmutableRCTuple.of(2, 3, 4, 0, 5, 1)));
+		assertThat(tuple.hashCode(), is(ImmutableRCTuple.of(2, 3, 4, 0, 5, 1).hashCode()));
+		assertThat(tuple, is(not(ImmutableRCTuple.of(2, 3, 4, 1, 5, 1))));
+		assertThat(tuple.toRCTuple(), is(new RCTuple(2, 3, 4, 0, 5, 1)));
+		assertThat(ImmutableRCTuple.fromConf(new int[] { 3, -1, 0 }), is(ImmutableRCTuple.of(0, 3, 2, 0)));
+
+		assertThat(tuple.isIn(new int[] { 0, 0, 3, 0, 0, 1 }), is(true));
+		assertThat(tuple.isIn(new int[] { 0, 0, 3, 0, 1, 1 }), is(false));
+	}
+
 	// TODO: pairs with Pos1 and (Pos1 and Pos2)
 
 
@@ -0,0 +1,45 @@
+package edu.duke.cs.osprey.confspace.compiled;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+import edu.duke.cs.osprey.TestBase.TempDir;
+import edu.duke.cs.osprey.tools.FileTools;
+import edu.duke.cs.osprey.tools.Stopwatch;
+
+import java.io.File;
+import java.util.function.Supplier;
+
+
+public class BenchmarkConfSpaceLoad {
+
+	private static final int NumRuns = 5;
+
+	public static void main(String[] args) {
+
+		File file = new File(args.length > 0 ? args[0] : "src/test/resources/confSpaces/6ov7.2m4f.complex.ccsx");
+		log("benchmarking loads of %s (%d bytes)", file, file.length());
+
+		try (TempDir cacheDir = new TempDir("benchmark-ccs-cache")) {
+			cacheDir.mkdirs();
+
+			// the first load in a fresh JVM is what users see at startup, so report it separately
+			benchmark("no cache", () -> ConfSpace.fromBytes(FileTools.readFileBytes(file)));
+			benchmark("cache miss", () -> {
+				for (File cacheFile : cacheDir.listFiles()) {
+					cacheFile.delete();
+				}
+				return ConfSpace.fromFile(file, cacheDir);
+			});
+			benchmark("cache hit", () -> ConfSpace.fromFile(file, cacheDir));
+		}
+	}
+
+	private static void benchmark(String name, Supplier<ConfSpace> loader) {
+		for (int i=0; i<NumRuns; i++) {
+			Stopwatch stopwatch = new Stopwatch().start();
+			loader.get();
+			stopwatch.stop();
+			log("%-12s run %d: %s", name, i + 1, stopwatch.getTime(2));
+		}
+	}
+}
@@ -4,6 +4,7 @@ import static edu.duke.cs.osprey.TestBase.isAbsolutely;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
+import edu.duke.cs.osprey.TestBase.TempDir;
 import edu.duke.cs.osprey.confspace.*;
 import edu.duke.cs.osprey.energy.EnergyCalculator;
 import edu.duke.cs.osprey.energy.ResidueInteractions;
@@ -16,6 +17,7 @@ import edu.duke.cs.osprey.structure.PDBIO;
 import edu.duke.cs.osprey.tools.FileTools;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
@@ -223,6 +225,37 @@ public class TestConfSpace {
 		assertThat(energy, isAbsolutely(-1556.9551045257347, 1e-9));
 	}
 
+	@Test
+	public void loadCached() {
+
+		File file = new File("src/test/resources/confSpaces/2RL0.complex.ccsx");
+		try (TempDir cacheDir = new TempDir("test-ccs-cache")) {
+
+			ConfSpace expected = ConfSpace.fromBytes(FileTools.readFileBytes(file));
+			double expectedEnergy = calcWtRigidEnergy(expected);
+
+			// the first load should fill the cache, the second load should read from it
+			ConfSpace miss = ConfSpace.fromFile(file, cacheDir);
+			assertThat(cacheDir.listFiles().length, is(1));
+			ConfSpace hit = ConfSpace.fromFile(file, cacheDir);
+			assertThat(cacheDir.listFiles().length, is(1));
+
+			for (ConfSpace confSpace : Arrays.asList(miss, hit)) {
+				assertThat(confSpace.hashCode(), is(expected.hashCode()));
+				assertThat(confSpace.name, is(expected.name));
+				assertThat(confSpace.numStaticAtoms, is(expected.numStaticAtoms));
+				assertThat(confSpace.countSingles(), is(expected.countSingles()));
+				assertThat(confSpace.countPairs(), is(expected.countPairs()));
+				assertThat(calcWtRigidEnergy(confSpace), is(expectedEnergy));
+			}
+		}
+	}
+
+	private static double calcWtRigidEnergy(ConfSpace confSpace) {
+		int[] conf = new AffinityCompiled(confSpace, confSpace, confSpace).makeConfWt(confSpace);
+		return new CPUConfEnergyCalculator(confSpace).calcEnergy(conf, PosInterDist.all(confSpace, conf));
+	}
+
 	@Test
 	public void check2RL0_classic() {
 
@@ -0,0 +1,106 @@
+package edu.duke.cs.osprey.design.analysis;
+
+import edu.duke.cs.osprey.TestBase.TempFile;
+import edu.duke.cs.osprey.confspace.ConfSearch;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnergiedConfQueueTest {
+
+    private static ArrayList<ConfSearch.EnergiedConf> makeRandomConfs(int numConfs) {
+        var rand = new Random(12345);
+        var confs = new ArrayList<ConfSearch.EnergiedConf>();
+        for (int i = 0; i < numConfs; i++) {
+            var energy = rand.nextInt(100) - 50.0; // lots of ties too
+            confs.add(new ConfSearch.EnergiedConf(new int[] { i, rand.nextInt(10) }, energy - 1.0, energy));
+        }
+        return confs;
+    }
+
+    private static ArrayList<Double> energies(List<ConfSearch.EnergiedConf> confs) {
+        return confs.stream().map(ConfSearch.EnergiedConf::getEnergy).collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Test
+    void keepsLowestEnergies() {
+        var confs = makeRandomConfs(1000);
+
+        var queue = new EnergiedConfQueue(10);
+        confs.forEach(queue::add);
+        assertEquals(10, queue.size());
+
+        var expected = new ArrayList<>(confs);
+        expected.sort(Comparator.comparingDouble(ConfSearch.EnergiedConf::getEnergy));
+        assertEquals(energies(expected.subList(0, 10)), energies(queue.toOrderedList()));
+    }
+
+    @Test
+    void fewerConfsThanMax() {
+        var confs = makeRandomConfs(5);
+
+        var queue = new EnergiedConfQueue(10);
+        confs.forEach(queue::add);
+        assertEquals(5, queue.size());
+
+        var expected = new ArrayList<>(confs);
+        expected.sort(Comparator.comparingDouble(ConfSearch.EnergiedConf::getEnergy));
+        assertEquals(expected, queue.toOrderedList());
+    }
+
+    @Test
+    void empty() {
+        var queue = new EnergiedConfQueue(0);
+        makeRandomConfs(5).forEach(queue::add);
+        assertTrue(queue.toOrderedList().isEmpty());
+    }
+
+    @Test
+    void confLog() {
+        var confs = makeRandomConfs(1000);
+
+        try (var file = new TempFile("confs.log")) {
+            var log = new ConfLogListener(file);
+            confs.forEach(log::onConf);
+            log.printResults();
+
+            var queue = new EnergiedConfQueue(10);
+            confs.forEach(queue::add);
+
+            var observed = ConfLogListener.readLowest(file, 10);
+            var expected = queue.toOrderedList();
+            assertEquals(energies(expected), energies(observed));
+            for (int i = 0; i < expected.size(); i++) {
+                assertArrayEquals(expected.get(i).getAssignments(), observed.get(i).getAssignments());
+                assertEquals(expected.get(i).getScore(), observed.get(i).getScore());
+            }
+        }
+    }
+
+    @Test
+    void confLogAppends() {
+        var confs = makeRandomConfs(1000);
+
+        try (var file = new TempFile("confs.log")) {
+
+            // log the confs in two runs
+            var log = new ConfLogListener(file);
+            confs.subList(0, 500).forEach(log::onConf);
+            log.printResults();
+            log = new ConfLogListener(file);
+            confs.subList(500, 1000).forEach(log::onConf);
+            log.printResults();
+
+            var queue = new EnergiedConfQueue(10);
+            confs.forEach(queue::add);
+
+            assertEquals(energies(queue.toOrderedList()), energies(ConfLogListener.readLowest(file, 10)));
+        }
+    }
+}
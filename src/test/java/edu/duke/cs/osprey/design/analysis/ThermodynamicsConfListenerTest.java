@@ -0,0 +1,89 @@
+package edu.duke.cs.osprey.design.analysis;
+
+import edu.duke.cs.osprey.confspace.ConfSearch;
+import edu.duke.cs.osprey.kstar.pfunc.BoltzmannCalculator;
+import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThermodynamicsConfListenerTest {
+
+    private static final BoltzmannCalculator bCalc = new BoltzmannCalculator(PartitionFunction.decimalPrecision);
+    private static final MathContext mathContext = PartitionFunction.decimalPrecision;
+
+    private static PartitionFunction makePfunc(PartitionFunction.Values values) {
+        return (PartitionFunction) Proxy.newProxyInstance(
+                PartitionFunction.class.getClassLoader(),
+                new Class<?>[] { PartitionFunction.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getValues")) {
+                        return values;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+        );
+    }
+
+    // the old per-conf formulas, from when the listener kept every conf
+
+    private static BigDecimal referenceUpperBoundEnthalpy(List<ConfSearch.EnergiedConf> confs, BigDecimal pfuncUpperBound) {
+        var sum = BigDecimal.ZERO;
+        for (var conf : confs) {
+            var probability = bCalc.calc(conf.getEnergy()).divide(pfuncUpperBound, mathContext);
+            sum = sum.add(probability.multiply(BigDecimal.valueOf(conf.getEnergy())));
+        }
+        return sum;
+    }
+
+    private static BigDecimal referenceLowerBoundEnthalpy(List<ConfSearch.EnergiedConf> confs, BigDecimal pfuncLowerBound) {
+        var sum = BigDecimal.ZERO;
+        var probabilitySum = BigDecimal.ZERO;
+        for (var conf : confs) {
+            var probability = bCalc.calc(conf.getEnergy()).divide(pfuncLowerBound, mathContext);
+            sum = sum.add(probability.multiply(BigDecimal.valueOf(conf.getEnergy())));
+            probabilitySum = probabilitySum.add(probability);
+        }
+        var lastEnergy = BigDecimal.valueOf(confs.get(confs.size() - 1).getEnergy());
+        return sum.add(BigDecimal.ONE.subtract(probabilitySum).multiply(lastEnergy));
+    }
+
+    @Test
+    void matchesPerConfReference() {
+
+        var confs = new ArrayList<ConfSearch.EnergiedConf>();
+        double[] energies = { -12.5, -11.75, -10.0, -9.25, -7.5, -3.0 };
+        for (int i = 0; i < energies.length; i++) {
+            confs.add(new ConfSearch.EnergiedConf(new int[] { i, 0 }, energies[i] - 1.0, energies[i]));
+        }
+
+        // the lower bound includes a conf the listener never saw, so the leftover probability matters too
+        var values = new PartitionFunction.Values();
+        values.qstar = bCalc.calc(-8.0);
+        for (var conf : confs) {
+            values.qstar = values.qstar.add(bCalc.calc(conf.getEnergy()));
+        }
+        values.qprime = bCalc.calc(-9.0);
+        values.pstar = bCalc.calc(-6.0);
+
+        var listener = new ThermodynamicsConfListener(makePfunc(values));
+        confs.forEach(listener::onConf);
+
+        assertEquals(
+                referenceLowerBoundEnthalpy(confs, values.calcLowerBound()).doubleValue(),
+                listener.getLowerBoundEnthalpy().doubleValue(),
+                1e-9
+        );
+        assertEquals(
+                referenceUpperBoundEnthalpy(confs, values.calcUpperBound()).doubleValue(),
+                listener.getUpperBoundEnthalpy().doubleValue(),
+                1e-9
+        );
+    }
+}
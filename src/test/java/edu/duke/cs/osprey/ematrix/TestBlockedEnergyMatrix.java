@@ -0,0 +1,226 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
+import edu.duke.cs.osprey.astar.conf.RCs;
+import edu.duke.cs.osprey.confspace.ConfSearch;
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.gpu.Structs.Precision;
+import edu.duke.cs.osprey.tools.ObjectIO;
+
+public class TestBlockedEnergyMatrix {
+
+	private static final int[] NumConfs = { 3, 5, 2, 4 };
+
+	private static EnergyMatrix makeEmat() {
+		EnergyMatrix emat = new EnergyMatrix(NumConfs.length, NumConfs, Double.POSITIVE_INFINITY);
+		emat.setConstTerm(-7.5);
+		double val = 0.1;
+		for (int pos1=0; pos1<NumConfs.length; pos1++) {
+			for (int rc1=0; rc1<NumConfs[pos1]; rc1++) {
+				emat.setOneBody(pos1, rc1, val);
+				val += 1.1;
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<NumConfs[pos2]; rc2++) {
+						emat.setPairwise(pos1, rc1, pos2, rc2, -val);
+						val += 1.1;
+					}
+				}
+			}
+		}
+		return emat;
+	}
+
+	private static void assertEmatsEqual(EnergyMatrix observed, EnergyMatrix expected, Precision precision) {
+		assertThat(observed.getConstTerm(), is(expected.getConstTerm()));
+		double[] observedRow = new double[5];
+		double[] expectedRow = new double[5];
+		for (int pos1=0; pos1<NumConfs.length; pos1++) {
+			for (int rc1=0; rc1<NumConfs[pos1]; rc1++) {
+				assertThat(observed.getOneBodyDouble(pos1, rc1), is(expected.getOneBodyDouble(pos1, rc1)));
+				for (int pos2=0; pos2<NumConfs.length; pos2++) {
+					if (pos2 == pos1) {
+						continue;
+					}
+					observed.getPairwiseRow(pos1, rc1, pos2, observedRow);
+					expected.getPairwiseRow(pos1, rc1, pos2, expectedRow);
+					for (int rc2=0; rc2<NumConfs[pos2]; rc2++) {
+						double energy = expected.getPairwiseDouble(pos1, rc1, pos2, rc2);
+						if (precision == Precision.Float32) {
+							energy = (float)energy;
+						}
+						assertThat(observed.getPairwiseDouble(pos1, rc1, pos2, rc2), is(energy));
+						assertThat(observed.getPairwise(pos1, rc1, pos2, rc2), is(energy));
+						assertThat(observedRow[rc2], is(energy));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void copyFloat64() {
+		EnergyMatrix emat = makeEmat();
+		BlockedEnergyMatrix blocked = new BlockedEnergyMatrix(emat, Precision.Float64);
+		assertEmatsEqual(blocked, emat, Precision.Float64);
+		assertThat(blocked.sum(), is(emat.sum()));
+		assertThat(blocked.confE(new int[] { 1, 4, 0, 2 }), is(emat.confE(new int[] { 1, 4, 0, 2 })));
+	}
+
+	@Test
+	public void copyFloat32() {
+		EnergyMatrix emat = makeEmat();
+		BlockedEnergyMatrix blocked = new BlockedEnergyMatrix(emat, Precision.Float32);
+		assertEmatsEqual(blocked, emat, Precision.Float32);
+		assertThat(blocked.sum(), closeTo(emat.sum(), 1e-3));
+	}
+
+	@Test
+	public void setAndNegate() {
+		BlockedEnergyMatrix blocked = new BlockedEnergyMatrix(NumConfs.length, NumConfs, Double.POSITIVE_INFINITY, Precision.Float64);
+		blocked.setOneBody(2, 1, 4.0);
+		blocked.setPairwise(1, 3, 3, 2, 5.0);
+		assertThat(blocked.getOneBody(2, 1), is(4.0));
+		assertThat(blocked.getPairwise(3, 2, 1, 3), is(5.0));
+		assertThat(blocked.getPairwise(1, 3, 3, 2), is(5.0));
+		assertThat(blocked.sum(), is(9.0));
+		blocked.negate();
+		assertThat(blocked.getPairwise(1, 3, 3, 2), is(-5.0));
+		assertThat(blocked.sum(), is(-9.0));
+	}
+
+	@Test
+	public void fill() {
+
+		// fill both matrices from the same values, in the flat matrix order
+		EnergyMatrix emat = makeEmat();
+		double[] vals = new double[emat.getNumOneBody() + emat.getNumPairwise()];
+		for (int i=0; i<vals.length; i++) {
+			vals[i] = i*1.1 - 3.0;
+		}
+		emat.fill(vals);
+
+		for (Precision precision : Precision.values()) {
+			BlockedEnergyMatrix blocked = new BlockedEnergyMatrix(NumConfs.length, NumConfs, Double.POSITIVE_INFINITY, precision);
+			blocked.setConstTerm(emat.getConstTerm());
+			blocked.fill(vals);
+			assertEmatsEqual(blocked, emat, precision);
+
+			blocked.fill(2.5);
+			assertThat(blocked.getOneBody(3, 1), is(2.5));
+			assertThat(blocked.getPairwise(3, 1, 1, 4), is(2.5));
+			assertThat(blocked.sum(), is(2.5*vals.length));
+		}
+
+		BlockedEnergyMatrix blocked = new BlockedEnergyMatrix(NumConfs.length, NumConfs, Double.POSITIVE_INFINITY, Precision.Float64);
+		assertThrows(IllegalArgumentException.class, () -> blocked.fill(new double[vals.length - 1]));
+	}
+
+	@Test
+	public void higherOrderTuples() {
+		BlockedEnergyMatrix blocked = new BlockedEnergyMatrix(NumConfs.length, NumConfs, Double.POSITIVE_INFINITY, Precision.Float64);
+		blocked.setTuple(new RCTuple(0, 1, 1, 2, 3, 0), 1.5);
+		assertThat(blocked.getTuple(new RCTuple(0, 1, 1, 2, 3, 0)), is(1.5));
+	}
+
+	@Test
+	public void readWriteMatchesFlat()
+	throws Exception {
+		EnergyMatrix emat = makeEmat();
+		BlockedEnergyMatrix blocked = new BlockedEnergyMatrix(emat, Precision.Float64);
+
+		// blocked matrices should read what flat matrices write, and vice versa
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		blocked.write(new DataOutputStream(buf));
+		EnergyMatrix flat = new EnergyMatrix(NumConfs.length, NumConfs, Double.POSITIVE_INFINITY);
+		flat.read(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+		assertEmatsEqual(flat, emat, Precision.Float64);
+
+		buf = new ByteArrayOutputStream();
+		emat.write(new DataOutputStream(buf));
+		BlockedEnergyMatrix blocked2 = new BlockedEnergyMatrix(NumConfs.length, NumConfs, Double.POSITIVE_INFINITY, Precision.Float64);
+		blocked2.read(new DataInputStream(new ByteArrayInputStream(buf.toByteArray())));
+		assertEmatsEqual(blocked2, emat, Precision.Float64);
+	}
+
+	@Test
+	public void serialize() {
+		EnergyMatrix emat = makeEmat();
+		BlockedEnergyMatrix copy = (BlockedEnergyMatrix)ObjectIO.deepCopy(new BlockedEnergyMatrix(emat, Precision.Float32));
+		assertThat(copy.precision, is(Precision.Float32));
+		assertEmatsEqual(copy, emat, Precision.Float32);
+	}
+
+	@Test
+	public void astar() {
+
+		// the blocked matrix should give A* exactly the same conformations
+		EnergyMatrix emat = makeEmat();
+		BlockedEnergyMatrix blocked = new BlockedEnergyMatrix(emat, Precision.Float64);
+		RCs rcs = new RCs(new int[][] { { 0, 1, 2 }, { 0, 1, 2, 3, 4 }, { 0, 1 }, { 0, 1, 2, 3 } });
+		ConfAStarTree flatTree = new ConfAStarTree.Builder(emat, rcs).setTraditional().build();
+		ConfAStarTree blockedTree = new ConfAStarTree.Builder(blocked, rcs).setTraditional().build();
+		for (int i=0; i<20; i++) {
+			ConfSearch.ScoredConf expected = flatTree.nextConf();
+			ConfSearch.ScoredConf observed = blockedTree.nextConf();
+			assertThat(observed.getAssignments(), is(expected.getAssignments()));
+			assertThat(observed.getScore(), is(expected.getScore()));
+		}
+	}
+
+	@Test
+	public void tooBigForFlat() {
+
+		// 3 positions with 40k confs each is about 4.8 billion pairwise energies
+		int[] numConfs = { 40000, 40000, 40000 };
+		assertThrows(UnsupportedOperationException.class, () -> new EnergyMatrix(numConfs.length, numConfs, Double.POSITIVE_INFINITY));
+
+		// don't actually allocate a blocked matrix that big, but the sizes should still be right
+		EnergyMatrix small = new EnergyMatrix(NumConfs.length, NumConfs, Double.POSITIVE_INFINITY);
+		assertThat(small.hasFlatPairwiseIndex(), is(true));
+		assertThat(small.getNumPairwiseLong(), is((long)small.getNumPairwise()));
+	}
+}
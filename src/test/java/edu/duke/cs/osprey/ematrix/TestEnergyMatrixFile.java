@@ -0,0 +1,321 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.RandomAccessFile;
+
+import org.junit.jupiter.api.Test;
+
+import edu.duke.cs.osprey.TestBase.TempFile;
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.structure.PDBIO;
+import edu.duke.cs.osprey.tools.FileTools;
+import edu.duke.cs.osprey.tools.ObjectIO;
+import edu.duke.cs.osprey.tools.ObjectIO.BadFileException;
+
+public class TestEnergyMatrixFile {
+
+	private static final int[] NumConfs = { 3, 5, 2, 4 };
+	private static final long ConfSpaceHash = 42;
+	private static final byte[] Key = { 1, 2, 3 };
+
+	private static EnergyMatrix makeEmat() {
+		EnergyMatrix emat = new EnergyMatrix(NumConfs.length, NumConfs, Double.POSITIVE_INFINITY);
+		emat.setConstTerm(-7.5);
+		double val = 0.25;
+		for (int pos1=0; pos1<NumConfs.length; pos1++) {
+			for (int rc1=0; rc1<NumConfs[pos1]; rc1++) {
+				emat.setOneBody(pos1, rc1, val++);
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<NumConfs[pos2]; rc2++) {
+						emat.setPairwise(pos1, rc1, pos2, rc2, -(val++));
+					}
+				}
+			}
+		}
+		emat.setTuple(new RCTuple(0, 1, 1, 2, 3, 0), 1.5);
+		emat.setTuple(new RCTuple(0, 2, 2, 1, 3, 3), -2.5);
+		emat.setTuple(new RCTuple(0, 0, 1, 4, 2, 1, 3, 2), 3.5);
+		return emat;
+	}
+
+	private static void assertEmatsEqual(EnergyMatrix observed, EnergyMatrix expected) {
+		assertThat(observed.getConstTerm(), is(expected.getConstTerm()));
+		assertThat(observed.getPruningInterval(), is(expected.getPruningInterval()));
+		for (int pos1=0; pos1<NumConfs.length; pos1++) {
+			for (int rc1=0; rc1<NumConfs[pos1]; rc1++) {
+				assertThat(observed.getOneBody(pos1, rc1), is(expected.getOneBody(pos1, rc1)));
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<NumConfs[pos2]; rc2++) {
+						assertThat(observed.getPairwise(pos1, rc1, pos2, rc2), is(expected.getPairwise(pos1, rc1, pos2, rc2)));
+					}
+				}
+			}
+		}
+		assertThat(observed.getTuple(new RCTuple(0, 1, 1, 2, 3, 0)), is(1.5));
+		assertThat(observed.getTuple(new RCTuple(0, 2, 2, 1, 3, 3)), is(-2.5));
+		assertThat(observed.getTuple(new RCTuple(0, 0, 1, 4, 2, 1, 3, 2)), is(3.5));
+		assertThat(observed.getTuple(new RCTuple(0, 0, 1, 0, 2, 0)), is(nullValue()));
+	}
+
+	@Test
+	public void roundTrip()
+	throws Exception {
+		EnergyMatrix emat = makeEmat();
+		try (TempFile file = new TempFile("emat.bin")) {
+
+			EnergyMatrixFile.write(emat, ConfSpaceHash, Key, file);
+			EnergyMatrix mapped = EnergyMatrixFile.map(file, ConfSpaceHash, Key);
+
+			assertThat(mapped, instanceOf(MappedEnergyMatrix.class));
+			assertEmatsEqual(mapped, emat);
+			assertThat(mapped.sum(), is(emat.sum()));
+
+			// copies aren't mapped
+			EnergyMatrix copy = new EnergyMatrix(mapped);
+			copy.setOneBody(0, 0, 5.0);
+			assertThat(copy.getOneBody(0, 0), is(5.0));
+			assertThat(copy.getPairwise(3, 1, 2, 0), is(emat.getPairwise(3, 1, 2, 0)));
+		}
+	}
+
+	@Test
+	public void modifyMapped()
+	throws Exception {
+		EnergyMatrix emat = makeEmat();
+		try (TempFile file = new TempFile("emat.bin")) {
+
+			EnergyMatrixFile.write(emat, ConfSpaceHash, Key, file);
+			MappedEnergyMatrix mapped = (MappedEnergyMatrix)EnergyMatrixFile.map(file, ConfSpaceHash, Key);
+			assertThat(mapped.isMapped(), is(true));
+
+			// modifying the matrix copies it to the heap
+			mapped.setOneBody(0, 0, 5.0);
+			assertThat(mapped.isMapped(), is(false));
+			assertThat(mapped.getOneBody(0, 0), is(5.0));
+			assertThat(mapped.getOneBody(0, 1), is(emat.getOneBody(0, 1)));
+			assertThat(mapped.getPairwise(3, 1, 2, 0), is(emat.getPairwise(3, 1, 2, 0)));
+
+			mapped.negate();
+			assertThat(mapped.getOneBody(0, 0), is(-5.0));
+			assertThat(mapped.getPairwise(3, 1, 2, 0), is(-emat.getPairwise(3, 1, 2, 0)));
+
+			// but the file isn't changed
+			assertEmatsEqual(EnergyMatrixFile.map(file, ConfSpaceHash, Key), emat);
+		}
+	}
+
+	@Test
+	public void higherOrderTermsArentCached() {
+		EnergyMatrix emat = makeEmat();
+		emat.setHigherOrder(new RCTuple(0, 0, 1, 0, 2, 0), 1.0);
+		try (TempFile file = new TempFile("emat.bin")) {
+			EnergyMatrix made = EnergyMatrixFile.readOrMake(file, ConfSpaceHash, Key, () -> emat);
+			assertThat(made, sameInstance(emat));
+			assertThat(file.exists(), is(false));
+		}
+	}
+
+	@Test
+	public void serializeMapped()
+	throws Exception {
+		EnergyMatrix emat = makeEmat();
+		try (TempFile file = new TempFile("emat.bin")) {
+			EnergyMatrixFile.write(emat, ConfSpaceHash, Key, file);
+			EnergyMatrix copy = (EnergyMatrix)ObjectIO.deepCopy(EnergyMatrixFile.map(file));
+			assertThat(copy, not(instanceOf(MappedEnergyMatrix.class)));
+			assertEmatsEqual(copy, emat);
+		}
+	}
+
+	@Test
+	public void readWrite()
+	throws Exception {
+		EnergyMatrix emat = makeEmat();
+		try (TempFile file = new TempFile("emat.bin")) {
+			EnergyMatrix.write(emat, file);
+			assertEmatsEqual(EnergyMatrix.read(file), emat);
+		}
+	}
+
+	@Test
+	public void missing()
+	throws Exception {
+		try (TempFile file = new TempFile("emat.bin")) {
+			assertThat(EnergyMatrixFile.map(file, ConfSpaceHash, Key), is(nullValue()));
+		}
+	}
+
+	@Test
+	public void stale()
+	throws Exception {
+		try (TempFile file = new TempFile("emat.bin")) {
+			EnergyMatrixFile.write(makeEmat(), ConfSpaceHash, Key, file);
+			assertThrows(EnergyMatrixFile.StaleFileException.class, () -> EnergyMatrixFile.map(file, ConfSpaceHash + 1, Key));
+			assertThrows(EnergyMatrixFile.StaleFileException.class, () -> EnergyMatrixFile.map(file, ConfSpaceHash, new byte[] { 1, 2, 4 }));
+		}
+	}
+
+	@Test
+	public void corrupt()
+	throws Exception {
+		try (TempFile file = new TempFile("emat.bin")) {
+			EnergyMatrixFile.write(makeEmat(), ConfSpaceHash, Key, file);
+
+			// flip a bit in the last energy
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.seek(raf.length() - 1);
+				int b = raf.read();
+				raf.seek(raf.length() - 1);
+				raf.write(b ^ 1);
+			}
+
+			BadFileException ex = assertThrows(BadFileException.class, () -> EnergyMatrixFile.map(file, ConfSpaceHash, Key));
+			assertThat(ex, not(instanceOf(EnergyMatrixFile.StaleFileException.class)));
+		}
+	}
+
+	@Test
+	public void readOrMake() {
+		EnergyMatrix emat = makeEmat();
+		try (TempFile file = new TempFile("emat.bin")) {
+
+			// first time makes the emat
+			int[] numMade = { 0 };
+			EnergyMatrix made = EnergyMatrixFile.readOrMake(file, ConfSpaceHash, Key, () -> {
+				numMade[0]++;
+				return emat;
+			});
+			assertThat(made, sameInstance(emat));
+
+			// second time reads it
+			EnergyMatrix read = EnergyMatrixFile.readOrMake(file, ConfSpaceHash, Key, () -> {
+				numMade[0]++;
+				return emat;
+			});
+			assertThat(read, instanceOf(MappedEnergyMatrix.class));
+			assertEmatsEqual(read, emat);
+			assertThat(numMade[0], is(1));
+
+			// different settings make it again
+			EnergyMatrixFile.readOrMake(file, ConfSpaceHash, new byte[0], () -> {
+				numMade[0]++;
+				return emat;
+			});
+			assertThat(numMade[0], is(2));
+		}
+	}
+
+	private static SimpleConfSpace make1CC8ConfSpace(double shellDist, double dx) {
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		strand.mol.getResByPDBResNumber("A10").coords[0] += dx;
+		strand.flexibility.get("A2").setLibraryRotamers(Strand.WildType).addWildTypeRotamers();
+		strand.flexibility.get("A3").setLibraryRotamers(Strand.WildType).addWildTypeRotamers();
+		return new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.setShellDistance(shellDist)
+			.build();
+	}
+
+	@Test
+	public void hashConfSpace() {
+
+		long hash = EnergyMatrixFile.hashConfSpace(make1CC8ConfSpace(Double.POSITIVE_INFINITY, 0.0));
+		assertThat(EnergyMatrixFile.hashConfSpace(make1CC8ConfSpace(Double.POSITIVE_INFINITY, 0.0)), is(hash));
+
+		// same positions and confs, but different coords or shell
+		assertThat(EnergyMatrixFile.hashConfSpace(make1CC8ConfSpace(Double.POSITIVE_INFINITY, 0.1)), is(not(hash)));
+		assertThat(EnergyMatrixFile.hashConfSpace(make1CC8ConfSpace(6.0, 0.0)), is(not(hash)));
+	}
+
+	@Test
+	public void hashCompiledConfSpace() {
+
+		// the hash comes from the file contents, not the instance
+		byte[] bytes = FileTools.readResourceBytes("/confSpaces/2RL0.A.ccsx");
+		long hash = EnergyMatrixFile.hashConfSpace(ConfSpace.fromBytes(bytes));
+		assertThat(EnergyMatrixFile.hashConfSpace(ConfSpace.fromBytes(bytes)), is(hash));
+
+		ConfSpace other = ConfSpace.fromBytes(FileTools.readResourceBytes("/confSpaces/2RL0.G.ccsx"));
+		assertThat(EnergyMatrixFile.hashConfSpace(other), is(not(hash)));
+	}
+
+	@Test
+	public void simplerCalculatorCache() {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		strand.flexibility.get("A2").setLibraryRotamers(Strand.WildType, "VAL").addWildTypeRotamers();
+		strand.flexibility.get("A3").setLibraryRotamers(Strand.WildType).addWildTypeRotamers();
+		strand.flexibility.get("A4").setLibraryRotamers(Strand.WildType, "LEU").addWildTypeRotamers();
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		try (TempFile file = new TempFile("emat.bin")) {
+			try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+				.setIsMinimizing(false)
+				.build()
+			) {
+				ConfEnergyCalculator confEcalc = new ConfEnergyCalculator.Builder(confSpace, ecalc).build();
+				SimplerEnergyMatrixCalculator.Builder builder = new SimplerEnergyMatrixCalculator.Builder(confEcalc)
+					.setCacheFile(file);
+
+				EnergyMatrix computed = builder.build().calcEnergyMatrix();
+				EnergyMatrix cached = builder.build().calcEnergyMatrix();
+
+				assertThat(computed, not(instanceOf(MappedEnergyMatrix.class)));
+				assertThat(cached, instanceOf(MappedEnergyMatrix.class));
+				assertThat(cached.sum(), is(computed.sum()));
+				assertThat(cached.matches(confSpace), is(true));
+
+				// changing the settings should make a new emat
+				EnergyMatrix recomputed = builder
+					.setCalcConstantTerm(true)
+					.build()
+					.calcEnergyMatrix();
+				assertThat(recomputed, not(instanceOf(MappedEnergyMatrix.class)));
+			}
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.ematrix;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import edu.duke.cs.osprey.TestBase.TempFile;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.structure.PDBIO;
+
+public class TestEnergyMatrixJournal {
+
+	private static final int[] NumConfs = { 3, 5, 2 };
+	private static final long ConfSpaceHash = 42;
+	private static final byte[] Key = { 1, 2, 3 };
+
+	private static EnergyMatrix makeEmat() {
+		return new EnergyMatrix(NumConfs.length, NumConfs, Double.POSITIVE_INFINITY);
+	}
+
+	private static void writeSome(TempFile file) {
+		try (EnergyMatrixJournal journal = new EnergyMatrixJournal(file, makeEmat(), ConfSpaceHash, Key)) {
+			assertThat(journal.getNumReplayed(), is(0));
+			journal.writeConst(-1.0);
+			journal.writeSingle(1, 4, 2.0);
+			journal.writePair(2, 1, 0, 2, 3.0);
+			journal.flush();
+		}
+	}
+
+	@Test
+	public void replay() {
+		try (TempFile file = new TempFile("emat.journal")) {
+
+			writeSome(file);
+
+			EnergyMatrix emat = makeEmat();
+			try (EnergyMatrixJournal journal = new EnergyMatrixJournal(file, emat, ConfSpaceHash, Key)) {
+
+				assertThat(journal.getNumReplayed(), is(3));
+				assertThat(journal.hasConst(), is(true));
+				assertThat(journal.hasSingle(1, 4), is(true));
+				assertThat(journal.hasSingle(1, 3), is(false));
+				assertThat(journal.hasPair(2, 1, 0, 2), is(true));
+				assertThat(journal.hasPair(0, 2, 2, 1), is(true));
+				assertThat(journal.hasPair(2, 1, 0, 1), is(false));
+				assertThat(journal.getNumFinishedSingles(), is(1));
+				assertThat(journal.getNumFinishedPairs(), is(1));
+
+				assertThat(emat.getConstTerm(), is(-1.0));
+				assertThat(emat.getOneBody(1, 4), is(2.0));
+				assertThat(emat.getPairwise(2, 1, 0, 2), is(3.0));
+
+				// keep appending to the same journal
+				journal.writeSingle(0, 0, 4.0);
+			}
+
+			try (EnergyMatrixJournal journal = new EnergyMatrixJournal(file, makeEmat(), ConfSpaceHash, Key)) {
+				assertThat(journal.getNumReplayed(), is(4));
+				assertThat(journal.hasSingle(0, 0), is(true));
+			}
+		}
+	}
+
+	@Test
+	public void tornRecord()
+	throws Exception {
+		try (TempFile file = new TempFile("emat.journal")) {
+
+			writeSome(file);
+
+			// append half a record, like a process killed in the middle of a write
+			try (FileOutputStream out = new FileOutputStream(file, true)) {
+				out.write(new byte[] { 1, 0, 0, 0, 1, 0, 0 });
+			}
+
+			try (EnergyMatrixJournal journal = new EnergyMatrixJournal(file, makeEmat(), ConfSpaceHash, Key)) {
+				assertThat(journal.getNumReplayed(), is(3));
+				journal.writeSingle(0, 1, 5.0);
+			}
+
+			// the torn record should be gone, and the new record readable
+			EnergyMatrix emat = makeEmat();
+			try (EnergyMatrixJournal journal = new EnergyMatrixJournal(file, emat, ConfSpaceHash, Key)) {
+				assertThat(journal.getNumReplayed(), is(4));
+				assertThat(emat.getOneBody(0, 1), is(5.0));
+			}
+		}
+	}
+
+	@Test
+	public void differentKey() {
+		try (TempFile file = new TempFile("emat.journal")) {
+
+			writeSome(file);
+
+			try (EnergyMatrixJournal journal = new EnergyMatrixJournal(file, makeEmat(), ConfSpaceHash, new byte[] { 4 })) {
+				assertThat(journal.getNumReplayed(), is(0));
+				assertThat(journal.hasConst(), is(false));
+			}
+			try (EnergyMatrixJournal journal = new EnergyMatrixJournal(file, makeEmat(), ConfSpaceHash + 1, Key)) {
+				assertThat(journal.getNumReplayed(), is(0));
+			}
+		}
+	}
+
+	@Test
+	public void resumeSimplerCalculator() {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		strand.flexibility.get("A2").setLibraryRotamers(Strand.WildType, "VAL").addWildTypeRotamers();
+		strand.flexibility.get("A3").setLibraryRotamers(Strand.WildType).addWildTypeRotamers();
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+
+		try (TempFile cacheFile = new TempFile("emat.bin")) {
+			try (EnergyCalculator ecalc = new EnergyCalculator.Builder(confSpace, new ForcefieldParams())
+				.setIsMinimizing(false)
+				.build()
+			) {
+				ConfEnergyCalculator confEcalc = new ConfEnergyCalculator.Builder(confSpace, ecalc).build();
+				SimplerEnergyMatrixCalculator ematCalc = new SimplerEnergyMatrixCalculator.Builder(confEcalc)
+					.setCacheFile(cacheFile)
+					.build();
+
+				// compute the full matrix once to get the real energies
+				EnergyMatrix expected = new SimplerEnergyMatrixCalculator.Builder(confEcalc)
+					.build()
+					.calcEnergyMatrix();
+
+				// pretend an earlier run finished one single and one pair, with recognizable energies
+				File journalFile = EnergyMatrixJournal.fileFor(cacheFile);
+				try (EnergyMatrixJournal journal = new EnergyMatrixJournal(
+					journalFile,
+					new EnergyMatrix(confSpace),
+					EnergyMatrixFile.hashConfSpace(confSpace),
+					ematCalc.makeCacheKey()
+				)) {
+					journal.writeSingle(0, 0, 1234.0);
+					journal.writePair(1, 0, 0, 0, 5678.0);
+				}
+
+				// the calculator should resume and not recompute the finished fragments
+				EnergyMatrix emat = ematCalc.calcEnergyMatrix();
+				assertThat(emat.getOneBody(0, 0), is(1234.0));
+				assertThat(emat.getPairwise(1, 0, 0, 0), is(5678.0));
+				assertThat(emat.getOneBody(0, 1), is(expected.getOneBody(0, 1)));
+				assertThat(emat.getPairwise(1, 1, 0, 1), is(expected.getPairwise(1, 1, 0, 1)));
+
+				// once the matrix is cached, the journal isn't needed anymore
+				assertThat(journalFile.exists(), is(false));
+			}
+		}
+	}
+}
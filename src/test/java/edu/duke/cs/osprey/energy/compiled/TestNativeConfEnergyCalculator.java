@@ -22,7 +22,7 @@ import java.util.stream.IntStream;
 
 /**
  * NOTE: running these tests directly from your IDE may require extra JVM flags:
- * --add-modules=jdk.incubator.foreign
+ * --add-modules=jdk.incubator.foreign,jdk.incubator.vector
  */
 public class TestNativeConfEnergyCalculator {
 
@@ -212,6 +212,14 @@ public class TestNativeConfEnergyCalculator {
 	@Test public void calcEnergy_cpu_all_2RL0() { calcEnergy_cpu_all(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, 1e-9); }
 	@Test public void calcEnergy_cpu_all_1DG9_6f() { calcEnergy_cpu_all(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, 1e-9); }
 
+	private void calcEnergy_vector_all(ConfSpace confSpace, int[][] confs, double[] energies, double epsilon) {
+		try (var confEcalc = new VectorConfEnergyCalculator(confSpace)) {
+			calcEnergy_all(confEcalc, confs, energies, epsilon);
+		}
+	}
+	@Test public void calcEnergy_vector_all_2RL0() { calcEnergy_vector_all(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, 1e-9); }
+	@Test public void calcEnergy_vector_all_1DG9_6f() { calcEnergy_vector_all(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, 1e-9); }
+
 	private void calcEnergy_native_all(ConfSpace confSpace, int[][] confs, double[] energies, Structs.Precision precision, double epsilon) {
 		try (var confEcalc = new NativeConfEnergyCalculator(confSpace, precision)) {
 			calcEnergy_all(confEcalc, confs, energies, epsilon);
@@ -255,6 +263,14 @@ public class TestNativeConfEnergyCalculator {
 	@Test public void calcEnergy_cpu_weights_2RL0() { calcEnergy_cpu_weights(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, 1e-9); }
 	@Test public void calcEnergy_cpu_weights_1DG9_6f() { calcEnergy_cpu_weights(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, 1e-9); }
 
+	private void calcEnergy_vector_weights(ConfSpace confSpace, int[][] confs, double[] energies, double epsilon) {
+		try (var confEcalc = new VectorConfEnergyCalculator(confSpace)) {
+			calcEnergy_weights(confEcalc, confs, energies, epsilon);
+		}
+	}
+	@Test public void calcEnergy_vector_weights_2RL0() { calcEnergy_vector_weights(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, 1e-9); }
+	@Test public void calcEnergy_vector_weights_1DG9_6f() { calcEnergy_vector_weights(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, 1e-9); }
+
 	private void calcEnergy_native_weights(ConfSpace confSpace, int[][] confs, double[] energies, Structs.Precision precision, double epsilon) {
 		try (var confEcalc = new NativeConfEnergyCalculator(confSpace, precision)) {
 			calcEnergy_weights(confEcalc, confs, energies, epsilon);
@@ -299,6 +315,14 @@ public class TestNativeConfEnergyCalculator {
 	@Test public void calcEnergy_cpu_offsets_2RL0() { calcEnergy_cpu_offsets(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, 1e-9); }
 	@Test public void calcEnergy_cpu_offsets_1DG9_6f() { calcEnergy_cpu_offsets(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, 1e-9); }
 
+	private void calcEnergy_vector_offsets(ConfSpace confSpace, int[][] confs, double[] energies, double epsilon) {
+		try (var confEcalc = new VectorConfEnergyCalculator(confSpace)) {
+			calcEnergy_offsets(confEcalc, confs, energies, epsilon);
+		}
+	}
+	@Test public void calcEnergy_vector_offsets_2RL0() { calcEnergy_vector_offsets(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, 1e-9); }
+	@Test public void calcEnergy_vector_offsets_1DG9_6f() { calcEnergy_vector_offsets(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, 1e-9); }
+
 	private void calcEnergy_native_offsets(ConfSpace confSpace, int[][] confs, double[] energies, Structs.Precision precision, double epsilon) {
 		try (var confEcalc = new NativeConfEnergyCalculator(confSpace, precision)) {
 			calcEnergy_offsets(confEcalc, confs, energies, epsilon);
@@ -343,6 +367,14 @@ public class TestNativeConfEnergyCalculator {
 	@Test public void calcEnergy_cpu_weightsOffsets_2RL0() { calcEnergy_cpu_weightsOffsets(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, 1e-9); }
 	@Test public void calcEnergy_cpu_weightsOffsets_1DG9_6f() { calcEnergy_cpu_weightsOffsets(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, 1e-9); }
 
+	private void calcEnergy_vector_weightsOffsets(ConfSpace confSpace, int[][] confs, double[] energies, double epsilon) {
+		try (var confEcalc = new VectorConfEnergyCalculator(confSpace)) {
+			calcEnergy_weightsOffsets(confEcalc, confs, energies, epsilon);
+		}
+	}
+	@Test public void calcEnergy_vector_weightsOffsets_2RL0() { calcEnergy_vector_weightsOffsets(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, 1e-9); }
+	@Test public void calcEnergy_vector_weightsOffsets_1DG9_6f() { calcEnergy_vector_weightsOffsets(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, 1e-9); }
+
 	private void calcEnergy_native_weightsOffsets(ConfSpace confSpace, int[][] confs, double[] energies, Structs.Precision precision, double epsilon) {
 		try (var confEcalc = new NativeConfEnergyCalculator(confSpace, precision)) {
 			calcEnergy_weightsOffsets(confEcalc, confs, energies, epsilon);
@@ -388,6 +420,14 @@ public class TestNativeConfEnergyCalculator {
 	@Test public void calc_cpu_all_2RL0() { calc_cpu_all(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, 1e-9); }
 	@Test public void calc_cpu_all_1DG9_6f() { calc_cpu_all(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, 1e-9); }
 
+	private void calc_vector_all(ConfSpace confSpace, int[][] confs, double[] energies, double epsilon) {
+		try (var confEcalc = new VectorConfEnergyCalculator(confSpace)) {
+			calc_all(confEcalc, confs, energies, epsilon);
+		}
+	}
+	@Test public void calc_vector_all_2RL0() { calc_vector_all(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, 1e-9); }
+	@Test public void calc_vector_all_1DG9_6f() { calc_vector_all(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, 1e-9); }
+
 	private void calc_native_all(ConfSpace confSpace, int[][] confs, double[] energies, Structs.Precision precision, double epsilon) {
 		try (var confEcalc = new NativeConfEnergyCalculator(confSpace, precision)) {
 			calc_all(confEcalc, confs, energies, epsilon);
@@ -429,6 +469,14 @@ public class TestNativeConfEnergyCalculator {
 	@Test public void minimizeEnergy_cpu_all_2RL0() { minimizeEnergy_cpu_all(confSpace_2RL0, confs_2RL0, minimize_all_2RL0, 1e-9); }
 	@Test public void minimizeEnergy_cpu_all_1DG9_6f() { minimizeEnergy_cpu_all(confSpace_1DG9_6f, confs_1DG9_6f, minimize_all_1DG9_6f, 1e-9); }
 
+	private void minimizeEnergy_vector_all(ConfSpace confSpace, int[][] confs, double[] energies, double epsilon) {
+		try (var confEcalc = new VectorConfEnergyCalculator(confSpace)) {
+			minimizeEnergy_all(confEcalc, confs, energies, epsilon);
+		}
+	}
+	@Test public void minimizeEnergy_vector_all_2RL0() { minimizeEnergy_vector_all(confSpace_2RL0, confs_2RL0, minimize_all_2RL0, 1e-8); }
+	@Test public void minimizeEnergy_vector_all_1DG9_6f() { minimizeEnergy_vector_all(confSpace_1DG9_6f, confs_1DG9_6f, minimize_all_1DG9_6f, 1e-4); }
+
 	private void minimizeEnergy_native_all(ConfSpace confSpace, int[][] confs, double[] energies, Structs.Precision precision, double epsilon) {
 		try (var confEcalc = new NativeConfEnergyCalculator(confSpace, precision)) {
 			minimizeEnergy_all(confEcalc, confs, energies, epsilon);
@@ -488,6 +536,14 @@ public class TestNativeConfEnergyCalculator {
 	@Test public void minimize_cpu_all_2RL0() { minimize_cpu_all(confSpace_2RL0, confs_2RL0, minimize_all_2RL0, 1e-9); }
 	@Test public void minimize_cpu_all_1DG9_6f() { minimize_cpu_all(confSpace_1DG9_6f, confs_1DG9_6f, minimize_all_1DG9_6f, 1e-9); }
 
+	private void minimize_vector_all(ConfSpace confSpace, int[][] confs, double[] energies, double epsilon) {
+		try (var confEcalc = new VectorConfEnergyCalculator(confSpace)) {
+			minimize_all(confEcalc, confs, energies, epsilon);
+		}
+	}
+	@Test public void minimize_vector_all_2RL0() { minimize_vector_all(confSpace_2RL0, confs_2RL0, minimize_all_2RL0, 1e-8); }
+	@Test public void minimize_vector_all_1DG9_6f() { minimize_vector_all(confSpace_1DG9_6f, confs_1DG9_6f, minimize_all_1DG9_6f, 1e-4); }
+
 	private void minimize_native_all(ConfSpace confSpace, int[][] confs, double[] energies, Structs.Precision precision, double epsilon) {
 		try (var confEcalc = new NativeConfEnergyCalculator(confSpace, precision)) {
 			minimize_all(confEcalc, confs, energies, epsilon);
@@ -558,6 +614,43 @@ public class TestNativeConfEnergyCalculator {
 	@Test public void minimizeEnergies_cuda_1DG9_6f_f64() { minimizeEnergies_cuda_all(confSpace_1DG9_6f, confs_1DG9_6f, minimize_all_1DG9_6f, Structs.Precision.Float64, 1e-3); }
 
 
+	private void calcEnergies_all(ConfEnergyCalculator confEcalc, int[][] confs, double[] energies, double epsilon) {
+
+		assertThat(energies.length, is(confs.length));
+
+		// make the jobs
+		List<ConfEnergyCalculator.MinimizationJob> jobs = Arrays.stream(confs)
+			.map(conf -> {
+				var inters = PosInterDist.all(confEcalc.confSpace(), conf);
+				return new ConfEnergyCalculator.MinimizationJob(conf, inters);
+			})
+			.collect(Collectors.toList());
+
+		confEcalc.calcEnergies(jobs);
+		for (int i=0; i<confs.length; i++) {
+			assertThat("conf " + i, jobs.get(i).energy, isRelatively(energies[i], epsilon));
+		}
+	}
+
+	private void calcEnergies_cpu_all(ConfSpace confSpace, int[][] confs, double[] energies, double epsilon) {
+		try (var confEcalc = new CPUConfEnergyCalculator(confSpace)) {
+			calcEnergies_all(confEcalc, confs, energies, epsilon);
+		}
+	}
+	@Test public void calcEnergies_cpu_all_2RL0() { calcEnergies_cpu_all(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, 1e-9); }
+	@Test public void calcEnergies_cpu_all_1DG9_6f() { calcEnergies_cpu_all(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, 1e-9); }
+
+	private void calcEnergies_native_all(ConfSpace confSpace, int[][] confs, double[] energies, Structs.Precision precision, double epsilon) {
+		try (var confEcalc = new NativeConfEnergyCalculator(confSpace, precision)) {
+			calcEnergies_all(confEcalc, confs, energies, epsilon);
+		}
+	}
+	@Test public void calcEnergies_native_all_2RL0_f32() { calcEnergies_native_all(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, Structs.Precision.Float32, 1e-5); }
+	@Test public void calcEnergies_native_all_2RL0_f64() { calcEnergies_native_all(confSpace_2RL0, confs_2RL0, calcEnergy_all_2RL0, Structs.Precision.Float64, 1e-8); }
+	@Test public void calcEnergies_native_all_1DG9_6f_f32() { calcEnergies_native_all(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, Structs.Precision.Float32, 1e-6); }
+	@Test public void calcEnergies_native_all_1DG9_6f_f64() { calcEnergies_native_all(confSpace_1DG9_6f, confs_1DG9_6f, calcEnergy_all_1DG9_6f, Structs.Precision.Float64, 1e-8); }
+
+
 	public static void main(String[] args) {
 
 		// generate the expected values
@@ -79,6 +79,7 @@ public class BenchmarkPartitionFunction {
 
 			benchmarkPfunc(new SimplePartitionFunction(confEcalc, astarFactory.get(), rcs.getNumConformations()));
 			benchmarkPfunc(new GradientDescentPfunc(confEcalc, astarFactory.get(), astarFactory.get(), rcs.getNumConformations()));
+			benchmarkPfunc(new GradientDescentPfunc(confEcalc, astarFactory.get(), astarFactory.get(), rcs.getNumConformations()).setUseBigExp(true));
 		}
 	}
 
@@ -0,0 +1,155 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.kstar;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+import edu.duke.cs.osprey.kstar.pfunc.BigExpWeightSums;
+import edu.duke.cs.osprey.kstar.pfunc.BoltzmannCalculator;
+import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
+import edu.duke.cs.osprey.tools.BigMath;
+import edu.duke.cs.osprey.tools.MathTools;
+import edu.duke.cs.osprey.tools.Stopwatch;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+
+
+/**
+ * Times the work GradientDescentPfunc does while holding its lock for each energied conf,
+ * ie, updating the weight sums and re-computing delta, with BigDecimal and BigExp weight sums.
+ */
+public class BenchmarkPfuncWeightSums {
+
+	public static void main(String[] args) {
+
+		final int numConfs = 100_000;
+		final BigInteger numConfsBeforePruning = BigInteger.valueOf(numConfs*10L);
+
+		// make some plausible scores and energies
+		Random rand = new Random(12345);
+		double[] scores = new double[numConfs];
+		double[] energies = new double[numConfs];
+		for (int i=0; i<numConfs; i++) {
+			scores[i] = -40.0 + i*1e-4 + rand.nextDouble();
+			energies[i] = scores[i] + rand.nextDouble()*2.0;
+		}
+
+		BoltzmannCalculator bcalc = new BoltzmannCalculator(PartitionFunction.decimalPrecision);
+
+		for (int run=0; run<3; run++) {
+
+			// BigDecimal: the tasks compute the weights, so do that outside the timed section
+			BigDecimal[] scoreWeights = new BigDecimal[numConfs];
+			BigDecimal[] energyWeights = new BigDecimal[numConfs];
+			for (int i=0; i<numConfs; i++) {
+				scoreWeights[i] = bcalc.calcPrecise(scores[i]);
+				energyWeights[i] = bcalc.calcPrecise(energies[i]);
+			}
+			Stopwatch bigDecimalStopwatch = new Stopwatch().start();
+			BigDecimal bigDecimalLower = sumBigDecimal(numConfsBeforePruning, scoreWeights, energyWeights);
+			bigDecimalStopwatch.stop();
+
+			// BigExp: the weights are computed inside the lock
+			Stopwatch bigExpStopwatch = new Stopwatch().start();
+			BigExpWeightSums sums = new BigExpWeightSums(numConfsBeforePruning);
+			double delta = 1.0;
+			for (int i=0; i<numConfs; i++) {
+				sums.addScoreWeight(bcalc.calcBigExp(scores[i]));
+				sums.addEnergyWeights(bcalc.calcBigExp(scores[i]), bcalc.calcBigExp(energies[i]));
+				delta = sums.calcDelta(i + 1);
+			}
+			bigExpStopwatch.stop();
+			BigDecimal bigExpLower = BigExpWeightSums.toBigDecimal(sums.getLowerBound());
+
+			log("BigDecimal: %8.0f ns/conf   BigExp: %8.0f ns/conf   speedup %5.1fx   lower bounds %s vs %s   delta %.6f",
+				bigDecimalStopwatch.getTimeNs()/(double)numConfs,
+				bigExpStopwatch.getTimeNs()/(double)numConfs,
+				bigDecimalStopwatch.getTimeNs()/(double)bigExpStopwatch.getTimeNs(),
+				String.format("%.12e", bigDecimalLower), String.format("%.12e", bigExpLower),
+				delta
+			);
+		}
+	}
+
+	private static BigDecimal sumBigDecimal(BigInteger numConfs, BigDecimal[] scoreWeights, BigDecimal[] energyWeights) {
+
+		// same operations as GradientDescentPfunc.State
+		BigDecimal bigNumConfs = new BigDecimal(numConfs);
+		BigDecimal upperScoreWeightSum = BigDecimal.ZERO;
+		BigDecimal minUpperScoreWeight = MathTools.BigPositiveInfinity;
+		BigDecimal lowerScoreWeightSum = BigDecimal.ZERO;
+		BigDecimal energyWeightSum = BigDecimal.ZERO;
+		BigDecimal minLowerScoreWeight = MathTools.BigPositiveInfinity;
+		BigDecimal cumulativeZReduction = BigDecimal.ZERO;
+		double delta = 1.0;
+
+		for (int i=0; i<scoreWeights.length; i++) {
+
+			upperScoreWeightSum = bigMath().set(upperScoreWeightSum).add(scoreWeights[i]).get();
+			if (MathTools.isLessThan(scoreWeights[i], minUpperScoreWeight)) {
+				minUpperScoreWeight = scoreWeights[i];
+			}
+
+			energyWeightSum = bigMath().set(energyWeightSum).add(energyWeights[i]).get();
+			lowerScoreWeightSum = bigMath().set(lowerScoreWeightSum).add(scoreWeights[i]).get();
+			if (MathTools.isLessThan(scoreWeights[i], minLowerScoreWeight)) {
+				minLowerScoreWeight = scoreWeights[i];
+			}
+			cumulativeZReduction = bigMath().set(cumulativeZReduction).add(scoreWeights[i]).sub(energyWeights[i]).get();
+
+			BigDecimal upperBound = bigMath()
+				.set(bigNumConfs)
+				.sub(i + 1)
+				.mult(minUpperScoreWeight)
+				.add(upperScoreWeightSum)
+				.sub(lowerScoreWeightSum)
+				.add(energyWeightSum)
+				.get();
+			delta = bigMath()
+				.set(upperBound)
+				.sub(energyWeightSum)
+				.div(upperBound)
+				.get()
+				.doubleValue();
+		}
+
+		return energyWeightSum;
+	}
+
+	private static BigMath bigMath() {
+		return new BigMath(PartitionFunction.decimalPrecision);
+	}
+}
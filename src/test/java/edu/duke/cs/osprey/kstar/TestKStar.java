@@ -80,6 +80,10 @@ public class TestKStar {
 	}
 
 	public static Result runKStar(ConfSpaces confSpaces, double epsilon, String confDBPattern, boolean useExternalMemory, int maxSimultaneousMutations) {
+		return runKStar(confSpaces, epsilon, confDBPattern, useExternalMemory, maxSimultaneousMutations, 1);
+	}
+
+	public static Result runKStar(ConfSpaces confSpaces, double epsilon, String confDBPattern, boolean useExternalMemory, int maxSimultaneousMutations, int maxConcurrentSequences) {
 
 		Parallelism parallelism = Parallelism.makeCpu(4);
 
@@ -117,6 +121,7 @@ public class TestKStar {
 				.addScoreConsoleWriter(testFormatter)
 				.setExternalMemory(useExternalMemory)
 				.setMaxSimultaneousMutations(maxSimultaneousMutations)
+				.setMaxConcurrentSequences(maxConcurrentSequences)
 				//.setShowPfuncProgress(true)
 				.build();
 			KStar kstar = new KStar(confSpaces.protein, confSpaces.ligand, confSpaces.complex, settings);
@@ -409,6 +414,39 @@ public class TestKStar {
 		});
 	}
 
+	@Test
+	public void test2RL0ConcurrentSequences() {
+
+		double epsilon = 0.95;
+		Result result = runKStar(make2RL0(), epsilon, null, false, 1, 4);
+		assert2RL0(result, epsilon);
+	}
+
+	@Test
+	public void test2RL0ConcurrentSequencesWithConfDB() {
+
+		final double epsilon = 0.95;
+		final ConfSpaces confSpaces = make2RL0();
+
+		try (TempFile proteinDBFile = new TempFile("kstar.concurrent.protein.conf.db")) {
+			try (TempFile ligandDBFile = new TempFile("kstar.concurrent.ligand.conf.db")) {
+				try (TempFile complexDBFile = new TempFile("kstar.concurrent.complex.conf.db")) {
+
+					Result result = runKStar(confSpaces, epsilon, "kstar.concurrent.%s.conf.db", false, 1, 4);
+					assert2RL0(result, epsilon);
+
+					// the concurrent pfuncs should have written to the dbs too, and closed them
+					try (ConfDB confdb = new ConfDB(confSpaces.complex, complexDBFile)) {
+						assertThat(confdb.getNumSequences(), greaterThan(1L));
+						for (Sequence sequence : confdb.getSequences()) {
+							assertThat(confdb.getSequence(sequence).size(), greaterThan(0L));
+						}
+					}
+				}
+			}
+		}
+	}
+
 	private static void assert2RL0(Result result, double epsilon) {
 		// check the results (values collected with e = 0.01 and 64 digits precision)
 		// NOTE: these values don't match the ones in the TestKSImplLinear test because the conf spaces are slightly different
@@ -0,0 +1,412 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.kstar;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import edu.duke.cs.osprey.TestBase.TempDir;
+import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
+import edu.duke.cs.osprey.confspace.Sequence;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.SimpleReferenceEnergies;
+import edu.duke.cs.osprey.ematrix.SimplerEnergyMatrixCalculator;
+import edu.duke.cs.osprey.ematrix.compiled.EmatCalculator;
+import edu.duke.cs.osprey.ematrix.compiled.ErefCalculator;
+import edu.duke.cs.osprey.energy.ConfEnergyCalculator;
+import edu.duke.cs.osprey.energy.EnergyCalculator;
+import edu.duke.cs.osprey.energy.compiled.CPUConfEnergyCalculator;
+import edu.duke.cs.osprey.energy.compiled.ConfEnergyCalculatorAdapter;
+import edu.duke.cs.osprey.energy.forcefield.ForcefieldParams;
+import edu.duke.cs.osprey.kstar.pfunc.GradientDescentPfunc;
+import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
+import edu.duke.cs.osprey.kstar.pfunc.PartitionFunctionCache;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.pruning.PruningMatrix;
+import edu.duke.cs.osprey.structure.Molecule;
+import edu.duke.cs.osprey.structure.PDBIO;
+import edu.duke.cs.osprey.tools.FileTools;
+import edu.duke.cs.osprey.tools.MathTools;
+
+public class TestPartitionFunctionCache {
+
+	private static PartitionFunction.Result makeResult(PartitionFunction.Status status) {
+		PartitionFunction.Values values = new PartitionFunction.Values();
+		values.qstar = new BigDecimal("1.234e50");
+		values.qprime = new BigDecimal("5.6e47");
+		values.pstar = BigDecimal.ZERO;
+		return new PartitionFunction.Result(status, values, 42);
+	}
+
+	@Test
+	public void roundTrip() {
+		try (TempDir dir = new TempDir("pfuncCache")) {
+			PartitionFunctionCache cache = new PartitionFunctionCache(dir);
+
+			assertThat(cache.get("key", null), is(nullValue()));
+
+			PartitionFunction.Result expected = makeResult(PartitionFunction.Status.Estimated);
+			cache.put("key", expected);
+
+			PartitionFunction.Result observed = cache.get("key", null);
+			assertThat(observed.status, is(PartitionFunction.Status.Estimated));
+			assertThat(observed.numConfs, is(42));
+			assertThat(observed.values.qstar, is(expected.values.qstar));
+			assertThat(observed.values.qprime, is(expected.values.qprime));
+			assertThat(observed.values.pstar, is(expected.values.pstar));
+
+			// infinities survive too
+			PartitionFunction.Result full = new PartitionFunction.Result(PartitionFunction.Status.OutOfLowEnergies, PartitionFunction.Values.makeFullRange(), 0);
+			cache.put("full", full);
+			assertThat(cache.get("full", null).values.qprime, sameInstance(MathTools.BigPositiveInfinity));
+		}
+	}
+
+	@Test
+	public void onlyReusableResults() {
+		try (TempDir dir = new TempDir("pfuncCache")) {
+			PartitionFunctionCache cache = new PartitionFunctionCache(dir);
+
+			for (PartitionFunction.Status status : List.of(PartitionFunction.Status.Estimating, PartitionFunction.Status.Unstable, PartitionFunction.Status.Aborted)) {
+				cache.put(status.name(), makeResult(status));
+				assertThat(cache.get(status.name(), null), is(nullValue()));
+			}
+		}
+	}
+
+	@Test
+	public void stabilityThreshold() {
+		try (TempDir dir = new TempDir("pfuncCache")) {
+			PartitionFunctionCache cache = new PartitionFunctionCache(dir);
+			cache.put("key", makeResult(PartitionFunction.Status.Estimated));
+
+			assertThat(cache.get("key", new BigDecimal("1e40")).status, is(PartitionFunction.Status.Estimated));
+			assertThat(cache.get("key", new BigDecimal("1e60")).status, is(PartitionFunction.Status.Unstable));
+		}
+	}
+
+	@Test
+	public void brokenEntry()
+	throws Exception {
+		try (TempDir dir = new TempDir("pfuncCache")) {
+			PartitionFunctionCache cache = new PartitionFunctionCache(dir);
+			cache.put("key", makeResult(PartitionFunction.Status.Estimated));
+
+			// flip a byte in the middle of the entry
+			File file = cache.fileFor("key");
+			byte[] bytes = java.nio.file.Files.readAllBytes(file.toPath());
+			bytes[bytes.length/2] ^= 0xff;
+			try (FileOutputStream out = new FileOutputStream(file)) {
+				out.write(bytes);
+			}
+
+			assertThat(cache.get("key", null), is(nullValue()));
+			assertThat(file.exists(), is(false));
+		}
+	}
+
+	private static class Design {
+
+		final SimpleConfSpace protein;
+		final SimpleConfSpace ligand;
+		final SimpleConfSpace complex;
+
+		Design() {
+			this(Double.POSITIVE_INFINITY, 0.0);
+		}
+
+		/** moves a static residue in the protein by dx, and uses the given shell distance */
+		Design(double shellDist, double dx) {
+			Molecule mol = PDBIO.readResource("/1CC8.ss.pdb");
+
+			Strand protein = new Strand.Builder(mol)
+				.setResidues("A2", "A20")
+				.build();
+			protein.mol.getResByPDBResNumber("A10").coords[0] += dx;
+			protein.flexibility.get("A5").setLibraryRotamers(Strand.WildType, "VAL").addWildTypeRotamers();
+			protein.flexibility.get("A7").setLibraryRotamers(Strand.WildType).addWildTypeRotamers();
+
+			Strand ligand = new Strand.Builder(mol)
+				.setResidues("A21", "A40")
+				.build();
+			ligand.flexibility.get("A23").setLibraryRotamers(Strand.WildType).addWildTypeRotamers();
+
+			this.protein = new SimpleConfSpace.Builder().addStrand(protein).setShellDistance(shellDist).build();
+			this.ligand = new SimpleConfSpace.Builder().addStrand(ligand).build();
+			this.complex = new SimpleConfSpace.Builder().addStrands(protein, ligand).build();
+		}
+
+		List<KStar.ScoredSequence> run(PartitionFunctionCache cache, long[] numEnergies) {
+			try (EnergyCalculator ecalc = new EnergyCalculator.Builder(complex, new ForcefieldParams())
+				.setParallelism(Parallelism.makeCpu(2))
+				.setIsMinimizing(false)
+				.build()) {
+
+				KStar kstar = new KStar(protein, ligand, complex, new KStar.Settings.Builder()
+					.setEpsilon(0.1)
+					.setStabilityThreshold(null)
+					.setPfuncCache(cache)
+					.build()
+				);
+				for (KStar.ConfSpaceInfo info : kstar.confSpaceInfos()) {
+					SimpleConfSpace confSpace = (SimpleConfSpace)info.confSpace;
+					info.confEcalc = new ConfEnergyCalculator.Builder(confSpace, ecalc).build();
+					EnergyMatrix emat = new SimplerEnergyMatrixCalculator.Builder(info.confEcalc)
+						.build()
+						.calcEnergyMatrix();
+					info.pfuncFactory = rcs -> new GradientDescentPfunc(
+						info.confEcalc,
+						new ConfAStarTree.Builder(emat, rcs).setTraditional().build(),
+						new ConfAStarTree.Builder(emat, rcs).setTraditional().build(),
+						rcs.getNumConformations()
+					);
+					info.confDBFile = null;
+				}
+
+				// count the conf energies computed for the pfuncs, but not the energy matrices
+				numEnergies[0] = 0;
+				for (KStar.ConfSpaceInfo info : kstar.confSpaceInfos()) {
+					numEnergies[0] -= info.confEcalc.getNumRequests();
+				}
+
+				List<KStar.ScoredSequence> scores = kstar.run(ecalc.tasks);
+
+				for (KStar.ConfSpaceInfo info : kstar.confSpaceInfos()) {
+					numEnergies[0] += info.confEcalc.getNumRequests();
+				}
+				return scores;
+			}
+		}
+	}
+
+	@Test
+	public void kstarReusesResults() {
+
+		Design design = new Design();
+
+		try (TempDir dir = new TempDir("pfuncCache")) {
+			PartitionFunctionCache cache = new PartitionFunctionCache(dir);
+
+			long[] numEnergies = { 0 };
+			List<KStar.ScoredSequence> expected = design.run(cache, numEnergies);
+			assertThat(numEnergies[0], greaterThan(0L));
+
+			// the second design should get every pfunc from the cache
+			List<KStar.ScoredSequence> observed = design.run(cache, numEnergies);
+			assertThat(numEnergies[0], is(0L));
+
+			assertThat(observed.size(), is(expected.size()));
+			for (int i=0; i<expected.size(); i++) {
+				assertThat(observed.get(i).sequence, is(expected.get(i).sequence));
+				assertThat(observed.get(i).score.protein.values.qstar, is(expected.get(i).score.protein.values.qstar));
+				assertThat(observed.get(i).score.ligand.values.qstar, is(expected.get(i).score.ligand.values.qstar));
+				assertThat(observed.get(i).score.complex.values.qstar, is(expected.get(i).score.complex.values.qstar));
+			}
+		}
+	}
+
+	@Test
+	public void keys() {
+
+		Design design = new Design();
+		PartitionFunctionCache cache = new PartitionFunctionCache(new File("pfuncCacheKeys"));
+		cache.dir.delete();
+
+		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(design.protein, new ForcefieldParams())
+			.setIsMinimizing(false)
+			.build()) {
+			ConfEnergyCalculator confEcalc = new ConfEnergyCalculator.Builder(design.protein, ecalc).build();
+			ConfEnergyCalculator confEcalcMinimized = new ConfEnergyCalculator(confEcalc, new EnergyCalculator.SharedBuilder(ecalc).setIsMinimizing(true).build());
+
+			Sequence wt = design.protein.seqSpace.makeWildTypeSequence();
+			Sequence mut = wt.copy().set("A5", "VAL");
+
+			String key = cache.makeKey(design.protein, wt, 0.1, confEcalc);
+			assertThat(cache.makeKey(design.protein, wt, 0.1, confEcalc), is(key));
+			assertThat(cache.makeKey(design.protein, mut, 0.1, confEcalc), is(not(key)));
+			assertThat(cache.makeKey(design.protein, wt, 0.01, confEcalc), is(not(key)));
+			assertThat(cache.makeKey(design.protein, wt, 0.1, confEcalcMinimized), is(not(key)));
+		}
+	}
+
+	@Test
+	public void keysDependOnStructure() {
+
+		Design design = new Design();
+		Design moved = new Design(Double.POSITIVE_INFINITY, 0.1);
+		Design shell = new Design(6.0, 0.0);
+
+		try (TempDir dir = new TempDir("pfuncCache")) {
+			PartitionFunctionCache cache = new PartitionFunctionCache(dir);
+
+			try (EnergyCalculator ecalc = new EnergyCalculator.Builder(design.protein, new ForcefieldParams())
+				.setIsMinimizing(false)
+				.build()) {
+				ConfEnergyCalculator confEcalc = new ConfEnergyCalculator.Builder(design.protein, ecalc).build();
+				Sequence wt = design.protein.seqSpace.makeWildTypeSequence();
+
+				cache.put(cache.makeKey(design.protein, wt, 0.1, confEcalc), makeResult(PartitionFunction.Status.Estimated));
+				assertThat(cache.get(cache.makeKey(design.protein, wt, 0.1, confEcalc), null), is(not(nullValue())));
+
+				// the same positions and confs, but different coords or shell, should miss the cache
+				assertThat(cache.get(cache.makeKey(moved.protein, moved.protein.seqSpace.makeWildTypeSequence(), 0.1, confEcalc), null), is(nullValue()));
+				assertThat(cache.get(cache.makeKey(shell.protein, shell.protein.seqSpace.makeWildTypeSequence(), 0.1, confEcalc), null), is(nullValue()));
+			}
+		}
+	}
+
+	@Test
+	public void keysDependOnPruning() {
+
+		Design design = new Design();
+		PartitionFunctionCache cache = new PartitionFunctionCache(new File("pfuncCacheKeys"));
+		cache.dir.delete();
+
+		try (EnergyCalculator ecalc = new EnergyCalculator.Builder(design.protein, new ForcefieldParams())
+			.setIsMinimizing(false)
+			.build()) {
+			ConfEnergyCalculator confEcalc = new ConfEnergyCalculator.Builder(design.protein, ecalc).build();
+			Sequence wt = design.protein.seqSpace.makeWildTypeSequence();
+			String key = cache.makeKey(design.protein, wt, 0.1, confEcalc);
+
+			// a pruning matrix that doesn't prune anything shouldn't change the key
+			PruningMatrix pmat = new PruningMatrix(design.protein);
+			assertThat(cache.makeKey(design.protein, wt, pmat, 0.1, confEcalc), is(key));
+
+			// but pruning an RC the sequence uses should
+			pmat.pruneSingle(0, 0);
+			String singleKey = cache.makeKey(design.protein, wt, pmat, 0.1, confEcalc);
+			assertThat(singleKey, is(not(key)));
+
+			// and so should pruning a pair
+			pmat.prunePair(1, 0, 0, 1);
+			assertThat(cache.makeKey(design.protein, wt, pmat, 0.1, confEcalc), is(not(singleKey)));
+		}
+	}
+
+	private static List<KStar.ScoredSequence> runCompiled(PartitionFunctionCache cache, int[] numPfuncs) {
+
+		ConfSpace complex = ConfSpace.fromBytes(FileTools.readResourceBytes("/confSpaces/6ov7.small.complex.ccsx"));
+		ConfSpace design = ConfSpace.fromBytes(FileTools.readResourceBytes("/confSpaces/6ov7.small.design.ccsx"));
+		ConfSpace target = ConfSpace.fromBytes(FileTools.readResourceBytes("/confSpaces/6ov7.small.target.ccsx"));
+
+		KStar kstar = new KStar(target, design, complex, new KStar.Settings.Builder()
+			.setEpsilon(0.1)
+			.setStabilityThreshold(null)
+			.setPfuncCache(cache)
+			.build()
+		);
+
+		Parallelism parallelism = Parallelism.makeCpu(2);
+		try (TaskExecutor tasks = parallelism.makeTaskExecutor()) {
+
+			for (KStar.ConfSpaceInfo info : kstar.confSpaceInfos()) {
+
+				// use rigid energies, to keep the test fast
+				edu.duke.cs.osprey.energy.compiled.ConfEnergyCalculator ecalc = new CPUConfEnergyCalculator((ConfSpace)info.confSpace);
+				SimpleReferenceEnergies eref = new ErefCalculator.Builder(ecalc)
+					.setMinimize(false)
+					.build()
+					.calc(tasks);
+				EnergyMatrix emat = new EmatCalculator.Builder(ecalc)
+					.setReferenceEnergies(eref)
+					.setMinimize(false)
+					.build()
+					.calc(tasks);
+
+				info.confEcalc = new ConfEnergyCalculatorAdapter.Builder(ecalc, tasks)
+					.setReferenceEnergies(eref)
+					.setMinimize(false)
+					.build();
+				info.pfuncFactory = rcs -> {
+					numPfuncs[0]++;
+					return new GradientDescentPfunc(
+						info.confEcalc,
+						new ConfAStarTree.Builder(emat, rcs).setTraditional().build(),
+						new ConfAStarTree.Builder(emat, rcs).setTraditional().build(),
+						rcs.getNumConformations()
+					);
+				};
+				info.confDBFile = null;
+			}
+
+			return kstar.run(tasks);
+
+		} finally {
+			for (KStar.ConfSpaceInfo info : kstar.confSpaceInfos()) {
+				if (info.confEcalc != null) {
+					((ConfEnergyCalculatorAdapter)info.confEcalc).confEcalc.close();
+				}
+			}
+		}
+	}
+
+	@Test
+	public void compiledKStarReusesResults() {
+
+		try (TempDir dir = new TempDir("pfuncCache")) {
+			PartitionFunctionCache cache = new PartitionFunctionCache(dir);
+
+			int[] numPfuncs = { 0 };
+			List<KStar.ScoredSequence> expected = runCompiled(cache, numPfuncs);
+			assertThat(numPfuncs[0], greaterThan(0));
+			assertThat(dir.listFiles().length, greaterThan(0));
+
+			// the second design should get every pfunc from the cache
+			numPfuncs[0] = 0;
+			List<KStar.ScoredSequence> observed = runCompiled(cache, numPfuncs);
+			assertThat(numPfuncs[0], is(0));
+
+			// each run loads its own conf spaces, so compare the sequences by name
+			assertThat(observed.size(), is(expected.size()));
+			for (int i=0; i<expected.size(); i++) {
+				assertThat(observed.get(i).sequence.toString(), is(expected.get(i).sequence.toString()));
+				assertThat(observed.get(i).score.protein.values.qstar, is(expected.get(i).score.protein.values.qstar));
+				assertThat(observed.get(i).score.ligand.values.qstar, is(expected.get(i).score.ligand.values.qstar));
+				assertThat(observed.get(i).score.complex.values.qstar, is(expected.get(i).score.complex.values.qstar));
+			}
+		}
+	}
+}
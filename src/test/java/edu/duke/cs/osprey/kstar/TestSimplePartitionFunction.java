@@ -33,6 +33,7 @@
 package edu.duke.cs.osprey.kstar;
 
 import static edu.duke.cs.osprey.TestBase.TempFile;
+import static edu.duke.cs.osprey.TestBase.isRelatively;
 import static edu.duke.cs.osprey.TestBase.skipGPUTestsIfNeeded;
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.*;
@@ -145,6 +146,7 @@ public class TestSimplePartitionFunction {
 
 	private static PfuncFactory simplePfuncs = (confEcalc, confSearch) -> new SimplePartitionFunction(confEcalc, confSearch, new RCs(confEcalc.confSpace).getNumConformations());
 	private static PfuncFactory gdPfuncs = (confEcalc, confSearch) -> new GradientDescentPfunc(confEcalc, confSearch, new RCs(confEcalc.confSpace).getNumConformations());
+	private static PfuncFactory gdBigExpPfuncs = (confEcalc, confSearch) -> new GradientDescentPfunc(confEcalc, confSearch, new RCs(confEcalc.confSpace).getNumConformations()).setUseBigExp(true);
 
 	public static void testStrand(ForcefieldParams ffparams, SimpleConfSpace confSpace, Parallelism parallelism, double targetEpsilon, String approxQStar, EnergyMatrix emat, PfuncFactory pfuncs) {
 
@@ -232,6 +234,8 @@ public class TestSimplePartitionFunction {
 	@Test public void test2RL0ProteinGD2Cpus() { calc2RL0Protein(gdPfuncs, Parallelism.make(2, 0, 0)); }
 	@Test public void test2RL0ProteinGD1GpuStream() { calc2RL0Protein(gdPfuncs, Parallelism.make(1, 1, 1)); }
 	@Test public void test2RL0ProteinGD4GpuStreams() { calc2RL0Protein(gdPfuncs, Parallelism.make(2, 1, 4)); }
+	@Test public void test2RL0ProteinGDBigExp1Cpu() { calc2RL0Protein(gdBigExpPfuncs, Parallelism.make(1, 0, 0)); }
+	@Test public void test2RL0ProteinGDBigExp2Cpus() { calc2RL0Protein(gdBigExpPfuncs, Parallelism.make(2, 0, 0)); }
 
 	private static EnergyMatrix calc2RL0LigandEmat = null;
 	public void calc2RL0LigandPfunc(PfuncFactory pfuncs, Parallelism parallelism) {
@@ -254,6 +258,8 @@ public class TestSimplePartitionFunction {
 	@Test public void test2RL0LigandGD2Cpus() { calc2RL0LigandPfunc(gdPfuncs, Parallelism.make(2, 0, 0)); }
 	@Test public void test2RL0LigandGD1GpuStream() { calc2RL0LigandPfunc(gdPfuncs, Parallelism.make(1, 1, 1)); }
 	@Test public void test2RL0LigandGD4GpuStreams() { calc2RL0LigandPfunc(gdPfuncs, Parallelism.make(2, 1, 4)); }
+	@Test public void test2RL0LigandGDBigExp1Cpu() { calc2RL0LigandPfunc(gdBigExpPfuncs, Parallelism.make(1, 0, 0)); }
+	@Test public void test2RL0LigandGDBigExp2Cpus() { calc2RL0LigandPfunc(gdBigExpPfuncs, Parallelism.make(2, 0, 0)); }
 
 	private static EnergyMatrix calc2RL0ComplexEmat = null;
 	public void calc2RL0Complex(PfuncFactory pfuncs, Parallelism parallelism) {
@@ -287,6 +293,36 @@ public class TestSimplePartitionFunction {
 	@Test public void test2RL0ComplexGD4Cpus() { calc2RL0Complex(gdPfuncs, Parallelism.make(4, 0, 0)); }
 	@Test public void test2RL0ComplexGD1GpuStream() { calc2RL0Complex(gdPfuncs, Parallelism.make(1, 1, 1)); }
 	@Test public void test2RL0ComplexGD4GpuStreams() { calc2RL0Complex(gdPfuncs, Parallelism.make(2, 1, 4)); }
+	@Test public void test2RL0ComplexGDBigExp2Cpus() { calc2RL0Complex(gdBigExpPfuncs, Parallelism.make(2, 0, 0)); }
+
+	@Test
+	public void gdBigExpMatchesBigDecimal() {
+
+		TestInfo info = make2RL0TestInfo();
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(info.ligand)
+			.build();
+		Parallelism parallelism = Parallelism.makeCpu(1);
+		if (calc2RL0LigandEmat == null) {
+			calc2RL0LigandEmat = calcEmat(info.ffparams, confSpace, parallelism);
+		}
+
+		final double targetEpsilon = 0.001;
+		PartitionFunction.Values bigDecimal = calcPfunc(info.ffparams, confSpace, parallelism, targetEpsilon, calc2RL0LigandEmat, gdPfuncs,
+			p -> {},
+			p -> p.compute()
+		).getValues();
+		PartitionFunction.Values bigExp = calcPfunc(info.ffparams, confSpace, parallelism, targetEpsilon, calc2RL0LigandEmat, gdBigExpPfuncs,
+			p -> {},
+			p -> p.compute()
+		).getValues();
+
+		// step sizes depend on timing, so the pfuncs won't evaluate exactly the same confs,
+		// but both bound the same Z, so the bounds should agree to within epsilon
+		assertThat(bigExp.getEffectiveEpsilon(), lessThanOrEqualTo(targetEpsilon));
+		assertThat(bigExp.calcLowerBound().doubleValue(), isRelatively(bigDecimal.calcLowerBound().doubleValue(), targetEpsilon));
+		assertThat(bigExp.calcUpperBound().doubleValue(), isRelatively(bigDecimal.calcUpperBound().doubleValue(), targetEpsilon));
+	}
 
 
 	public static TestInfo make1GUA11TestInfo() {
@@ -0,0 +1,45 @@
+package edu.duke.cs.osprey.kstar.compiled;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+import edu.duke.cs.osprey.confspace.compiled.ConfSpace;
+import edu.duke.cs.osprey.kstar.KStar;
+import edu.duke.cs.osprey.tools.FileTools;
+import edu.duke.cs.osprey.tools.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class BenchmarkBBKStar {
+
+	public static void main(String[] args) {
+
+		// use the same design as TestBBKStar
+		ConfSpace complex = ConfSpace.fromBytes(FileTools.readResourceBytes("/confSpaces/2RL0.complex.ccsx"));
+		ConfSpace chainA = ConfSpace.fromBytes(FileTools.readResourceBytes("/confSpaces/2RL0.A.ccsx"));
+		ConfSpace chainG = ConfSpace.fromBytes(FileTools.readResourceBytes("/confSpaces/2RL0.G.ccsx"));
+		final double epsilon = 0.99;
+
+		// warm up
+		TestBBKStar.run(chainG, chainA, complex, epsilon, 1);
+
+		List<String> reports = new ArrayList<>();
+		for (int numNodesPerRound : new int[] { 1, 2, 4, 8 }) {
+			Stopwatch stopwatch = new Stopwatch().start();
+			List<KStar.ScoredSequence> sequences = TestBBKStar.run(chainG, chainA, complex, epsilon, numNodesPerRound);
+			stopwatch.stop();
+			reports.add(String.format("%2d nodes per round: %s   %d sequences, best: %s",
+				numNodesPerRound,
+				stopwatch.getTime(2),
+				sequences.size(),
+				sequences.isEmpty() ? "none" : sequences.get(0).sequence
+			));
+		}
+
+		// the BBK* logging is noisy, so save the reports until the end
+		for (String report : reports) {
+			log(report);
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package edu.duke.cs.osprey.kstar.compiled;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
 
 import edu.duke.cs.osprey.astar.conf.ConfAStarTree;
 import edu.duke.cs.osprey.confspace.Sequence;
@@ -22,8 +24,10 @@ import edu.duke.cs.osprey.tools.FileTools;
 import org.junit.jupiter.api.Test;
 //import org.junit.rules.Timeout;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class TestBBKStar {
 
@@ -40,7 +44,49 @@ public class TestBBKStar {
 		run(chainG, chainA, complex, epsilon);
 	}
 
-	private static List<KStar.ScoredSequence> run(ConfSpace protein, ConfSpace ligand, ConfSpace complex, double epsilon) {
+	@Test
+	public void test2RL0_speculative() {
+
+		ConfSpace complex = ConfSpace.fromBytes(FileTools.readResourceBytes("/confSpaces/2RL0.complex.ccsx"));
+		ConfSpace chainA = ConfSpace.fromBytes(FileTools.readResourceBytes("/confSpaces/2RL0.A.ccsx"));
+		ConfSpace chainG = ConfSpace.fromBytes(FileTools.readResourceBytes("/confSpaces/2RL0.G.ccsx"));
+
+		// refining several nodes at once should find the same sequences as the classic search
+		final double epsilon = 0.99;
+		List<KStar.ScoredSequence> expected = run(chainG, chainA, complex, epsilon, 1);
+		List<KStar.ScoredSequence> observed = run(chainG, chainA, complex, epsilon, 4);
+		assertThat(observed.size(), is(expected.size()));
+		assertSameSequences(observed, expected);
+		assertSameSequences(expected, observed);
+	}
+
+	/**
+	 * The pfunc tasks don't finish in the same order from run to run, and at this epsilon
+	 * the K* bounds of the best sequences overlap a lot. So a sequence missing from the other run
+	 * is only ok if its K* bounds say it could still belong with the other run's sequences.
+	 */
+	private static void assertSameSequences(List<KStar.ScoredSequence> observed, List<KStar.ScoredSequence> expected) {
+
+		List<Sequence> expectedSequences = expected.stream()
+			.map(scoredSequence -> scoredSequence.sequence)
+			.collect(Collectors.toList());
+		BigDecimal minLowerBound = expected.stream()
+			.map(scoredSequence -> scoredSequence.score.lowerBound)
+			.min(BigDecimal::compareTo)
+			.orElseThrow();
+
+		for (KStar.ScoredSequence scoredSequence : observed) {
+			if (!expectedSequences.contains(scoredSequence.sequence)) {
+				assertThat(scoredSequence.sequence.toString(), scoredSequence.score.upperBound, greaterThanOrEqualTo(minLowerBound));
+			}
+		}
+	}
+
+	static List<KStar.ScoredSequence> run(ConfSpace protein, ConfSpace ligand, ConfSpace complex, double epsilon) {
+		return run(protein, ligand, complex, epsilon, 1);
+	}
+
+	static List<KStar.ScoredSequence> run(ConfSpace protein, ConfSpace ligand, ConfSpace complex, double epsilon, int numNodesPerRound) {
 
 		KStarScoreWriter.Formatter testFormatter = info ->
 			String.format("%3d %s   protein: %s   ligand: %s   complex: %s   K*: %s",
@@ -62,6 +108,7 @@ public class TestBBKStar {
 		BBKStar.Settings bbkstarSettings = new BBKStar.Settings.Builder()
 			.setNumBestSequences(5)
 			.setNumConfsPerBatch(8)
+			.setNumNodesPerRound(numNodesPerRound)
 			.build();
 		BBKStar bbkstar = new BBKStar(protein, ligand, complex, kstarSettings, bbkstarSettings);
 
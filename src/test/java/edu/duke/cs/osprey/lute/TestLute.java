@@ -50,6 +50,7 @@ import edu.duke.cs.osprey.kstar.*;
 import edu.duke.cs.osprey.kstar.pfunc.GradientDescentPfunc;
 import edu.duke.cs.osprey.kstar.pfunc.PartitionFunction;
 import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.parallelism.ThreadPoolTaskExecutor;
 import edu.duke.cs.osprey.pruning.PruningMatrix;
 import edu.duke.cs.osprey.pruning.SimpleDEE;
 import edu.duke.cs.osprey.restypes.ResidueTemplateLibrary;
@@ -810,4 +811,41 @@ public class TestLute {
 			new RCTuple(1, 2, 2, 0, 3, 1).sorted()
 		));
 	}
+
+	@Test
+	public void fitOnDisk() {
+
+		// make sure the on-disk fitter gets the same answer as the in-memory fitter
+
+		Strand protein = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (String resNum : Arrays.asList("A16", "A17", "A18", "A19")) {
+			protein.flexibility.get(resNum).setLibraryRotamers("VAL"); // 3 rotamers each
+		}
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder().addStrands(protein).build();
+
+		LUTE lute = new LUTE(confSpace);
+		lute.addUniqueTuples(lute.getUnprunedPairTuples(new PruningMatrix(confSpace)));
+
+		// sample every conf, with random energies
+		Random rand = new Random(12345);
+		Map<int[],Double> energies = new HashMap<>();
+		for (int i=0; i<3*3*3*3; i++) {
+			int[] conf = new int[] { i%3, i/3%3, i/9%3, i/27 };
+			lute.trainingSet.addConf(conf);
+			energies.put(conf, rand.nextDouble()*10 - 20);
+		}
+
+		LUTE.LinearSystem inMemory = new LUTE.LinearSystem(lute.tuplesIndex, lute.trainingSet, energies);
+		LUTE.LinearSystem onDisk = new LUTE.LinearSystem(lute.tuplesIndex, lute.trainingSet, energies);
+		try (ThreadPoolTaskExecutor tasks = new ThreadPoolTaskExecutor()) {
+			tasks.start(2);
+			inMemory.fit(LUTE.Fitter.OLSCG, null, tasks);
+			onDisk.fit(LUTE.Fitter.OLSCGOnDisk, null, tasks);
+		}
+
+		assertThat(onDisk.tupleEnergyOffset, is(inMemory.tupleEnergyOffset));
+		for (int c=0; c<inMemory.confs.size(); c++) {
+			assertThat(onDisk.errors.residual[c], isAbsolutely(inMemory.errors.residual[c], 1e-6));
+		}
+	}
 }
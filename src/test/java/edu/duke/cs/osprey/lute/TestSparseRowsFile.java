@@ -0,0 +1,144 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.lute;
+
+import static edu.duke.cs.osprey.TestBase.isAbsolutely;
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import edu.duke.cs.osprey.TestBase.TempFile;
+import edu.duke.cs.osprey.parallelism.TaskExecutor;
+import edu.duke.cs.osprey.parallelism.ThreadPoolTaskExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+
+public class TestSparseRowsFile {
+
+	private static final int NumRows = 1000;
+	private static final int NumCols = 50;
+
+	private static int[][] makeRandomRows(Random rand) {
+		int[][] rows = new int[NumRows][];
+		for (int r=0; r<NumRows; r++) {
+			rows[r] = rand.ints(rand.nextInt(10), 0, NumCols).distinct().toArray();
+		}
+		return rows;
+	}
+
+	private static double[] makeRandomVector(Random rand, int size) {
+		double[] v = new double[size];
+		for (int i=0; i<size; i++) {
+			v[i] = rand.nextDouble()*2 - 1;
+		}
+		return v;
+	}
+
+	private static double[] multA(int[][] rows, double[] x) {
+		double[] out = new double[NumRows];
+		for (int r=0; r<NumRows; r++) {
+			for (int c : rows[r]) {
+				out[r] += x[c];
+			}
+		}
+		return out;
+	}
+
+	private static double[] multAt(int[][] rows, double[] y) {
+		double[] out = new double[NumCols];
+		for (int r=0; r<NumRows; r++) {
+			for (int c : rows[r]) {
+				out[c] += y[r];
+			}
+		}
+		return out;
+	}
+
+	private static void assertVector(double[] observed, double[] expected) {
+		assertThat(observed.length, is(expected.length));
+		for (int i=0; i<expected.length; i++) {
+			assertThat(observed[i], isAbsolutely(expected[i], 1e-9));
+		}
+	}
+
+	private static void check(int maxBlockEntries, TaskExecutor tasks)
+	throws Exception {
+
+		Random rand = new Random(12345);
+		int[][] rows = makeRandomRows(rand);
+
+		try (TempFile file = new TempFile("rows")) {
+
+			SparseRowsFile A = SparseRowsFile.write(file, NumRows, NumCols, (row, callback) -> {
+				for (int c : rows[row]) {
+					callback.accept(c);
+				}
+			}, maxBlockEntries);
+
+			long numEntries = 0;
+			for (int[] row : rows) {
+				numEntries += row.length;
+			}
+			assertThat(A.getNumEntries(), is(numEntries));
+
+			double[] x = makeRandomVector(rand, NumCols);
+			double[] y = makeRandomVector(rand, NumRows);
+			assertVector(A.multA(x, tasks), multA(rows, x));
+			assertVector(A.multAt(y, tasks), multAt(rows, y));
+			assertVector(A.multAtA(x, tasks), multAt(rows, multA(rows, x)));
+		}
+	}
+
+	@Test
+	public void oneBlock()
+	throws Exception {
+		check(SparseRowsFile.DefaultMaxBlockEntries, new TaskExecutor());
+	}
+
+	@Test
+	public void manyBlocks()
+	throws Exception {
+		check(100, new TaskExecutor());
+	}
+
+	@Test
+	public void manyBlocksThreads()
+	throws Exception {
+		try (ThreadPoolTaskExecutor tasks = new ThreadPoolTaskExecutor()) {
+			tasks.start(3);
+			check(100, tasks);
+		}
+	}
+}
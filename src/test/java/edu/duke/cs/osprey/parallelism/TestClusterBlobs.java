@@ -0,0 +1,190 @@
+package edu.duke.cs.osprey.parallelism;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.duke.cs.osprey.TestBase.TempDir;
+import edu.duke.cs.osprey.TestBase.TempFile;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.ematrix.MappedEnergyMatrix;
+import edu.duke.cs.osprey.tools.FileTools;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+
+
+public class TestClusterBlobs {
+
+	// use tiny chunks so even small files get split
+	private static final int ChunkSize = 7;
+
+	private static byte[] makeBytes(int size) {
+		byte[] bytes = new byte[size];
+		for (int i=0; i<size; i++) {
+			bytes[i] = (byte)(i*31 + 5);
+		}
+		return bytes;
+	}
+
+	@Test
+	public void putGet()
+	throws Exception {
+
+		// two hosts, sharing one cluster
+		Map<String,byte[]> chunks = new ConcurrentHashMap<>();
+		try (TempDir dirA = new TempDir("blobsA"); TempDir dirB = new TempDir("blobsB"); TempFile file = new TempFile("blob.bin")) {
+
+			byte[] bytes = makeBytes(100);
+			Files.write(file.toPath(), bytes);
+
+			ClusterBlobs hostA = new ClusterBlobs(chunks, dirA, ChunkSize);
+			ClusterBlobs.Ref ref = hostA.put(file);
+			assertThat(ref.size, is(100L));
+			assertThat(ref.numChunks(), is(15));
+			assertThat(chunks.size(), is(15));
+
+			// putting the same file again shouldn't send anything new
+			assertThat(hostA.put(file), is(ref));
+			assertThat(chunks.size(), is(15));
+
+			// the putting host keeps a copy, the other host downloads one
+			assertThat(hostA.file(ref).exists(), is(true));
+			ClusterBlobs hostB = new ClusterBlobs(chunks, dirB, ChunkSize);
+			assertThat(hostB.file(ref).exists(), is(false));
+			File fileB = hostB.get(ref);
+			assertThat(fileB, is(hostB.file(ref)));
+			assertThat(FileTools.readFileBytes(fileB), is(bytes));
+
+			// once the host has a copy, it doesn't need the cluster anymore
+			hostA.remove(ref);
+			assertThat(chunks.isEmpty(), is(true));
+			assertThat(FileTools.readFileBytes(hostB.get(ref)), is(bytes));
+
+			hostA.deleteLocalCopies();
+			hostB.deleteLocalCopies();
+			assertThat(hostA.file(ref).exists(), is(false));
+		}
+	}
+
+	@Test
+	public void concurrentGetOnOneHost()
+	throws Exception {
+
+		// a client and a member in the same process, sharing one host folder
+		Map<String,byte[]> chunks = new ConcurrentHashMap<>();
+		try (TempDir dirA = new TempDir("blobsA"); TempDir dirB = new TempDir("blobsB"); TempFile file = new TempFile("blob.bin")) {
+
+			ClusterBlobs hostA = new ClusterBlobs(chunks, dirA, ChunkSize);
+			ClusterBlobs client = new ClusterBlobs(chunks, dirB, ChunkSize);
+			ClusterBlobs member = new ClusterBlobs(chunks, dirB, ChunkSize);
+
+			for (int size=90; size<100; size++) {
+
+				byte[] bytes = makeBytes(size);
+				Files.write(file.toPath(), bytes);
+				ClusterBlobs.Ref ref = hostA.put(file);
+
+				// have both instances download the blob at once, from a few threads each
+				CyclicBarrier barrier = new CyclicBarrier(4);
+				Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+				List<Thread> threads = new ArrayList<>();
+				for (ClusterBlobs blobs : List.of(client, member, client, member)) {
+					Thread thread = new Thread(() -> {
+						try {
+							barrier.await();
+							assertThat(FileTools.readFileBytes(blobs.get(ref)), is(bytes));
+						} catch (Throwable t) {
+							errors.add(t);
+						}
+					});
+					thread.start();
+					threads.add(thread);
+				}
+				for (Thread thread : threads) {
+					thread.join();
+				}
+				assertThat(errors, is(empty()));
+			}
+
+			client.release();
+			member.release();
+			hostA.release();
+		}
+	}
+
+	@Test
+	public void lastNodeOnHostCleansUp()
+	throws Exception {
+		Map<String,byte[]> chunks = new ConcurrentHashMap<>();
+		try (TempDir dir = new TempDir("blobs"); TempFile file = new TempFile("blob.bin")) {
+
+			Files.write(file.toPath(), makeBytes(20));
+
+			// two nodes on the same host, plus one that crashed without releasing the blobs
+			ClusterBlobs nodeA = new ClusterBlobs(chunks, dir, ChunkSize);
+			ClusterBlobs nodeB = new ClusterBlobs(chunks, dir, ChunkSize);
+			Files.createFile(new File(dir, Long.MAX_VALUE + "-0.user").toPath());
+			ClusterBlobs.Ref ref = nodeA.put(file);
+
+			// the other node still needs the blob
+			nodeA.release();
+			assertThat(nodeB.file(ref).exists(), is(true));
+
+			// but the last node cleans up
+			nodeB.release();
+			assertThat(dir.exists(), is(false));
+		}
+	}
+
+	@Test
+	public void corruptChunk()
+	throws Exception {
+		Map<String,byte[]> chunks = new ConcurrentHashMap<>();
+		try (TempDir dirA = new TempDir("blobsA"); TempDir dirB = new TempDir("blobsB"); TempFile file = new TempFile("blob.bin")) {
+
+			Files.write(file.toPath(), makeBytes(20));
+			ClusterBlobs.Ref ref = new ClusterBlobs(chunks, dirA, ChunkSize).put(file);
+			chunks.get(ref.hash + ":1")[0]++;
+
+			ClusterBlobs hostB = new ClusterBlobs(chunks, dirB, ChunkSize);
+			assertThrows(RuntimeException.class, () -> hostB.get(ref));
+			assertThat(hostB.file(ref).exists(), is(false));
+		}
+	}
+
+	@Test
+	public void energyMatrix() {
+
+		int[] numConfs = { 3, 5, 2 };
+		EnergyMatrix emat = new EnergyMatrix(numConfs.length, numConfs, Double.POSITIVE_INFINITY);
+		emat.setConstTerm(-1.5);
+		emat.setOneBody(1, 4, 2.5);
+		emat.setPairwise(2, 1, 0, 2, -3.5);
+
+		Map<String,byte[]> chunks = new ConcurrentHashMap<>();
+		try (TempDir dirA = new TempDir("blobsA"); TempDir dirB = new TempDir("blobsB")) {
+
+			ClusterBlobs.Ref ref = new ClusterBlobs(chunks, dirA).putEnergyMatrix(emat);
+
+			ClusterBlobs hostB = new ClusterBlobs(chunks, dirB);
+			EnergyMatrix mapped = hostB.getEnergyMatrix(ref);
+			assertThat(mapped, instanceOf(MappedEnergyMatrix.class));
+			assertThat(mapped.getConstTerm(), is(-1.5));
+			assertThat(mapped.getOneBody(1, 4), is(2.5));
+			assertThat(mapped.getPairwise(0, 2, 2, 1), is(-3.5));
+			assertThat(mapped.sum(), is(emat.sum()));
+
+			// every task in the process should share the same mapping
+			assertThat(hostB.getEnergyMatrix(ref), sameInstance(mapped));
+		}
+	}
+}
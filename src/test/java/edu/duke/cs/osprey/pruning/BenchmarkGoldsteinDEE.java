@@ -0,0 +1,110 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.pruning;
+
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.structure.PDBIO;
+import edu.duke.cs.osprey.tools.Stopwatch;
+
+import java.util.Random;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+
+/**
+ * Times the Goldstein DEE passes on a large conf space.
+ * Energies are random, so we don't have to wait for an energy matrix.
+ */
+public class BenchmarkGoldsteinDEE {
+
+	public static void main(String[] args) {
+
+		int numThreads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+		Parallelism parallelism = Parallelism.makeCpu(numThreads);
+
+		// lots of RCs for singles and pairs
+		benchmark("A3 A4 A6 A7 A8 A9 A10 A11 A12 A13 A14 A15", "VAL LEU ILE PHE TYR ARG LYS", false, parallelism);
+
+		// fewer RCs for triples, since there are so many more of them
+		benchmark("A3 A4 A6 A7 A8 A9", "VAL LEU ILE PHE", true, parallelism);
+	}
+
+	private static void benchmark(String resNums, String resTypes, boolean triples, Parallelism parallelism) {
+
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (String resNum : resNums.split(" ")) {
+			strand.flexibility.get(resNum).setLibraryRotamers((Strand.WildType + " " + resTypes).split(" ")).addWildTypeRotamers();
+		}
+		SimpleConfSpace confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+		log("%d positions, %d RCs, %d RC pairs", confSpace.positions.size(), confSpace.getNumResConfs(), confSpace.getNumResConfPairs());
+
+		// make random energies, so we don't have to wait for an energy matrix
+		EnergyMatrix emat = new EnergyMatrix(confSpace);
+		Random rand = new Random(12345);
+		for (int pos1=0; pos1<emat.getNumPos(); pos1++) {
+			for (int rc1=0; rc1<emat.getNumConfAtPos(pos1); rc1++) {
+				emat.setOneBody(pos1, rc1, rand.nextDouble()*50);
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<emat.getNumConfAtPos(pos2); rc2++) {
+						emat.setPairwise(pos1, rc1, pos2, rc2, rand.nextDouble()*2 - 1);
+					}
+				}
+			}
+		}
+
+		PruningMatrix pmat = new PruningMatrix(confSpace);
+		SimpleDEE dee = new SimpleDEE(confSpace, emat, pmat);
+		double threshold = 0.0;
+
+		Stopwatch stopwatch = new Stopwatch().start();
+		dee.pruneSinglesGoldstein(threshold, false, parallelism);
+		log("singles: pruned %d RCs in %s", pmat.countPrunedRCs(), stopwatch.stop().getTime(2));
+
+		stopwatch = new Stopwatch().start();
+		dee.prunePairsGoldstein(threshold, false, parallelism);
+		log("pairs:   pruned %d pairs in %s", pmat.countPrunedPairs(), stopwatch.stop().getTime(2));
+
+		if (triples) {
+			stopwatch = new Stopwatch().start();
+			dee.pruneTriplesGoldstein(threshold, false, parallelism);
+			log("triples: pruned %d triples in %s", pmat.countPrunedTriples(), stopwatch.stop().getTime(2));
+		}
+
+		log("pruning matrix hash: %d", TestSimpleDEE.writePmat(pmat).hashCode());
+	}
+}
@@ -0,0 +1,237 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.pruning;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import edu.duke.cs.osprey.confspace.RCTuple;
+import edu.duke.cs.osprey.confspace.SimpleConfSpace;
+import edu.duke.cs.osprey.confspace.Strand;
+import edu.duke.cs.osprey.ematrix.EnergyMatrix;
+import edu.duke.cs.osprey.structure.PDBIO;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+public class TestIncrementalDEE {
+
+	private static SimpleConfSpace confSpace;
+
+	@BeforeAll
+	public static void beforeAll() {
+		Strand strand = new Strand.Builder(PDBIO.readResource("/1CC8.ss.pdb")).build();
+		for (String resNum : Arrays.asList("A3", "A4", "A6", "A7")) {
+			strand.flexibility.get(resNum).setLibraryRotamers("VAL", "LEU", "ILE");
+		}
+		confSpace = new SimpleConfSpace.Builder()
+			.addStrand(strand)
+			.build();
+	}
+
+	private static EnergyMatrix makeRandomEmat(Random rand) {
+		EnergyMatrix emat = new EnergyMatrix(confSpace);
+		for (int pos1=0; pos1<emat.getNumPos(); pos1++) {
+			for (int rc1=0; rc1<emat.getNumConfAtPos(pos1); rc1++) {
+				emat.setOneBody(pos1, rc1, rand.nextDouble()*10);
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<emat.getNumConfAtPos(pos2); rc2++) {
+						emat.setPairwise(pos1, rc1, pos2, rc2, rand.nextDouble()*2 - 1);
+					}
+				}
+			}
+		}
+		return emat;
+	}
+
+	private static PruningMatrix makePmat() {
+		PruningMatrix pmat = new PruningMatrix(confSpace);
+		pmat.fill(false);
+		return pmat;
+	}
+
+	private static int[] findGMEC(EnergyMatrix emat) {
+		int[] conf = new int[confSpace.positions.size()];
+		int[] minConf = null;
+		double minEnergy = Double.POSITIVE_INFINITY;
+		while (true) {
+
+			double energy = emat.confE(conf);
+			if (energy < minEnergy) {
+				minEnergy = energy;
+				minConf = conf.clone();
+			}
+
+			// advance to the next conf
+			int pos = 0;
+			for (; pos<conf.length; pos++) {
+				conf[pos]++;
+				if (conf[pos] < emat.getNumConfAtPos(pos)) {
+					break;
+				}
+				conf[pos] = 0;
+			}
+			if (pos == conf.length) {
+				return minConf;
+			}
+		}
+	}
+
+	private static void assertUnpruned(PruningMatrix pmat, int[] conf) {
+		for (int pos1=0; pos1<conf.length; pos1++) {
+			assertThat(pmat.isSinglePruned(pos1, conf[pos1]), is(false));
+			for (int pos2=0; pos2<pos1; pos2++) {
+				assertThat(pmat.isPairPruned(pos1, conf[pos1], pos2, conf[pos2]), is(false));
+			}
+		}
+	}
+
+	@Test
+	public void sameAsSimpleDEE() {
+		assertSameAsSimpleDEE(false);
+	}
+
+	@Test
+	public void sameAsSimpleDEETypeDependent() {
+		assertSameAsSimpleDEE(true);
+	}
+
+	private static void assertSameAsSimpleDEE(boolean typeDependent) {
+		Random rand = new Random(12345);
+		for (int i=0; i<10; i++) {
+			EnergyMatrix emat = makeRandomEmat(rand);
+
+			PruningMatrix expected = makePmat();
+			SimpleDEE dee = new SimpleDEE(confSpace, emat, expected);
+			dee.pruneSinglesGoldstein(0, typeDependent);
+			dee.prunePairsGoldstein(0, typeDependent);
+
+			PruningMatrix observed = makePmat();
+			IncrementalDEE incDee = new IncrementalDEE(confSpace, emat, observed, 0, typeDependent);
+			incDee.pruneSingles();
+			incDee.prunePairs();
+
+			assertThat(observed, is(expected));
+		}
+	}
+
+	@Test
+	public void unpruneSingle() {
+
+		Random rand = new Random(12345);
+		EnergyMatrix emat = makeRandomEmat(rand);
+		PruningMatrix pmat = makePmat();
+		IncrementalDEE dee = new IncrementalDEE(confSpace, emat, pmat, 0, false);
+		dee.pruneSingles();
+		dee.prunePairs();
+
+		// find a pruned single
+		int pos = 0;
+		int rc = 0;
+		while (!pmat.isSinglePruned(pos, rc)) {
+			rc++;
+		}
+
+		// make it the best single by far
+		emat.setOneBody(pos, rc, -1000.0);
+		IncrementalDEE.Stats stats = dee.update(Arrays.asList(new RCTuple(pos, rc)));
+
+		assertThat(pmat.isSinglePruned(pos, rc), is(false));
+		assertThat(stats.numUnpruned, greaterThan(0));
+		assertUnpruned(pmat, findGMEC(emat));
+	}
+
+	@Test
+	public void pruneSingle() {
+
+		Random rand = new Random(12345);
+		EnergyMatrix emat = makeRandomEmat(rand);
+		PruningMatrix pmat = makePmat();
+		IncrementalDEE dee = new IncrementalDEE(confSpace, emat, pmat, 0, false);
+		dee.pruneSingles();
+		dee.prunePairs();
+
+		// find the GMEC single at the first position
+		int pos = 0;
+		int rc = findGMEC(emat)[pos];
+		assertThat(pmat.isSinglePruned(pos, rc), is(false));
+
+		// make it the worst single by far
+		emat.setOneBody(pos, rc, 1000.0);
+		IncrementalDEE.Stats stats = dee.update(Arrays.asList(new RCTuple(pos, rc)));
+
+		assertThat(pmat.isSinglePruned(pos, rc), is(true));
+		assertThat(stats.numPruned, greaterThan(0));
+		assertUnpruned(pmat, findGMEC(emat));
+	}
+
+	@Test
+	public void randomUpdatesKeepGMEC() {
+
+		Random rand = new Random(12345);
+		EnergyMatrix emat = makeRandomEmat(rand);
+		PruningMatrix pmat = makePmat();
+		IncrementalDEE dee = new IncrementalDEE(confSpace, emat, pmat, 0, false);
+		dee.pruneSingles();
+		dee.prunePairs();
+		assertUnpruned(pmat, findGMEC(emat));
+
+		for (int i=0; i<100; i++) {
+
+			// change a few random energies
+			List<RCTuple> changed = new ArrayList<>();
+			for (int j=0; j<3; j++) {
+				int pos1 = rand.nextInt(emat.getNumPos());
+				int rc1 = rand.nextInt(emat.getNumConfAtPos(pos1));
+				if (rand.nextBoolean()) {
+					emat.setOneBody(pos1, rc1, rand.nextDouble()*10);
+					changed.add(new RCTuple(pos1, rc1));
+				} else {
+					int pos2 = (pos1 + 1 + rand.nextInt(emat.getNumPos() - 1)) % emat.getNumPos();
+					int rc2 = rand.nextInt(emat.getNumConfAtPos(pos2));
+					emat.setPairwise(pos1, rc1, pos2, rc2, rand.nextDouble()*2 - 1);
+					changed.add(new RCTuple(pos1, rc1, pos2, rc2));
+				}
+			}
+
+			dee.update(changed);
+			assertUnpruned(pmat, findGMEC(emat));
+		}
+	}
+}
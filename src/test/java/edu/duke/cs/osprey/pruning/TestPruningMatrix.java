@@ -0,0 +1,135 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+package edu.duke.cs.osprey.pruning;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+public class TestPruningMatrix {
+
+	private static List<Integer> getBits(long[] words, int numRCs) {
+		List<Integer> rcs = new ArrayList<>();
+		for (int rc=0; rc<words.length*64; rc++) {
+			if ((words[rc >>> 6] & (1L << rc)) != 0) {
+				assertThat(rc, lessThan(numRCs));
+				rcs.add(rc);
+			}
+		}
+		return rcs;
+	}
+
+	private static PruningMatrix makeRandomPmat(int[] numRCs, long seed) {
+		PruningMatrix pmat = new PruningMatrix(numRCs.length, numRCs, 0);
+		pmat.fill(false);
+		Random rand = new Random(seed);
+		for (int pos1=0; pos1<numRCs.length; pos1++) {
+			for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+				if (rand.nextInt(10) == 0) {
+					pmat.setOneBody(pos1, rc1, true);
+				}
+				for (int pos2=0; pos2<pos1; pos2++) {
+					for (int rc2=0; rc2<numRCs[pos2]; rc2++) {
+						if (rand.nextInt(4) == 0) {
+							pmat.setPairwise(pos1, rc1, pos2, rc2, true);
+						}
+					}
+				}
+			}
+		}
+		return pmat;
+	}
+
+	@Test
+	public void unprunedBits() {
+
+		// use RC counts on both sides of the word boundaries
+		int[] numRCs = { 3, 64, 65, 130 };
+		PruningMatrix pmat = makeRandomPmat(numRCs, 12345);
+
+		for (int pos=0; pos<numRCs.length; pos++) {
+
+			long[] words = new long[pmat.getNumWords(pos)];
+			pmat.getUnprunedBits(pos, words);
+			assertThat(getBits(words, numRCs[pos]), is(pmat.unprunedRCsAtPos(pos)));
+
+			// check pair compatibility in both directions, since the pair storage is only contiguous in one
+			for (int pos1=0; pos1<numRCs.length; pos1++) {
+				if (pos1 == pos) {
+					continue;
+				}
+				for (int rc1=0; rc1<numRCs[pos1]; rc1++) {
+
+					pmat.getUnprunedBits(pos, words);
+					pmat.andUnprunedPairBits(pos1, rc1, pos, words);
+
+					List<Integer> expected = new ArrayList<>();
+					for (int rc=0; rc<numRCs[pos]; rc++) {
+						if (!pmat.isSinglePruned(pos, rc) && !pmat.getPairwise(pos1, rc1, pos, rc)) {
+							expected.add(rc);
+						}
+					}
+					assertThat(getBits(words, numRCs[pos]), is(expected));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void unprunedBitsInverted() {
+
+		// subclasses that override the getters should still work
+		int[] numRCs = { 5, 70 };
+		PruningMatrix pmat = new InvertedPruningMatrix(makeRandomPmat(numRCs, 54321));
+
+		long[] words = new long[pmat.getNumWords(1)];
+		pmat.getUnprunedBits(1, words);
+		List<Integer> expected = new ArrayList<>();
+		for (int rc=0; rc<numRCs[1]; rc++) {
+			if (!pmat.isSinglePruned(1, rc)) {
+				expected.add(rc);
+			}
+		}
+		assertThat(getBits(words, numRCs[1]), is(expected));
+
+		pmat.andUnprunedPairBits(0, 2, 1, words);
+		expected.removeIf(rc -> pmat.getPairwise(0, 2, 1, rc));
+		assertThat(getBits(words, numRCs[1]), is(expected));
+	}
+}
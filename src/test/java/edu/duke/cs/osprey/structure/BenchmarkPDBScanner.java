@@ -0,0 +1,94 @@
+/*
+** This file is part of OSPREY 3.0
+** 
+** OSPREY Protein Redesign Software Version 3.0
+** Copyright (C) 2001-2018 Bruce Donald Lab, Duke University
+** 
+** OSPREY is free software: you can redistribute it and/or modify
+** it under the terms of the GNU General Public License version 2
+** as published by the Free Software Foundation.
+** 
+** You should have received a copy of the GNU General Public License
+** along with OSPREY.  If not, see <http://www.gnu.org/licenses/>.
+** 
+** OSPREY relies on grants for its development, and since visibility
+** in the scientific literature is essential for our success, we
+** ask that users of OSPREY cite our papers. See the CITING_OSPREY
+** document in this distribution for more information.
+** 
+** Contact Info:
+**    Bruce Donald
+**    Duke University
+**    Department of Computer Science
+**    Levine Science Research Center (LSRC)
+**    Durham
+**    NC 27708-0129
+**    USA
+**    e-mail: www.cs.duke.edu/brd/
+** 
+** <signature of Bruce Donald>, Mar 1, 2018
+** Bruce Donald, Professor of Computer Science
+*/
+
+
+package edu.duke.cs.osprey.structure;
+
+import static edu.duke.cs.osprey.tools.Log.log;
+
+import edu.duke.cs.osprey.parallelism.Parallelism;
+import edu.duke.cs.osprey.structure.analysis.PDBScanner;
+import edu.duke.cs.osprey.tools.Stopwatch;
+
+import java.io.File;
+
+
+public class BenchmarkPDBScanner {
+
+	public static void main(String[] args) {
+
+		// scan a folder of PDB files, eg a Top8000 download, or just the test resources
+		File dir = new File(args.length > 0 ? args[0] : "src/test/resources");
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		PDBScanner scanner = new PDBScanner(dir);
+		log("benchmarking %d PDB files in %s", scanner.files.size(), dir.getAbsolutePath());
+
+		// warm up
+		benchmark(scanner, null, null);
+
+		log("%-32s %s", "serial", benchmark(scanner, null, null));
+		for (int numThreads=1; numThreads<=maxThreads; numThreads*=2) {
+			for (PDBScanner.Order order : PDBScanner.Order.values()) {
+				log("%-32s %s",
+					String.format("parallel %2d threads, %s", numThreads, order),
+					benchmark(scanner, Parallelism.makeCpu(numThreads), order)
+				);
+			}
+		}
+	}
+
+	private static String benchmark(PDBScanner scanner, Parallelism parallelism, PDBScanner.Order order) {
+
+		long[] numAtoms = { 0 };
+		int[] numMols = { 0 };
+
+		Stopwatch stopwatch = new Stopwatch().start();
+		if (parallelism == null) {
+			scanner.scan((file, mol) -> {
+				numMols[0]++;
+				numAtoms[0] += mol.residues.stream().mapToInt(res -> res.atoms.size()).sum();
+			});
+		} else {
+			scanner.scan(parallelism, order, (file, mol) -> {
+				numMols[0]++;
+				numAtoms[0] += mol.residues.stream().mapToInt(res -> res.atoms.size()).sum();
+			});
+		}
+		stopwatch.stop();
+
+		return String.format("%8.1f files/s %12.1f atoms/s   (%d models)",
+			scanner.files.size()/stopwatch.getTimeS(),
+			numAtoms[0]/stopwatch.getTimeS(),
+			numMols[0]
+		);
+	}
+}
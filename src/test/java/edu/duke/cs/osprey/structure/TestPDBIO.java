@@ -34,6 +34,7 @@ package edu.duke.cs.osprey.structure;
 
 import static org.hamcrest.Matchers.*;
 import static org.hamcrest.MatcherAssert.*;
+import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.Iterator;
 
@@ -175,6 +176,52 @@ public class TestPDBIO {
 		assertThat(mol.residues.get(164).secondaryStruct, is(SecondaryStructure.LOOP));
 	}
 	
+	@Test
+	public void readFieldsInPlace() {
+
+		// odd numbers, a missing b-factor, and a short line, all in fixed columns
+		Molecule mol = PDBIO.read(String.join("\n",
+			atomLine(1, " N  ", "-0.100", "+12.5", "-7.", "10.25", " N"),
+			atomLine(2, "FE  ", "1234.567", "0.0001", ".500", "", "FE"),
+			atomLine(3, " CA ", "1.000", "2.000", "3.000", "", "").substring(0, 54)
+		));
+
+		assertThat(mol.residues.size(), is(1));
+		Residue res = mol.residues.get(0);
+		assertRes(res, "ALA A   2", 0, "A2");
+		assertAtom(res.atoms.get(0), "N", "N", -0.1, 12.5, -7.0, 10.25);
+		assertAtom(res.atoms.get(1), "FE", "Fe", 1234.567, 0.0001, 0.5);
+		assertAtom(res.atoms.get(2), "CA", "C", 1.0, 2.0, 3.0);
+	}
+
+	@Test
+	public void readTruncatedAtomName() {
+
+		// a line cut off in the middle of the atom name should fail on the missing coords, like before
+		String line = atomLine(1, " CA ", "1.000", "2.000", "3.000", "", "").substring(0, 14);
+		assertThrows(NumberFormatException.class, () -> PDBIO.read(line));
+	}
+
+	@Test
+	public void readFieldsMatchesParseDouble() {
+
+		// the fast field parser should give bit-identical coords to Double.parseDouble()
+		String pdbText = FileTools.readFile("examples/1CC8/1CC8.ss.pdb");
+		Iterator<Atom> atoms = PDBIO.read(pdbText).residues.stream()
+			.flatMap(res -> res.atoms.stream())
+			.iterator();
+		for (String line : FileTools.parseLines(pdbText)) {
+			if (!line.startsWith("ATOM") && !line.startsWith("HETATM")) {
+				continue;
+			}
+			double[] coords = atoms.next().getCoords();
+			assertThat(coords[0], is(Double.parseDouble(line.substring(30, 38).trim())));
+			assertThat(coords[1], is(Double.parseDouble(line.substring(38, 46).trim())));
+			assertThat(coords[2], is(Double.parseDouble(line.substring(46, 54).trim())));
+		}
+		assertThat(atoms.hasNext(), is(false));
+	}
+
 	@Test
 	public void readWrite1CC8() {
 		assertReadWrite(FileTools.readFile("examples/1CC8/1CC8.copy.pdb"));
@@ -200,6 +247,12 @@ public class TestPDBIO {
 		assertThat(atom.BFactor, is(bFactor));
 	}
 	
+	private static String atomLine(int num, String name, String x, String y, String z, String bFactor, String elem) {
+		return String.format("ATOM  %5d %4s %-10s   %8s%8s%8s%6s%6s          %2s",
+			num, name, "ALA A   2", x, y, z, "1.00", bFactor, elem
+		);
+	}
+
 	private void assertReadWrite(String pdbText) {
 		Molecule mol = PDBIO.read(pdbText);
 		String pdbText2 = PDBIO.write(mol);
@@ -599,6 +599,62 @@ public class TestBigExp {
 		assertThat(new BigExp(5.852204485365044,7).lessThan(new BigExp(Double.POSITIVE_INFINITY)), is(true));
 	}
 
+	@Test
+	public void addFast() {
+
+		BiFunction<BigExp,BigExp,String> add = (a, b) -> {
+			a.addFast(b);
+			return a.toString(2);
+		};
+
+		assertThat(add.apply(new BigExp(1.0), new BigExp(2.0)), is("3.00e0"));
+		assertThat(add.apply(new BigExp(0.0), new BigExp(2.0)), is("2.00e0"));
+		assertThat(add.apply(new BigExp(2.0), new BigExp(0.0)), is("2.00e0"));
+		assertThat(add.apply(new BigExp(1.0, 500), new BigExp(2.0, 499)), is("1.20e500"));
+		assertThat(add.apply(new BigExp(2.0, 499), new BigExp(1.0, 500)), is("1.20e500"));
+		assertThat(add.apply(new BigExp(1.0, -500), new BigExp(2.0, -501)), is("1.20e-500"));
+		assertThat(add.apply(new BigExp(1.0, 500), new BigExp(-2.0, 499)), is("8.00e499"));
+
+		// tiny values don't change huge ones
+		assertThat(add.apply(new BigExp(1.0, 1000), new BigExp(1.0, -1000)), is("1.00e1000"));
+		assertThat(add.apply(new BigExp(1.0, -1000), new BigExp(1.0, 1000)), is("1.00e1000"));
+
+		assertThat(add.apply(new BigExp(Double.POSITIVE_INFINITY), new BigExp(1.0, 500)), is("Infinity"));
+		assertThat(add.apply(new BigExp(1.0, 500), new BigExp(Double.POSITIVE_INFINITY)), is("Infinity"));
+		assertThat(add.apply(new BigExp(Double.POSITIVE_INFINITY), new BigExp(Double.NEGATIVE_INFINITY)), is("NaN"));
+	}
+
+	@Test
+	public void subFast() {
+
+		BiFunction<BigExp,BigExp,String> sub = (a, b) -> {
+			a.subFast(b);
+			return a.toString(2);
+		};
+
+		assertThat(sub.apply(new BigExp(3.0), new BigExp(2.0)), is("1.00e0"));
+		assertThat(sub.apply(new BigExp(2.0), new BigExp(2.0)), is("0.00e0"));
+		assertThat(sub.apply(new BigExp(1.0, 500), new BigExp(2.0, 499)), is("8.00e499"));
+		assertThat(sub.apply(new BigExp(2.0, 499), new BigExp(1.0, 500)), is("-8.00e499"));
+		assertThat(sub.apply(new BigExp(0.0), new BigExp(1.0, 500)), is("-1.00e500"));
+	}
+
+	@Test
+	public void addFastMatchesBigDecimal() {
+
+		// sum a bunch of Boltzmann weights spanning many orders of magnitude, like a pfunc would
+		var mc = new MathContext(64, RoundingMode.HALF_UP);
+		BigDecimal expected = BigDecimal.ZERO;
+		BigExp observed = new BigExp(0.0);
+		for (int i=0; i<10000; i++) {
+			double lnWeight = 700.0 - i*0.37 + Math.sin(i)*50.0;
+			expected = expected.add(BigDecimalMath.exp(new BigDecimal(lnWeight), mc), mc);
+			observed.addFast(BigExp.exp(lnWeight));
+		}
+
+		assertThat(observed.toBigDecimal(mc).divide(expected, mc).doubleValue(), isAbsolutely(1.0, 1e-12));
+	}
+
 	@Test
 	public void log() {
 
@@ -0,0 +1,44 @@
+package edu.duke.cs.osprey.tools;
+
+import static org.hamcrest.Matchers.*;
+import static org.hamcrest.MatcherAssert.*;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class TestByteBufferDataInput {
+
+	@Test
+	@SuppressWarnings("deprecation") // DataInputStream.readLine() is the reference here
+	public void readLine()
+	throws IOException {
+
+		byte[] bytes = "first\nsecond\r\nthird\rfourth\n\nlast".getBytes(StandardCharsets.ISO_8859_1);
+
+		ByteBufferDataInput in = new ByteBufferDataInput(bytes);
+		DataInputStream expected = new DataInputStream(new ByteArrayInputStream(bytes));
+		while (true) {
+			String line = expected.readLine();
+			assertThat(in.readLine(), is(line));
+			if (line == null) {
+				break;
+			}
+		}
+	}
+
+	@Test
+	public void readLineThenData()
+	throws IOException {
+
+		byte[] bytes = "header\r\n\u0000\u0000\u0000*".getBytes(StandardCharsets.ISO_8859_1);
+
+		ByteBufferDataInput in = new ByteBufferDataInput(bytes);
+		assertThat(in.readLine(), is("header"));
+		assertThat(in.readInt(), is(42));
+		assertThat(in.readLine(), is(nullValue()));
+	}
+}